@@ -0,0 +1,16 @@
+; Clojure versions of the functions in nodebox.benchmark.BridgeFunctions.
+(ns bridge
+  (:refer-clojure :exclude [identity])
+  (:import [nodebox.graphics Point]))
+
+(defn add [a b]
+  (+ a b))
+
+(defn total [values]
+  (reduce + 0.0 values))
+
+(defn shift [points dx]
+  (mapv (fn [^Point pt] (Point. (+ (.x pt) dx) (.y pt))) points))
+
+(defn identity [value]
+  value)
@@ -0,0 +1,107 @@
+package nodebox.benchmark;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compares the results of a benchmark run against a baseline.
+ * <p/>
+ * Both files are JMH results in JSON format, as written by {@link Benchmarks}:
+ * <pre>
+ * java -cp target/benchmarks.jar nodebox.benchmark.BaselineComparison baseline.json target/benchmarks.json 5
+ * </pre>
+ * For every benchmark that appears in both runs, this prints the score and the allocations per operation. The last
+ * argument is the tolerance in percent: if a score is worse than the baseline by more than that, the comparison
+ * exits with a non-zero status, so it can fail a build.
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION_METRIC = "\u00b7gc.alloc.rate.norm";
+    private static final double DEFAULT_TOLERANCE = 5.0;
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison BASELINE.json RESULTS.json [TOLERANCE_PERCENT]");
+            System.exit(2);
+        }
+        Map<String, JSONObject> baseline = readResults(new File(args[0]));
+        Map<String, JSONObject> results = readResults(new File(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+
+        int compared = 0;
+        int regressions = 0;
+        for (Map.Entry<String, JSONObject> entry : results.entrySet()) {
+            JSONObject baselineResult = baseline.get(entry.getKey());
+            if (baselineResult == null) continue;
+            compared++;
+            JSONObject result = entry.getValue();
+            JSONObject baselineMetric = (JSONObject) baselineResult.get("primaryMetric");
+            JSONObject metric = (JSONObject) result.get("primaryMetric");
+            double before = score(baselineMetric);
+            double after = score(metric);
+            double change = before == 0 ? 0 : (after - before) / before * 100;
+            // Only throughput gets better as the score goes up.
+            boolean higherIsBetter = "thrpt".equals(result.get("mode"));
+            boolean regressed = higherIsBetter ? change < -tolerance : change > tolerance;
+            if (regressed) regressions++;
+            System.out.println(String.format(Locale.US, "%s %s", regressed ? "SLOWER" : "      ", entry.getKey()));
+            System.out.println(String.format(Locale.US, "         score %14.3f -> %14.3f %s (%+.1f%%)",
+                    before, after, metric.get("scoreUnit"), change));
+            Double allocationBefore = allocation(baselineResult);
+            Double allocationAfter = allocation(result);
+            if (allocationBefore != null && allocationAfter != null) {
+                System.out.println(String.format(Locale.US, "         alloc %14.0f -> %14.0f B/op",
+                        allocationBefore, allocationAfter));
+            }
+        }
+        System.out.println(String.format(Locale.US, "%d benchmarks compared, %d regressions beyond %.1f%%.",
+                compared, regressions, tolerance));
+        if (regressions > 0) System.exit(1);
+    }
+
+    /**
+     * Read a JMH result file, keyed by benchmark method, mode and parameters.
+     */
+    private static Map<String, JSONObject> readResults(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            Object json = JSONValue.parse(reader);
+            if (!(json instanceof JSONArray))
+                throw new IOException("File " + file + " does not contain JMH results in JSON format.");
+            Map<String, JSONObject> results = new LinkedHashMap<String, JSONObject>();
+            for (Object item : (JSONArray) json) {
+                JSONObject result = (JSONObject) item;
+                StringBuilder key = new StringBuilder();
+                key.append(result.get("benchmark")).append(" [").append(result.get("mode")).append("]");
+                Object params = result.get("params");
+                if (params instanceof JSONObject) {
+                    key.append(" ").append(new TreeMap<String, Object>((JSONObject) params));
+                }
+                results.put(key.toString(), result);
+            }
+            return results;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static double score(JSONObject metric) {
+        return ((Number) metric.get("score")).doubleValue();
+    }
+
+    private static Double allocation(JSONObject result) {
+        Object secondaryMetrics = result.get("secondaryMetrics");
+        if (!(secondaryMetrics instanceof JSONObject)) return null;
+        Object metric = ((JSONObject) secondaryMetrics).get(ALLOCATION_METRIC);
+        if (!(metric instanceof JSONObject)) return null;
+        return score((JSONObject) metric);
+    }
+
+}
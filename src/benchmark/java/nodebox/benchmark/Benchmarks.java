@@ -0,0 +1,57 @@
+package nodebox.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+
+/**
+ * Runs the NodeBox benchmarks.
+ * <p/>
+ * Build the benchmarks with <code>mvn -P benchmarks package</code>, then run them from the root of the repository:
+ * <pre>
+ * java -jar target/benchmarks.jar                                  # All benchmarks, on all example documents.
+ * java -jar target/benchmarks.jar RenderBenchmark -p listScale=1,10 -p frame=1,100
+ * java -jar target/benchmarks.jar NetworkScalingBenchmark -p parallel=false,true
+ * java -jar target/benchmarks.jar -p document="examples/01 Basics/01 Shape/04 Grid/04 Grid.ndbx"
+ * </pre>
+ * This accepts all options of the JMH runner. Unless told otherwise, it renders every example document, measures
+ * allocations with the GC profiler and writes the results to <code>target/benchmarks.json</code>. Compare the
+ * results against an earlier run with {@link BaselineComparison}.
+ */
+public final class Benchmarks {
+
+    public static final String DEFAULT_RESULT_FILE = "target/benchmarks.json";
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(Benchmarks.class.getPackage().getName() + ".*");
+        }
+        if (!commandLine.getParameter("document").hasValue()) {
+            List<String> examples = Documents.findExamples();
+            options.param("document", examples.toArray(new String[examples.size()]));
+        }
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,65 @@
+package nodebox.benchmark;
+
+import nodebox.graphics.Contour;
+import nodebox.graphics.Path;
+import nodebox.graphics.Point;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the boolean operations on paths, which go through {@link java.awt.geom.Area}.
+ * <p/>
+ * The two shapes overlap, so every operation has to find their intersections. These operations are much slower
+ * than the others in {@link GeometryBenchmark}, so they have their own benchmark with single shot measurements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BooleanOperationBenchmark {
+
+    /**
+     * The number of points in each shape.
+     */
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    private Path shape;
+    private Path other;
+
+    @Setup
+    public void setUp() {
+        shape = shape(size, 0);
+        other = shape(size, 50);
+    }
+
+    private static Path shape(int size, double cx) {
+        double[] coordinates = GeometryBenchmark.shapeCoordinates(size, cx, 0, 100);
+        List<Point> points = new ArrayList<Point>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(new Point(coordinates[i * 2], coordinates[i * 2 + 1]));
+        }
+        return new Path(new Contour(points, true));
+    }
+
+    @Benchmark
+    public Path united() {
+        return shape.united(other);
+    }
+
+    @Benchmark
+    public Path intersected() {
+        return shape.intersected(other);
+    }
+
+    @Benchmark
+    public Path subtracted() {
+        return shape.subtracted(other);
+    }
+
+}
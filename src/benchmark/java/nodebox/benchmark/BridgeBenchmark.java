@@ -0,0 +1,113 @@
+package nodebox.benchmark;
+
+import nodebox.function.Function;
+import nodebox.function.FunctionLibrary;
+import nodebox.graphics.Point;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Measures the cost of invoking the same node function through each {@link Function} implementation.
+ * <p/>
+ * The functions are defined in {@link BridgeFunctions} and in equivalent Python and Clojure files. They are invoked
+ * the way {@link nodebox.node.NodeContext} invokes them, with boxed arguments. Use {@link BridgeReport} to compare
+ * the languages side by side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BridgeBenchmark {
+
+    public static final String PYTHON_LIBRARY = "python:src/benchmark/python/bridge.py";
+    public static final String CLOJURE_LIBRARY = "clojure:src/benchmark/clojure/bridge.clj";
+
+    @Param({"java", "python", "clojure"})
+    public String language;
+
+    /**
+     * The number of items in the list arguments.
+     */
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private Function add;
+    private Function total;
+    private Function shift;
+    private Function identity;
+
+    private Double a;
+    private Double b;
+    private Double dx;
+    private List<Double> values;
+    private List<Point> points;
+
+    @Setup
+    public void setUp() {
+        FunctionLibrary library = loadLibrary(language);
+        add = library.getFunction("add");
+        total = library.getFunction("total");
+        shift = library.getFunction("shift");
+        identity = library.getFunction("identity");
+        a = 1.0;
+        b = 2.0;
+        dx = 10.0;
+        values = new ArrayList<Double>(size);
+        points = new ArrayList<Point>(size);
+        for (int i = 0; i < size; i++) {
+            values.add((double) i);
+            points.add(new Point(i, i * 2));
+        }
+    }
+
+    static FunctionLibrary loadLibrary(String language) {
+        if (language.equals("java")) {
+            return FunctionLibrary.ofClass("bridge", BridgeFunctions.class, "add", "total", "shift", "identity");
+        } else if (language.equals("python")) {
+            return FunctionLibrary.load(PYTHON_LIBRARY);
+        } else {
+            checkArgument(language.equals("clojure"), "Unknown language %s.", language);
+            return FunctionLibrary.load(CLOJURE_LIBRARY);
+        }
+    }
+
+    /**
+     * Two numbers in, one number out: mostly the fixed cost of a call.
+     */
+    @Benchmark
+    public Object add() throws Exception {
+        return add.invoke(a, b);
+    }
+
+    /**
+     * A list in, a number out: the cost of reading a Java list from the other language.
+     */
+    @Benchmark
+    public Object total() throws Exception {
+        return total.invoke(values);
+    }
+
+    /**
+     * A list of points in, a new list of points out: the cost of creating Java objects and returning a list.
+     */
+    @Benchmark
+    public Object shift() throws Exception {
+        return shift.invoke(points, dx);
+    }
+
+    /**
+     * A list in, the same list out: only the cost of converting the argument and the result.
+     */
+    @Benchmark
+    public Object identity() throws Exception {
+        return identity.invoke(values);
+    }
+
+}
@@ -0,0 +1,41 @@
+package nodebox.benchmark;
+
+import nodebox.graphics.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Node functions that are implemented the same way in Java, Python (src/benchmark/python/bridge.py) and Clojure
+ * (src/benchmark/clojure/bridge.clj), to measure the cost of calling into each language.
+ */
+public final class BridgeFunctions {
+
+    private BridgeFunctions() {
+    }
+
+    public static double add(double a, double b) {
+        return a + b;
+    }
+
+    public static double total(List<Double> values) {
+        double total = 0;
+        for (Double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    public static List<Point> shift(List<Point> points, double dx) {
+        List<Point> shifted = new ArrayList<Point>(points.size());
+        for (Point pt : points) {
+            shifted.add(new Point(pt.x + dx, pt.y));
+        }
+        return shifted;
+    }
+
+    public static Object identity(Object value) {
+        return value;
+    }
+
+}
@@ -0,0 +1,117 @@
+package nodebox.benchmark;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runs {@link BridgeBenchmark} and {@link PythonConversionBenchmark} and reports the cost of every language relative
+ * to Java.
+ * <pre>
+ * java -cp target/benchmarks.jar nodebox.benchmark.BridgeReport [JMH options]
+ * </pre>
+ * The report is a Markdown document that is printed and written to <code>target/bridge-report.md</code>. For every
+ * function and list size it shows the time per call in each language and how many times slower that is than Java.
+ * A function that is much slower in Python than in Java, at the list sizes that documents use, is a good candidate
+ * to move from pyvector.py to Java.
+ */
+public final class BridgeReport {
+
+    public static final String REPORT_FILE = "target/bridge-report.md";
+
+    private static final String[] LANGUAGES = {"java", "python", "clojure"};
+
+    private BridgeReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine)
+                .include(BridgeBenchmark.class.getName())
+                .include(PythonConversionBenchmark.class.getName());
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        StringWriter report = new StringWriter();
+        writeReport(results, new PrintWriter(report));
+        System.out.println(report);
+        File reportFile = new File(REPORT_FILE);
+        if (reportFile.getParentFile() != null) reportFile.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+        try {
+            writer.write(report.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void writeReport(Collection<RunResult> results, PrintWriter out) {
+        // Scores by function and size, then by language.
+        Map<String, Map<String, Double>> calls = new TreeMap<String, Map<String, Double>>();
+        Map<String, Double> conversions = new TreeMap<String, Double>();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String method = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            String size = result.getParams().getParam("size");
+            String key = String.format("%-10s %6s", method, size);
+            double score = result.getPrimaryResult().getScore();
+            if (benchmark.startsWith(BridgeBenchmark.class.getName() + ".")) {
+                String language = result.getParams().getParam("language");
+                Map<String, Double> scores = calls.get(key);
+                if (scores == null) {
+                    scores = new HashMap<String, Double>();
+                    calls.put(key, scores);
+                }
+                scores.put(language, score);
+            } else {
+                conversions.put(String.format("%-15s %6s", method, size), score);
+            }
+        }
+
+        out.println("# Function invocation cost per language");
+        out.println();
+        out.println("Time per call in nanoseconds, and the factor relative to Java.");
+        out.println();
+        out.println("| Function | Size | Java | Python | Clojure | Python / Java | Clojure / Java |");
+        out.println("|----------|-----:|-----:|-------:|--------:|--------------:|---------------:|");
+        for (Map.Entry<String, Map<String, Double>> entry : calls.entrySet()) {
+            String[] key = entry.getKey().trim().split("\\s+");
+            Map<String, Double> scores = entry.getValue();
+            StringBuilder row = new StringBuilder();
+            row.append("| ").append(key[0]).append(" | ").append(key[1]).append(" |");
+            for (String language : LANGUAGES) {
+                row.append(" ").append(format(scores.get(language))).append(" |");
+            }
+            Double java = scores.get("java");
+            row.append(" ").append(ratio(scores.get("python"), java)).append(" |");
+            row.append(" ").append(ratio(scores.get("clojure"), java)).append(" |");
+            out.println(row);
+        }
+        if (!conversions.isEmpty()) {
+            out.println();
+            out.println("# Python argument and result conversion");
+            out.println();
+            out.println("| Conversion | Size | ns |");
+            out.println("|------------|-----:|---:|");
+            for (Map.Entry<String, Double> entry : conversions.entrySet()) {
+                String[] key = entry.getKey().trim().split("\\s+");
+                out.println("| " + key[0] + " | " + key[1] + " | " + format(entry.getValue()) + " |");
+            }
+        }
+        out.flush();
+    }
+
+    private static String format(Double score) {
+        return score == null ? "-" : String.format(Locale.US, "%.1f", score);
+    }
+
+    private static String ratio(Double score, Double baseline) {
+        if (score == null || baseline == null || baseline == 0) return "-";
+        return String.format(Locale.US, "%.1fx", score / baseline);
+    }
+
+}
@@ -0,0 +1,118 @@
+package nodebox.benchmark;
+
+import com.google.common.collect.ImmutableSet;
+import nodebox.NodeBox;
+import nodebox.function.FunctionRepository;
+import nodebox.node.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Loads NodeBox documents for benchmarking.
+ * <p/>
+ * Paths are relative to the working directory, so benchmarks should be started from the root of the repository.
+ */
+public final class Documents {
+
+    public static final String EXAMPLES_DIRECTORY = "examples";
+    public static final String LIBRARIES_DIRECTORY = "libraries";
+
+    /**
+     * The integer ports of the built-in nodes that control how many items a node generates.
+     */
+    private static final ImmutableSet<String> COUNT_PORTS = ImmutableSet.of("amount", "points", "rows", "columns", "copies");
+
+    private static NodeRepository systemRepository;
+
+    private Documents() {
+    }
+
+    public static synchronized NodeRepository getSystemRepository() {
+        if (systemRepository == null) {
+            systemRepository = NodeBox.getSystemRepository(LIBRARIES_DIRECTORY);
+        }
+        return systemRepository;
+    }
+
+    /**
+     * Find all example documents, sorted by path.
+     */
+    public static List<String> findExamples() {
+        List<String> paths = new ArrayList<String>();
+        collectDocuments(new File(EXAMPLES_DIRECTORY), paths);
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static void collectDocuments(File directory, List<String> paths) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectDocuments(file, paths);
+            } else if (file.getName().endsWith(".ndbx")) {
+                paths.add(file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Load a document, upgrading it if it was saved by an older version of NodeBox.
+     *
+     * @param path The path of the document.
+     * @return The node library.
+     */
+    public static NodeLibrary load(String path) {
+        File file = new File(path);
+        checkArgument(file.isFile(), "Document %s does not exist. Run the benchmarks from the NodeBox directory.", path);
+        try {
+            return NodeLibrary.load(file, getSystemRepository());
+        } catch (OutdatedLibraryException e) {
+            return NodeLibraryUpgrades.upgrade(file).getLibrary(file, getSystemRepository());
+        }
+    }
+
+    /**
+     * Get the functions available to the given library: the system functions and the functions of its own code
+     * libraries.
+     */
+    public static FunctionRepository getFunctionRepository(NodeLibrary library) {
+        return FunctionRepository.combine(getSystemRepository().getFunctionRepository(), library.getFunctionRepository());
+    }
+
+    /**
+     * Scale the number of items the nodes of a library generate.
+     * <p/>
+     * The values of the count ports of all nodes, such as the amount of a scatter node or the rows and columns of a
+     * grid, are multiplied by the given factor.
+     *
+     * @param library The node library.
+     * @param factor  The scale factor.
+     * @return A new library with the scaled port values.
+     */
+    public static NodeLibrary scaleListSizes(NodeLibrary library, int factor) {
+        checkArgument(factor > 0, "The scale factor should be positive.");
+        if (factor == 1) return library;
+        return library.withRoot(scaleListSizes(library.getRoot(), factor));
+    }
+
+    private static Node scaleListSizes(Node node, int factor) {
+        Node scaled = node;
+        for (Port port : node.getInputs()) {
+            // Published ports are scaled through the child they are published from.
+            if (port.getType().equals(Port.TYPE_INT) && COUNT_PORTS.contains(port.getName()) && !port.isPublishedPort()) {
+                scaled = scaled.withInputValue(port.getName(), port.intValue() * factor);
+            }
+        }
+        for (Node child : node.getChildren()) {
+            scaled = scaled.withChildReplaced(child.getName(), scaleListSizes(child, factor));
+        }
+        return scaled;
+    }
+
+}
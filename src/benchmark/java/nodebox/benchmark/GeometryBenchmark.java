@@ -0,0 +1,197 @@
+package nodebox.benchmark;
+
+import nodebox.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.geom.GeneralPath;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the geometry operations that most nodes are built on.
+ * <p/>
+ * The shapes are closed, non-convex polygons with the given number of points. Paths cache their bounds, length and
+ * AWT path, while nodes mostly work on paths they have just created. The queries therefore invalidate the caches
+ * first, unless the name of the benchmark says the caches are warm.
+ * <p/>
+ * Run with the GC profiler (the default of {@link Benchmarks}) to get the allocations per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GeometryBenchmark {
+
+    /**
+     * The number of points in the geometry.
+     */
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * The number of points generated by makePoints and the resample operations.
+     */
+    private static final int SAMPLE_AMOUNT = 100;
+
+    /**
+     * The number of paths in the geometry. Together, they have the same number of points as the path.
+     */
+    private static final int GEOMETRY_PATHS = 10;
+
+    private double[] coordinates;
+    private List<Point> points;
+    private Path path;
+    private Geometry geometry;
+    private Transform transform;
+    private Point center;
+
+    @Setup
+    public void setUp() {
+        coordinates = shapeCoordinates(size, 0, 0, 100);
+        points = new ArrayList<Point>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(new Point(coordinates[i * 2], coordinates[i * 2 + 1]));
+        }
+        path = new Path(new Contour(points, true));
+        geometry = new Geometry();
+        int pathSize = Math.max(3, size / GEOMETRY_PATHS);
+        for (int i = 0; i < GEOMETRY_PATHS; i++) {
+            double[] pathCoordinates = shapeCoordinates(pathSize, i * 250, 0, 100);
+            List<Point> pathPoints = new ArrayList<Point>(pathSize);
+            for (int j = 0; j < pathSize; j++) {
+                pathPoints.add(new Point(pathCoordinates[j * 2], pathCoordinates[j * 2 + 1]));
+            }
+            geometry.add(new Path(new Contour(pathPoints, true)));
+        }
+        transform = new Transform();
+        transform.translate(10, 20);
+        transform.rotate(30);
+        transform.scale(1.5);
+        center = new Point(0, 0);
+    }
+
+    /**
+     * Create the coordinates of a star-like closed shape, as x, y pairs.
+     */
+    static double[] shapeCoordinates(int size, double cx, double cy, double radius) {
+        double[] coordinates = new double[size * 2];
+        for (int i = 0; i < size; i++) {
+            double angle = Math.PI * 2 * i / size;
+            double r = radius * (1 + 0.2 * Math.sin(angle * 7));
+            coordinates[i * 2] = cx + Math.cos(angle) * r;
+            coordinates[i * 2 + 1] = cy + Math.sin(angle) * r;
+        }
+        return coordinates;
+    }
+
+    @Benchmark
+    public Contour contourFromPoints() {
+        return new Contour(points, true);
+    }
+
+    @Benchmark
+    public Path pathFromCoordinates() {
+        Path p = new Path();
+        p.moveto(coordinates[0], coordinates[1]);
+        for (int i = 1; i < size; i++) {
+            p.lineto(coordinates[i * 2], coordinates[i * 2 + 1]);
+        }
+        p.close();
+        return p;
+    }
+
+    @Benchmark
+    public Path pathCopy() {
+        return new Path(path);
+    }
+
+    @Benchmark
+    public Rect pathBounds() {
+        path.invalidate();
+        return path.getBounds();
+    }
+
+    @Benchmark
+    public double pathLength() {
+        path.invalidate();
+        return path.getLength();
+    }
+
+    @Benchmark
+    public Point pathPointAt() {
+        path.invalidate();
+        return path.pointAt(0.37);
+    }
+
+    @Benchmark
+    public Point pathPointAtWarm() {
+        return path.pointAt(0.37);
+    }
+
+    @Benchmark
+    public Point[] pathMakePoints() {
+        path.invalidate();
+        return path.makePoints(SAMPLE_AMOUNT, false);
+    }
+
+    @Benchmark
+    public Path pathResampleByAmount() {
+        path.invalidate();
+        return path.resampleByAmount(SAMPLE_AMOUNT, false);
+    }
+
+    @Benchmark
+    public Path pathResampleByLength() {
+        path.invalidate();
+        return path.resampleByLength(path.getLength() / SAMPLE_AMOUNT);
+    }
+
+    @Benchmark
+    public GeneralPath pathGeneralPath() {
+        path.invalidate();
+        return path.getGeneralPath();
+    }
+
+    @Benchmark
+    public boolean pathContains() {
+        path.invalidate();
+        return path.contains(center);
+    }
+
+    @Benchmark
+    public boolean pathContainsWarm() {
+        return path.contains(center);
+    }
+
+    @Benchmark
+    public Path transformPath() {
+        return transform.map(path);
+    }
+
+    @Benchmark
+    public Rect geometryBounds() {
+        geometry.invalidate();
+        return geometry.getBounds();
+    }
+
+    @Benchmark
+    public double geometryLength() {
+        geometry.invalidate();
+        return geometry.getLength();
+    }
+
+    @Benchmark
+    public Point[] geometryMakePoints() {
+        geometry.invalidate();
+        return geometry.makePoints(SAMPLE_AMOUNT, false);
+    }
+
+    @Benchmark
+    public Geometry transformGeometry() {
+        return transform.map(geometry);
+    }
+
+}
@@ -0,0 +1,75 @@
+package nodebox.benchmark;
+
+import com.google.common.io.Files;
+import nodebox.function.FunctionLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to load a Python or Clojure code library, with and without compiled code in the
+ * on-disk code cache.
+ * <p/>
+ * A cold load compiles the source and writes the result to the cache; a warm load only reads the compiled code. The
+ * cache is stored in a temporary directory, so the benchmark doesn't touch the cache of the user.
+ * <p/>
+ * Every fork loads the library before it is measured, so a cold load here is faster than the first load after
+ * starting NodeBox, where the compiler itself also needs to be loaded and warmed up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LibraryLoadBenchmark {
+
+    @Param({BridgeBenchmark.PYTHON_LIBRARY, BridgeBenchmark.CLOJURE_LIBRARY, "python:libraries/corevector/pyvector.py"})
+    public String library;
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    private File cacheDirectory;
+
+    @Setup
+    public void setUp() {
+        cacheDirectory = Files.createTempDir();
+        // Must be set before the first library is loaded.
+        System.setProperty("nodebox.codecache", cacheDirectory.getPath());
+        load();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if (cache.equals("cold")) {
+            delete(cacheDirectory);
+            cacheDirectory.mkdir();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(cacheDirectory);
+    }
+
+    @Benchmark
+    public FunctionLibrary load() {
+        FunctionLibrary functionLibrary = FunctionLibrary.load(library);
+        // Python libraries load in the background.
+        functionLibrary.hasFunction("");
+        return functionLibrary;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
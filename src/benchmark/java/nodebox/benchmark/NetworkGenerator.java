@@ -0,0 +1,244 @@
+package nodebox.benchmark;
+
+import nodebox.node.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Generates node libraries of a given shape, to measure how rendering scales with the size of a network.
+ * <p/>
+ * The network is built from the nodes of the system libraries. It starts with a layer of sources that each generate
+ * a list of numbers (math.sample, followed by list.shift). Then follow the given number of layers. Every node in
+ * a layer adds up the values of fanIn nodes of the previous layer, using a chain of math.add nodes. The last layer
+ * is added up as well, and used as the width of a corevector.ellipse, which is the rendered node.
+ * <p/>
+ * The width of a layer follows from the fan-in and fan-out: every node of a layer is read by fanOut nodes of the next
+ * layer, so a layer has fanOut / fanIn times as many nodes as the previous layer.
+ * <p/>
+ * When nesting is more than zero, every node in the layers is a subnetwork, nested that many levels deep. The
+ * subnetworks receive their values through published ports.
+ * <p/>
+ * The generator is immutable; the with methods return a new generator.
+ */
+public final class NetworkGenerator {
+
+    private final int depth;
+    private final int width;
+    private final int fanIn;
+    private final int fanOut;
+    private final int nesting;
+    private final int listSize;
+
+    public NetworkGenerator() {
+        this(4, 4, 2, 2, 0, 100);
+    }
+
+    private NetworkGenerator(int depth, int width, int fanIn, int fanOut, int nesting, int listSize) {
+        checkArgument(depth >= 0, "The depth should be zero or more.");
+        checkArgument(width > 0, "The width should be positive.");
+        checkArgument(fanIn > 0, "The fan-in should be positive.");
+        checkArgument(fanOut > 0, "The fan-out should be positive.");
+        checkArgument(nesting >= 0, "The nesting should be zero or more.");
+        checkArgument(listSize > 0, "The list size should be positive.");
+        this.depth = depth;
+        this.width = width;
+        this.fanIn = fanIn;
+        this.fanOut = fanOut;
+        this.nesting = nesting;
+        this.listSize = listSize;
+    }
+
+    /**
+     * The number of layers between the sources and the rendered node.
+     */
+    public NetworkGenerator withDepth(int depth) {
+        return new NetworkGenerator(depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+    /**
+     * The number of source nodes.
+     */
+    public NetworkGenerator withWidth(int width) {
+        return new NetworkGenerator(depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+    /**
+     * The number of nodes of the previous layer that every node reads.
+     */
+    public NetworkGenerator withFanIn(int fanIn) {
+        return new NetworkGenerator(depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+    /**
+     * The number of nodes of the next layer that read every node.
+     */
+    public NetworkGenerator withFanOut(int fanOut) {
+        return new NetworkGenerator(depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+    /**
+     * The number of subnetwork levels around every node in the layers.
+     */
+    public NetworkGenerator withNesting(int nesting) {
+        return new NetworkGenerator(depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+    /**
+     * The number of values every source generates.
+     */
+    public NetworkGenerator withListSize(int listSize) {
+        return new NetworkGenerator(depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+    public NodeLibrary generate() {
+        NodeRepository repository = Documents.getSystemRepository();
+        Node sample = repository.getNode("math.sample");
+        Node shift = repository.getNode("list.shift");
+        Node add = repository.getNode("math.add");
+        Node ellipse = repository.getNode("corevector.ellipse");
+
+        List<Node> children = new ArrayList<Node>();
+        List<Connection> connections = new ArrayList<Connection>();
+
+        List<String> previousLayer = new ArrayList<String>(width);
+        for (int i = 0; i < width; i++) {
+            String sampleName = "sample" + i;
+            String shiftName = "shift" + i;
+            children.add(sample.extend().withName(sampleName)
+                    .withInputValue("amount", (long) listSize)
+                    .withInputValue("start", (double) i)
+                    .withInputValue("end", (double) i + 100));
+            children.add(shift.extend().withName(shiftName).withInputValue("amount", (long) i));
+            connections.add(new Connection(sampleName, shiftName, "list"));
+            previousLayer.add(shiftName);
+        }
+
+        for (int layer = 1; layer <= depth; layer++) {
+            int layerWidth = Math.max(1, previousLayer.size() * fanOut / fanIn);
+            List<String> currentLayer = new ArrayList<String>(layerWidth);
+            for (int i = 0; i < layerWidth; i++) {
+                String name = "n" + layer + "_" + i;
+                List<String[]> inputs;
+                if (nesting > 0) {
+                    children.add(subnetwork(add, name, fanIn, nesting));
+                    inputs = publishedInputs(name, fanIn);
+                } else {
+                    inputs = addChain(add, name, fanIn, children, connections);
+                }
+                // Spread the reads over the previous layer, so every node is read about fanOut times.
+                for (int j = 0; j < fanIn; j++) {
+                    String upstream = previousLayer.get((i * fanIn + j) % previousLayer.size());
+                    connections.add(new Connection(upstream, inputs.get(j)[0], inputs.get(j)[1]));
+                }
+                currentLayer.add(name);
+            }
+            previousLayer = currentLayer;
+        }
+
+        List<String[]> totalInputs = addChain(add, "total", previousLayer.size(), children, connections);
+        for (int i = 0; i < previousLayer.size(); i++) {
+            connections.add(new Connection(previousLayer.get(i), totalInputs.get(i)[0], totalInputs.get(i)[1]));
+        }
+        children.add(ellipse.extend().withName("shapes"));
+        connections.add(new Connection("total", "shapes", "width"));
+
+        Node root = Node.NETWORK.withName("root")
+                .withChildrenAdded(children)
+                .withConnectionsAdded(connections)
+                .withRenderedChildName("shapes");
+        return NodeLibrary.create("synthetic", root, repository, repository.getFunctionRepository());
+    }
+
+    /**
+     * Add a chain of add nodes that adds up the given number of values. The last node of the chain gets the given
+     * name.
+     *
+     * @return The input ports of the chain, as node name and port name.
+     */
+    private static List<String[]> addChain(Node add, String name, int inputCount, List<Node> children, List<Connection> connections) {
+        List<String[]> inputs = new ArrayList<String[]>(inputCount);
+        int adders = Math.max(1, inputCount - 1);
+        String previousAdder = null;
+        for (int i = 0; i < adders; i++) {
+            String adderName = i == adders - 1 ? name : name + "_" + i;
+            children.add(add.extend().withName(adderName));
+            if (previousAdder == null) {
+                inputs.add(new String[]{adderName, "value1"});
+            } else {
+                connections.add(new Connection(previousAdder, adderName, "value1"));
+            }
+            if (inputs.size() < inputCount) {
+                inputs.add(new String[]{adderName, "value2"});
+            }
+            previousAdder = adderName;
+        }
+        return inputs;
+    }
+
+    private static Node subnetwork(Node add, String name, int inputCount, int level) {
+        List<Node> children = new ArrayList<Node>();
+        List<Connection> connections = new ArrayList<Connection>();
+        List<String[]> inputs;
+        String renderedChild;
+        if (level == 1) {
+            renderedChild = "sum";
+            inputs = addChain(add, renderedChild, inputCount, children, connections);
+        } else {
+            renderedChild = "inner";
+            children.add(subnetwork(add, renderedChild, inputCount, level - 1));
+            inputs = publishedInputs(renderedChild, inputCount);
+        }
+        Node network = Node.NETWORK.withName(name)
+                .withChildrenAdded(children)
+                .withConnectionsAdded(connections)
+                .withRenderedChildName(renderedChild);
+        for (int i = 0; i < inputCount; i++) {
+            network = network.publish(inputs.get(i)[0], inputs.get(i)[1], publishedName(i));
+        }
+        return network;
+    }
+
+    private static List<String[]> publishedInputs(String name, int inputCount) {
+        List<String[]> inputs = new ArrayList<String[]>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            inputs.add(new String[]{name, publishedName(i)});
+        }
+        return inputs;
+    }
+
+    private static String publishedName(int index) {
+        return "in" + (index + 1);
+    }
+
+    /**
+     * Count the nodes in the network, including the nodes in subnetworks but not the network itself.
+     */
+    public static int countNodes(Node network) {
+        int count = 0;
+        for (Node child : network.getChildren()) {
+            count += 1 + countNodes(child);
+        }
+        return count;
+    }
+
+    /**
+     * Count the connections in the network, including the connections in subnetworks.
+     */
+    public static int countConnections(Node network) {
+        int count = network.getConnections().size();
+        for (Node child : network.getChildren()) {
+            count += countConnections(child);
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NetworkGenerator{depth=%d, width=%d, fanIn=%d, fanOut=%d, nesting=%d, listSize=%d}",
+                depth, width, fanIn, fanOut, nesting, listSize);
+    }
+
+}
@@ -0,0 +1,94 @@
+package nodebox.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import nodebox.function.FunctionRepository;
+import nodebox.node.NodeContext;
+import nodebox.node.NodeLibrary;
+import nodebox.node.NodeResultCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how rendering scales with the size and shape of a network, using networks from {@link NetworkGenerator}.
+ * <p/>
+ * Plot the time per render against the number of nodes and connections, which are printed when a trial starts. A
+ * curve that bends upwards points to lookup or memoization code that does not scale linearly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class NetworkScalingBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int depth;
+
+    @Param("8")
+    public int width;
+
+    @Param("2")
+    public int fanIn;
+
+    @Param("2")
+    public int fanOut;
+
+    @Param({"0", "2"})
+    public int nesting;
+
+    @Param("100")
+    public int listSize;
+
+    /**
+     * Whether upstream branches and list-matched invocations are evaluated in parallel, see
+     * {@link NodeContext#setParallel}. Compare both values to see the speedup on the current machine.
+     */
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private NodeLibrary library;
+    private FunctionRepository functionRepository;
+    private NodeResultCache resultCache;
+
+    @Setup
+    public void setUp() {
+        NetworkGenerator generator = new NetworkGenerator()
+                .withDepth(depth)
+                .withWidth(width)
+                .withFanIn(fanIn)
+                .withFanOut(fanOut)
+                .withNesting(nesting)
+                .withListSize(listSize);
+        library = generator.generate();
+        functionRepository = Documents.getFunctionRepository(library);
+        resultCache = new NodeResultCache();
+        System.out.println(String.format("%s: %d nodes, %d connections", generator,
+                NetworkGenerator.countNodes(library.getRoot()), NetworkGenerator.countConnections(library.getRoot())));
+    }
+
+    /**
+     * Render the network from scratch.
+     */
+    @Benchmark
+    public List<?> render() {
+        NodeContext context = new NodeContext(library, functionRepository, ImmutableMap.of("frame", 1.0));
+        context.setParallel(parallel);
+        return context.renderNode("/");
+    }
+
+    /**
+     * Render the network with a result cache that already holds the results of every node, so the time goes to
+     * looking up results.
+     */
+    @Benchmark
+    public List<?> renderCached() {
+        NodeContext context = new NodeContext(library, functionRepository, ImmutableMap.of("frame", 1.0));
+        context.setParallel(parallel);
+        context.setResultCache(resultCache);
+        return context.renderNode("/");
+    }
+
+}
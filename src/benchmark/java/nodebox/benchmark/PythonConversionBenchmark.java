@@ -0,0 +1,95 @@
+package nodebox.benchmark;
+
+import nodebox.graphics.Point;
+import org.openjdk.jmh.annotations.*;
+import org.python.core.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversions a Python function call does around the call itself: {@link Py#java2py(Object)} on every
+ * argument and {@link PyObject#__tojava__(Class)} on the result.
+ * <p/>
+ * Converting a Java list only wraps it; the items are converted one by one when Python reads them. The iterate
+ * benchmarks measure that part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PythonConversionBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private Double number;
+    private List<Double> values;
+    private List<Point> points;
+    private PyObject pyNumber;
+    private PyObject pyValues;
+    private PyList pyList;
+
+    @Setup
+    public void setUp() {
+        // Loading a library initializes the interpreter the same way NodeBox does.
+        BridgeBenchmark.loadLibrary("python");
+        number = 1.0;
+        values = new ArrayList<Double>(size);
+        points = new ArrayList<Point>(size);
+        for (int i = 0; i < size; i++) {
+            values.add((double) i);
+            points.add(new Point(i, i * 2));
+        }
+        pyNumber = Py.java2py(number);
+        pyValues = Py.java2py(values);
+        pyList = new PyList();
+        for (Double value : values) {
+            pyList.append(Py.java2py(value));
+        }
+    }
+
+    @Benchmark
+    public PyObject numberToPython() {
+        return Py.java2py(number);
+    }
+
+    @Benchmark
+    public PyObject listToPython() {
+        return Py.java2py(values);
+    }
+
+    @Benchmark
+    public double iterateNumbers() {
+        double total = 0;
+        PyObject iterator = pyValues.__iter__();
+        for (PyObject item; (item = iterator.__iternext__()) != null; ) {
+            total += item.asDouble();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int iteratePoints() {
+        int count = 0;
+        PyObject iterator = Py.java2py(points).__iter__();
+        for (PyObject item; (item = iterator.__iternext__()) != null; ) {
+            if (item.__getattr__("x") != null) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Object numberToJava() {
+        return pyNumber.__tojava__(Object.class);
+    }
+
+    @Benchmark
+    public Object listToJava() {
+        return pyList.__tojava__(Object.class);
+    }
+
+}
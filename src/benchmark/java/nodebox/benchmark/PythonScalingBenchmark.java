@@ -0,0 +1,65 @@
+package nodebox.benchmark;
+
+import nodebox.function.Function;
+import nodebox.function.FunctionLibrary;
+import nodebox.graphics.Point;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of Python node functions that are called from several threads at the same time.
+ * <p/>
+ * Every thread calls the same function objects, the way a parallel render does. Each Python library is loaded into a
+ * pool of interpreters, so the throughput should grow with the number of threads up to the number of cores. Use
+ * {@link PythonScalingReport} to run the benchmark for an increasing number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PythonScalingBenchmark {
+
+    /**
+     * The number of points that are shifted in a single call.
+     */
+    @Param("100")
+    public int size;
+
+    private Function add;
+    private Function shift;
+
+    private Double a;
+    private Double b;
+    private Double dx;
+    private List<Point> points;
+
+    @Setup
+    public void setUp() {
+        FunctionLibrary library = BridgeBenchmark.loadLibrary("python");
+        add = library.getFunction("add");
+        shift = library.getFunction("shift");
+        a = 1.0;
+        b = 2.0;
+        dx = 10.0;
+        points = new ArrayList<Point>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(new Point(i, i * 2));
+        }
+    }
+
+    @Benchmark
+    public Object add() throws Exception {
+        return add.invoke(a, b);
+    }
+
+    @Benchmark
+    public Object shift() throws Exception {
+        return shift.invoke(points, dx);
+    }
+
+}
@@ -0,0 +1,105 @@
+package nodebox.benchmark;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runs {@link PythonScalingBenchmark} with 1, 2, 4, ... threads up to the number of cores and reports the speedup.
+ * <pre>
+ * java -cp target/benchmarks.jar nodebox.benchmark.PythonScalingReport [JMH options]
+ * </pre>
+ * The report is a Markdown document that is printed and written to <code>target/python-scaling.md</code>. For every
+ * function it shows the number of calls per millisecond and the speedup over a single thread.
+ */
+public final class PythonScalingReport {
+
+    public static final String REPORT_FILE = "target/python-scaling.md";
+
+    private PythonScalingReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        // Scores by function, then by number of threads.
+        Map<String, Map<Integer, Double>> scores = new TreeMap<String, Map<Integer, Double>>();
+        List<Integer> threadCounts = threadCounts(Runtime.getRuntime().availableProcessors());
+        for (int threads : threadCounts) {
+            Collection<RunResult> results = new Runner(new OptionsBuilder().parent(commandLine)
+                    .include(PythonScalingBenchmark.class.getName())
+                    .threads(threads)
+                    .build()).run();
+            for (RunResult result : results) {
+                String benchmark = result.getParams().getBenchmark();
+                String method = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+                Map<Integer, Double> methodScores = scores.get(method);
+                if (methodScores == null) {
+                    methodScores = new HashMap<Integer, Double>();
+                    scores.put(method, methodScores);
+                }
+                methodScores.put(threads, result.getPrimaryResult().getScore());
+            }
+        }
+
+        StringWriter report = new StringWriter();
+        writeReport(scores, threadCounts, new PrintWriter(report));
+        System.out.println(report);
+        File reportFile = new File(REPORT_FILE);
+        if (reportFile.getParentFile() != null) reportFile.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+        try {
+            writer.write(report.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    static List<Integer> threadCounts(int cores) {
+        List<Integer> counts = new ArrayList<Integer>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        return counts;
+    }
+
+    static void writeReport(Map<String, Map<Integer, Double>> scores, List<Integer> threadCounts, PrintWriter out) {
+        out.println("# Python function throughput per number of threads");
+        out.println();
+        out.println("Calls per millisecond, and the speedup over a single thread.");
+        out.println();
+        StringBuilder header = new StringBuilder("| Function |");
+        StringBuilder separator = new StringBuilder("|----------|");
+        for (int threads : threadCounts) {
+            header.append(" ").append(threads).append(threads == 1 ? " thread |" : " threads |");
+            separator.append("------:|");
+        }
+        out.println(header);
+        out.println(separator);
+        for (Map.Entry<String, Map<Integer, Double>> entry : scores.entrySet()) {
+            Map<Integer, Double> methodScores = entry.getValue();
+            Double baseline = methodScores.get(1);
+            StringBuilder row = new StringBuilder("| ").append(entry.getKey()).append(" |");
+            for (int threads : threadCounts) {
+                Double score = methodScores.get(threads);
+                row.append(" ");
+                if (score == null) {
+                    row.append("-");
+                } else {
+                    row.append(String.format(Locale.US, "%.1f", score));
+                    if (baseline != null && baseline != 0) {
+                        row.append(String.format(Locale.US, " (%.1fx)", score / baseline));
+                    }
+                }
+                row.append(" |");
+            }
+            out.println(row);
+        }
+        out.flush();
+    }
+
+}
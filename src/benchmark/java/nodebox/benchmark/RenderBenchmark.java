@@ -0,0 +1,68 @@
+package nodebox.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import nodebox.function.FunctionRepository;
+import nodebox.node.NodeContext;
+import nodebox.node.NodeLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to render a document.
+ * <p/>
+ * Every invocation renders the root network of the document with a new {@link NodeContext}, the same way a document
+ * is rendered when one of its nodes changes. Run the benchmark through {@link Benchmarks} to render all example
+ * documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    /**
+     * The path of the document, relative to the root of the repository.
+     */
+    @Param("examples/01 Basics/01 Shape/04 Grid/04 Grid.ndbx")
+    public String document;
+
+    @Param("1")
+    public double frame;
+
+    /**
+     * The factor by which the number of generated items is multiplied, see {@link Documents#scaleListSizes}.
+     */
+    @Param("1")
+    public int listScale;
+
+    /**
+     * Whether upstream branches and list-matched invocations are evaluated in parallel, see
+     * {@link NodeContext#setParallel}. Compare both values to see the speedup on the current machine.
+     */
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private NodeLibrary library;
+    private FunctionRepository functionRepository;
+    private ImmutableMap<String, ?> data;
+
+    @Setup
+    public void setUp() {
+        NodeLibrary library = Documents.load(document);
+        this.functionRepository = Documents.getFunctionRepository(library);
+        this.library = Documents.scaleListSizes(library, listScale);
+        this.data = ImmutableMap.of("frame", frame);
+    }
+
+    @Benchmark
+    public List<?> render() {
+        NodeContext context = new NodeContext(library, functionRepository, data);
+        context.setParallel(parallel);
+        return context.renderNode("/");
+    }
+
+}
@@ -0,0 +1,14 @@
+# Python versions of the functions in nodebox.benchmark.BridgeFunctions.
+from nodebox.graphics import Point
+
+def add(a, b):
+    return a + b
+
+def total(values):
+    return sum(values)
+
+def shift(points, dx):
+    return [Point(pt.x + dx, pt.y) for pt in points]
+
+def identity(value):
+    return value
@@ -5,6 +5,7 @@ import nodebox.client.visualizer.GrobVisualizer;
 import nodebox.function.FunctionRepository;
 import nodebox.graphics.Rect;
 import nodebox.node.*;
+import nodebox.util.TraceRecorder;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
@@ -35,12 +36,14 @@ public class NodeBox {
         System.out.println("Options:");
         System.out.println(" -o FILE Specify the output file. Only PNG is supported for now. (Default: inputFile.png)");
         System.out.println(" -l DIR Location of the NodeBox system libraries directory. (Default: current directory)");
+        System.out.println(" -t FILE Record a trace of the render to FILE, in Chrome trace event format.");
     }
 
     public static void main(String[] args) {
         String inputFile = null;
         String outputFile = null;
         String systemLibraryDir = null;
+        String traceFile = null;
         File inFile = null;
         File outFile;
         for (int i = 0; i < args.length; i++) {
@@ -51,6 +54,9 @@ public class NodeBox {
             } else if (arg.equals("-l")) {
                 systemLibraryDir = args[i + 1];
                 i += 1;
+            } else if (arg.equals("-t")) {
+                traceFile = args[i + 1];
+                i += 1;
             } else {
                 inputFile = args[i];
             }
@@ -69,6 +75,9 @@ public class NodeBox {
         if (systemLibraryDir == null) {
             systemLibraryDir = "libraries";
         }
+        if (traceFile != null) {
+            TraceRecorder.start();
+        }
         NodeRepository systemRepository = getSystemRepository(systemLibraryDir);
         NodeLibrary library;
         try {
@@ -97,6 +106,13 @@ public class NodeBox {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (traceFile != null) {
+            try {
+                TraceRecorder.stop().writeJson(new File(traceFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
 
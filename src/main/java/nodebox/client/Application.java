@@ -49,6 +49,8 @@ public class Application implements Host {
 
     public static final String PREFERENCE_ENABLE_DEVICE_SUPPORT = "NBEnableDeviceSupport";
     public static boolean ENABLE_DEVICE_SUPPORT = false;
+    public static final String PREFERENCE_ENABLE_PARALLEL_EVALUATION = "NBEnableParallelEvaluation";
+    public static boolean ENABLE_PARALLEL_EVALUATION = false;
 
     private static Application instance;
 
@@ -235,6 +237,7 @@ public class Application implements Host {
     private void applyPreferences() {
         Preferences preferences = Preferences.userNodeForPackage(Application.class);
         ENABLE_DEVICE_SUPPORT = Boolean.valueOf(preferences.get(Application.PREFERENCE_ENABLE_DEVICE_SUPPORT, "false"));
+        ENABLE_PARALLEL_EVALUATION = Boolean.valueOf(preferences.get(Application.PREFERENCE_ENABLE_PARALLEL_EVALUATION, "false"));
     }
 
     /**
@@ -61,6 +61,7 @@ public class NetworkView extends ZoomableView implements PaneView, Zoom {
     public static final Color TOOLTIP_STROKE_COLOR = Color.DARK_GRAY;
     public static final Color TOOLTIP_TEXT_COLOR = Color.DARK_GRAY;
     public static final Color DRAG_SELECTION_COLOR = new Color(255, 255, 255, 100);
+    public static final Color PROFILE_TEXT_COLOR = new Color(255, 200, 120);
     public static final BasicStroke DRAG_SELECTION_STROKE = new BasicStroke(1f);
     public static final BasicStroke CONNECTION_STROKE = new BasicStroke(2);
 
@@ -90,6 +91,7 @@ public class NetworkView extends ZoomableView implements PaneView, Zoom {
     private boolean startDragging;
     private Point2D dragStartPoint;
     private Point2D dragCurrentPoint;
+    private RenderProfile profile;
 
     static {
         try {
@@ -250,6 +252,16 @@ public class NetworkView extends ZoomableView implements PaneView, Zoom {
         updateConnections();
     }
 
+    /**
+     * Show the time spent on each node as a heat overlay.
+     *
+     * @param profile The profile of the last render, or null to hide the overlay.
+     */
+    public void setProfile(RenderProfile profile) {
+        this.profile = profile;
+        repaint();
+    }
+
     public void checkErrorAndRepaint() {
         // TODO Check for errors in an efficient way.
     }
@@ -297,6 +309,7 @@ public class NetworkView extends ZoomableView implements PaneView, Zoom {
         g2.transform(getViewTransform());
 
         paintNodes(g2);
+        paintProfile(g2);
         paintConnections(g2);
         paintCurrentConnection(g2);
         paintPortTooltip(g2);
@@ -376,6 +389,33 @@ public class NetworkView extends ZoomableView implements PaneView, Zoom {
         }
     }
 
+    /**
+     * Tint every node in proportion to the time spent on the node itself, and show that time below the node.
+     */
+    private void paintProfile(Graphics2D g) {
+        if (profile == null) return;
+        String networkPath = getDocument().getActiveNetworkPath();
+        String prefix = networkPath.endsWith("/") ? networkPath : networkPath + "/";
+        Map<Node, RenderProfile.NodeStats> nodeStats = new HashMap<Node, RenderProfile.NodeStats>();
+        long maxSelfTime = 1;
+        for (Node node : getNodes()) {
+            RenderProfile.NodeStats stats = profile.getStats(prefix + node.getName());
+            if (stats == null) continue;
+            nodeStats.put(node, stats);
+            maxSelfTime = Math.max(maxSelfTime, stats.getSelfTime());
+        }
+        g.setFont(Theme.NETWORK_FONT);
+        for (Map.Entry<Node, RenderProfile.NodeStats> entry : nodeStats.entrySet()) {
+            Rectangle r = nodeRect(entry.getKey());
+            long selfTime = entry.getValue().getSelfTime();
+            float heat = (float) selfTime / maxSelfTime;
+            g.setColor(new Color(1f, 0.15f, 0f, 0.1f + heat * 0.6f));
+            g.fillRect(r.x, r.y, NODE_WIDTH, NODE_HEIGHT);
+            g.setColor(PROFILE_TEXT_COLOR);
+            g.drawString(String.format("%.1f ms", selfTime / 1e6), r.x, r.y + NODE_HEIGHT + PORT_HEIGHT + 12);
+        }
+    }
+
     private BufferedImage getCachedImageForNode(Node node) {
         try {
             return nodeImageCache.get(node);
@@ -15,7 +15,9 @@ import nodebox.node.*;
 import nodebox.node.MenuItem;
 import nodebox.ui.*;
 import nodebox.util.FileUtils;
+import nodebox.util.FlightRecorderEvents;
 import nodebox.util.LoadException;
+import nodebox.util.TraceRecorder;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -90,8 +92,12 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
     private double frame = 1;
     private Map<String, double[]> networkPanZoomValues = new HashMap<String, double[]>();
     private SwingWorker<List<?>, Node> currentRender = null;
+    private NodeContext currentRenderContext = null;
+    private boolean profiling = false;
+    private RenderProfile lastRenderProfile = null;
     private Iterable<?> lastRenderResult = null;
     private Map<String, List<?>> renderResults = ImmutableMap.of();
+    private final NodeResultCache resultCache = new NodeResultCache();
     private JSplitPane parameterNetworkSplit;
     private JSplitPane topSplit;
     private FullScreenFrame fullScreenFrame = null;
@@ -1198,6 +1204,8 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
             render();
         } else {
             shouldRender.set(true);
+            // The active render is out of date. Stop it, so the next render can start right away.
+            cancelRenderContext();
         }
     }
 
@@ -1231,11 +1239,72 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
      * Ask the document to stop the active rendering.
      */
     public synchronized void stopRendering() {
+        cancelRenderContext();
         if (currentRender != null) {
             currentRender.cancel(true);
         }
     }
 
+    private synchronized void cancelRenderContext() {
+        if (currentRenderContext != null) {
+            currentRenderContext.cancel();
+        }
+    }
+
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * Record how much time every node takes, and show it in the network view.
+     *
+     * @param profiling true to profile the renders of this document.
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+        if (!profiling) {
+            lastRenderProfile = null;
+            networkView.setProfile(null);
+        }
+        requestRender();
+    }
+
+    public void exportProfile() {
+        if (lastRenderProfile == null) {
+            JOptionPane.showMessageDialog(this, "There is no render profile. Turn on profiling first.");
+            return;
+        }
+        File chosenFile = FileUtils.showSaveDialog(this, lastExportPath, "json", "JSON file");
+        if (chosenFile == null) return;
+        lastExportPath = chosenFile.getParentFile().getAbsolutePath();
+        if (!chosenFile.getName().endsWith(".json"))
+            chosenFile = new File(chosenFile.getParentFile(), chosenFile.getName() + ".json");
+        FileUtils.writeFile(chosenFile, lastRenderProfile.toJson());
+    }
+
+    /**
+     * Start recording a trace of all renders and exports, or stop the recording and save the trace.
+     * The recording is shared by all documents.
+     */
+    public void toggleTraceRecording() {
+        if (!TraceRecorder.isRecording()) {
+            TraceRecorder.start();
+            return;
+        }
+        TraceRecorder recorder = TraceRecorder.stop();
+        File chosenFile = FileUtils.showSaveDialog(this, lastExportPath, "json", "Trace file");
+        if (chosenFile == null) return;
+        lastExportPath = chosenFile.getParentFile().getAbsolutePath();
+        if (!chosenFile.getName().endsWith(".json"))
+            chosenFile = new File(chosenFile.getParentFile(), chosenFile.getName() + ".json");
+        try {
+            recorder.writeJson(chosenFile);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "An error occurred while saving the trace.", "NodeBox", JOptionPane.ERROR_MESSAGE);
+            LOG.log(Level.SEVERE, "An error occurred while saving the trace.", e);
+        }
+    }
+
     private void render() {
         checkState(SwingUtilities.isEventDispatchThread());
         checkState(currentRender == null);
@@ -1251,6 +1320,13 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
         final ImmutableMap<String, ?> data = ImmutableMap.copyOf(dataMap);
 
         final NodeContext context = new NodeContext(renderLibrary, getFunctionRepository(), data, renderResults, ImmutableMap.<String, Object>of());
+        context.setParallel(Application.ENABLE_PARALLEL_EVALUATION);
+        context.setResultCache(resultCache);
+        final RenderProfile profile = profiling ? new RenderProfile() : null;
+        context.setProfile(profile);
+        synchronized (this) {
+            currentRenderContext = context;
+        }
         currentRender = new SwingWorker<List<?>, Node>() {
             @Override
             protected List<?> doInBackground() throws Exception {
@@ -1265,26 +1341,39 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
                 networkPane.clearError();
                 isRendering.set(false);
                 currentRender = null;
+                synchronized (NodeBoxDocument.this) {
+                    currentRenderContext = null;
+                }
                 List<?> results;
                 try {
                     results = get();
+                    if (profile != null) {
+                        lastRenderProfile = profile;
+                        networkView.setProfile(profile);
+                    }
                 } catch (CancellationException e) {
                     results = ImmutableList.of();
                 } catch (InterruptedException e) {
                     results = ImmutableList.of();
                 } catch (ExecutionException e) {
-                    networkPane.setError(e.getCause());
-                    results = ImmutableList.of();
+                    if (e.getCause() instanceof NodeRenderCancelledException) {
+                        // A newer render replaces this one. Keep showing the last results until then.
+                        results = null;
+                    } else {
+                        networkPane.setError(e.getCause());
+                        results = ImmutableList.of();
+                    }
                 }
 
-                lastRenderResult = results;
-
                 networkView.checkErrorAndRepaint();
                 progressPanel.setInProgress(false);
-                if (fullScreenFrame != null)
-                    fullScreenFrame.setOutputValues(results);
-                else
-                    viewerPane.setOutputValues(results);
+                if (results != null) {
+                    lastRenderResult = results;
+                    if (fullScreenFrame != null)
+                        fullScreenFrame.setOutputValues(results);
+                    else
+                        viewerPane.setOutputValues(results);
+                }
 
                 if (shouldRender.getAndSet(false)) {
                     SwingUtilities.invokeLater(new Runnable() {
@@ -1671,18 +1760,30 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
             public void run() {
                 try {
                     Map<String, List<?>> renderResults = ImmutableMap.of();
+                    List<?> results = null;
+                    boolean frameInvariant = false;
                     for (int frame = fromValue; frame <= toValue; frame++) {
                         if (Thread.currentThread().isInterrupted())
                             break;
-                        HashMap<String, Object> data = new HashMap<String, Object>();
-                        data.put("frame", (double) frame);
-                        data.put("mouse.position", viewer.getLastMousePosition());
-                        NodeContext context = new NodeContext(exportLibrary, exportFunctionRepository, data, renderResults, ImmutableMap.<String, Object>of());
-
-                        List<?> results = context.renderNode("/");
-                        renderResults = context.getRenderResults();
-                        viewer.setOutputValues((List<?>) results);
+                        TraceRecorder trace = TraceRecorder.getActive();
+                        long startTime = trace != null ? System.nanoTime() : 0;
+                        FlightRecorderEvents.Event event = FlightRecorderEvents.FRAME_EXPORT.begin();
+                        // If nothing in the network depends on the frame, every frame looks like the first one.
+                        if (results == null || !frameInvariant) {
+                            HashMap<String, Object> data = new HashMap<String, Object>();
+                            data.put("frame", (double) frame);
+                            data.put("mouse.position", viewer.getLastMousePosition());
+                            NodeContext context = new NodeContext(exportLibrary, exportFunctionRepository, data, renderResults, ImmutableMap.<String, Object>of());
+                            context.setParallel(Application.ENABLE_PARALLEL_EVALUATION);
+                            context.setResultCache(resultCache);
+                            results = context.renderNode("/");
+                            renderResults = context.getRenderResults();
+                            frameInvariant = context.isFrameInvariant("/");
+                            viewer.setOutputValues((List<?>) results);
+                        }
                         exportDelegate.frameDone(frame, results);
+                        if (trace != null) trace.complete("export", "Frame " + frame, startTime);
+                        if (event != null) event.commit(frame, (long) results.size());
 
                         SwingUtilities.invokeLater(new Runnable() {
                             public void run() {
@@ -1848,6 +1949,7 @@ public class NodeBoxDocument extends JFrame implements WindowListener, HandleDel
     public void reload() {
         controller.reloadFunctionRepository();
         functionRepository.invalidateFunctionCache();
+        resultCache.invalidateAll();
         requestRender();
     }
 
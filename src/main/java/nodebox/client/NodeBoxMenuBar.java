@@ -2,8 +2,11 @@ package nodebox.client;
 
 import nodebox.ui.Platform;
 import nodebox.util.FileUtils;
+import nodebox.util.TraceRecorder;
 
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -92,6 +95,22 @@ public class NodeBoxMenuBar extends JMenuBar {
         nodeMenu.add(new PlayPauseAction());
         nodeMenu.add(new RewindAction());
         nodeMenu.add(new FullScreenAction());
+        nodeMenu.addSeparator();
+        nodeMenu.add(new JCheckBoxMenuItem(new ProfileAction()));
+        nodeMenu.add(new ExportProfileAction());
+        final JMenuItem recordTraceItem = nodeMenu.add(new JCheckBoxMenuItem(new RecordTraceAction()));
+        // Trace recording is shared by all windows, so it can have been toggled from another window.
+        nodeMenu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                recordTraceItem.setSelected(TraceRecorder.isRecording());
+            }
+
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
         //nodeMenu.add(newLibraryAction);
         add(nodeMenu);
 
@@ -539,6 +558,38 @@ public class NodeBoxMenuBar extends JMenuBar {
         }
     }
 
+    public class ProfileAction extends AbstractDocumentAction {
+        public ProfileAction() {
+            putValue(NAME, "Profile Rendering");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent actionEvent) {
+            getDocument().setProfiling(!getDocument().isProfiling());
+        }
+    }
+
+    public class ExportProfileAction extends AbstractDocumentAction {
+        public ExportProfileAction() {
+            putValue(NAME, "Export Profile...");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent actionEvent) {
+            getDocument().exportProfile();
+        }
+    }
+
+    public class RecordTraceAction extends AbstractDocumentAction {
+        public RecordTraceAction() {
+            putValue(NAME, "Record Trace");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent actionEvent) {
+            getDocument().toggleTraceRecording();
+        }
+    }
 
 //    public class NewLibraryAction extends AbstractAction {
 //        public NewLibraryAction() {
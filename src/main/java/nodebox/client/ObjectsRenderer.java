@@ -8,6 +8,7 @@ import nodebox.graphics.PDFRenderer;
 import nodebox.graphics.SVGRenderer;
 import nodebox.util.FileUtils;
 import nodebox.util.ListUtils;
+import nodebox.util.TraceRecorder;
 
 import javax.imageio.ImageIO;
 import java.awt.Color;
@@ -22,6 +23,16 @@ import java.util.Map;
 public class ObjectsRenderer {
 
     public static void render(Iterable<?> objects, Rectangle2D bounds, File file, Map<String,?> options) {
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
+        try {
+            renderToFile(objects, bounds, file, options);
+        } finally {
+            if (trace != null) trace.complete("export", file.getName(), startTime);
+        }
+    }
+
+    private static void renderToFile(Iterable<?> objects, Rectangle2D bounds, File file, Map<String,?> options) {
         // TODO Remove reference to Viewer.getVisualizer.
         Visualizer v = VisualizerFactory.getVisualizer(objects, ListUtils.listClass(objects));
         if (file.getName().toLowerCase(Locale.US).endsWith(".pdf")) {
@@ -49,8 +60,12 @@ public class ObjectsRenderer {
     }
 
     public static BufferedImage createMovieImage(Iterable<?> objects, Rectangle2D bounds) {
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
         Visualizer v = VisualizerFactory.getVisualizer(objects, ListUtils.listClass(objects));
-        return createImage(objects, v, bounds, Color.WHITE);
+        BufferedImage img = createImage(objects, v, bounds, Color.WHITE);
+        if (trace != null) trace.complete("export", "Movie image", startTime);
+        return img;
     }
 
     private static BufferedImage createImage(Iterable<?> objects, Visualizer visualizer, Rectangle2D bounds, Color backgroundColor) {
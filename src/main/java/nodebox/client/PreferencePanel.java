@@ -12,6 +12,7 @@ public class PreferencePanel extends JDialog implements ActionListener {
     private final Application application;
     private final Preferences preferences;
     private JCheckBox enableDeviceSupportCheck;
+    private JCheckBox enableParallelEvaluationCheck;
 
     public PreferencePanel(Application application, Window owner) {
         super(owner, "Preferences");
@@ -32,6 +33,10 @@ public class PreferencePanel extends JDialog implements ActionListener {
         enableDeviceSupportCheck.setAlignmentX(Component.LEFT_ALIGNMENT);
         contentPanel.add(enableDeviceSupportCheck);
 
+        enableParallelEvaluationCheck = new JCheckBox("Parallel Evaluation");
+        enableParallelEvaluationCheck.setAlignmentX(Component.LEFT_ALIGNMENT);
+        contentPanel.add(enableParallelEvaluationCheck);
+
         rootPanel.add(contentPanel, BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.TRAILING, 10, 10));
@@ -66,8 +71,18 @@ public class PreferencePanel extends JDialog implements ActionListener {
         preferences.put(Application.PREFERENCE_ENABLE_DEVICE_SUPPORT, Boolean.toString(enabled));
     }
 
+    private boolean isParallelEvaluationEnabled() {
+        return Boolean.valueOf(preferences.get(Application.PREFERENCE_ENABLE_PARALLEL_EVALUATION, "false"));
+    }
+
+    private void setEnableParallelEvaluation(boolean enabled) {
+        Application.ENABLE_PARALLEL_EVALUATION = enabled;
+        preferences.put(Application.PREFERENCE_ENABLE_PARALLEL_EVALUATION, Boolean.toString(enabled));
+    }
+
     private void readPreferences() {
         enableDeviceSupportCheck.setSelected(isDeviceSupportEnabled());
+        enableParallelEvaluationCheck.setSelected(isParallelEvaluationEnabled());
     }
 
     public void actionPerformed(ActionEvent actionEvent) {
@@ -77,6 +92,15 @@ public class PreferencePanel extends JDialog implements ActionListener {
             setEnableDeviceSupport(enableDeviceSupportCheck.isSelected());
             changed = true;
         }
+        if (isParallelEvaluationEnabled() != enableParallelEvaluationCheck.isSelected()) {
+            // Parallel evaluation is picked up by the next render, so no restart is needed.
+            setEnableParallelEvaluation(enableParallelEvaluationCheck.isSelected());
+            try {
+                preferences.flush();
+            } catch (BackingStoreException e) {
+                throw new RuntimeException(e);
+            }
+        }
         if (changed) {
             JOptionPane.showMessageDialog(this, "Please restart NodeBox for the changes to take effect.");
             try {
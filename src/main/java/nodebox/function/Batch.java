@@ -0,0 +1,23 @@
+package nodebox.function;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a library method that can be invoked as a {@link BatchFunction}.
+ * <p/>
+ * The library invokes the method once for every item in the columns, in a single loop. When all arguments of the
+ * method are doubles, the columns are read as numbers and the arguments aren't boxed.
+ * <p/>
+ * A method that can do more with a whole column than call itself for each item, or that is cheap enough for the
+ * generated loop to be noticeably slower than a plain loop, can have its own batch version. This
+ * is a static method in the same class with the same name followed by "Batch". It takes one list for each argument
+ * of the annotated method, followed by the number of invocations, and returns a list with a result for each
+ * invocation. Use {@link Columns} to read the lists.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Batch {
+}
@@ -0,0 +1,28 @@
+package nodebox.function;
+
+import java.util.List;
+
+/**
+ * A function that can be invoked for a whole batch of arguments at once.
+ * <p/>
+ * When a node is list-matched, the node context invokes the function once with a column of values for each argument,
+ * instead of once for every set of arguments. The function can then process the columns in a single loop, without
+ * the cost of a separate invocation and argument conversion for every item.
+ */
+public interface BatchFunction extends Function {
+
+    /**
+     * Invoke the function for a batch of arguments.
+     * <p/>
+     * The columns hold the values for each argument, in the same order as the arguments of
+     * {@link #invoke(Object...)}. A column that has fewer values than the number of invocations wraps around, as in
+     * list matching: invocation <code>i</code> uses value <code>i % column.size()</code>. Columns are never empty.
+     *
+     * @param columns The values for each argument.
+     * @param count   The number of invocations.
+     * @return A list with the result of each invocation, the same as calling {@link #invoke(Object...)} for each.
+     * @throws Exception The invocation exception.
+     */
+    public List<?> invokeBatch(List<?>[] columns, int count) throws Exception;
+
+}
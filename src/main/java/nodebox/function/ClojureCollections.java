@@ -0,0 +1,226 @@
+package nodebox.function;
+
+import clojure.lang.*;
+import com.google.common.collect.Iterators;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Presents NodeBox lists and maps to Clojure as persistent collections, without copying them.
+ * <p/>
+ * A plain Java list or map can be read from Clojure, but it doesn't support conj, assoc, or calling a vector as a
+ * function. The views support all of these. Reading goes straight to the underlying collection; the first change
+ * copies the collection into a real persistent vector or map, so the NodeBox value is never modified.
+ * <p/>
+ * Lists and maps inside a view are wrapped when they are read.
+ */
+final class ClojureCollections {
+
+    private enum Kind {VALUE, LIST, MAP}
+
+    /**
+     * The kind of every class that is passed to Clojure.
+     * <p/>
+     * A lookup is cheaper than a series of failed interface checks, which scan all interfaces of the class every time.
+     */
+    private static final ClassValue<Kind> KINDS = new ClassValue<Kind>() {
+        @Override
+        protected Kind computeValue(Class<?> c) {
+            if (IPersistentCollection.class.isAssignableFrom(c)) {
+                return Kind.VALUE;
+            } else if (List.class.isAssignableFrom(c) && RandomAccess.class.isAssignableFrom(c)) {
+                return Kind.LIST;
+            } else if (Map.class.isAssignableFrom(c)) {
+                return Kind.MAP;
+            } else {
+                return Kind.VALUE;
+            }
+        }
+    };
+
+    private ClojureCollections() {
+    }
+
+    /**
+     * Wrap a value that is passed to Clojure.
+     *
+     * @param value The value.
+     * @return A view for Java lists and maps, otherwise the value itself.
+     */
+    public static Object toClojure(Object value) {
+        // Numbers are the most common values, so they skip the lookup.
+        if (value == null || value instanceof Number) return value;
+        return wrap(value);
+    }
+
+    private static Object wrap(Object value) {
+        switch (KINDS.get(value.getClass())) {
+            case LIST:
+                return new ListView((List<?>) value);
+            case MAP:
+                return new MapView((Map<?, ?>) value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Unwrap a value returned from Clojure. A view that comes back unchanged is replaced by the original collection.
+     *
+     * @param value The value.
+     * @return The original collection for views, otherwise the value itself.
+     */
+    public static Object fromClojure(Object value) {
+        if (value instanceof ListView) {
+            return ((ListView) value).list;
+        } else if (value instanceof MapView) {
+            return ((MapView) value).map;
+        } else {
+            return value;
+        }
+    }
+
+    static final class ListView extends APersistentVector implements IReduce {
+
+        private final List<?> list;
+
+        ListView(List<?> list) {
+            this.list = checkNotNull(list);
+        }
+
+        public int count() {
+            return list.size();
+        }
+
+        public Object nth(int i) {
+            return toClojure(list.get(i));
+        }
+
+        public Object reduce(IFn f) {
+            if (list.isEmpty()) return f.invoke();
+            return reduce(f, toClojure(list.get(0)), 1);
+        }
+
+        public Object reduce(IFn f, Object start) {
+            return reduce(f, start, 0);
+        }
+
+        private Object reduce(IFn f, Object result, int from) {
+            // Lists usually hold a single type of value, so only look at the type when it changes.
+            Class<?> plainClass = null;
+            for (int i = from, size = list.size(); i < size; i++) {
+                Object value = list.get(i);
+                if (value != null && value.getClass() != plainClass) {
+                    Object clojureValue = toClojure(value);
+                    if (clojureValue == value) {
+                        plainClass = value.getClass();
+                    } else {
+                        value = clojureValue;
+                    }
+                }
+                result = f.invoke(result, value);
+                if (RT.isReduced(result)) return ((IDeref) result).deref();
+            }
+            return result;
+        }
+
+        public IPersistentVector assocN(int i, Object value) {
+            return toVector().assocN(i, value);
+        }
+
+        public IPersistentVector cons(Object value) {
+            return toVector().cons(value);
+        }
+
+        public IPersistentStack pop() {
+            return toVector().pop();
+        }
+
+        public IPersistentCollection empty() {
+            return PersistentVector.EMPTY;
+        }
+
+        private PersistentVector toVector() {
+            ITransientCollection vector = PersistentVector.EMPTY.asTransient();
+            for (Object value : list) {
+                vector = vector.conj(toClojure(value));
+            }
+            return (PersistentVector) vector.persistent();
+        }
+
+    }
+
+    static final class MapView extends APersistentMap {
+
+        private final Map<?, ?> map;
+
+        MapView(Map<?, ?> map) {
+            this.map = checkNotNull(map);
+        }
+
+        public int count() {
+            return map.size();
+        }
+
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        public IMapEntry entryAt(Object key) {
+            if (!map.containsKey(key)) return null;
+            return MapEntry.create(key, toClojure(map.get(key)));
+        }
+
+        public Object valAt(Object key) {
+            return toClojure(map.get(key));
+        }
+
+        public Object valAt(Object key, Object notFound) {
+            if (!map.containsKey(key)) return notFound;
+            return toClojure(map.get(key));
+        }
+
+        public Iterator iterator() {
+            return Iterators.transform(map.entrySet().iterator(), new com.google.common.base.Function<Map.Entry<?, ?>, Object>() {
+                public Object apply(Map.Entry<?, ?> entry) {
+                    return MapEntry.create(entry.getKey(), toClojure(entry.getValue()));
+                }
+            });
+        }
+
+        public ISeq seq() {
+            return RT.chunkIteratorSeq(iterator());
+        }
+
+        public IPersistentMap assoc(Object key, Object value) {
+            return toMap().assoc(key, value);
+        }
+
+        public IPersistentMap assocEx(Object key, Object value) {
+            return toMap().assocEx(key, value);
+        }
+
+        public IPersistentMap without(Object key) {
+            return toMap().without(key);
+        }
+
+        public IPersistentCollection empty() {
+            return PersistentArrayMap.EMPTY;
+        }
+
+        private IPersistentMap toMap() {
+            ITransientMap result = PersistentHashMap.EMPTY.asTransient();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                result = result.assoc(entry.getKey(), toClojure(entry.getValue()));
+            }
+            return result.persistent();
+        }
+
+    }
+
+}
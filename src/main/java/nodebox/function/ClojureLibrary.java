@@ -2,17 +2,28 @@ package nodebox.function;
 
 import clojure.java.api.Clojure;
 import clojure.lang.*;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import nodebox.util.FileUtils;
+import nodebox.util.FlightRecorderEvents;
 import nodebox.util.LoadException;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static nodebox.function.ClojureCollections.toClojure;
 
 final class ClojureLibrary extends FunctionLibrary {
 
+    private static final Keyword FILE = Keyword.intern("file");
+
     /**
      * Run the Clojure register-nodes function in the library.
      *
@@ -43,20 +54,20 @@ final class ClojureLibrary extends FunctionLibrary {
     }
 
     private static ClojureLibrary loadScript(File file) {
-        Object returnValue;
-        try {
-            IFn loadFile = Clojure.var("clojure.core", "load-file");
-            returnValue = loadFile.invoke(file.getCanonicalPath());
-        } catch (IOException e) {
-            throw new LoadException(file, e);
-        }
-        // We need a Var as the last statement, because we need to retrieve the current namespace.
-        if (!(returnValue instanceof Var)) {
-            throw new LoadException(file,
-                    String.format("The last statement does not define a var, but %s.\n", returnValue));
-        }
-        Var nodesVar = (Var) returnValue;
-        Namespace ns = nodesVar.ns;
+        return loadScript(file, CodeCache.getDefault());
+    }
+
+    /**
+     * Load the library, using the given code cache.
+     *
+     * @param file  The library file.
+     * @param cache The code cache, or null to load the library from source.
+     * @return The new Clojure library.
+     * @throws LoadException If the script could not be loaded.
+     */
+    static ClojureLibrary loadScript(File file, CodeCache cache) throws LoadException {
+        FlightRecorderEvents.Event event = FlightRecorderEvents.LIBRARY_LOAD.begin();
+        Namespace ns = cache != null ? loadCompiled(file, cache) : loadSource(file);
         String namespace = ns.name.getName();
 
         ImmutableMap.Builder<String, Function> builder = ImmutableMap.builder();
@@ -67,13 +78,129 @@ final class ClojureLibrary extends FunctionLibrary {
                 if (var.ns.toString().equals(namespace)) {
                     String name = entry.getKey().toString();
                     if (var.deref() instanceof IFn) {
-                        Function f = new ClojureFunction(name, var.fn());
+                        Function f = new ClojureFunction(name, var.fn(), var.meta());
                         builder.put(name, f);
                     }
                 }
             }
         }
-        return new ClojureLibrary(namespace, file, builder.build());
+        ImmutableMap<String, Function> functions = builder.build();
+        if (event != null)
+            event.commit(namespace, "clojure", file.getPath(), file.length(), functions.size());
+        return new ClojureLibrary(namespace, file, functions);
+    }
+
+    /**
+     * Load the library from source and return its namespace.
+     */
+    private static Namespace loadSource(File file) {
+        String sourcePath;
+        try {
+            sourcePath = file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new LoadException(file, e);
+        }
+        IFn loadFile = Clojure.var("clojure.core", "load-file");
+        loadFile.invoke(sourcePath);
+        return findNamespace(file, sourcePath);
+    }
+
+    /**
+     * Load the library from the classes in the {@link CodeCache}. If they don't exist yet, the library is compiled
+     * ahead-of-time into the cache, which also loads it.
+     * <p/>
+     * Every cache entry is a separate class directory, loaded by a class loader of its own. The compiled library has
+     * a loader class named after the key of the entry, which runs the top-level forms when it is initialized.
+     */
+    private static Namespace loadCompiled(File file, CodeCache cache) {
+        File entry;
+        try {
+            String version = (String) Clojure.var("clojure.core", "clojure-version").invoke();
+            entry = cache.entryFor("clojure", version, file);
+        } catch (IOException e) {
+            throw new LoadException(file, e);
+        }
+        String baseName = file.getName().replaceFirst("\\.clj$", "");
+        String sourcePath = entry.getName() + "/" + clojure.lang.Compiler.munge(baseName) + ".clj";
+        if (entry.isDirectory()) {
+            String loaderClass = entry.getName() + "." + clojure.lang.Compiler.munge(baseName) + RT.LOADER_SUFFIX;
+            try {
+                // Every version of the library has the same function class names, and the class cache of
+                // DynamicClassLoader is shared, so it could return the classes of another version.
+                // The loader class finds itself through the base loader of Clojure.
+                URLClassLoader classLoader = new URLClassLoader(new URL[]{entry.toURI().toURL()},
+                        ClojureLibrary.class.getClassLoader());
+                Var.pushThreadBindings(RT.mapUniqueKeys(clojure.lang.Compiler.LOADER, classLoader));
+                try {
+                    Class.forName(loaderClass, true, classLoader);
+                } finally {
+                    Var.popThreadBindings();
+                }
+            } catch (ExceptionInInitializerError e) {
+                throw new LoadException(file, e.getCause());
+            } catch (Exception e) {
+                throw new LoadException(file, e);
+            }
+        } else {
+            File tempDirectory = cache.createTempDirectory(entry);
+            if (tempDirectory == null) return loadSource(file);
+            boolean compiled = false;
+            try {
+                compile(file, sourcePath, tempDirectory);
+                compiled = true;
+            } finally {
+                if (compiled) {
+                    cache.commit(tempDirectory, entry);
+                } else {
+                    cache.discard(tempDirectory);
+                }
+            }
+        }
+        return findNamespace(file, sourcePath);
+    }
+
+    /**
+     * Find the namespace of the library by looking for the vars it defined.
+     * <p/>
+     * Whether the library is loaded from source or from the code cache, its vars are tagged with the path it was
+     * loaded from. A library has to define at least one var.
+     *
+     * @param file       The library file.
+     * @param sourcePath The path that the library was loaded or compiled as.
+     * @return The namespace of the library.
+     * @throws LoadException If the library does not define any vars.
+     */
+    private static Namespace findNamespace(File file, String sourcePath) {
+        for (ISeq seq = Namespace.all(); seq != null; seq = seq.next()) {
+            Namespace ns = (Namespace) seq.first();
+            for (Object item : ns.getMappings()) {
+                Object value = ((MapEntry) item).getValue();
+                if (value instanceof Var && ((Var) value).ns == ns
+                        && sourcePath.equals(RT.get(((Var) value).meta(), FILE))) {
+                    return ns;
+                }
+            }
+        }
+        throw new LoadException(file, "The library does not define any vars.");
+    }
+
+    private static void compile(File file, String sourcePath, File compilePath) {
+        Var.pushThreadBindings(RT.mapUniqueKeys(
+                clojure.lang.Compiler.LOADER, RT.makeClassLoader(),
+                clojure.lang.Compiler.COMPILE_PATH, compilePath.getPath(),
+                clojure.lang.Compiler.COMPILE_FILES, Boolean.TRUE));
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                clojure.lang.Compiler.compile(reader, sourcePath, file.getName());
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new LoadException(file, e);
+        } finally {
+            Var.popThreadBindings();
+        }
     }
 
     private final String namespace;
@@ -129,28 +256,214 @@ final class ClojureLibrary extends FunctionLibrary {
 
     private static final class ClojureFunction implements Function {
 
+        private static final Keyword PURITY = Keyword.intern("purity");
+        private static final Keyword CONTEXT_KEYS = Keyword.intern("context-keys");
+        private static final Keyword THREAD_SAFE = Keyword.intern("thread-safe");
+
+        /**
+         * Arguments are passed to the matching IFn.invoke method up to this arity. Larger arities use applyTo.
+         */
+        private static final int MAX_FAST_ARITY = 8;
+
+        /**
+         * Clojure only generates primitive interfaces for functions with up to four arguments.
+         */
+        private static final int MAX_PRIMITIVE_ARITY = 4;
+
+        private static final MethodHandle TO_CLOJURE;
+        private static final MethodHandle DOUBLE_CAST;
+        private static final MethodHandle LONG_CAST;
+
+        static {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                TO_CLOJURE = lookup.findStatic(ClojureCollections.class, "toClojure", MethodType.methodType(Object.class, Object.class));
+                DOUBLE_CAST = lookup.findStatic(RT.class, "doubleCast", MethodType.methodType(double.class, Object.class));
+                LONG_CAST = lookup.findStatic(RT.class, "longCast", MethodType.methodType(long.class, Object.class));
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+        }
+
         private final String name;
         private final IFn fn;
         private final ImmutableList<Argument> arguments;
+        private final boolean threadSafe;
+        private final Purity purity;
+        private final ImmutableSet<String> contextKeys;
+        private final MethodHandle[] primitiveHandles;
 
-        public ClojureFunction(String name, IFn fn) {
+        /**
+         * Create the function. Its metadata is read from the metadata of the var:
+         * <pre>
+         * (defn ^{:purity :pure :context-keys ["frame"] :thread-safe true} wiggle [context] ...)
+         * </pre>
+         * Functions are volatile by default, since nothing is known about what they read: their results are not
+         * cached and they are invoked again on every frame. Declare them pure to allow caching. The context keys are
+         * unknown unless declared.
+         */
+        public ClojureFunction(String name, IFn fn, IPersistentMap meta) {
             this.name = name;
             this.fn = fn;
             this.arguments = introspect(fn);
+            this.primitiveHandles = primitiveHandles(fn);
+            Object threadSafe = RT.get(meta, THREAD_SAFE);
+            this.threadSafe = threadSafe != null && RT.booleanCast(threadSafe);
+            Object purity = RT.get(meta, PURITY);
+            this.purity = purity == null ? Purity.VOLATILE : Purity.parse(purity instanceof Named ? ((Named) purity).getName() : purity.toString());
+            Object contextKeys = RT.get(meta, CONTEXT_KEYS);
+            if (contextKeys == null) {
+                this.contextKeys = null;
+            } else {
+                ImmutableSet.Builder<String> keys = ImmutableSet.builder();
+                for (ISeq seq = RT.seq(contextKeys); seq != null; seq = seq.next()) {
+                    keys.add(seq.first() instanceof Named ? ((Named) seq.first()).getName() : String.valueOf(seq.first()));
+                }
+                this.contextKeys = keys.build();
+            }
         }
 
         public String getName() {
             return name;
         }
 
+        /**
+         * Invoke the function with the given arguments.
+         * <p/>
+         * Lists and maps are passed as persistent views, see {@link ClojureCollections}. Functions with type hints
+         * are called through their primitive invokePrim method, which skips boxing the arguments and the result
+         * inside Clojure. Other functions are called through the IFn.invoke method for the number of arguments.
+         */
         public Object invoke(Object... args) throws Exception {
-            return fn.applyTo(RT.arrayToList(args));
+            if (args.length < primitiveHandles.length && primitiveHandles[args.length] != null) {
+                return ClojureCollections.fromClojure(invokePrimitive(primitiveHandles[args.length], args));
+            }
+            Object result;
+            switch (args.length) {
+                case 0:
+                    result = fn.invoke();
+                    break;
+                case 1:
+                    result = fn.invoke(toClojure(args[0]));
+                    break;
+                case 2:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]));
+                    break;
+                case 3:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]), toClojure(args[2]));
+                    break;
+                case 4:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]), toClojure(args[2]), toClojure(args[3]));
+                    break;
+                case 5:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]), toClojure(args[2]), toClojure(args[3]),
+                            toClojure(args[4]));
+                    break;
+                case 6:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]), toClojure(args[2]), toClojure(args[3]),
+                            toClojure(args[4]), toClojure(args[5]));
+                    break;
+                case 7:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]), toClojure(args[2]), toClojure(args[3]),
+                            toClojure(args[4]), toClojure(args[5]), toClojure(args[6]));
+                    break;
+                case 8:
+                    result = fn.invoke(toClojure(args[0]), toClojure(args[1]), toClojure(args[2]), toClojure(args[3]),
+                            toClojure(args[4]), toClojure(args[5]), toClojure(args[6]), toClojure(args[7]));
+                    break;
+                default:
+                    Object[] clojureArgs = new Object[args.length];
+                    for (int i = 0; i < args.length; i++) {
+                        clojureArgs[i] = toClojure(args[i]);
+                    }
+                    result = fn.applyTo(RT.arrayToList(clojureArgs));
+            }
+            return ClojureCollections.fromClojure(result);
+        }
+
+        private static Object invokePrimitive(MethodHandle handle, Object[] args) throws Exception {
+            try {
+                switch (args.length) {
+                    case 0:
+                        return (Object) handle.invokeExact();
+                    case 1:
+                        return (Object) handle.invokeExact(args[0]);
+                    case 2:
+                        return (Object) handle.invokeExact(args[0], args[1]);
+                    case 3:
+                        return (Object) handle.invokeExact(args[0], args[1], args[2]);
+                    default:
+                        return (Object) handle.invokeExact(args[0], args[1], args[2], args[3]);
+                }
+            } catch (Throwable t) {
+                Throwables.propagateIfPossible(t, Exception.class);
+                throw new RuntimeException(t);
+            }
         }
 
         public ImmutableList<Argument> getArguments() {
             return arguments;
         }
 
+        public boolean isThreadSafe() {
+            // We can't tell if a Clojure function touches shared state (atoms, refs, Java objects), unless it says so.
+            return threadSafe;
+        }
+
+        public Purity getPurity() {
+            return purity;
+        }
+
+        public ImmutableSet<String> getContextKeys() {
+            return contextKeys;
+        }
+
+        /**
+         * Find the invokePrim methods of a function with primitive type hints, e.g. IFn$DD for
+         * <code>(defn ^double f [^double x] ...)</code>, indexed by arity.
+         * <p/>
+         * The handles take and return objects. Arguments are converted to primitives with the same casts that the
+         * boxed invoke method of the function uses, so both paths give the same results and errors.
+         */
+        private static MethodHandle[] primitiveHandles(IFn fn) {
+            MethodHandle[] handles = new MethodHandle[MAX_PRIMITIVE_ARITY + 1];
+            for (Class<?> c : fn.getClass().getInterfaces()) {
+                if (c.getEnclosingClass() != IFn.class) continue;
+                Method invokePrim;
+                try {
+                    invokePrim = c.getMethod("invokePrim", parameterTypes(c.getSimpleName()));
+                } catch (NoSuchMethodException e) {
+                    continue;
+                }
+                Class<?>[] types = invokePrim.getParameterTypes();
+                if (types.length > MAX_PRIMITIVE_ARITY) continue;
+                MethodHandle handle;
+                try {
+                    handle = MethodHandles.publicLookup().unreflect(invokePrim).bindTo(fn);
+                } catch (IllegalAccessException e) {
+                    continue;
+                }
+                for (int i = 0; i < types.length; i++) {
+                    MethodHandle filter = types[i] == double.class ? DOUBLE_CAST : types[i] == long.class ? LONG_CAST : TO_CLOJURE;
+                    handle = MethodHandles.filterArguments(handle, i, filter);
+                }
+                handles[types.length] = handle.asType(MethodType.genericMethodType(types.length));
+            }
+            return handles;
+        }
+
+        /**
+         * The parameter types of a primitive interface, from its name: IFn$ODL takes an Object and a double.
+         */
+        private static Class<?>[] parameterTypes(String interfaceName) {
+            Class<?>[] types = new Class<?>[interfaceName.length() - 1];
+            for (int i = 0; i < types.length; i++) {
+                char c = interfaceName.charAt(i);
+                types[i] = c == 'D' ? double.class : c == 'L' ? long.class : Object.class;
+            }
+            return types;
+        }
+
         private static ImmutableList<Argument> introspect(IFn fn) {
             // Each function is a separate class.
             Class functionClass = fn.getClass();
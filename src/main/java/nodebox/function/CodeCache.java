@@ -0,0 +1,203 @@
+package nodebox.function;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import nodebox.ui.Platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores the compiled code of Python and Clojure libraries on disk, so the source doesn't have to be compiled again
+ * the next time the library is loaded.
+ * <p/>
+ * An entry is keyed by a hash of the location of the source, followed by a hash of the source and the version of the
+ * runtime that compiled it. Changing the library or upgrading Jython or Clojure gives a new key, so an entry is never
+ * stale. Once the entry for the new key is stored, the older entries for the same location are removed.
+ * <p/>
+ * The cache is only an optimization. If an entry can't be written the library is loaded from source as before.
+ */
+final class CodeCache {
+
+    /**
+     * The system property that sets the cache directory. Set it to "none" to disable the cache.
+     */
+    public static final String DIRECTORY_PROPERTY = "nodebox.codecache";
+
+    private static final Logger LOG = Logger.getLogger(CodeCache.class.getName());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char KEY_SEPARATOR = '_';
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static CodeCache defaultCache;
+
+    /**
+     * The cache used when loading libraries. It is stored in the user data directory, unless the
+     * {@link #DIRECTORY_PROPERTY} system property says otherwise.
+     *
+     * @return The default cache, or null if the cache is disabled.
+     */
+    public static synchronized CodeCache getDefault() {
+        if (defaultCache == null) {
+            String directory = System.getProperty(DIRECTORY_PROPERTY);
+            if (directory == null) {
+                defaultCache = new CodeCache(new File(Platform.getUserDataDirectory(), "_codecache"));
+            } else if (!directory.equals("none")) {
+                defaultCache = new CodeCache(new File(directory));
+            }
+        }
+        return defaultCache;
+    }
+
+    private final File directory;
+
+    public CodeCache(File directory) {
+        this.directory = checkNotNull(directory);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the location of the compiled code for the given source file.
+     * <p/>
+     * The location might not exist yet. Languages decide for themselves if they store a single file or a directory.
+     *
+     * @param language       The language of the library, e.g. "python".
+     * @param runtimeVersion The version of the compiler and runtime.
+     * @param source         The source file.
+     * @return The location of the cache entry.
+     * @throws IOException If the source file could not be read.
+     */
+    public File entryFor(String language, String runtimeVersion, File source) throws IOException {
+        String locationKey = Hashing.sha1().hashString(source.getCanonicalPath(), UTF_8).toString().substring(0, 16);
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(runtimeVersion, UTF_8);
+        hasher.putByte((byte) 0);
+        hasher.putBytes(Files.toByteArray(source));
+        // Clojure uses the key as a class name, which can't start with a digit.
+        return new File(new File(directory, language), "c" + locationKey + KEY_SEPARATOR + hasher.hash());
+    }
+
+    /**
+     * Read a cache entry that is a single file.
+     *
+     * @param entry The cache entry.
+     * @return The contents, or null if the entry does not exist.
+     */
+    public byte[] read(File entry) {
+        if (!entry.isFile()) return null;
+        try {
+            return Files.toByteArray(entry);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not read code cache entry " + entry, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a cache entry that is a single file.
+     * <p/>
+     * The file is written under a temporary name first, so other processes never read a partial entry.
+     *
+     * @param entry The cache entry.
+     * @param bytes The contents.
+     */
+    public void write(File entry, byte[] bytes) {
+        try {
+            File parent = entry.getParentFile();
+            parent.mkdirs();
+            File tempFile = File.createTempFile(entry.getName(), TEMP_SUFFIX, parent);
+            Files.write(bytes, tempFile);
+            commit(tempFile, entry);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not write code cache entry " + entry, e);
+        }
+    }
+
+    /**
+     * Create a temporary directory next to the given entry. Fill it and then pass it to
+     * {@link #commit(File, File)} to create a cache entry that is a directory.
+     *
+     * @param entry The cache entry.
+     * @return The temporary directory, or null if it could not be created.
+     */
+    public File createTempDirectory(File entry) {
+        try {
+            File parent = entry.getParentFile();
+            parent.mkdirs();
+            File tempDirectory = File.createTempFile(entry.getName(), TEMP_SUFFIX, parent);
+            if (tempDirectory.delete() && tempDirectory.mkdir()) return tempDirectory;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not create code cache entry " + entry, e);
+            return null;
+        }
+        LOG.log(Level.WARNING, "Could not create code cache entry " + entry);
+        return null;
+    }
+
+    /**
+     * Move a temporary file or directory to its place in the cache.
+     * <p/>
+     * If another process has created the entry in the mean time, that one is kept. Once the entry exists, the entries
+     * of older versions of the same source are removed.
+     *
+     * @param temp  The temporary file or directory.
+     * @param entry The cache entry.
+     */
+    public void commit(File temp, File entry) {
+        if (!temp.renameTo(entry)) {
+            discard(temp);
+            if (!entry.exists()) {
+                LOG.log(Level.WARNING, "Could not create code cache entry " + entry);
+                return;
+            }
+        }
+        removeOlderEntries(entry);
+    }
+
+    /**
+     * Remove the other entries for the location of the given entry. Temporary files of other writers are left alone.
+     */
+    private static void removeOlderEntries(File entry) {
+        String name = entry.getName();
+        int separator = name.indexOf(KEY_SEPARATOR);
+        if (separator < 0) return;
+        String locationPrefix = name.substring(0, separator + 1);
+        File[] siblings = entry.getParentFile().listFiles();
+        if (siblings == null) return;
+        for (File sibling : siblings) {
+            String siblingName = sibling.getName();
+            if (siblingName.startsWith(locationPrefix) && !siblingName.equals(name) && !siblingName.endsWith(TEMP_SUFFIX)) {
+                delete(sibling);
+            }
+        }
+    }
+
+    /**
+     * Remove a temporary file or directory that will not become a cache entry.
+     *
+     * @param temp The temporary file or directory.
+     */
+    public void discard(File temp) {
+        delete(temp);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,42 @@
+package nodebox.function;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Utility methods for reading the argument columns of a {@link BatchFunction}.
+ */
+public final class Columns {
+
+    private Columns() {
+    }
+
+    /**
+     * Read the column as numbers.
+     *
+     * @param column The column of argument values.
+     * @param count  The number of invocations. Shorter columns wrap around.
+     * @return An array with a value for every invocation.
+     * @throws IllegalArgumentException if the column is empty or contains something that is not a number.
+     */
+    public static double[] doubles(List<?> column, int count) {
+        checkArgument(!column.isEmpty(), "The column is empty.");
+        double[] values = new double[count];
+        int size = Math.min(column.size(), count);
+        int i = 0;
+        for (Object value : column) {
+            if (i == size) break;
+            if (!(value instanceof Number)) {
+                throw new IllegalArgumentException("Value " + value + " at index " + i + " is not a number.");
+            }
+            values[i] = ((Number) value).doubleValue();
+            i++;
+        }
+        for (; i < count; i++) {
+            values[i] = values[i - size];
+        }
+        return values;
+    }
+
+}
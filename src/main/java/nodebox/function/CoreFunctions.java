@@ -21,6 +21,7 @@ public class CoreFunctions {
         return 0.0;
     }
     
+    @ReadsContext("frame")
     public static double frame(NodeContext context) {
         return context.getFrame();
     }
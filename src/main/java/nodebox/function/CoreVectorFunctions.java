@@ -4,18 +4,31 @@ import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import nodebox.graphics.*;
 import nodebox.handle.*;
 import nodebox.util.MathUtils;
 
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
 import java.awt.geom.Arc2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static nodebox.function.MathFunctions.coordinates;
+import static nodebox.util.Geometry.angle;
+import static nodebox.util.Geometry.coordinates;
+import static nodebox.util.Geometry.distance;
 
 /**
  * Core vector function library.
+ * <p/>
+ * Some of these functions were first written in Python, in libraries/corevector/pyvector.py. Their Java versions
+ * return exactly the same geometry, including the random values for a given seed. The Python versions are kept in
+ * src/test/python/pyvector_reference.py to check this.
  */
 public class CoreVectorFunctions {
 
@@ -24,9 +37,11 @@ public class CoreVectorFunctions {
     static {
         LIBRARY = JavaLibrary.ofClass("corevector", CoreVectorFunctions.class,
                 "generator", "filter",
-                "align", "arc", "centroid", "colorize", "connect", "copy", "doNothing", "ellipse", "fit", "fitTo",
-                "freehand", "grid", "group", "line", "lineAngle", "link", "makePoint", "point", "pointOnPath", "rect",
-                "snap", "skew", "toPoints", "ungroup", "textpath",
+                "align", "arc", "centroid", "colorize", "compound", "connect", "copy", "distribute", "doNothing",
+                "ellipse", "fit", "fitTo", "freehand", "grid", "group", "line", "lineAngle", "link", "makePoint",
+                "point", "pointOnPath", "polygon", "rect", "reflect", "resample", "rotate", "scale", "scatter",
+                "shapeOnPath", "snap", "skew", "sort", "stack", "star", "toPoints", "translate", "ungroup", "textpath",
+                "textOnPath", "wiggle",
                 "fourPointHandle", "freehandHandle", "lineAngleHandle", "lineHandle", "pointHandle", "snapHandle",
                 "translateHandle");
     }
@@ -113,6 +128,7 @@ public class CoreVectorFunctions {
      * @param arcType    The type of arc. Either "chord", "pie", or "open"
      * @return The new arc.
      */
+    @ThreadSafe
     public static Path arc(Point position, double width, double height, double startAngle, double degrees, String arcType) {
 
         int awtType;
@@ -148,6 +164,7 @@ public class CoreVectorFunctions {
      * @param strokeWidth The new stroke width.
      * @return The new colored shape.
      */
+    @ThreadSafe
     public static Colorizable colorize(Colorizable shape, Color fill, Color stroke, double strokeWidth) {
         if (shape == null) return null;
         Colorizable newShape = shape.clone();
@@ -162,6 +179,50 @@ public class CoreVectorFunctions {
         return newShape;
     }
 
+    /**
+     * Add, subtract or intersect two shapes.
+     * <p/>
+     * A Geometry is first united into a single path.
+     *
+     * @param shape1           The first shape.
+     * @param shape2           The second shape.
+     * @param function         The operation: "united", "subtracted" or "intersected".
+     * @param invertDifference If true, switch the two shapes.
+     * @return The combined path, or null for an unknown operation.
+     */
+    @ThreadSafe
+    public static Path compound(IGeometry shape1, IGeometry shape2, String function, boolean invertDifference) {
+        Path path1 = flatten(shape1);
+        Path path2 = flatten(shape2);
+        if (path1 == null) return null;
+        if (path2 == null) return path1.clone();
+        if (invertDifference) {
+            Path tmp = path1;
+            path1 = path2;
+            path2 = tmp;
+        }
+        if (function.equals("united")) {
+            return path1.united(path2);
+        } else if (function.equals("subtracted")) {
+            return path1.subtracted(path2);
+        } else if (function.equals("intersected")) {
+            return path1.intersected(path2);
+        } else {
+            return null;
+        }
+    }
+
+    private static Path flatten(IGeometry shape) {
+        if (shape == null || shape instanceof Path) return (Path) shape;
+        Path compound = new Path();
+        boolean first = true;
+        for (Path path : ((Geometry) shape).getPaths()) {
+            compound = first ? path : compound.united(path);
+            first = false;
+        }
+        return compound;
+    }
+
     /**
      * Connects all given points, in order, as a new path.
      *
@@ -169,6 +230,7 @@ public class CoreVectorFunctions {
      * @param closed If true, close the path contour.
      * @return A new path with all points connected.
      */
+    @ThreadSafe
     public static Path connect(List<Point> points, boolean closed) {
         if (points == null) return null;
         Path p = new Path();
@@ -184,6 +246,7 @@ public class CoreVectorFunctions {
     }
 
 
+    @ThreadSafe
     public static List<IGeometry> copy(IGeometry shape, long copies, String order, Point translate, double rotate, Point scale) {
         ImmutableList.Builder<IGeometry> builder = ImmutableList.builder();
         Geometry geo = new Geometry();
@@ -219,6 +282,95 @@ public class CoreVectorFunctions {
         return builder.build();
     }
 
+    /**
+     * Distribute shapes evenly on a horizontal or vertical axis.
+     * <p/>
+     * The two outermost shapes stay where they are. The others are spread out between them, keeping their order.
+     *
+     * @param shapes     The shapes to distribute.
+     * @param horizontal The horizontal edge to distribute: "left", "center", "right" or "none".
+     * @param vertical   The vertical edge to distribute: "top", "middle", "bottom" or "none".
+     * @return The list of distributed shapes.
+     */
+    @ThreadSafe
+    public static List<IGeometry> distribute(List<IGeometry> shapes, String horizontal, String vertical) {
+        if (shapes == null) return null;
+        List<IGeometry> newShapes;
+        if (shapes.size() < 3 || horizontal.equals("none")) {
+            newShapes = new ArrayList<IGeometry>(shapes.size());
+            for (IGeometry shape : shapes) {
+                newShapes.add(shape.clone());
+            }
+        } else {
+            newShapes = distribute(shapes, horizontal);
+        }
+        if (shapes.size() >= 3 && !vertical.equals("none")) {
+            newShapes = distribute(newShapes, vertical);
+        }
+        return newShapes;
+    }
+
+    private static List<IGeometry> distribute(List<IGeometry> shapes, String edge) {
+        boolean horizontal = edge.equals("left") || edge.equals("center") || edge.equals("right");
+        List<IGeometry> sortedShapes = sortByEdge(shapes, edge);
+        IGeometry extremum1 = sortByEdge(shapes, horizontal ? "left" : "top").get(0);
+        IGeometry extremum2 = Iterables.getLast(sortByEdge(shapes, horizontal ? "right" : "bottom"));
+        double outer1 = edge(extremum1, edge);
+        double outer2 = edge(extremum2, edge);
+        double skip = (outer2 - outer1) / (shapes.size() - 1);
+        // Shapes don't override equals, so this finds the position of the shape object itself.
+        Map<IGeometry, Integer> indices = new HashMap<IGeometry, Integer>();
+        for (int i = 0; i < sortedShapes.size(); i++) {
+            indices.put(sortedShapes.get(i), i);
+        }
+        int index1 = indices.get(extremum1);
+        int index2 = indices.get(extremum2);
+
+        List<IGeometry> newShapes = new ArrayList<IGeometry>(shapes.size());
+        for (IGeometry shape : shapes) {
+            if (shape.equals(extremum1) || shape.equals(extremum2)) {
+                newShapes.add(shape.clone());
+            } else {
+                int i = indices.get(shape);
+                if (i < index1) i += 1;
+                if (i > index2) i -= 1;
+                double d = outer1 + (i * skip) - edge(shape, edge);
+                Transform t = horizontal ? Transform.translated(d, 0) : Transform.translated(0, d);
+                newShapes.add(t.map(shape));
+            }
+        }
+        return newShapes;
+    }
+
+    private static List<IGeometry> sortByEdge(List<IGeometry> shapes, final String edge) {
+        List<IGeometry> sortedShapes = new ArrayList<IGeometry>(shapes);
+        Collections.sort(sortedShapes, new Comparator<IGeometry>() {
+            public int compare(IGeometry shape1, IGeometry shape2) {
+                return compareValues(edge(shape1, edge), edge(shape2, edge));
+            }
+        });
+        return sortedShapes;
+    }
+
+    private static double edge(IGeometry shape, String edge) {
+        Rect bounds = shape.getBounds();
+        if (edge.equals("left")) {
+            return bounds.x;
+        } else if (edge.equals("center")) {
+            return bounds.x + bounds.width / 2;
+        } else if (edge.equals("right")) {
+            return bounds.x + bounds.width;
+        } else if (edge.equals("top")) {
+            return bounds.y;
+        } else if (edge.equals("middle")) {
+            return bounds.y + bounds.height / 2;
+        } else if (edge.equals("bottom")) {
+            return bounds.y + bounds.height;
+        } else {
+            throw new IllegalArgumentException("Unknown edge " + edge);
+        }
+    }
+
     /**
      * Return the given object back, as-is.
      * <p/>
@@ -239,6 +391,7 @@ public class CoreVectorFunctions {
      * @param height   The ellipse height.
      * @return The new ellipse, as a Path.
      */
+    @ThreadSafe
     public static Path ellipse(Point position, double width, double height) {
         Path p = new Path();
         p.ellipse(position.x, position.y, width, height);
@@ -334,6 +487,7 @@ public class CoreVectorFunctions {
      * @param position The center position of the grid.
      * @return A list of Points.
      */
+    @ThreadSafe
     public static List<Point> grid(long columns, long rows, double width, double height, Point position) {
         double columnSize, left, rowSize, top;
         if (columns > 1) {
@@ -390,6 +544,7 @@ public class CoreVectorFunctions {
      * @param points The amount of points to generate along the line.
      * @return A line between two points.
      */
+    @ThreadSafe
     public static Path line(Point p1, Point p2, long points) {
         Path p = new Path();
         p.line(p1.x, p1.y, p2.x, p2.y);
@@ -409,6 +564,7 @@ public class CoreVectorFunctions {
      * @param points   The amount of points to generate along the line.
      * @return A new line.
      */
+    @ThreadSafe
     public static Path lineAngle(Point point, double angle, double distance, long points) {
         Point p2 = coordinates(point, angle, distance);
         Path p = new Path();
@@ -463,6 +619,239 @@ public class CoreVectorFunctions {
         return shape.pointAt(t / 100);
     }
 
+    /**
+     * Create a regular polygon.
+     *
+     * @param position The center of the polygon.
+     * @param radius   The radius of the polygon.
+     * @param sides    The number of sides. Polygons have at least three sides.
+     * @param align    If true, the bottom side is aligned to the X axis.
+     * @return The new polygon.
+     */
+    @ThreadSafe
+    public static Path polygon(Point position, double radius, long sides, boolean align) {
+        Path p = new Path();
+        double x = position.x;
+        double y = position.y;
+        sides = Math.max(sides, 3);
+        double a = 360.0 / sides;
+        double da = 0;
+        if (align) {
+            double[] p0 = coordinates(x, y, radius, 0);
+            double[] p1 = coordinates(x, y, radius, a);
+            da = -angle(p1[0], p1[1], p0[0], p0[1]);
+        }
+        for (long i = 0; i < sides; i++) {
+            double[] pt = coordinates(x, y, radius, (a * i) + da);
+            if (i == 0) {
+                p.moveto(pt[0], pt[1]);
+            } else {
+                p.lineto(pt[0], pt[1]);
+            }
+        }
+        p.close();
+        return p;
+    }
+
+    /**
+     * Mirror the shape across an axis that goes through the given position.
+     *
+     * @param shape        The shape to mirror.
+     * @param position     A point on the axis.
+     * @param angle        The angle of the axis.
+     * @param keepOriginal If true, return the original and the mirrored shape together.
+     * @return The mirrored shape.
+     */
+    @ThreadSafe
+    public static IGeometry reflect(IGeometry shape, Point position, double angle, boolean keepOriginal) {
+        if (shape instanceof Path) {
+            return reflect((Path) shape, position, angle, keepOriginal);
+        } else if (shape instanceof Geometry) {
+            Geometry g = new Geometry();
+            for (Path path : ((Geometry) shape).getPaths()) {
+                IGeometry result = reflect(path, position, angle, keepOriginal);
+                if (result instanceof Path) {
+                    g.add((Path) result);
+                } else {
+                    g.extend((Geometry) result);
+                }
+            }
+            return g;
+        } else {
+            return null;
+        }
+    }
+
+    private static IGeometry reflect(Path shape, Point position, double angle, boolean keepOriginal) {
+        Path newShape = shape.cloneAndClear();
+        for (Contour contour : shape.getContours()) {
+            Contour c = new Contour();
+            for (Point point : contour.getPoints()) {
+                double d = distance(point.x, point.y, position.x, position.y);
+                double a = angle(point.x, point.y, position.x, position.y);
+                double[] pt = coordinates(position.x, position.y, d * Math.cos(Math.toRadians(a - angle)), 180 + angle);
+                d = distance(point.x, point.y, pt[0], pt[1]);
+                a = angle(point.x, point.y, pt[0], pt[1]);
+                double[] reflected = coordinates(point.x, point.y, d * 2, a);
+                c.addPoint(new Point(reflected[0], reflected[1], point.type));
+            }
+            if (contour.isClosed())
+                c.close();
+            newShape.add(c);
+        }
+        if (keepOriginal) {
+            Geometry g = new Geometry();
+            g.add(shape);
+            g.add(newShape);
+            return g;
+        }
+        return newShape;
+    }
+
+    /**
+     * Distribute points along the shape.
+     *
+     * @param shape      The shape to resample.
+     * @param method     Either "length", to place the points at a fixed distance, or "amount".
+     * @param length     The length of each segment, if the method is "length".
+     * @param points     The amount of points, if the method is "amount".
+     * @param perContour If true, the amount of points is per contour, not for the whole shape.
+     * @return The resampled shape.
+     */
+    @ThreadSafe
+    public static IGeometry resample(IGeometry shape, String method, double length, long points, boolean perContour) {
+        if (shape == null) return null;
+        if (method.equals("length")) {
+            return shape.resampleByLength(length);
+        } else {
+            return shape.resampleByAmount((int) points, perContour);
+        }
+    }
+
+    /**
+     * Rotate the shape around the origin.
+     *
+     * @param shape  The shape, a point or a list of points.
+     * @param angle  The rotation angle, in degrees.
+     * @param origin The point around which to rotate.
+     * @return The rotated shape.
+     */
+    @ThreadSafe
+    public static Object rotate(Object shape, double angle, Point origin) {
+        if (shape == null) return null;
+        Transform t = new Transform();
+        t.translate(origin);
+        t.rotate(angle);
+        t.translate(-origin.x, -origin.y);
+        return map(t, shape);
+    }
+
+    /**
+     * Scale the shape from the origin.
+     *
+     * @param shape  The shape, a point or a list of points.
+     * @param scale  The horizontal and vertical scale, in percent.
+     * @param origin The point from which to scale.
+     * @return The scaled shape.
+     */
+    @ThreadSafe
+    public static Object scale(Object shape, Point scale, Point origin) {
+        if (shape == null) return null;
+        Transform t = new Transform();
+        t.translate(origin);
+        t.scale(scale.x / 100.0, scale.y / 100.0);
+        t.translate(-origin.x, -origin.y);
+        return map(t, shape);
+    }
+
+    /**
+     * Generate random points within the shape.
+     * <p/>
+     * A point is dropped if no position inside the shape was found after 100 tries.
+     *
+     * @param shape  The shape.
+     * @param amount The amount of points.
+     * @param seed   The random seed.
+     * @return A list of points.
+     */
+    @ThreadSafe
+    public static List<Point> scatter(IGeometry shape, long amount, long seed) {
+        if (shape == null) return null;
+        Random random = seededRandom(seed);
+        Rect bounds = shape.getBounds();
+        List<Point> points = new ArrayList<Point>();
+        for (long i = 0; i < amount; i++) {
+            for (int tries = 100; tries > 0; tries--) {
+                Point pt = new Point(bounds.x + uniform(random) * bounds.width, bounds.y + uniform(random) * bounds.height);
+                if (contains(shape, pt)) {
+                    points.add(pt);
+                    break;
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Place copies of the shapes along a path, rotated to follow it.
+     *
+     * @param shapes         The shapes to copy. They are placed in turn.
+     * @param path           The path to follow.
+     * @param amount         The amount of copies of every shape.
+     * @param alignment      "leading" or "trailing" to start at one end of the path, "distributed" to fill the path.
+     * @param spacing        The distance between shapes, if they are not distributed.
+     * @param margin         The empty space at the start, or at both ends if the shapes are distributed.
+     * @param baselineOffset The distance between the path and the shapes.
+     * @return The list of copies.
+     */
+    @ThreadSafe
+    public static List<IGeometry> shapeOnPath(List<IGeometry> shapes, AbstractGeometry path, long amount, String alignment,
+                                              double spacing, double margin, double baselineOffset) {
+        if (shapes == null || shapes.isEmpty()) return ImmutableList.of();
+        if (path == null) return ImmutableList.of();
+        double pathLength = path.getLength();
+        if (pathLength <= 0) return ImmutableList.of();
+
+        if (alignment.equals("trailing")) {
+            shapes = Lists.reverse(shapes);
+        }
+        double length = pathLength - margin;
+        double m = margin / pathLength;
+        long count = amount * shapes.size();
+        long c = 0;
+
+        List<IGeometry> newShapes = new ArrayList<IGeometry>();
+        for (long i = 0; i < amount; i++) {
+            for (IGeometry shape : shapes) {
+                double pos;
+                if (alignment.equals("distributed")) {
+                    double p = count > 1 ? length / (count - 1) : 0;
+                    pos = c * p / length;
+                    pos = m + (pos * (1 - 2 * m));
+                } else {
+                    pos = floorMod(c * spacing, length) / length;
+                    pos = m + (pos * (1 - m));
+                    if (alignment.equals("trailing")) {
+                        pos = 1 - pos;
+                    }
+                }
+                Point p1 = path.pointAt(pos);
+                Point p2 = path.pointAt(pos + 0.0000001);
+                double a = angle(p1.x, p1.y, p2.x, p2.y);
+                if (baselineOffset != 0) {
+                    double[] pt = coordinates(p1.x, p1.y, baselineOffset, a - 90);
+                    p1 = new Point(pt[0], pt[1]);
+                }
+                Transform t = new Transform();
+                t.translate(p1);
+                t.rotate(a);
+                newShapes.add(t.map(shape));
+                c++;
+            }
+        }
+        return newShapes;
+    }
+
     @SuppressWarnings("unchecked")
     public static Object skew(Object shape, Point skew, Point origin) {
         if (shape == null) return null;
@@ -502,6 +891,122 @@ public class CoreVectorFunctions {
         });
     }
 
+    /**
+     * Sort points or shapes.
+     * <p/>
+     * Shapes are sorted on the position or the center of their bounds. The sort is stable: shapes with the same
+     * value keep their order.
+     *
+     * @param shapes  The points or shapes to sort.
+     * @param orderBy "x", "y", "angle" or "distance". Anything else leaves the list unchanged.
+     * @param point   The point to measure the angle or distance to.
+     * @return The sorted list.
+     */
+    @ThreadSafe
+    public static List<?> sort(List<?> shapes, String orderBy, Point point) {
+        if (shapes == null) return null;
+        if (!(orderBy.equals("x") || orderBy.equals("y") || orderBy.equals("angle") || orderBy.equals("distance")))
+            return shapes;
+        final double[] keys = new double[shapes.size()];
+        Integer[] order = new Integer[shapes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Object shape = shapes.get(i);
+            Point pt = shape instanceof Point ? (Point) shape : null;
+            if (orderBy.equals("x")) {
+                keys[i] = pt != null ? pt.x : ((Grob) shape).getBounds().x;
+            } else if (orderBy.equals("y")) {
+                keys[i] = pt != null ? pt.y : ((Grob) shape).getBounds().y;
+            } else {
+                if (pt == null) pt = ((Grob) shape).getBounds().getCentroid();
+                keys[i] = orderBy.equals("angle") ? angle(pt.x, pt.y, point.x, point.y) : distance(pt.x, pt.y, point.x, point.y);
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return compareValues(keys[i1], keys[i2]);
+            }
+        });
+        List<Object> newShapes = new ArrayList<Object>(shapes.size());
+        for (Integer i : order) {
+            newShapes.add(shapes.get(i));
+        }
+        return newShapes;
+    }
+
+    /**
+     * Arrange shapes next to each other, starting at the first shape.
+     *
+     * @param shapes    The shapes to arrange.
+     * @param direction The direction to stack in: "n", "e", "s" or "w".
+     * @param margin    The space between the shapes.
+     * @return The list of arranged shapes.
+     */
+    @ThreadSafe
+    public static List<IGeometry> stack(List<IGeometry> shapes, String direction, double margin) {
+        if (shapes == null) return ImmutableList.of();
+        if (shapes.size() <= 1) return shapes;
+        Rect firstBounds = shapes.get(0).getBounds();
+        List<IGeometry> newShapes = new ArrayList<IGeometry>(shapes.size());
+        if (direction.equals("e")) {
+            double tx = firstBounds.x;
+            for (IGeometry shape : shapes) {
+                Rect bounds = shape.getBounds();
+                newShapes.add(Transform.translated(tx - bounds.x, 0).map(shape));
+                tx += bounds.width + margin;
+            }
+        } else if (direction.equals("w")) {
+            double tx = firstBounds.x + firstBounds.width;
+            for (IGeometry shape : shapes) {
+                Rect bounds = shape.getBounds();
+                newShapes.add(Transform.translated(tx - (bounds.x + bounds.width), 0).map(shape));
+                tx -= bounds.width + margin;
+            }
+        } else if (direction.equals("n")) {
+            double ty = firstBounds.y + firstBounds.height;
+            for (IGeometry shape : shapes) {
+                Rect bounds = shape.getBounds();
+                newShapes.add(Transform.translated(0, ty - (bounds.y + bounds.height)).map(shape));
+                ty -= bounds.height + margin;
+            }
+        } else if (direction.equals("s")) {
+            double ty = firstBounds.y;
+            for (IGeometry shape : shapes) {
+                Rect bounds = shape.getBounds();
+                newShapes.add(Transform.translated(0, ty - bounds.y).map(shape));
+                ty += bounds.height + margin;
+            }
+        } else {
+            throw new IllegalArgumentException(String.format("Invalid direction \"%s.\"", direction));
+        }
+        return newShapes;
+    }
+
+    /**
+     * Create a star shape.
+     *
+     * @param position The center of the star.
+     * @param points   The amount of points of the star.
+     * @param outer    The outer diameter.
+     * @param inner    The inner diameter.
+     * @return The new star.
+     */
+    @ThreadSafe
+    public static Path star(Point position, long points, double outer, double inner) {
+        Path p = new Path();
+        p.moveto(position.x, position.y + outer / 2);
+        for (long i = 1; i < points * 2; i++) {
+            double angle = i * Math.PI / points;
+            // An inner diameter of zero uses the outer diameter, as the Python version did.
+            double radius = i % 2 == 1 && inner / 2 != 0 ? inner / 2 : outer / 2;
+            double x = position.x + radius * Math.sin(angle);
+            double y = position.y + radius * Math.cos(angle);
+            p.lineto(x, y);
+        }
+        p.close();
+        return p;
+    }
+
     /**
      * Create a rectangle.
      *
@@ -511,6 +1016,7 @@ public class CoreVectorFunctions {
      * @param roundness The roundness of the rectangle, given as a x,y Point. If the roundness is (0,0), we draw a normal rectangle.
      * @return The new rectangle.
      */
+    @ThreadSafe
     public static Path rect(Point position, double width, double height, Point roundness) {
         Path p = new Path();
         if (roundness.equals(Point.ZERO)) {
@@ -527,6 +1033,7 @@ public class CoreVectorFunctions {
      * @param shape The input shape.
      * @return A list of all points of the shape.
      */
+    @ThreadSafe
     public static List<Point> toPoints(IGeometry shape) {
         if (shape == null) return null;
         return shape.getPoints();
@@ -577,6 +1084,217 @@ public class CoreVectorFunctions {
         return t.getPath();
     }
 
+    /**
+     * Create a path of text that follows the shape.
+     * <p/>
+     * Every character is placed on the shape and rotated to follow it. Text that is longer than the shape wraps
+     * around to the start.
+     *
+     * @param text           The text.
+     * @param shape          The shape to follow.
+     * @param fontName       The font name.
+     * @param fontSize       The font size.
+     * @param alignment      "leading" to start at the start of the shape, or "trailing" to end at its end.
+     * @param margin         The position of the text on the shape, from 0.0-100.0.
+     * @param baselineOffset The distance between the shape and the baseline of the text.
+     * @return The text path.
+     */
+    @ThreadSafe
+    public static Path textOnPath(String text, AbstractGeometry shape, String fontName, double fontSize,
+                                  String alignment, double margin, double baselineOffset) {
+        if (shape == null || shape.getLength() <= 0) return null;
+        if (text == null) return null;
+        if (shape instanceof Path) {
+            shape = ((Path) shape).asGeometry();
+        }
+        Path p = new Path();
+
+        FontMetrics fm = fontMetrics(fontName, fontSize);
+        List<String> characters = new ArrayList<String>();
+        for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+            characters.add(text.substring(i, text.offsetByCodePoints(i, 1)));
+        }
+        double stringWidth = textWidth(text, fm);
+        double dw = stringWidth / shape.getLength();
+
+        double t = 0;
+        if (alignment.equals("trailing") && !characters.isEmpty()) {
+            t = floorMod((99.9 - margin) / 100.0, 1.0);
+            for (int i = 1; i < characters.size(); i++) {
+                t -= advance(textWidth(characters.get(i), fm), stringWidth, dw);
+                t = floorMod(t, 1.0);
+            }
+            margin = t * 100;
+        }
+
+        for (int i = 0; i < characters.size(); i++) {
+            String character = characters.get(i);
+            double charWidth = textWidth(character, fm);
+            if (i == 0) {
+                t = margin / 100.0;
+            } else {
+                t += advance(charWidth, stringWidth, dw);
+            }
+            // Always loop (the other behavior is weird)
+            t = floorMod(t, 1.0);
+
+            Point pt1 = shape.pointAt(t);
+            Point pt2 = shape.pointAt(t + 0.0000001);
+            double a = angle(pt2.x, pt2.y, pt1.x, pt1.y);
+
+            Text tp = new Text(character, -charWidth, -baselineOffset);
+            tp.setAlign(Text.Align.LEFT);
+            tp.setFontName(fontName);
+            tp.setFontSize(fontSize);
+            tp.translate(pt1.x, pt1.y);
+            tp.rotate(a - 180);
+            for (Contour contour : tp.getPath().getContours()) {
+                p.add(contour);
+            }
+        }
+        return p;
+    }
+
+    private static FontMetrics fontMetrics(String fontName, double fontSize) {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            return g.getFontMetrics(new Font(fontName, Font.PLAIN, (int) fontSize));
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * The distance along the shape taken up by a character, as a fraction of the shape length.
+     * Text without width, like a string of spaces in some fonts, doesn't move.
+     */
+    private static double advance(double charWidth, double stringWidth, double dw) {
+        return stringWidth > 0 ? charWidth / stringWidth * dw : 0;
+    }
+
+    private static double textWidth(String text, FontMetrics fm) {
+        if (text.length() == 1) {
+            return fm.charWidth(text.charAt(0));
+        } else {
+            return fm.stringWidth(text);
+        }
+    }
+
+    /**
+     * Move the shape.
+     *
+     * @param shape     The shape, a point or a list of points.
+     * @param translate The horizontal and vertical offset.
+     * @return The moved shape.
+     */
+    @ThreadSafe
+    public static Object translate(Object shape, Point translate) {
+        if (shape == null) return null;
+        return map(Transform.translated(translate), shape);
+    }
+
+    /**
+     * Shift points, contours or paths by a random amount.
+     * <p/>
+     * Points can be given as a single point, a list of points or a shape. Contours and paths can only be wiggled
+     * in a shape.
+     *
+     * @param shape  The shape to wiggle.
+     * @param scope  What to wiggle: "points", "contours" or "paths".
+     * @param offset The maximum horizontal and vertical offset.
+     * @param seed   The random seed.
+     * @return The wiggled shape, or null if the shape can't be wiggled in this scope.
+     */
+    @ThreadSafe
+    public static Object wiggle(Object shape, String scope, Point offset, long seed) {
+        if (shape == null) return null;
+        Random random = seededRandom(seed);
+        if (scope.equals("points")) {
+            return wigglePoints(shape, offset, random);
+        } else if (scope.equals("contours")) {
+            return wiggleContours(shape, offset, random);
+        } else if (scope.equals("paths")) {
+            return wigglePaths(shape, offset, random);
+        } else {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object wigglePoints(Object shape, Point offset, Random random) {
+        if (shape instanceof List) {
+            List<Point> newPoints = new ArrayList<Point>();
+            for (Point point : (List<Point>) shape) {
+                double dx = (uniform(random) - 0.5) * offset.x * 2;
+                double dy = (uniform(random) - 0.5) * offset.y * 2;
+                newPoints.add(new Point(point.x + dx, point.y + dy, point.type));
+            }
+            return newPoints;
+        } else if (shape instanceof Point) {
+            return ((List<Point>) wigglePoints(ImmutableList.of((Point) shape), offset, random)).get(0);
+        } else if (shape instanceof Contour) {
+            Contour contour = (Contour) shape;
+            return new Contour((List<Point>) wigglePoints(contour.getPoints(), offset, random), contour.isClosed());
+        } else if (shape instanceof Path) {
+            Path path = ((Path) shape).cloneAndClear();
+            for (Contour contour : ((Path) shape).getContours()) {
+                path.add((Contour) wigglePoints(contour, offset, random));
+            }
+            return path;
+        } else if (shape instanceof Geometry) {
+            Geometry g = new Geometry();
+            for (Path path : ((Geometry) shape).getPaths()) {
+                g.add((Path) wigglePoints(path, offset, random));
+            }
+            return g;
+        } else {
+            return null;
+        }
+    }
+
+    private static Object wiggleContours(Object shape, Point offset, Random random) {
+        if (shape instanceof Contour) {
+            return wiggleContour((Contour) shape, offset, random);
+        } else if (shape instanceof Path) {
+            Path path = ((Path) shape).cloneAndClear();
+            for (Contour contour : ((Path) shape).getContours()) {
+                path.add(wiggleContour(contour, offset, random));
+            }
+            return path;
+        } else if (shape instanceof Geometry) {
+            Geometry g = new Geometry();
+            for (Path path : ((Geometry) shape).getPaths()) {
+                g.add((Path) wiggleContours(path, offset, random));
+            }
+            return g;
+        } else {
+            return null;
+        }
+    }
+
+    private static Contour wiggleContour(Contour contour, Point offset, Random random) {
+        double dx = (uniform(random) - 0.5) * offset.x * 2;
+        double dy = (uniform(random) - 0.5) * offset.y * 2;
+        return new Contour(Transform.translated(dx, dy).map(contour.getPoints()), contour.isClosed());
+    }
+
+    private static Object wigglePaths(Object shape, Point offset, Random random) {
+        if (shape instanceof Path) {
+            double dx = (uniform(random) - 0.5) * offset.x * 2;
+            double dy = (uniform(random) - 0.5) * offset.y * 2;
+            return Transform.translated(dx, dy).map((Path) shape);
+        } else if (shape instanceof Geometry) {
+            Geometry g = new Geometry();
+            for (Path path : ((Geometry) shape).getPaths()) {
+                g.add((Path) wigglePaths(path, offset, random));
+            }
+            return g;
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Create a new point with the given x,y coordinates.
      *
@@ -584,19 +1302,95 @@ public class CoreVectorFunctions {
      * @param y The y coordinate.
      * @return A new Point.
      */
+    @ThreadSafe
+    @Batch
     public static Point makePoint(double x, double y) {
         return new Point(x, y);
     }
 
+    public static List<Point> makePointBatch(List<?> x, List<?> y, int count) {
+        double[] xs = Columns.doubles(x, count);
+        double[] ys = Columns.doubles(y, count);
+        List<Point> points = new ArrayList<Point>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new Point(xs[i], ys[i]));
+        }
+        return points;
+    }
+
     /**
      * Return the given Point as-is.
      */
+    @ThreadSafe
     public static Point point(Point value) {
         return value;
     }
 
     //// Utility functions ////
 
+    @SuppressWarnings("unchecked")
+    private static Object map(Transform t, Object shape) {
+        if (shape instanceof IGeometry) {
+            return t.map((IGeometry) shape);
+        } else if (shape instanceof Point) {
+            return t.map((Point) shape);
+        } else if (shape instanceof List) {
+            return t.map((List<Point>) shape);
+        } else {
+            throw new UnsupportedOperationException("I cannot work with " + shape.getClass().getSimpleName() + " objects.");
+        }
+    }
+
+    private static boolean contains(IGeometry shape, Point pt) {
+        if (shape instanceof Path) {
+            return ((Path) shape).contains(pt);
+        } else if (shape instanceof Geometry) {
+            return ((Geometry) shape).contains(pt);
+        } else {
+            throw new UnsupportedOperationException("I cannot work with " + shape.getClass().getSimpleName() + " objects.");
+        }
+    }
+
+    /**
+     * Create a random generator that returns the same numbers as Python's random module after random.seed(seed).
+     * <p/>
+     * Jython's random module wraps java.util.Random. Nodes get their seed as a Python long, which is seeded modulo
+     * Long.MAX_VALUE.
+     */
+    private static Random seededRandom(long seed) {
+        long s = seed % Long.MAX_VALUE;
+        if (s < 0) s += Long.MAX_VALUE;
+        return new Random(s);
+    }
+
+    /**
+     * Return the next random number between 0.0 and 1.0, the same as Jython's random.random() and uniform(0, 1).
+     * <p/>
+     * This combines two integers in a different way than {@link Random#nextDouble()}.
+     */
+    private static double uniform(Random random) {
+        long a = random.nextInt() >>> 5;
+        long b = random.nextInt() >>> 6;
+        return (a * 67108864.0 + b) * (1.0 / 9007199254740992.0);
+    }
+
+    /**
+     * The remainder with the sign of the divisor, like the % operator in Python.
+     */
+    private static double floorMod(double x, double y) {
+        double mod = x % y;
+        if (mod != 0 && (mod < 0) != (y < 0))
+            mod += y;
+        return mod;
+    }
+
+    /**
+     * Compare two numbers like Python's cmp(): unlike {@link Double#compare(double, double)}, 0.0 equals -0.0.
+     */
+    private static int compareValues(double a, double b) {
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+
     public static Path parsePath(String s) {
         checkNotNull(s);
         Path p = new Path();
@@ -4,6 +4,7 @@ import au.com.bytecode.opencsv.CSVReader;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import nodebox.util.FlightRecorderEvents;
 import nodebox.util.ReflectionUtils;
 
 import java.io.*;
@@ -123,6 +124,13 @@ public class DataFunctions {
      */
     public static List<Map<String, Object>> importCSV(String fileName, String delimiter, String quotationCharacter, String numberSeparator) {
         if (fileName == null || fileName.trim().isEmpty()) return ImmutableList.of();
+        FlightRecorderEvents.Event event = FlightRecorderEvents.FILE_IMPORT.begin();
+        List<Map<String, Object>> rows = readCSV(fileName, delimiter, quotationCharacter, numberSeparator);
+        if (event != null) event.commit(fileName, "csv", new File(fileName).length(), (long) rows.size());
+        return rows;
+    }
+
+    private static List<Map<String, Object>> readCSV(String fileName, String delimiter, String quotationCharacter, String numberSeparator) {
         try {
             InputStreamReader in = new InputStreamReader(new FileInputStream(fileName), "UTF-8");
             Character sep = separators.get(delimiter);
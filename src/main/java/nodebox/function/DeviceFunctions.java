@@ -25,6 +25,7 @@ public class DeviceFunctions {
                 "audioAnalysis", "audioLogAvg", "audioWave", "beatDetect");
     }
 
+    @ReadsContext("mouse.position")
     public static Point mousePosition(NodeContext context) {
         Point p = (Point) context.getData().get("mouse.position");
         if (p != null) {
@@ -46,6 +47,7 @@ public class DeviceFunctions {
     }
 
     @SuppressWarnings("unchecked")
+    @Volatile
     public static List<Map<String, Object>> receiveOSC(String deviceName, String oscAddressPrefix, String arguments, NodeContext context) {
         Map<String, List<Object>> oscMessages = (Map<String, List<Object>>) context.getData().get(deviceName + ".messages");
         if (oscMessages == null) return ImmutableList.of();
@@ -153,6 +155,7 @@ public class DeviceFunctions {
         return b.build();
     }
 
+    @SideEffects
     public static void sendOSC(String ipAddress, long port, String oscAddress, Iterable<Double> oscArguments) {
         OscMessage message = new OscMessage(oscAddress);
 
@@ -165,6 +168,7 @@ public class DeviceFunctions {
         c.send(message.getBytes());
     }
 
+    @Volatile
     public static List<Double> audioAnalysis(String deviceName, String channel, long averages, NodeContext context) {
         AudioSource source = (AudioSource) context.getData().get(deviceName + ".source");
         if (source == null) return ImmutableList.of();
@@ -193,6 +197,7 @@ public class DeviceFunctions {
         return b.build();
     }
 
+    @Volatile
     public static List<Double> audioLogAvg(String deviceName, String channel, long baseFreq, long bandsPerOctave, NodeContext context) {
         AudioSource source = (AudioSource) context.getData().get(deviceName + ".source");
         if (source == null) return ImmutableList.of();
@@ -215,6 +220,7 @@ public class DeviceFunctions {
         return b.build();
     }
 
+    @Volatile
     public static List<Map<String, Double>> audioWave(String deviceName, NodeContext context) {
         AudioSource source = (AudioSource) context.getData().get(deviceName + ".source");
         if (source == null) return ImmutableList.of();
@@ -229,6 +235,7 @@ public class DeviceFunctions {
         return b.build();
     }
 
+    @Volatile
     public static Map<String, Boolean> beatDetect(String deviceName, NodeContext context) {
         BeatDetect beat = (BeatDetect) context.getData().get(deviceName + ".beat");
         if (beat == null) return ImmutableMap.of();
@@ -1,6 +1,7 @@
 package nodebox.function;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * Function wraps any kind of callable.
@@ -26,6 +27,29 @@ public interface Function {
 
     public ImmutableList<Argument> getArguments();
 
+    /**
+     * Check if the function can be invoked from multiple threads at the same time.
+     *
+     * @return true if concurrent invocations are safe.
+     * @see ThreadSafe
+     */
+    public boolean isThreadSafe();
+
+    /**
+     * Check if the function only depends on its arguments, or also on outside state, and if it has side effects.
+     *
+     * @return The purity of the function.
+     */
+    public Purity getPurity();
+
+    /**
+     * Get the keys of the context data that the function reads, if it takes the node context as an argument.
+     *
+     * @return The context keys, or null if the function can read any key.
+     * @see ReadsContext
+     */
+    public ImmutableSet<String> getContextKeys();
+
     public static final class Argument {
 
         public String name;
@@ -8,6 +8,7 @@ import nodebox.node.Node;
 import nodebox.node.Port;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -45,7 +46,7 @@ public class FunctionRepository {
     }
 
     private final ImmutableMap<String, FunctionLibrary> libraryMap;
-    private final transient Map<String, Function> functionCache = new HashMap<String, Function>();
+    private final transient Map<String, Function> functionCache = new ConcurrentHashMap<String, Function>();
 
     private FunctionRepository(ImmutableMap<String, FunctionLibrary> libraryMap) {
         this.libraryMap = libraryMap;
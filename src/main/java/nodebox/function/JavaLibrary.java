@@ -2,13 +2,22 @@ package nodebox.function;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Doubles;
+import nodebox.node.NodeContext;
 import nodebox.util.LoadException;
 
 import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -80,20 +89,101 @@ public final class JavaLibrary extends FunctionLibrary {
         return functionMap.containsKey(name);
     }
 
+    /**
+     * A function that calls a static method through a method handle.
+     * <p/>
+     * The handle is adapted once to take and return objects, so boxing and unboxing happen in the handle instead of
+     * in reflection code. Functions with up to four arguments call the handle directly with the right number of
+     * arguments, so the JIT can inline small functions into the caller. Errors are reported the same way as
+     * {@link Method#invoke(Object, Object...)} does: exceptions thrown by the method are wrapped in an
+     * {@link InvocationTargetException} and wrong arguments cause an {@link IllegalArgumentException}.
+     */
     private static class StaticMethodFunction implements Function {
 
         public static StaticMethodFunction find(Class c, String methodName) {
             Method m = Functions.findMethod(c, methodName, false);
+            if (m.isAnnotationPresent(Batch.class)) {
+                return new BatchMethodFunction(m, findBatchMethod(c, methodName + "Batch"));
+            }
             return new StaticMethodFunction(m);
         }
 
-        private final Method method;
+        private static final int MAX_FAST_ARITY = 4;
+
+        private static final ImmutableMap<Class<?>, String> PRIMITIVE_WIDENINGS = ImmutableMap.<Class<?>, String>builder()
+                .put(byte.class, "short int long float double")
+                .put(short.class, "int long float double")
+                .put(char.class, "int long float double")
+                .put(int.class, "long float double")
+                .put(long.class, "float double")
+                .put(float.class, "double")
+                .build();
+
+        final Method method;
         private final ImmutableList<Argument> arguments;
+        private final boolean threadSafe;
+        private final Purity purity;
+        private final ImmutableSet<String> contextKeys;
+        final int arity;
+        private final MethodHandle handle;
 
         public StaticMethodFunction(Method method) {
             checkArgument(Modifier.isStatic(method.getModifiers()), "Method %s is not a static method.", method);
             this.method = method;
             this.arguments = Functions.introspect(method);
+            this.threadSafe = method.isAnnotationPresent(ThreadSafe.class);
+            this.purity = purityOf(method);
+            this.contextKeys = contextKeysOf(method);
+            this.arity = method.getParameterTypes().length;
+            MethodHandle handle = createHandle(method, arity);
+            this.handle = arity > MAX_FAST_ARITY ? handle.asSpreader(Object[].class, arity) : handle;
+        }
+
+        private static Purity purityOf(Method method) {
+            boolean isVolatile = method.isAnnotationPresent(Volatile.class);
+            boolean hasSideEffects = method.isAnnotationPresent(SideEffects.class);
+            checkArgument(!isVolatile || !hasSideEffects, "Method %s can not be both volatile and have side effects.", method);
+            if (hasSideEffects) return Purity.SIDE_EFFECTS;
+            if (isVolatile) return Purity.VOLATILE;
+            return Purity.PURE;
+        }
+
+        private static ImmutableSet<String> contextKeysOf(Method method) {
+            ReadsContext readsContext = method.getAnnotation(ReadsContext.class);
+            if (readsContext != null) return ImmutableSet.copyOf(readsContext.value());
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (parameterType == NodeContext.class) return null;
+            }
+            return ImmutableSet.of();
+        }
+
+        /**
+         * Find the hand-written batch version of a method.
+         *
+         * @return The method, or null if the class doesn't have one.
+         */
+        private static Method findBatchMethod(Class c, String batchMethodName) {
+            for (Method method : c.getMethods()) {
+                if (method.getName().equals(batchMethodName)) {
+                    return Functions.findMethod(c, batchMethodName, false);
+                }
+            }
+            return null;
+        }
+
+        static MethodHandle unreflect(Method method) {
+            // Public methods of classes that are not public themselves can only be accessed this way.
+            method.setAccessible(true);
+            try {
+                // Variable arity methods take their last argument as an array, like they do through reflection.
+                return MethodHandles.lookup().unreflect(method).asFixedArity();
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Method " + method + " is not accessible.", e);
+            }
+        }
+
+        private static MethodHandle createHandle(Method method, int arity) {
+            return unreflect(method).asType(MethodType.genericMethodType(arity));
         }
 
         public String getName() {
@@ -101,11 +191,259 @@ public final class JavaLibrary extends FunctionLibrary {
         }
 
         public Object invoke(Object... args) throws Exception {
-            return method.invoke(null, args);
+            if (args.length != arity) {
+                throw new IllegalArgumentException("Method " + method.getName() + " takes " + arity + " arguments, not " + args.length + ".");
+            }
+            try {
+                switch (arity) {
+                    case 0:
+                        return (Object) handle.invokeExact();
+                    case 1:
+                        return (Object) handle.invokeExact(args[0]);
+                    case 2:
+                        return (Object) handle.invokeExact(args[0], args[1]);
+                    case 3:
+                        return (Object) handle.invokeExact(args[0], args[1], args[2]);
+                    case 4:
+                        return (Object) handle.invokeExact(args[0], args[1], args[2], args[3]);
+                    default:
+                        return (Object) handle.invokeExact(args);
+                }
+            } catch (ClassCastException e) {
+                throw wrapException(e, args);
+            } catch (NullPointerException e) {
+                throw wrapException(e, args);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        /**
+         * The handle throws the same exceptions for arguments it cannot convert as the method might throw itself.
+         * Check the arguments to tell the two apart.
+         */
+        private Exception wrapException(RuntimeException e, Object[] args) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            for (int i = 0; i < args.length; i++) {
+                if (!isAssignable(parameterTypes[i], args[i])) {
+                    return argumentException(i, args[i], e);
+                }
+            }
+            return new InvocationTargetException(e);
+        }
+
+        IllegalArgumentException argumentException(int index, Object value, Exception cause) {
+            return new IllegalArgumentException("Argument " + (index + 1) + " of method " + method.getName()
+                    + " should be a " + method.getParameterTypes()[index].getSimpleName() + ", not " + value + ".", cause);
+        }
+
+        private static boolean isAssignable(Class<?> type, Object value) {
+            if (!type.isPrimitive()) {
+                return value == null || type.isInstance(value);
+            } else if (value == null) {
+                return false;
+            }
+            Class<?> valueType = MethodType.methodType(value.getClass()).unwrap().returnType();
+            if (!valueType.isPrimitive()) return false;
+            if (valueType == type) return true;
+            String widenings = PRIMITIVE_WIDENINGS.get(valueType);
+            return widenings != null && widenings.contains(type.getName());
         }
 
         public ImmutableList<Argument> getArguments() {
             return arguments;
         }
+
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+
+        public Purity getPurity() {
+            return purity;
+        }
+
+        public ImmutableSet<String> getContextKeys() {
+            return contextKeys;
+        }
+    }
+
+    /**
+     * A static method function that can be invoked for a batch of arguments.
+     * <p/>
+     * The batch loops over the columns and calls the method once for every invocation. When all arguments of the
+     * method are doubles, the columns are read into arrays and the method is called without boxing the arguments.
+     * A class can replace the loop with its own batch version. Either way, a value that is not a number gives the same
+     * error as invoking the method with it directly.
+     *
+     * @see Batch
+     */
+    private static final class BatchMethodFunction extends StaticMethodFunction implements BatchFunction {
+
+        // The color functions take five arguments.
+        private static final int MAX_FAST_BATCH_ARITY = 5;
+
+        private final MethodHandle batchHandle;
+        // Takes double arguments and returns a double or an object. Null if the method has arguments that are not
+        // doubles. Methods with more than five arguments take them as a double array.
+        private final MethodHandle doublesHandle;
+        private final boolean returnsDouble;
+
+        public BatchMethodFunction(Method method, Method batchMethod) {
+            super(method);
+            if (batchMethod != null) {
+                checkArgument(Modifier.isStatic(batchMethod.getModifiers()), "Method %s is not a static method.", batchMethod);
+                Class<?>[] parameterTypes = batchMethod.getParameterTypes();
+                checkArgument(parameterTypes.length == arity + 1 && parameterTypes[arity] == int.class,
+                        "Method %s should take a list for each argument of %s and the number of invocations.", batchMethod, method.getName());
+                for (int i = 0; i < arity; i++) {
+                    checkArgument(parameterTypes[i].isAssignableFrom(List.class), "Argument %s of method %s is not a list.", i + 1, batchMethod);
+                }
+                checkArgument(List.class.isAssignableFrom(batchMethod.getReturnType()), "Method %s does not return a list.", batchMethod);
+                this.batchHandle = StaticMethodFunction.createHandle(batchMethod, arity + 1).asSpreader(Object[].class, arity + 1);
+            } else {
+                this.batchHandle = null;
+            }
+            this.returnsDouble = method.getReturnType() == double.class;
+            if (takesDoubles(method)) {
+                MethodHandle handle = StaticMethodFunction.unreflect(method);
+                if (!returnsDouble) {
+                    handle = handle.asType(handle.type().changeReturnType(Object.class));
+                }
+                this.doublesHandle = arity > MAX_FAST_BATCH_ARITY ? handle.asSpreader(double[].class, arity) : handle;
+            } else {
+                this.doublesHandle = null;
+            }
+        }
+
+        private static boolean takesDoubles(Method method) {
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (parameterType != double.class) return false;
+            }
+            return true;
+        }
+
+        public List<?> invokeBatch(List<?>[] columns, int count) throws Exception {
+            if (columns.length != arity) {
+                throw new IllegalArgumentException("Method " + getName() + " takes " + arity + " columns, not " + columns.length + ".");
+            }
+            if (batchHandle != null) {
+                if (doublesHandle != null) checkNumbers(columns, count);
+                Object[] args = Arrays.copyOf(columns, arity + 1, Object[].class);
+                args[arity] = count;
+                try {
+                    return (List<?>) (Object) batchHandle.invokeExact(args);
+                } catch (Throwable t) {
+                    throw new InvocationTargetException(t);
+                }
+            } else if (doublesHandle != null) {
+                return invokeWithDoubles(columns, count);
+            } else {
+                return invokeWithObjects(columns, count);
+            }
+        }
+
+        /**
+         * Check that the columns of a method that takes doubles only contain numbers.
+         */
+        private void checkNumbers(List<?>[] columns, int count) {
+            for (int i = 0; i < arity; i++) {
+                int j = 0;
+                for (Object value : columns[i]) {
+                    if (j++ == count) break;
+                    if (!(value instanceof Number)) throw argumentException(i, value, null);
+                }
+            }
+        }
+
+        private List<?> invokeWithDoubles(List<?>[] columns, int count) throws Exception {
+            double[][] values = new double[arity][];
+            for (int i = 0; i < arity; i++) {
+                try {
+                    values[i] = Columns.doubles(columns[i], count);
+                } catch (IllegalArgumentException e) {
+                    checkNumbers(columns, count);
+                    throw e;
+                }
+            }
+            try {
+                if (returnsDouble) {
+                    double[] results = new double[count];
+                    for (int j = 0; j < count; j++) {
+                        results[j] = invokeDouble(values, j);
+                    }
+                    return Doubles.asList(results);
+                } else {
+                    List<Object> results = new ArrayList<Object>(count);
+                    for (int j = 0; j < count; j++) {
+                        results.add(invokeObject(values, j));
+                    }
+                    return results;
+                }
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        private double invokeDouble(double[][] values, int j) throws Throwable {
+            switch (arity) {
+                case 0:
+                    return (double) doublesHandle.invokeExact();
+                case 1:
+                    return (double) doublesHandle.invokeExact(values[0][j]);
+                case 2:
+                    return (double) doublesHandle.invokeExact(values[0][j], values[1][j]);
+                case 3:
+                    return (double) doublesHandle.invokeExact(values[0][j], values[1][j], values[2][j]);
+                case 4:
+                    return (double) doublesHandle.invokeExact(values[0][j], values[1][j], values[2][j], values[3][j]);
+                case 5:
+                    return (double) doublesHandle.invokeExact(values[0][j], values[1][j], values[2][j], values[3][j], values[4][j]);
+                default:
+                    return (double) doublesHandle.invokeExact(row(values, j));
+            }
+        }
+
+        private Object invokeObject(double[][] values, int j) throws Throwable {
+            switch (arity) {
+                case 0:
+                    return (Object) doublesHandle.invokeExact();
+                case 1:
+                    return (Object) doublesHandle.invokeExact(values[0][j]);
+                case 2:
+                    return (Object) doublesHandle.invokeExact(values[0][j], values[1][j]);
+                case 3:
+                    return (Object) doublesHandle.invokeExact(values[0][j], values[1][j], values[2][j]);
+                case 4:
+                    return (Object) doublesHandle.invokeExact(values[0][j], values[1][j], values[2][j], values[3][j]);
+                case 5:
+                    return (Object) doublesHandle.invokeExact(values[0][j], values[1][j], values[2][j], values[3][j], values[4][j]);
+                default:
+                    return (Object) doublesHandle.invokeExact(row(values, j));
+            }
+        }
+
+        private static double[] row(double[][] values, int j) {
+            double[] row = new double[values.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = values[i][j];
+            }
+            return row;
+        }
+
+        private List<?> invokeWithObjects(List<?>[] columns, int count) throws Exception {
+            Object[][] values = new Object[arity][];
+            for (int i = 0; i < arity; i++) {
+                values[i] = columns[i].toArray();
+            }
+            List<Object> results = new ArrayList<Object>(count);
+            for (int j = 0; j < count; j++) {
+                Object[] args = new Object[arity];
+                for (int i = 0; i < arity; i++) {
+                    args[i] = values[i][j % values[i].length];
+                }
+                results.add(invoke(args));
+            }
+            return results;
+        }
     }
 }
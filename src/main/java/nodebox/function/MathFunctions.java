@@ -3,6 +3,7 @@ package nodebox.function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.primitives.Doubles;
 import nodebox.graphics.Point;
 import nodebox.util.Geometry;
 import nodebox.util.MathUtils;
@@ -40,48 +41,119 @@ public class MathFunctions {
                 "convertRange", "wave");
     }
 
+    @ThreadSafe
     public static double number(double n) {
         return n;
     }
 
+    @ThreadSafe
     public static long integer(long value) {
         return value;
     }
 
+    @ThreadSafe
     public static boolean makeBoolean(boolean value) {
         return value;
     }
 
+    // The arithmetic functions have their own batch loops. These call the method directly, so the JIT can inline it,
+    // which the generated loop of a @Batch method can't do.
+    @ThreadSafe
+    @Batch
     public static double add(double n1, double n2) {
         return n1 + n2;
     }
 
+    public static List<Double> addBatch(List<?> n1, List<?> n2, int count) {
+        double[] values1 = Columns.doubles(n1, count);
+        double[] values2 = Columns.doubles(n2, count);
+        double[] results = new double[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = add(values1[i], values2[i]);
+        }
+        return Doubles.asList(results);
+    }
+
+    @ThreadSafe
+    @Batch
     public static double subtract(double n1, double n2) {
         return n1 - n2;
     }
 
+    public static List<Double> subtractBatch(List<?> n1, List<?> n2, int count) {
+        double[] values1 = Columns.doubles(n1, count);
+        double[] values2 = Columns.doubles(n2, count);
+        double[] results = new double[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = subtract(values1[i], values2[i]);
+        }
+        return Doubles.asList(results);
+    }
+
+    @ThreadSafe
+    @Batch
     public static double multiply(double n1, double n2) {
         return n1 * n2;
     }
 
+    public static List<Double> multiplyBatch(List<?> n1, List<?> n2, int count) {
+        double[] values1 = Columns.doubles(n1, count);
+        double[] values2 = Columns.doubles(n2, count);
+        double[] results = new double[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = multiply(values1[i], values2[i]);
+        }
+        return Doubles.asList(results);
+    }
+
+    @ThreadSafe
+    @Batch
     public static double divide(double n1, double n2) {
         checkArgument(n2 != 0, "Divider cannot be zero.");
         return n1 / n2;
     }
 
+    public static List<Double> divideBatch(List<?> n1, List<?> n2, int count) {
+        double[] values1 = Columns.doubles(n1, count);
+        double[] values2 = Columns.doubles(n2, count);
+        double[] results = new double[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = divide(values1[i], values2[i]);
+        }
+        return Doubles.asList(results);
+    }
+
+    @ThreadSafe
+    @Batch
     public static double mod(double n1, double n2) {
         checkArgument(n2 != 0, "Divider cannot be zero.");
         return n1 % n2;
     }
 
+    public static List<Double> modBatch(List<?> n1, List<?> n2, int count) {
+        double[] values1 = Columns.doubles(n1, count);
+        double[] values2 = Columns.doubles(n2, count);
+        double[] results = new double[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = mod(values1[i], values2[i]);
+        }
+        return Doubles.asList(results);
+    }
+
+    @ThreadSafe
+    @Batch
     public static double sqrt(double n) {
         return Math.sqrt(n);
     }
 
+    @ThreadSafe
+    @Batch
     public static double pow(double n1, double n2) {
         return Math.pow(n1, n2);
     }
 
+    @ThreadSafe
+    @Batch
     public static double log(double n) {
         checkArgument(n != 0, "Value cannot be zero.");
         return Math.log(n);
@@ -93,6 +165,7 @@ public class MathFunctions {
      * @param n The number to check.
      * @return true if even
      */
+    @ThreadSafe
     public static boolean even(double n) {
         return n % 2 == 0;
     }
@@ -103,14 +176,19 @@ public class MathFunctions {
      * @param n The number to check.
      * @return true if odd
      */
+    @ThreadSafe
     public static boolean odd(double n) {
         return n % 2 != 0;
     }
 
+    @ThreadSafe
+    @Batch
     public static double negate(double n) {
         return -n;
     }
 
+    @ThreadSafe
+    @Batch
     public static double abs(double n) {
         return Math.abs(n);
     }
@@ -119,6 +197,7 @@ public class MathFunctions {
         return values == null || Iterables.isEmpty(values);
     }
 
+    @ThreadSafe
     public static double sum(Iterable<Double> numbers) {
         if (noValues(numbers)) return 0.0;
         double sum = 0;
@@ -128,6 +207,7 @@ public class MathFunctions {
         return sum;
     }
 
+    @ThreadSafe
     public static double average(Iterable<Double> numbers) {
         if (noValues(numbers)) return 0.0;
         double sum = 0;
@@ -139,6 +219,7 @@ public class MathFunctions {
         return sum / counter;
     }
 
+    @ThreadSafe
     public static double max(Iterable<Double> numbers) {
         if (noValues(numbers)) return 0.0;
         double max = Iterables.getFirst(numbers, 0.0);
@@ -148,6 +229,7 @@ public class MathFunctions {
         return max;
     }
 
+    @ThreadSafe
     public static double min(Iterable<Double> numbers) {
         if (noValues(numbers)) return 0.0;
         double min = Iterables.getFirst(numbers, 0.0);
@@ -157,15 +239,20 @@ public class MathFunctions {
         return min;
     }
 
+    @ThreadSafe
+    @Batch
     public static double ceil(double n) {
         return Math.ceil(n);
     }
 
+    @ThreadSafe
+    @Batch
     public static double floor(double n) {
         return Math.floor(n);
     }
 
     @SuppressWarnings("unchecked")
+    @ThreadSafe
     public static boolean compare(Comparable o1, Comparable o2, String comparator) {
         int comparison = o1.compareTo(o2);
         if (comparator.equals("<")) {
@@ -186,6 +273,7 @@ public class MathFunctions {
     }
 
 
+    @ThreadSafe
     public static boolean logicOperator(Boolean b1, Boolean b2, String comparator){
         if (comparator.equals("or")) {
             return b1 || b2;
@@ -200,6 +288,7 @@ public class MathFunctions {
         }
     }
 
+    @ThreadSafe
     public static List<Double> makeNumbers(String s, String separator) {
         if (s == null || s.length() == 0) {
             return ImmutableList.of();
@@ -217,6 +306,7 @@ public class MathFunctions {
         return ImmutableList.copyOf(numbers);
     }
 
+    @ThreadSafe
     public static List<Double> randomNumbers(long amount, double start, double end, long seed) {
         Random r = MathUtils.randomFromSeed(seed);
         ImmutableList.Builder<Double> numbers = ImmutableList.builder();
@@ -227,10 +317,12 @@ public class MathFunctions {
         return numbers.build();
     }
 
+    @ThreadSafe
     public static long round(double a) {
         return Math.round(a);
     }
 
+    @ThreadSafe
     public static List<Double> sample(final long amount, final double start, final double end) {
         if (amount == 0) return ImmutableList.of();
         if (amount == 1) return ImmutableList.of(start + (end - start) / 2);
@@ -246,6 +338,7 @@ public class MathFunctions {
         return b.build();
     }
 
+    @ThreadSafe
     public static List<Double> range(final double start, final double end, final double step) {
         if (step == 0 || start == end || (start < end && step < 0) || (start > end && step > 0))
             return ImmutableList.of();
@@ -258,6 +351,7 @@ public class MathFunctions {
         }
     }
 
+    @ThreadSafe
     public static List<Double> runningTotal(Iterable<Double> numbers) {
         if (noValues(numbers)) return ImmutableList.of(0.0);
         double currentTotal = 0;
@@ -304,10 +398,14 @@ public class MathFunctions {
         }
     }
 
+    @ThreadSafe
+    @Batch
     public static double radians(double degrees) {
         return Geometry.radians(degrees);
     }
 
+    @ThreadSafe
+    @Batch
     public static double degrees(double radians) {
         return Geometry.degrees(radians);
     }
@@ -319,6 +417,7 @@ public class MathFunctions {
      * @param p2 The second point.
      * @return The angle in radians.
      */
+    @ThreadSafe
     public static double angle(Point p1, Point p2) {
         return Geometry.angle(p1.x, p1.y, p2.x, p2.y);
     }
@@ -326,6 +425,7 @@ public class MathFunctions {
     /**
      * The distance between two points.
      */
+    @ThreadSafe
     public static double distance(Point p1, Point p2) {
         return Geometry.distance(p1.x, p1.y, p2.x, p2.y);
     }
@@ -333,6 +433,7 @@ public class MathFunctions {
     /**
      * The location of a point based on angle and distance.
      */
+    @ThreadSafe
     public static Point coordinates(Point p, double angle, double distance) {
         double x = p.x + Math.cos(radians(angle)) * distance;
         double y = p.y + Math.sin(radians(angle)) * distance;
@@ -342,28 +443,36 @@ public class MathFunctions {
     /**
      * The reflection of a point through an origin point.
      */
+    @ThreadSafe
     public static Point reflect(Point p1, Point p2, double angle, double distance) {
         distance *= distance(p1, p2);
         angle += angle(p1, p2);
         return coordinates(p1, angle, distance);
     }
 
+    @ThreadSafe
+    @Batch
     public static double sin(double n) {
         return Math.sin(n);
     }
 
+    @ThreadSafe
+    @Batch
     public static double cos(double n) {
         return Math.cos(n);
     }
 
+    @ThreadSafe
     public static double pi() {
         return Math.PI;
     }
 
+    @ThreadSafe
     public static double e() {
         return Math.E;
     }
 
+    @ThreadSafe
     public static double convertRange(double value, double srcMin, double srcMax, double targetMin, double targetMax, String overflowMethod) {
         if (overflowMethod.equals(OVERFLOW_WRAP)) {
             value = srcMin + value % (srcMax - srcMin);
@@ -389,6 +498,7 @@ public class MathFunctions {
         return targetMin + value * (targetMax - targetMin);
     }
 
+    @ThreadSafe
     public static double wave(double min, double max, double period, double offset, String waveType) {
         float fmin = (float) min;
         float fmax = (float) max;
@@ -4,6 +4,7 @@ import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.jayway.jsonpath.JsonPath;
+import nodebox.util.FlightRecorderEvents;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -31,22 +32,33 @@ public class NetworkFunctions {
                 "httpGet", "queryJSON", "encodeURL");
     }
 
+    @Volatile
     public static synchronized Map<String, Object> httpGet(final String url, final String username, final String password, final long refreshTimeSeconds) {
+        FlightRecorderEvents.Event event = FlightRecorderEvents.HTTP_GET.begin();
         Integer cacheKey = Objects.hashCode(url, username, password);
         if (responseCache.containsKey(cacheKey)) {
             Response r = responseCache.get(cacheKey);
             long timeNow = nowSeconds();
             long timeFetched = r.timeFetched;
             if ((timeNow - timeFetched) <= refreshTimeSeconds) {
+                if (event != null) commitEvent(event, url, true, r.response);
                 return r.response;
             }
         }
         Map<String, Object> r = _httpGet(url, username, password);
         Response res = new Response(nowSeconds(), r);
         responseCache.put(cacheKey, res);
+        if (event != null) commitEvent(event, url, false, r);
         return r;
     }
 
+    private static void commitEvent(FlightRecorderEvents.Event event, String url, boolean cached, Map<String, Object> response) {
+        Object statusCode = response.get("statusCode");
+        Object body = response.get("body");
+        event.commit(url, cached, statusCode instanceof Integer ? statusCode : 0,
+                body instanceof String ? (long) ((String) body).length() : 0L);
+    }
+
     public static Iterable<?> queryJSON(final Object json, final String query) {
         if (json instanceof Map) {
             Map<?, ?> requestMap = (Map<?, ?>) json;
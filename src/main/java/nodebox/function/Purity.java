@@ -0,0 +1,50 @@
+package nodebox.function;
+
+import java.util.Locale;
+
+/**
+ * Describes what a function depends on and what it changes, apart from its arguments and its result.
+ * <p/>
+ * The node context uses this to decide which results it can cache and which nodes give the same output on
+ * every frame.
+ */
+public enum Purity {
+
+    /**
+     * The result only depends on the arguments and on the context keys that the function declares.
+     * The function has no side effects, so it can be skipped when its result is known.
+     */
+    PURE,
+
+    /**
+     * The result also depends on state outside the function, such as the network, a device or the clock.
+     * It can change between invocations with the same arguments.
+     *
+     * @see Volatile
+     */
+    VOLATILE,
+
+    /**
+     * The function changes state outside the function, for example by sending a message.
+     * It needs to be invoked every time.
+     *
+     * @see SideEffects
+     */
+    SIDE_EFFECTS;
+
+    /**
+     * Parse the purity as declared in the metadata of a Python or Clojure function.
+     *
+     * @param name The name, for example "pure", "volatile" or "side-effects".
+     * @return The purity.
+     * @throws IllegalArgumentException if the name is not a known purity.
+     */
+    public static Purity parse(String name) {
+        try {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown purity '" + name + "'. Use pure, volatile or side-effects.");
+        }
+    }
+
+}
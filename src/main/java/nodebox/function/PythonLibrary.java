@@ -2,15 +2,25 @@ package nodebox.function;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import nodebox.client.PythonUtils;
 import nodebox.util.FileUtils;
+import nodebox.util.FlightRecorderEvents;
 import nodebox.util.LoadException;
+import org.python.Version;
 import org.python.core.*;
 import org.python.util.PythonInterpreter;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
@@ -83,37 +93,29 @@ public class PythonLibrary extends FunctionLibrary {
         if (!file.exists()) {
             throw new LoadException(file, "Library does not exist.");
         }
-        return new PythonLibrary(namespace, file, loadScript(file));
+        return new PythonLibrary(namespace, file, loadScript(namespace, file));
     }
 
-    private static Future<ImmutableMap<String, Function>> loadScript(final File file) {
+    private static Future<ImmutableMap<String, Function>> loadScript(final String namespace, final File file) {
         FutureTask<ImmutableMap<String, Function>> task = new FutureTask<ImmutableMap<String, Function>>(new Callable<ImmutableMap<String, Function>>() {
             public ImmutableMap<String, Function> call() throws Exception {
+                FlightRecorderEvents.Event event = FlightRecorderEvents.LIBRARY_LOAD.begin();
                 // This creates a dependency between function and the client.
                 // However, we need to know the load paths before we can do anything, so this is necessary.
                 PythonUtils.initializePython();
-                Py.getSystemState().path.append(new PyString(file.getParentFile().getCanonicalPath()));
-                PythonInterpreter interpreter = new PythonInterpreter();
-                try {
-                    interpreter.execfile(file.getCanonicalPath());
-                } catch (IOException e) {
-                    throw new LoadException(file, e);
-                } catch (PyException e) {
-                    throw new LoadException(file, e);
-                }
-                PyStringMap map = (PyStringMap) interpreter.getLocals();
+                InterpreterPool pool = new InterpreterPool(file, compile(namespace, file));
+                // The first instance tells us which functions the library has.
+                Interpreter interpreter = pool.acquire();
+                pool.release(interpreter);
 
                 ImmutableMap.Builder<String, Function> builder = ImmutableMap.builder();
-
-                for (Object key : map.keys()) {
-                    Object o = map.get(Py.java2py(key));
-                    if (o instanceof PyFunction) {
-                        String name = (String) key;
-                        Function f = new PythonFunction(name, (PyFunction) o);
-                        builder.put(name, f);
-                    }
+                for (Map.Entry<String, PyFunction> entry : interpreter.functions.entrySet()) {
+                    builder.put(entry.getKey(), new PythonFunction(entry.getKey(), entry.getValue(), pool));
                 }
-                return builder.build();
+                ImmutableMap<String, Function> functions = builder.build();
+                if (event != null)
+                    event.commit(namespace, "python", file.getPath(), file.length(), functions.size());
+                return functions;
             }
         });
         Thread t = new Thread(task);
@@ -121,6 +123,37 @@ public class PythonLibrary extends FunctionLibrary {
         return task;
     }
 
+    /**
+     * Compile the library to Java bytecode, or read the bytecode from the {@link CodeCache} if it was compiled before.
+     */
+    private static PyCode compile(String namespace, File file) throws LoadException {
+        try {
+            String fileName = file.getCanonicalPath();
+            CodeCache cache = CodeCache.getDefault();
+            File entry = null;
+            byte[] bytes = null;
+            if (cache != null) {
+                entry = cache.entryFor("python", Version.PY_VERSION + "/" + imp.getAPIVersion(), file);
+                bytes = cache.read(entry);
+            }
+            if (bytes == null) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    bytes = imp.compileSource(namespace, in, fileName);
+                } finally {
+                    in.close();
+                }
+                if (cache != null)
+                    cache.write(entry, bytes);
+            }
+            return BytecodeLoader.makeCode(namespace + "$py", bytes, fileName);
+        } catch (IOException e) {
+            throw new LoadException(file, e);
+        } catch (PyException e) {
+            throw new LoadException(file, e);
+        }
+    }
+
     private final String namespace;
     private final File file;
     private Future<ImmutableMap<String, Function>> functionMap;
@@ -174,7 +207,7 @@ public class PythonLibrary extends FunctionLibrary {
      */
     @Override
     public void reload() {
-        this.functionMap = loadScript(this.file);
+        this.functionMap = loadScript(this.namespace, this.file);
         // Because we don't want this to happen asynchronously, get the results of the functionMap immediately.
         try {
             this.functionMap.get();
@@ -183,14 +216,121 @@ public class PythonLibrary extends FunctionLibrary {
         }
     }
 
-    private static final class PythonFunction implements Function {
+    /**
+     * A copy of the library, loaded in a Python interpreter with its own system state.
+     * <p/>
+     * Python code is not safe to run from several threads at the same time, since modules and globals are shared.
+     * Every interpreter has its own modules and globals, so different interpreters can run at the same time.
+     */
+    private static final class Interpreter {
+
+        private final PySystemState systemState;
+        private final ImmutableMap<String, PyFunction> functions;
+
+        private Interpreter(File file, PyCode code) {
+            systemState = new PySystemState();
+            systemState.path.clear();
+            systemState.path.extend(Py.defaultSystemState.path);
+            PySystemState previousState = Py.setSystemState(systemState);
+            try {
+                PythonInterpreter interpreter = new PythonInterpreter(null, systemState);
+                systemState.path.append(new PyString(file.getParentFile().getCanonicalPath()));
+                interpreter.exec(code);
+                PyStringMap map = (PyStringMap) interpreter.getLocals();
+                ImmutableMap.Builder<String, PyFunction> builder = ImmutableMap.builder();
+                for (Object key : map.keys()) {
+                    Object o = map.get(Py.java2py(key));
+                    if (o instanceof PyFunction) {
+                        builder.put((String) key, (PyFunction) o);
+                    }
+                }
+                functions = builder.build();
+            } catch (IOException e) {
+                throw new LoadException(file, e);
+            } catch (PyException e) {
+                throw new LoadException(file, e);
+            } finally {
+                Py.setSystemState(previousState);
+            }
+        }
+
+    }
+
+    /**
+     * The interpreters that have the library loaded.
+     * <p/>
+     * A function call takes an interpreter that is not in use, or loads the library in a new interpreter if all of
+     * them are busy. The pool grows to the number of threads that call functions of the library at the same time.
+     * The library is compiled once; every interpreter runs the same code.
+     * <p/>
+     * The most recently released interpreter is reused first. Serial calls then keep using the same warm
+     * interpreter, with the same module globals, while the others are only used when calls overlap.
+     */
+    private static final class InterpreterPool {
+
+        private final File file;
+        private final PyCode code;
+        private final Deque<Interpreter> idleInterpreters = new ConcurrentLinkedDeque<Interpreter>();
+
+        private InterpreterPool(File file, PyCode code) {
+            this.file = file;
+            this.code = code;
+        }
+
+        private Interpreter acquire() {
+            Interpreter interpreter = idleInterpreters.pollFirst();
+            return interpreter != null ? interpreter : new Interpreter(file, code);
+        }
+
+        private void release(Interpreter interpreter) {
+            idleInterpreters.offerFirst(interpreter);
+        }
+
+    }
+
+    private static final class PythonFunction implements BatchFunction {
 
         private final String name;
-        private final PyFunction fn;
+        private final InterpreterPool pool;
+        private final boolean threadSafe;
+        private final Purity purity;
+        private final ImmutableSet<String> contextKeys;
 
-        public PythonFunction(String name, PyFunction fn) {
+        /**
+         * Create the function. Its metadata is read from the attributes of the Python function:
+         * <pre>
+         * def mouse_x(context):
+         *     return context.data["mouse.position"].x
+         * mouse_x.purity = "pure"
+         * mouse_x.context_keys = ["mouse.position"]
+         * mouse_x.thread_safe = True
+         * </pre>
+         * Functions are volatile by default, since nothing is known about what they read: their results are not
+         * cached and they are invoked again on every frame. Declare them pure to allow caching. The context keys are
+         * unknown unless declared.
+         * <p/>
+         * Module globals belong to an interpreter. A function that keeps state in a global, like a counter, only sees
+         * the changes made by calls in the same interpreter. Serial calls reuse the same interpreter, but calls
+         * from a parallel render can each see a different copy of the globals. Functions are therefore only
+         * evaluated in parallel if they set <code>thread_safe</code> to True, as with Clojure functions.
+         */
+        public PythonFunction(String name, PyFunction fn, InterpreterPool pool) {
             this.name = name;
-            this.fn = fn;
+            this.pool = pool;
+            PyObject threadSafeAttribute = fn.__findattr__("thread_safe");
+            this.threadSafe = threadSafeAttribute != null && threadSafeAttribute.__nonzero__();
+            PyObject purityAttribute = fn.__findattr__("purity");
+            this.purity = purityAttribute == null ? Purity.VOLATILE : Purity.parse(purityAttribute.asString());
+            PyObject contextKeysAttribute = fn.__findattr__("context_keys");
+            if (contextKeysAttribute == null) {
+                this.contextKeys = null;
+            } else {
+                ImmutableSet.Builder<String> keys = ImmutableSet.builder();
+                for (PyObject key : contextKeysAttribute.asIterable()) {
+                    keys.add(key.asString());
+                }
+                this.contextKeys = keys.build();
+            }
         }
 
         public String getName() {
@@ -198,11 +338,55 @@ public class PythonLibrary extends FunctionLibrary {
         }
 
         public Object invoke(Object... args) throws Exception {
-            PyObject[] pyArgs = new PyObject[args.length];
-            for (int i = 0; i < args.length; i++)
-                pyArgs[i] = Py.java2py(args[i]);
+            Interpreter interpreter = pool.acquire();
+            PySystemState previousState = Py.setSystemState(interpreter.systemState);
+            try {
+                PyObject[] pyArgs = new PyObject[args.length];
+                for (int i = 0; i < args.length; i++)
+                    pyArgs[i] = Py.java2py(args[i]);
+                return convertResult(interpreter.functions.get(name).__call__(pyArgs));
+            } finally {
+                Py.setSystemState(previousState);
+                pool.release(interpreter);
+            }
+        }
+
+        /**
+         * Invoke the function for every set of arguments in a single interpreter.
+         * <p/>
+         * Every value is converted to Python only once, so columns that wrap around are not converted again.
+         */
+        public List<?> invokeBatch(List<?>[] columns, int count) throws Exception {
+            Interpreter interpreter = pool.acquire();
+            PySystemState previousState = Py.setSystemState(interpreter.systemState);
+            try {
+                PyFunction fn = interpreter.functions.get(name);
+                PyObject[][] pyColumns = new PyObject[columns.length][];
+                for (int i = 0; i < columns.length; i++) {
+                    PyObject[] pyColumn = new PyObject[Math.min(columns[i].size(), count)];
+                    int j = 0;
+                    for (Object value : columns[i]) {
+                        if (j == pyColumn.length) break;
+                        pyColumn[j++] = Py.java2py(value);
+                    }
+                    pyColumns[i] = pyColumn;
+                }
+                List<Object> results = new ArrayList<Object>(count);
+                for (int j = 0; j < count; j++) {
+                    PyObject[] pyArgs = new PyObject[pyColumns.length];
+                    for (int i = 0; i < pyArgs.length; i++) {
+                        pyArgs[i] = pyColumns[i][j % pyColumns[i].length];
+                    }
+                    results.add(convertResult(fn.__call__(pyArgs)));
+                }
+                return results;
+            } finally {
+                Py.setSystemState(previousState);
+                pool.release(interpreter);
+            }
+        }
 
-            PyObject pyResult = fn.__call__(pyArgs);
+        private static Object convertResult(PyObject pyResult) {
             if (pyResult == null)
                 return null;
             // todo: number conversions should be handled higher up in the code, and not at the Jython level.
@@ -219,5 +403,17 @@ public class PythonLibrary extends FunctionLibrary {
             // todo: check if keeping a list of arguments makes sense in a python environment.
             return ImmutableList.of();
         }
+
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+
+        public Purity getPurity() {
+            return purity;
+        }
+
+        public ImmutableSet<String> getContextKeys() {
+            return contextKeys;
+        }
     }
 }
@@ -0,0 +1,20 @@
+package nodebox.function;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Lists the keys of the context data that a library method reads from its {@link nodebox.node.NodeContext} argument.
+ * <p/>
+ * Results of such a method can be cached for the values of these keys. A method that takes the context without
+ * this annotation is assumed to read any key.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadsContext {
+
+    String[] value();
+
+}
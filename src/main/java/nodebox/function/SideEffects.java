@@ -0,0 +1,17 @@
+package nodebox.function;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a library method that changes state outside of the method, for example by sending a message.
+ * It is invoked on every render, even if its arguments did not change.
+ *
+ * @see Purity#SIDE_EFFECTS
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SideEffects {
+}
@@ -29,6 +29,7 @@ public class StringFunctions {
      * <p/>
      * This function is used for using strings as variables in NodeBox.
      */
+    @ThreadSafe
     public static String string(String s) {
         return s;
     }
@@ -41,6 +42,7 @@ public class StringFunctions {
      * @param separator The separator, e.g. ";". If the separator is empty, return each character separately.
      * @return A list of strings.
      */
+    @ThreadSafe
     public static List<String> makeStrings(String s, String separator) {
         if (s == null) {
             return ImmutableList.of();
@@ -51,17 +53,20 @@ public class StringFunctions {
         return ImmutableList.copyOf(Splitter.on(separator).split(s));
     }
     
+    @ThreadSafe
     public static int length(String s) {
         if (s == null) return 0;
         return s.length();
     }
 
+    @ThreadSafe
     public static int wordCount(String s) {
         if (s == null) return 0;
         Iterable<String> split = Splitter.onPattern("\\w+").split(s);
         return Iterables.size(split) - 1;
     }
 
+    @ThreadSafe
     public static String concatenate(String s1, String s2, String s3, String s4, String s5, String s6, String s7) {
         StringBuilder sb = new StringBuilder();
         if (s1 != null) {
@@ -88,6 +93,7 @@ public class StringFunctions {
         return sb.toString();
     }
 
+    @ThreadSafe
     public static String changeCase(String value, String caseMethod) {
         caseMethod = caseMethod.toLowerCase();
         if (caseMethod.equals("lowercase")) {
@@ -101,6 +107,7 @@ public class StringFunctions {
         }
     }
 
+    @ThreadSafe
     public static String formatNumber(double value, String format) {
         return String.format(Locale.US, format, value);
     }
@@ -111,6 +118,7 @@ public class StringFunctions {
      * added because it wasn't obvious that makeString would give
      * you characters when no seperator was present
      */
+    @ThreadSafe
     public static List<String> characters(String s) {
         if (s == null) {
             return ImmutableList.of();
@@ -122,6 +130,7 @@ public class StringFunctions {
      * generates a list of random characters 
      * characters pulled from characterSet
      */
+    @ThreadSafe
     public static List<String> randomCharacter(String characterSet, long amount, long seed) {
         List<String> result = new ArrayList<String>();
         Random r = new Random(seed * 1000000000);
@@ -139,6 +148,7 @@ public class StringFunctions {
      * then converts those bytes into a binary representation
      * with proper zero padding
      */
+    @ThreadSafe
     public static String asBinaryString(String s, String digitSep, String byteSep) {
         if (s ==null) {
             return s;
@@ -166,6 +176,7 @@ public class StringFunctions {
      * then converts those bytes into a binary representation
      * with proper zero padding
      */
+    @ThreadSafe
     public static List<String> asBinaryList(String s) {
         List<String> result = new ArrayList<String>();
         if (s == null) {
@@ -191,6 +202,7 @@ public class StringFunctions {
      * checked to base/radix 20
      * optional zero padding
      */
+    @ThreadSafe
     public static List<String> asNumberList(String s, long radix, boolean padding) {
         List<String> numberList = new ArrayList<String>();
         if ((radix < 2) || (s == null)) {
@@ -264,6 +276,7 @@ public class StringFunctions {
     /**
      * output the character at a given index
      */
+    @ThreadSafe
     public static String characterAt(String s, long index) {
         if (s == null || s.isEmpty()) {
             return s;
@@ -281,6 +294,7 @@ public class StringFunctions {
     /**
      * output a list of characters:count pairs 
      */
+    @ThreadSafe
     public static String countCharacters(String s) {
         // TODO
         return s;
@@ -289,6 +303,7 @@ public class StringFunctions {
     /**
      * Determine if the string contains a given string
      */
+    @ThreadSafe
     public static boolean contains(String s, String value) {
         if ((s==null) || (value==null)) {
             return false;
@@ -299,6 +314,7 @@ public class StringFunctions {
     /**
      * Determine if the string end with a given string
      */
+    @ThreadSafe
     public static boolean endsWith(String s, String value) {
         if ((s==null) || (value==null)) {
             return false;
@@ -311,6 +327,7 @@ public class StringFunctions {
      * optional case sensitivity
      * function renamed to equal because of name conflict
      */
+    @ThreadSafe
     public static boolean equal(String s, String value, boolean caseSensitive) {
         if ((s==null) || (value==null)) {
             return false;
@@ -325,6 +342,7 @@ public class StringFunctions {
     /**
      * Replace part of a string
      */
+    @ThreadSafe
     public static String replace(String s, String oldVal, String newVal) {
         if ((oldVal==null) || (newVal==null)) {
             return s;
@@ -335,6 +353,7 @@ public class StringFunctions {
     /**
      * Determine if the string starts with a given string
      */
+    @ThreadSafe
     public static boolean startsWith(String s, String value) {
         if ((s==null) || (value==null)) {
             return false;
@@ -347,6 +366,7 @@ public class StringFunctions {
      * start and end values are indices of the characters
      * endOffset controls whether the character at the end position should be included or not
      */
+    @ThreadSafe
     public static String subString(String s, long start, long end, boolean endOffset) {
         if (s == null) {
             return s;
@@ -369,6 +389,7 @@ public class StringFunctions {
     /**
      * Remove white space from the start and end
      */
+    @ThreadSafe
     public static String trim(String s) {
         if (s==null) {
             return s;
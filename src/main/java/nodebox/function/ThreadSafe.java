@@ -0,0 +1,17 @@
+package nodebox.function;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a library method as safe to invoke from several threads at once.
+ * <p/>
+ * The method should only read its arguments and return a new value, without touching shared state.
+ * The node context uses this to spread list-matched invocations over multiple threads.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ThreadSafe {
+}
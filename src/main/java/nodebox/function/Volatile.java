@@ -0,0 +1,17 @@
+package nodebox.function;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a library method whose result can change while its arguments stay the same, for example because it reads
+ * from the network or from a device. Its results are never cached.
+ *
+ * @see Purity#VOLATILE
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Volatile {
+}
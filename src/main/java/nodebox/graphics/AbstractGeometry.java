@@ -78,6 +78,14 @@ public abstract class AbstractGeometry extends AbstractTransformable implements
 
     public abstract Point pointAt(double t);
 
+    /**
+     * Calculate the length of the geometry. This is not the number of segments, but rather the sum of all segment
+     * lengths.
+     *
+     * @return the length of the geometry.
+     */
+    public abstract double getLength();
+
     public abstract IGeometry clone();
 
     /**
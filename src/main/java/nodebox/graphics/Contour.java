@@ -3,65 +3,140 @@ package nodebox.graphics;
 import com.google.common.base.Function;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-
+import java.util.RandomAccess;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * A list of points that form a line, open or closed.
+ * <p/>
+ * The points are stored in packed arrays, not as Point objects: one array holds the x and y coordinates, the other
+ * the point types. Most contours only consist of LINE_TO points, so the type array is only created when the first
+ * point of another type is added. Point objects are created when they are asked for.
+ */
 public class Contour extends AbstractGeometry {
 
     private static final BasicStroke DEFAULT_STROKE = new BasicStroke(1);
     private static final int SEGMENT_ACCURACY = 20;
+    private static final double[] EMPTY_COORDINATES = new double[0];
 
-    private List<Point> points;
+    // The coordinates of the points, as x0, y0, x1, y1, ...
+    private double[] coordinates;
+    // The type of each point, or null if all points are LINE_TO points.
+    private byte[] types;
+    private int size;
     private boolean closed;
-    private transient ArrayList<Double> segmentLengths;
-    private transient double length = -1;
+    private transient volatile SegmentLengths segmentLengths;
 
     public Contour() {
-        points = new ArrayList<Point>();
+        coordinates = EMPTY_COORDINATES;
         closed = false;
     }
 
     public Contour(Contour other) {
-        points = new ArrayList<Point>(other.points.size());
-        for (Point p : other.points) {
-            points.add(p);
-        }
+        coordinates = Arrays.copyOf(other.coordinates, other.size * 2);
+        types = other.types == null ? null : Arrays.copyOf(other.types, other.size);
+        size = other.size;
         closed = other.closed;
     }
 
     public Contour(Iterable<Point> points, boolean closed) {
-        this.points = new ArrayList<Point>();
+        coordinates = EMPTY_COORDINATES;
+        if (points instanceof Collection) {
+            ensureCapacity(((Collection<Point>) points).size());
+        }
         for (Point p : points) {
-            this.points.add(p);
+            addPoint(p.x, p.y, p.type);
         }
         this.closed = closed;
     }
 
+    /**
+     * Create a contour that takes ownership of the given arrays.
+     */
+    private Contour(double[] coordinates, byte[] types, int size, boolean closed) {
+        this.coordinates = coordinates;
+        this.types = types;
+        this.size = size;
+        this.closed = closed;
+    }
+
     //// Point operations ////
 
     public int getPointCount() {
-        return points.size();
+        return size;
     }
 
+    /**
+     * Get the points of the contour.
+     * <p/>
+     * This returns a live view: points added later are also part of the list. The list itself can not be changed;
+     * use {@link #addPoint(Point)} to add points. Every call to get creates a new Point object.
+     *
+     * @return a list of Points.
+     */
     public java.util.List<Point> getPoints() {
-        return points;
+        return new PointList();
+    }
+
+    public Point getPoint(int index) {
+        checkElementIndex(index, size);
+        return new Point(coordinates[index * 2], coordinates[index * 2 + 1], type(index));
+    }
+
+    double x(int index) {
+        return coordinates[index * 2];
     }
 
-    void setPoints(List<Point> points) {
-        this.points = points;
+    double y(int index) {
+        return coordinates[index * 2 + 1];
+    }
+
+    int type(int index) {
+        return types == null ? Point.LINE_TO : types[index];
     }
 
     public void addPoint(Point pt) {
-        points.add(pt);
-        invalidate();
+        addPoint(pt.x, pt.y, pt.type);
     }
 
     public void addPoint(double x, double y) {
-        points.add(new Point(x, y));
+        addPoint(x, y, Point.LINE_TO);
+    }
+
+    public void addPoint(double x, double y, int type) {
+        checkArgument(type == (byte) type, "Invalid point type %s.", type);
+        ensureCapacity(size + 1);
+        coordinates[size * 2] = x;
+        coordinates[size * 2 + 1] = y;
+        if (types == null && type != Point.LINE_TO) {
+            types = new byte[coordinates.length / 2];
+            Arrays.fill(types, 0, size, (byte) Point.LINE_TO);
+        }
+        if (types != null) {
+            types[size] = (byte) type;
+        }
+        size++;
         invalidate();
     }
 
+    private void ensureCapacity(int capacity) {
+        int oldCapacity = coordinates.length / 2;
+        if (capacity <= oldCapacity) return;
+        int newCapacity = Math.max(capacity, Math.max(oldCapacity + (oldCapacity >> 1), 10));
+        coordinates = Arrays.copyOf(coordinates, newCapacity * 2);
+        if (types != null) {
+            types = Arrays.copyOf(types, newCapacity);
+        }
+    }
+
     //// Close ////
 
     public boolean isClosed() {
@@ -81,11 +156,11 @@ public class Contour extends AbstractGeometry {
     //// Geometric queries ////
 
     public boolean isEmpty() {
-        return points.isEmpty();
+        return size == 0;
     }
 
     public Rect getBounds() {
-        if (points.isEmpty()) {
+        if (size == 0) {
             return new Rect();
         }
         double minX = Double.MAX_VALUE;
@@ -93,9 +168,9 @@ public class Contour extends AbstractGeometry {
         double maxX = Double.MIN_VALUE;
         double maxY = Double.MIN_VALUE;
         double px, py;
-        for (Point p : points) {
-            px = p.getX();
-            py = p.getY();
+        for (int i = 0; i < size * 2; i += 2) {
+            px = coordinates[i];
+            py = coordinates[i + 1];
             if (px < minX) minX = px;
             if (py < minY) minY = py;
             if (px > maxX) maxX = px;
@@ -119,44 +194,55 @@ public class Contour extends AbstractGeometry {
     }
 
     public double updateSegmentLengths() {
-        java.util.List<Point> points = getPoints();
-        segmentLengths = new ArrayList<Double>();
+        return computeSegmentLengths().length;
+    }
+
+    /**
+     * Get the cached segment lengths, calculating them if the cache was invalidated.
+     * <p/>
+     * The lengths are calculated into a new snapshot that is published with a single write, so a contour that is
+     * measured from more than one thread at the same time never shows a half-updated cache.
+     */
+    private SegmentLengths getSegmentLengths() {
+        SegmentLengths lengths = segmentLengths;
+        return lengths != null ? lengths : computeSegmentLengths();
+    }
+
+    private SegmentLengths computeSegmentLengths() {
+        // Every point except the first starts at most one segment, and closing the contour adds one more.
+        double[] segmentLengths = new double[size];
+        int segmentCount = 0;
         double totalLength = 0;
 
         // We cannot form a line or curve with the first point.
         // Since the algorithm looks back at previous points, we
         // start looking from the first useful point, which is
         // the second (index of 1).
-        for (int pi = 1; pi < points.size(); pi++) {
-            Point pt = points.get(pi);
-            if (pt.isLineTo()) {
-                Point pt0 = points.get(pi - 1);
-                double length = Path.lineLength(pt0.x, pt0.y, pt.x, pt.y);
-                segmentLengths.add(length);
+        for (int pi = 1; pi < size; pi++) {
+            int type = type(pi);
+            if (type == Point.LINE_TO) {
+                double length = Path.lineLength(x(pi - 1), y(pi - 1), x(pi), y(pi));
+                segmentLengths[segmentCount++] = length;
                 totalLength += length;
-            } else if (pt.isCurveTo()) {
-                Point pt0 = points.get(pi - 3);
-                Point c1 = points.get(pi - 2);
-                Point c2 = points.get(pi - 1);
-                double length = Path.curveLength(pt0.x, pt0.y,
-                        c1.x, c1.y,
-                        c2.x, c2.y,
-                        pt.x, pt.y, SEGMENT_ACCURACY);
-                segmentLengths.add(length);
+            } else if (type == Point.CURVE_TO) {
+                double length = Path.curveLength(x(pi - 3), y(pi - 3),
+                        x(pi - 2), y(pi - 2),
+                        x(pi - 1), y(pi - 1),
+                        x(pi), y(pi), SEGMENT_ACCURACY);
+                segmentLengths[segmentCount++] = length;
                 totalLength += length;
             }
         }
         // If the path is closed, add the closing segment.
-        if (closed && !points.isEmpty()) {
-            Point pt0 = points.get(points.size() - 1);
-            Point pt1 = points.get(0);
-            double length = Path.lineLength(pt0.x, pt0.y, pt1.x, pt1.y);
-            segmentLengths.add(length);
+        if (closed && size > 0) {
+            double length = Path.lineLength(x(size - 1), y(size - 1), x(0), y(0));
+            segmentLengths[segmentCount++] = length;
             totalLength += length;
         }
 
-        this.length = totalLength;
-        return totalLength;
+        SegmentLengths lengths = new SegmentLengths(segmentLengths, segmentCount, totalLength);
+        this.segmentLengths = lengths;
+        return lengths;
     }
 
     /**
@@ -165,10 +251,7 @@ public class Contour extends AbstractGeometry {
      * @return the length of the contour
      */
     public double getLength() {
-        if (segmentLengths == null)
-            updateSegmentLengths();
-        assert (length != -1);
-        return length;
+        return getSegmentLengths().length;
     }
 
     /**
@@ -184,16 +267,35 @@ public class Contour extends AbstractGeometry {
      * @return coordinates for point at t.
      */
     public Point pointAt(double t) {
-        if (segmentLengths == null)
-            updateSegmentLengths();
+        double[] xy = new double[2];
+        int type = pointAt(t, xy, 0);
+        return new Point(xy[0], xy[1], type);
+    }
+
+    /**
+     * Calculate the point at t and store its coordinates in the given array.
+     *
+     * @param t      relative coordinate of the point (between 0.0 and 1.0)
+     * @param out    the array to store the x and y coordinate in.
+     * @param offset the index of the x coordinate in the array.
+     * @return the type of the point.
+     */
+    private int pointAt(double t, double[] out, int offset) {
+        SegmentLengths lengths = getSegmentLengths();
+        double[] segmentLengths = lengths.segments;
+        int segmentCount = lengths.count;
+        double length = lengths.length;
 
         // Check if there is a path.
-        if (points.isEmpty())
+        if (size == 0)
             throw new NodeBoxError("The path is empty.");
 
         // If the path has no length, return the position of the first point.
-        if (length == 0)
-            return points.get(0);
+        if (length == 0) {
+            out[offset] = x(0);
+            out[offset + 1] = y(0);
+            return type(0);
+        }
 
         // Since t is relative, convert it to the absolute length.
         double absT = t * length;
@@ -202,39 +304,38 @@ public class Contour extends AbstractGeometry {
 
         // Find the segment that contains t.
         int segnum = -1;
-        for (Double seglength : segmentLengths) {
+        for (int i = 0; i < segmentCount; i++) {
+            double seglength = segmentLengths[i];
             segnum++;
-            if (absT <= seglength || segnum == segmentLengths.size() - 1)
+            if (absT <= seglength || segnum == segmentCount - 1)
                 break;
             absT -= seglength;
             resT -= seglength / length;
         }
-        resT /= (segmentLengths.get(segnum) / length);
+        resT /= (segmentLengths[segnum] / length);
 
         // Find the point index for the segment.
         int pi = pointIndexForSegment(segnum + 1);
-        Point pt1 = points.get(pi);
+        int pi1 = pi;
         // If the path is closed, the point index is set to zero.
         // Set the index to the last point to get the one-but-last point for pt0. 
         if (pi == 0) {
-            pi = points.size();
+            pi = size;
         }
 
-        if (pt1.isLineTo()) {
-            Point pt0 = points.get(pi - 1);
-            return Path.linePoint(resT, pt0.x, pt0.y, pt1.x, pt1.y);
-        } else if (pt1.isCurveTo()) {
-            Point pt0 = points.get(pi - 3);
-            Point c1 = points.get(pi - 2);
-            Point c2 = points.get(pi - 1);
-            return Path.curvePoint(resT,
-                    pt0.x, pt0.y,
-                    c1.x, c1.y,
-                    c2.x, c2.y,
-                    pt1.x, pt1.y);
+        int type = type(pi1);
+        if (type == Point.LINE_TO) {
+            Path.linePoint(resT, x(pi - 1), y(pi - 1), x(pi1), y(pi1), out, offset);
+        } else if (type == Point.CURVE_TO) {
+            Path.curvePoint(resT,
+                    x(pi - 3), y(pi - 3),
+                    x(pi - 2), y(pi - 2),
+                    x(pi - 1), y(pi - 1),
+                    x(pi1), y(pi1), out, offset);
         } else {
             throw new AssertionError("Incorrect point.");
         }
+        return Point.LINE_TO;
     }
 
     /**
@@ -259,14 +360,15 @@ public class Contour extends AbstractGeometry {
      */
     private int pointIndexForSegment(int segnum) {
         int pointIndex = 0;
-        for (Point pt : points) {
-            if (pt.isCurveTo() || pt.isLineTo()) {
+        for (int i = 0; i < size; i++) {
+            int type = type(i);
+            if (type == Point.CURVE_TO || type == Point.LINE_TO) {
                 if (segnum == 0) break;
                 segnum--;
             }
             pointIndex++;
         }
-        int pointCount = points.size();
+        int pointCount = size;
         if (pointIndex < pointCount) {
             return pointIndex;
         } else if (closed) {
@@ -286,7 +388,7 @@ public class Contour extends AbstractGeometry {
      */
     public Point[] makePoints(int amount) {
         // If the contour is empty, pointAt will fail. Return an empty array.
-        if (points.isEmpty()) return new Point[0];
+        if (size == 0) return new Point[0];
         Point[] points = new Point[amount];
         double delta = 1;
         if (closed) {
@@ -343,10 +445,26 @@ public class Contour extends AbstractGeometry {
      * @return a new Contour with the given number of points.
      */
     public Contour resampleByAmount(int amount) {
-        Contour c = new Contour();
-        c.extend(makePoints(amount));
-        c.setClosed(closed);
-        return c;
+        // If the contour is empty, pointAt will fail. Return an empty contour.
+        if (size == 0) {
+            Contour c = new Contour();
+            c.setClosed(closed);
+            return c;
+        }
+        double delta = pointDelta(amount, closed);
+        double[] newCoordinates = new double[amount * 2];
+        byte[] newTypes = null;
+        for (int i = 0; i < amount; i++) {
+            int type = pointAt(delta * i, newCoordinates, i * 2);
+            if (type != Point.LINE_TO) {
+                if (newTypes == null) {
+                    newTypes = new byte[amount];
+                    Arrays.fill(newTypes, (byte) Point.LINE_TO);
+                }
+                newTypes[i] = (byte) type;
+            }
+        }
+        return new Contour(newCoordinates, newTypes, amount, closed);
     }
 
     /**
@@ -399,19 +517,14 @@ public class Contour extends AbstractGeometry {
     /* package private */
 
     void _extendPath(GeneralPath gp) {
-        if (points.size() == 0) return;
-        Point pt = points.get(0);
-        Point ctrl1, ctrl2;
-        gp.moveTo(pt.x, pt.y);
-        int pointCount = getPointCount();
-        for (int i = 1; i < pointCount; i++) {
-            pt = points.get(i);
-            if (pt.isLineTo()) {
-                gp.lineTo(pt.x, pt.y);
-            } else if (pt.isCurveTo()) {
-                ctrl1 = points.get(i - 2);
-                ctrl2 = points.get(i - 1);
-                gp.curveTo(ctrl1.x, ctrl1.y, ctrl2.x, ctrl2.y, pt.x, pt.y);
+        if (size == 0) return;
+        gp.moveTo(x(0), y(0));
+        for (int i = 1; i < size; i++) {
+            int type = type(i);
+            if (type == Point.LINE_TO) {
+                gp.lineTo(x(i), y(i));
+            } else if (type == Point.CURVE_TO) {
+                gp.curveTo(x(i - 2), y(i - 2), x(i - 1), y(i - 1), x(i), y(i));
             }
         }
         if (closed)
@@ -419,10 +532,20 @@ public class Contour extends AbstractGeometry {
     }
 
     public void transform(Transform t) {
-        this.points = t.map(getPoints());
+        t.getAffineTransform().transform(coordinates, 0, coordinates, 0, size);
         invalidate();
     }
 
+    /**
+     * Return a transformed copy of the contour.
+     */
+    Contour transformed(AffineTransform t) {
+        double[] newCoordinates = new double[size * 2];
+        t.transform(coordinates, 0, newCoordinates, 0, size);
+        byte[] newTypes = types == null ? null : Arrays.copyOf(types, size);
+        return new Contour(newCoordinates, newTypes, size, closed);
+    }
+
     //// Conversions ////
 
     public Path toPath() {
@@ -447,4 +570,36 @@ public class Contour extends AbstractGeometry {
         return new Contour(this);
     }
 
+    /**
+     * The cached lengths of the segments of the contour and their sum.
+     */
+    private static final class SegmentLengths {
+        private final double[] segments;
+        private final int count;
+        private final double length;
+
+        private SegmentLengths(double[] segments, int count, double length) {
+            this.segments = segments;
+            this.count = count;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A read-only view of the points in the contour.
+     */
+    private final class PointList extends AbstractList<Point> implements RandomAccess {
+
+        @Override
+        public Point get(int index) {
+            return getPoint(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
 }
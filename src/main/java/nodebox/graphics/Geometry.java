@@ -10,9 +10,9 @@ public class Geometry extends AbstractGeometry implements Colorizable {
 
     private ArrayList<Path> paths;
     private Path currentPath;
-    private boolean lengthDirty = true;
-    private ArrayList<Double> pathLengths;
-    private double groupLength;
+    // The cached length, or -1 if it needs to be calculated. Read and written in one step, so the geometry can be
+    // measured from more than one thread at the same time.
+    private volatile double groupLength = -1;
 
     public Geometry() {
         paths = new ArrayList<Path>();
@@ -202,7 +202,7 @@ public class Geometry extends AbstractGeometry implements Colorizable {
     }
 
     private void invalidate(boolean recursive) {
-        lengthDirty = true;
+        groupLength = -1;
         if (recursive) {
             for (Path path : paths) {
                 path.invalidate();
@@ -239,22 +239,15 @@ public class Geometry extends AbstractGeometry implements Colorizable {
      * @return the length of the path.
      */
     public double getLength() {
-        if (lengthDirty) {
-            updatePathLengths();
-        }
-        return groupLength;
-    }
-
-    private void updatePathLengths() {
-        pathLengths = new ArrayList<Double>(paths.size());
-        groupLength = 0;
-        double length;
-        for (Path p : paths) {
-            length = p.getLength();
-            pathLengths.add(length);
-            groupLength += length;
+        double length = groupLength;
+        if (length < 0) {
+            length = 0;
+            for (Path p : paths) {
+                length += p.getLength();
+            }
+            groupLength = length;
         }
-        lengthDirty = false;
+        return length;
     }
 
     /**
@@ -1,5 +1,7 @@
 package nodebox.graphics;
 
+import nodebox.util.FlightRecorderEvents;
+
 import javax.imageio.ImageIO;
 import javax.management.RuntimeErrorException;
 import java.awt.*;
@@ -27,11 +29,14 @@ public class Image extends AbstractGrob {
         if (file == null || file.getPath().equals(BLANK_IMAGE)) {
             image = blankImage;
         } else {
+            FlightRecorderEvents.Event event = FlightRecorderEvents.FILE_IMPORT.begin();
             try {
                 image = ImageIO.read(file);
             } catch (IOException e) {
                 throw new RuntimeErrorException(null, "Could not read image " + file);
             }
+            if (event != null)
+                event.commit(file.getPath(), "image", file.length(), image != null ? (long) image.getWidth() * image.getHeight() : 0L);
         }
     }
 
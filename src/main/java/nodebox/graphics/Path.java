@@ -22,11 +22,11 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
     private ArrayList<Contour> contours;
     private transient Contour currentContour = null;
     private transient boolean pathDirty = true;
-    private transient boolean lengthDirty = true;
     private transient java.awt.geom.GeneralPath awtPath;
     private transient Rect bounds;
-    private transient ArrayList<Double> contourLengths;
-    private transient double pathLength = -1;
+    // The cached length, or -1 if it needs to be calculated. Read and written in one step, so the path can be measured
+    // from more than one thread at the same time.
+    private transient volatile double pathLength = -1;
 
     public Path() {
         fillColor = Color.BLACK;
@@ -164,9 +164,10 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
     public void curveto(double x1, double y1, double x2, double y2, double x3, double y3) {
         if (currentContour == null)
             throw new RuntimeException("Curveto without moveto first.");
-        addPoint(new Point(x1, y1, Point.CURVE_DATA));
-        addPoint(new Point(x2, y2, Point.CURVE_DATA));
-        addPoint(new Point(x3, y3, Point.CURVE_TO));
+        currentContour.addPoint(x1, y1, Point.CURVE_DATA);
+        currentContour.addPoint(x2, y2, Point.CURVE_DATA);
+        currentContour.addPoint(x3, y3, Point.CURVE_TO);
+        invalidate(false);
     }
 
     public void close() {
@@ -215,7 +216,7 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
 
     private void invalidate(boolean recursive) {
         pathDirty = true;
-        lengthDirty = true;
+        pathLength = -1;
         if (recursive) {
             for (Contour c : contours) {
                 c.invalidate();
@@ -516,6 +517,14 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
                 y0 + t * (y1 - y0));
     }
 
+    /**
+     * Stores the coordinates of the point at t on the line in the given array, at offset and offset + 1.
+     */
+    static void linePoint(double t, double x0, double y0, double x1, double y1, double[] out, int offset) {
+        out[offset] = x0 + t * (x1 - x0);
+        out[offset + 1] = y0 + t * (y1 - y0);
+    }
+
     /**
      * Returns the length of the spline.
      * <p/>
@@ -573,11 +582,12 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
         double t;
         double px, py;
         double tmpX, tmpY;
+        double[] pt = new double[2];
         for (int i = 0; i < n; i++) {
             t = (i + 1) / (double) n;
-            Point pt = curvePoint(t, x0, y0, x1, y1, x2, y2, x3, y3);
-            px = pt.getX();
-            py = pt.getY();
+            curvePoint(t, x0, y0, x1, y1, x2, y2, x3, y3, pt, 0);
+            px = pt[0];
+            py = pt[1];
             tmpX = Math.abs(xi - px);
             tmpX *= tmpX;
             tmpY = Math.abs(yi - py);
@@ -608,6 +618,15 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
      * @return a Point at position t on the spline.
      */
     public static Point curvePoint(double t, double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3) {
+        double[] out = new double[2];
+        curvePoint(t, x0, y0, x1, y1, x2, y2, x3, y3, out, 0);
+        return new Point(out[0], out[1]);
+    }
+
+    /**
+     * Stores the coordinates of the point at t on the spline in the given array, at offset and offset + 1.
+     */
+    static void curvePoint(double t, double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3, double[] out, int offset) {
         double mint = 1 - t;
         double x01 = x0 * mint + x1 * t;
         double y01 = y0 * mint + y1 * t;
@@ -622,7 +641,8 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
         double out_c2y = y12 * mint + y23 * t;
         double out_x = out_c1x * mint + out_c2x * t;
         double out_y = out_c1y * mint + out_c2y * t;
-        return new Point(out_x, out_y);
+        out[offset] = out_x;
+        out[offset + 1] = out_y;
     }
 
     /**
@@ -631,22 +651,15 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
      * @return the length of the path.
      */
     public double getLength() {
-        if (lengthDirty) {
-            updateContourLengths();
-        }
-        return pathLength;
-    }
-
-    private void updateContourLengths() {
-        contourLengths = new ArrayList<Double>(contours.size());
-        pathLength = 0;
-        double length;
-        for (Contour c : contours) {
-            length = c.getLength();
-            contourLengths.add(length);
-            pathLength += length;
+        double length = pathLength;
+        if (length < 0) {
+            length = 0;
+            for (Contour c : contours) {
+                length += c.getLength();
+            }
+            pathLength = length;
         }
-        lengthDirty = false;
+        return length;
     }
 
     public Contour contourAt(double t) {
@@ -914,7 +927,7 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
 
     public java.awt.geom.GeneralPath getGeneralPath() {
         if (!pathDirty) return awtPath;
-        GeneralPath gp = new GeneralPath(GeneralPath.WIND_NON_ZERO);
+        GeneralPath gp = new GeneralPath(GeneralPath.WIND_NON_ZERO, getPointCount() + contours.size());
         for (Contour c : contours) {
             c._extendPath(gp);
         }
@@ -963,7 +976,7 @@ public class Path extends AbstractGeometry implements Colorizable, Iterable<Poin
 
     public void transform(Transform t) {
         for (Contour c : contours) {
-            c.setPoints(t.map(c.getPoints()));
+            c.transform(t);
         }
         invalidate(true);
     }
@@ -26,44 +26,33 @@ public class SVGRenderer {
         sb.append(smartFloat(v));
     }
 
+    private static void appendPoint(StringBuilder sb, Contour c, int index) {
+        appendFloat(sb, c.x(index));
+        sb.append(',');
+        appendFloat(sb, c.y(index));
+    }
+
     public static String renderPathData(Path path) {
         StringBuilder sb = new StringBuilder();
         for (Contour c : path.getContours()) {
-            List<Point> points = c.getPoints();
-            for (int i = 0; i < points.size(); i += 1) {
-                Point pt = points.get(i);
-                if (pt.getType() == Point.LINE_TO) {
-                    if (i == 0) {
-                        sb.append('M');
-                        appendFloat(sb, pt.x);
-                        sb.append(',');
-                        appendFloat(sb, pt.y);
-                    } else {
-                        sb.append('L');
-                        appendFloat(sb, pt.x);
-                        sb.append(',');
-                        appendFloat(sb, pt.y);
-                    }
-                } else if (pt.getType() == Point.CURVE_DATA) {
+            int pointCount = c.getPointCount();
+            for (int i = 0; i < pointCount; i += 1) {
+                int type = c.type(i);
+                if (type == Point.LINE_TO) {
+                    sb.append(i == 0 ? 'M' : 'L');
+                    appendPoint(sb, c, i);
+                } else if (type == Point.CURVE_DATA) {
                     // We expect three points.
                     sb.append('C');
-                    appendFloat(sb, pt.x);
-                    sb.append(',');
-                    appendFloat(sb, pt.y);
+                    appendPoint(sb, c, i);
 
-                    pt = points.get(++i);
-                    checkState(pt.getType() == Point.CURVE_DATA);
+                    checkState(c.type(++i) == Point.CURVE_DATA);
                     sb.append(' ');
-                    appendFloat(sb, pt.x);
-                    sb.append(',');
-                    appendFloat(sb, pt.y);
+                    appendPoint(sb, c, i);
 
-                    pt = points.get(++i);
-                    checkState(pt.getType() == Point.CURVE_TO);
+                    checkState(c.type(++i) == Point.CURVE_TO);
                     sb.append(' ');
-                    appendFloat(sb, pt.x);
-                    sb.append(',');
-                    appendFloat(sb, pt.y);
+                    appendPoint(sb, c, i);
                 }
             }
             if (c.isClosed()) {
@@ -167,8 +167,7 @@ public class Transform implements Cloneable {
     public Path map(Path p) {
         Path newPath = new Path(p, false);
         for (Contour c : p.getContours()) {
-            Contour newContour = new Contour(map(c.getPoints()), c.isClosed());
-            newPath.add(newContour);
+            newPath.add(c.transformed(affineTransform));
         }
         return newPath;
     }
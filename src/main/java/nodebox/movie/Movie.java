@@ -1,5 +1,7 @@
 package nodebox.movie;
 
+import nodebox.util.TraceRecorder;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -118,12 +120,16 @@ public class Movie {
         if (img.getWidth() != width || img.getHeight() != height) {
             throw new RuntimeException("Given image does not have the same size as the movie.");
         }
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
+        int frame = frameCount;
         try {
-            ImageIO.write(img, "png", temporaryFileForFrame(frameCount));
+            ImageIO.write(img, "png", temporaryFileForFrame(frame));
             frameCount++;
         } catch (IOException e) {
             cleanupAndThrowException(e);
         }
+        if (trace != null) trace.complete("export", "Movie frame " + frame, startTime);
     }
 
     public void save() {
@@ -134,6 +140,8 @@ public class Movie {
      * Finishes the export and save the movie.
      */
     public void save(StringWriter sw) {
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
         PrintWriter out = new PrintWriter(sw, true);
 
         ArrayList<String> commandList = new ArrayList<String>();
@@ -170,6 +178,7 @@ public class Movie {
             cleanupAndThrowException(e);
         }
         cleanup();
+        if (trace != null) trace.complete("export", "Encode movie", startTime);
     }
 
     /**
@@ -0,0 +1,338 @@
+package nodebox.node;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A node library compiled for evaluation.
+ * <p/>
+ * The plan resolves everything about the structure of the library up front: the absolute path of every node,
+ * the upstream node connected to each input port and the children that published ports map to.
+ * Evaluating a node then only needs index lookups instead of scanning the connections of its network.
+ * <p/>
+ * The plan only depends on the root node. It is built once per library and shared by all
+ * library versions with the same root. When a library version changes the root, networks that did not change
+ * are taken over from the plan of the previous version, so only the changed part of the tree is compiled again.
+ * Function handles are not part of the plan, since they depend on the function repository of the node context.
+ */
+final class EvaluationPlan {
+
+    private static final Splitter PATH_SPLITTER = Splitter.on('/');
+    private static final Slot[] NO_SLOTS = new Slot[0];
+
+    private final Slot root;
+    private final int slotCount;
+
+    static EvaluationPlan compile(Node root) {
+        return compile(root, null);
+    }
+
+    /**
+     * Compile the node tree, reusing the unchanged networks of a previous plan.
+     * <p/>
+     * Reused networks keep their slot ids, so the ids of slots that are no longer in use are not handed out again.
+     * Once these make up more than half of the ids, the tree is compiled from scratch.
+     *
+     * @param root     The root node.
+     * @param previous The plan of an earlier version of the library. Can be null.
+     * @return The evaluation plan.
+     */
+    static EvaluationPlan compile(Node root, EvaluationPlan previous) {
+        checkNotNull(root);
+        if (previous != null && previous.root.node == root) return previous;
+        EvaluationPlan plan = new Compiler(previous).compile(root);
+        if (previous != null && plan.slotCount > 2 * plan.root.subtreeSize() + 64) {
+            plan = new Compiler(null).compile(root);
+        }
+        return plan;
+    }
+
+    private EvaluationPlan(Slot root, int slotCount) {
+        this.root = root;
+        this.slotCount = slotCount;
+    }
+
+    private static final class Compiler {
+        private final EvaluationPlan previous;
+        private int nextId;
+
+        private Compiler(EvaluationPlan previous) {
+            this.previous = previous;
+            this.nextId = previous == null ? 0 : previous.slotCount;
+        }
+
+        private EvaluationPlan compile(Node root) {
+            Slot rootSlot = new Slot(nextId++, root, "/");
+            rootSlot.network = compileNetwork(rootSlot, previous == null ? null : previous.root);
+            return new EvaluationPlan(rootSlot, nextId);
+        }
+
+        /**
+         * Compile the children of the network.
+         *
+         * @param networkSlot  The slot of the network.
+         * @param previousSlot The slot at the same path in the previous plan, or null.
+         * @return The compiled network, or null if the node is not a network.
+         */
+        private NetworkPlan compileNetwork(Slot networkSlot, Slot previousSlot) {
+            Node network = networkSlot.node;
+            if (!network.isNetwork()) return null;
+            if (previousSlot != null && previousSlot.node == network) return previousSlot.network;
+            String prefix = networkSlot.path.endsWith("/") ? networkSlot.path : networkSlot.path + "/";
+
+            Map<String, Slot> childSlots = new HashMap<String, Slot>();
+            for (Node child : network.getChildren()) {
+                Slot childSlot = new Slot(nextId++, child, prefix + child.getName());
+                childSlots.put(child.getName(), childSlot);
+            }
+
+            // Resolve the upstream node of every connected input port.
+            // If a port has more than one connection, the first one wins.
+            for (Connection c : network.getConnections()) {
+                Slot inputSlot = childSlots.get(c.getInputNode());
+                if (inputSlot == null) continue;
+                int portIndex = inputSlot.portIndex(c.getInputPort());
+                if (portIndex < 0 || inputSlot.connected[portIndex]) continue;
+                inputSlot.connected[portIndex] = true;
+                inputSlot.upstream[portIndex] = childSlots.get(c.getOutputNode());
+            }
+
+            Map<String, Binding> bindings = new HashMap<String, Binding>();
+            for (Port networkPort : network.getInputs()) {
+                if (!networkPort.isPublishedPort()) continue;
+                Slot childSlot = childSlots.get(networkPort.getChildNodeName());
+                if (childSlot == null) continue;
+                int portIndex = childSlot.portIndex(networkPort.getChildPortName());
+                if (portIndex < 0) continue;
+                bindings.put(networkPort.getName(), new Binding(childSlot, portIndex));
+            }
+
+            Slot[] children = topologicalOrder(network, childSlots);
+            for (Binding binding : bindings.values()) {
+                binding.child.dependsOnArguments = true;
+            }
+            // Upstream nodes come first, so their dependency is known when we reach their downstream nodes.
+            for (Slot childSlot : children) {
+                for (Slot upstream : childSlot.upstream) {
+                    if (upstream != null && upstream.dependsOnArguments) {
+                        childSlot.dependsOnArguments = true;
+                        break;
+                    }
+                }
+            }
+            int size = 0;
+            for (Slot childSlot : children) {
+                Slot previousChild = previousSlot == null ? null : previousSlot.getChild(childSlot.node.getName());
+                childSlot.network = compileNetwork(childSlot, previousChild);
+                size += childSlot.subtreeSize();
+            }
+            return new NetworkPlan(children, ImmutableMap.copyOf(childSlots), ImmutableMap.copyOf(bindings), size);
+        }
+    }
+
+    /**
+     * Get the compiled slot for the node at the given absolute path.
+     *
+     * @param path The absolute path of the node.
+     * @return The slot, or null if there is no node at this path.
+     */
+    Slot getSlot(String path) {
+        checkArgument(path.startsWith("/"), "Only absolute paths are supported.");
+        Slot slot = root;
+        if (path.length() == 1) return slot;
+        for (String name : PATH_SPLITTER.split(path.substring(1))) {
+            slot = slot.getChild(name);
+            if (slot == null) return null;
+        }
+        return slot;
+    }
+
+    /**
+     * The number of slot ids in use. Every slot id is smaller than this number.
+     */
+    int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Order the children so that every node comes after the nodes it depends on.
+     * Nodes that are part of a cycle are appended in their original order.
+     */
+    private static Slot[] topologicalOrder(Node network, Map<String, Slot> childSlots) {
+        List<Node> children = network.getChildren();
+        Map<Slot, Integer> inDegree = new HashMap<Slot, Integer>();
+        Map<Slot, List<Slot>> downstream = new HashMap<Slot, List<Slot>>();
+        for (Node child : children) {
+            Slot slot = childSlots.get(child.getName());
+            int degree = 0;
+            for (Slot upstream : slot.upstream) {
+                if (upstream == null) continue;
+                degree++;
+                List<Slot> dependents = downstream.get(upstream);
+                if (dependents == null) {
+                    dependents = new ArrayList<Slot>();
+                    downstream.put(upstream, dependents);
+                }
+                dependents.add(slot);
+            }
+            inDegree.put(slot, degree);
+        }
+
+        Slot[] ordered = new Slot[children.size()];
+        Deque<Slot> ready = new ArrayDeque<Slot>();
+        for (Node child : children) {
+            Slot slot = childSlots.get(child.getName());
+            if (inDegree.get(slot) == 0) ready.add(slot);
+        }
+        int i = 0;
+        while (!ready.isEmpty()) {
+            Slot slot = ready.removeFirst();
+            ordered[i++] = slot;
+            List<Slot> dependents = downstream.get(slot);
+            if (dependents == null) continue;
+            for (Slot dependent : dependents) {
+                int degree = inDegree.get(dependent) - 1;
+                inDegree.put(dependent, degree);
+                if (degree == 0) ready.add(dependent);
+            }
+        }
+        for (Node child : children) {
+            Slot slot = childSlots.get(child.getName());
+            if (inDegree.get(slot) > 0) ordered[i++] = slot;
+        }
+        return ordered;
+    }
+
+    /**
+     * A node in the library with its structural information resolved.
+     */
+    static final class Slot {
+        final int id;
+        final Node node;
+        final String path;
+        /**
+         * The upstream slot for each input port, by port index. Null if the port is not connected.
+         */
+        final Slot[] upstream;
+        /**
+         * True for ports that have a connection. The upstream slot may still be null if the connection is dangling.
+         */
+        final boolean[] connected;
+        /**
+         * True if the results of the node's function can be kept in a {@link NodeResultCache}, if the function is pure.
+         */
+        final boolean cacheable;
+        /**
+         * True if the node has a port that passes in the node context.
+         */
+        final boolean readsContext;
+        /**
+         * True if the node has a port that passes in its previous output.
+         */
+        final boolean readsState;
+        /**
+         * True if the node depends on the arguments of its network, through a published port of the network
+         * that maps to the node itself or to one of its upstream nodes.
+         * Other nodes only need to be evaluated once for all invocations of the network, as long as their functions
+         * are pure. Purity depends on the function repository, so the node context checks it.
+         */
+        boolean dependsOnArguments;
+        /**
+         * The compiled children. Only set for networks.
+         */
+        private NetworkPlan network;
+
+        private Slot(int id, Node node, String path) {
+            this.id = id;
+            this.node = node;
+            this.path = path;
+            int portCount = node.getInputs().size();
+            this.upstream = new Slot[portCount];
+            this.connected = new boolean[portCount];
+            this.cacheable = NodeResultCache.isCacheable(node);
+            boolean readsContext = false;
+            boolean readsState = false;
+            for (Port port : node.getInputs()) {
+                readsContext |= port.getType().equals("context");
+                readsState |= port.getType().equals(Port.TYPE_STATE);
+            }
+            this.readsContext = readsContext;
+            this.readsState = readsState;
+        }
+
+        private int portIndex(String portName) {
+            List<Port> inputs = node.getInputs();
+            for (int i = 0; i < inputs.size(); i++) {
+                if (inputs.get(i).getName().equals(portName)) return i;
+            }
+            return -1;
+        }
+
+        private int subtreeSize() {
+            return network == null ? 1 : 1 + network.size;
+        }
+
+        /**
+         * Get the children of this network, in topological order.
+         */
+        Slot[] getChildren() {
+            return network == null ? NO_SLOTS : network.children;
+        }
+
+        Slot getChild(String name) {
+            return network == null ? null : network.childrenByName.get(name);
+        }
+
+        /**
+         * Get the child port that a published port of this network maps to.
+         *
+         * @param networkPortName The name of the published port.
+         * @return The binding, or null if the port is not published.
+         */
+        Binding getBinding(String networkPortName) {
+            return network == null ? null : network.bindings.get(networkPortName);
+        }
+    }
+
+    /**
+     * The compiled children of a network.
+     * It only depends on the network node and its path, so plans for different library versions can share it.
+     */
+    private static final class NetworkPlan {
+        private final Slot[] children;
+        private final ImmutableMap<String, Slot> childrenByName;
+        private final ImmutableMap<String, Binding> bindings;
+        /**
+         * The number of slots in the network, including those in nested networks.
+         */
+        private final int size;
+
+        private NetworkPlan(Slot[] children, ImmutableMap<String, Slot> childrenByName, ImmutableMap<String, Binding> bindings, int size) {
+            this.children = children;
+            this.childrenByName = childrenByName;
+            this.bindings = bindings;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The target of a published port.
+     */
+    static final class Binding {
+        final Slot child;
+        final Port childPort;
+        final int childPortIndex;
+
+        private Binding(Slot child, int childPortIndex) {
+            this.child = child;
+            this.childPort = child.node.getInputs().get(childPortIndex);
+            this.childPortIndex = childPortIndex;
+        }
+    }
+
+}
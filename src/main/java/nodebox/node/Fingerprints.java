@@ -0,0 +1,115 @@
+package nodebox.node;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Cheap hashing and comparison of node arguments.
+ * <p/>
+ * Arguments are often long lists of results that are passed on unchanged from node to node.
+ * Hashing such a list the normal way visits every item on every lookup.
+ * Instead, lists are hashed on their size and a fixed sample of their items. This stays consistent with
+ * {@link List#equals(Object)}: equal lists have the same size and the same items, so they get the same hash.
+ * Comparisons check for identity first, so a list that is passed on as-is is never compared item by item.
+ */
+final class Fingerprints {
+
+    /**
+     * The number of items hashed at the start and the end of a list.
+     */
+    private static final int SAMPLE_SIZE = 4;
+
+    private Fingerprints() {
+    }
+
+    static int hash(Object value) {
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            int size = list.size();
+            int hash = size;
+            if (size <= SAMPLE_SIZE * 2) {
+                for (Object item : list) {
+                    hash = 31 * hash + hash(item);
+                }
+            } else if (list instanceof RandomAccess) {
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    hash = 31 * hash + hash(list.get(i));
+                }
+                for (int i = size - SAMPLE_SIZE; i < size; i++) {
+                    hash = 31 * hash + hash(list.get(i));
+                }
+            } else {
+                ListIterator<?> head = list.listIterator();
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    hash = 31 * hash + hash(head.next());
+                }
+                ListIterator<?> tail = list.listIterator(size - SAMPLE_SIZE);
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    hash = 31 * hash + hash(tail.next());
+                }
+            }
+            return hash;
+        }
+        return value == null ? 0 : value.hashCode();
+    }
+
+    static boolean equal(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        if (a instanceof RandomAccess && b instanceof RandomAccess && a instanceof List && b instanceof List) {
+            List<?> listA = (List<?>) a;
+            List<?> listB = (List<?>) b;
+            int size = listA.size();
+            if (size != listB.size()) return false;
+            for (int i = 0; i < size; i++) {
+                if (!equal(listA.get(i), listB.get(i))) return false;
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    static int hash(Object[] values) {
+        int hash = 1;
+        for (Object value : values) {
+            hash = 31 * hash + hash(value);
+        }
+        return hash;
+    }
+
+    static boolean equal(Object[] a, Object[] b) {
+        if (a == b) return true;
+        if (a.length != b.length) return false;
+        for (int i = 0; i < a.length; i++) {
+            if (!equal(a[i], b[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hash the map the same way as {@link Map#hashCode()}, using the fingerprint of the values.
+     */
+    static int hash(Map<?, ?> map) {
+        int hash = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            hash += hash(entry.getKey()) ^ hash(entry.getValue());
+        }
+        return hash;
+    }
+
+    static boolean equal(Map<?, ?> a, Map<?, ?> b) {
+        if (a == b) return true;
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<?, ?> entry : a.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            Object otherValue = b.get(key);
+            if (otherValue == null && (value != null || !b.containsKey(key))) return false;
+            if (!equal(value, otherValue)) return false;
+        }
+        return true;
+    }
+
+}
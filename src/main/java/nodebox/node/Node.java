@@ -4,12 +4,9 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
 import nodebox.graphics.Point;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -88,6 +85,11 @@ public final class Node {
     private static final Pattern UNDERSCORE_NUMBER_AT_THE_END = Pattern.compile("^(.*?)((\\_(\\d*))?)$");
     private static final Pattern RESERVED_WORD_PATTERN = Pattern.compile("^(node|network)$");
 
+    /**
+     * Lists smaller than this are searched linearly instead of through an index.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
     public static final Node ROOT = new Node(Nodes.ROOT_NODE);
     public static final Node NETWORK = new Node(Nodes.NETWORK_NODE);
 
@@ -119,6 +121,12 @@ public final class Node {
     private final boolean isAlwaysRendered;
     private final int hashCode;
 
+    // Lookup indexes, built on first use.
+    // New versions of the node share them as long as the indexed names stay the same.
+    private volatile Map<String, Integer> childIndex;
+    private volatile Map<String, Integer> inputIndex;
+    private volatile ConnectionIndex connectionIndex;
+
     //// Constructors ////
 
     /**
@@ -258,12 +266,28 @@ public final class Node {
 
     public Node getChild(String name) {
         checkNotNull(name, "Name cannot be null.");
-        for (Node child : getChildren()) {
-            if (child.getName().equals(name)) {
-                return child;
+        if (children.size() < INDEX_THRESHOLD) {
+            for (Node child : getChildren()) {
+                if (child.getName().equals(name)) {
+                    return child;
+                }
             }
+            return null;
         }
-        return null;
+        Integer index = childIndex().get(name);
+        return index == null ? null : children.get(index);
+    }
+
+    private Map<String, Integer> childIndex() {
+        Map<String, Integer> index = childIndex;
+        if (index == null) {
+            index = new HashMap<String, Integer>(children.size() * 2);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                index.put(children.get(i).getName(), i);
+            }
+            childIndex = index;
+        }
+        return index;
     }
 
     public boolean hasChild(String name) {
@@ -286,12 +310,28 @@ public final class Node {
 
     public Port getInput(String name) {
         checkNotNull(name, "Port name cannot be null.");
-        for (Port p : getInputs()) {
-            if (p.getName().equals(name)) {
-                return p;
+        if (inputs.size() < INDEX_THRESHOLD) {
+            for (Port p : getInputs()) {
+                if (p.getName().equals(name)) {
+                    return p;
+                }
             }
+            return null;
         }
-        return null;
+        Integer index = inputIndex().get(name);
+        return index == null ? null : inputs.get(index);
+    }
+
+    private Map<String, Integer> inputIndex() {
+        Map<String, Integer> index = inputIndex;
+        if (index == null) {
+            index = new HashMap<String, Integer>(inputs.size() * 2);
+            for (int i = inputs.size() - 1; i >= 0; i--) {
+                index.put(inputs.get(i).getName(), i);
+            }
+            inputIndex = index;
+        }
+        return index;
     }
 
     public ImmutableList<Port> getInputsOfType(String type) {
@@ -405,6 +445,10 @@ public final class Node {
     }
 
     public String uniqueName(String prefix) {
+        return uniqueName(prefix, childIndex().keySet());
+    }
+
+    private static String uniqueName(String prefix, Set<String> existingNames) {
         Matcher m = NUMBER_AT_THE_END.matcher(prefix);
         m.find();
         String namePrefix = m.group(1);
@@ -417,7 +461,7 @@ public final class Node {
         }
         while (true) {
             String suggestedName = namePrefix + counter;
-            if (!hasChild(suggestedName)) {
+            if (!existingNames.contains(suggestedName)) {
                 // We don't use rename here, since it assumes the node will be in
                 // this network.
                 return suggestedName;
@@ -916,6 +960,34 @@ public final class Node {
         return newNodeWithAttribute(Attribute.CHILDREN, b.build());
     }
 
+    /**
+     * Create a new node with the given child nodes added.
+     * <p/>
+     * This gives the same result as calling withChildAdded for each node, but only copies the children once.
+     * <p/>
+     * If you call this on ROOT, extend() is called implicitly.
+     *
+     * @param nodes The child nodes to add.
+     * @return A new Node.
+     */
+    public Node withChildrenAdded(Iterable<Node> nodes) {
+        checkNotNull(nodes, "Nodes cannot be null.");
+        checkArgument(isNetwork(), "Node %s is not a network node.", this);
+        Set<String> names = new HashSet<String>(childIndex().keySet());
+        ImmutableList.Builder<Node> b = ImmutableList.builder();
+        b.addAll(getChildren());
+        for (Node node : nodes) {
+            checkNotNull(node, "Node cannot be null.");
+            checkArgument(!node.getName().equals("root"), "A child node of a network cannot have the name 'root'.");
+            if (names.contains(node.getName())) {
+                node = node.withName(uniqueName(node.getName(), names));
+            }
+            names.add(node.getName());
+            b.add(node);
+        }
+        return newNodeWithAttribute(Attribute.CHILDREN, b.build());
+    }
+
     /**
      * Create a new node with the given child removed.
      * <p/>
@@ -942,6 +1014,54 @@ public final class Node {
         return newNodeWithAttribute(Attribute.CHILDREN, b.build());
     }
 
+    /**
+     * Create a new node with the given children removed.
+     * <p/>
+     * This gives the same result as calling withChildRemoved for each child, but the children, connections
+     * and published ports are only copied once.
+     * <p/>
+     * If you call this on ROOT, extend() is called implicitly.
+     *
+     * @param childNames The names of the child nodes to remove.
+     * @return A new Node.
+     */
+    public Node withChildrenRemoved(Iterable<String> childNames) {
+        checkArgument(isNetwork(), "Node %s is not a network node.", this);
+        Set<String> names = new HashSet<String>();
+        for (String childName : childNames) {
+            checkArgument(hasChild(childName), "Node %s is not a child of node %s.", childName, this);
+            names.add(childName);
+        }
+        if (names.isEmpty()) return this;
+
+        Node newNode = this;
+        if (!getPublishedPorts().isEmpty()) {
+            ImmutableList.Builder<Port> b = ImmutableList.builder();
+            for (Port p : inputs) {
+                if (!p.isPublishedPort() || !names.contains(p.getChildNodeName()))
+                    b.add(p);
+            }
+            newNode = newNode.newNodeWithAttribute(Attribute.INPUTS, b.build());
+        }
+        if (!connections.isEmpty()) {
+            ImmutableList.Builder<Connection> b = ImmutableList.builder();
+            for (Connection c : connections) {
+                if (!names.contains(c.getInputNode()) && !names.contains(c.getOutputNode()))
+                    b.add(c);
+            }
+            newNode = newNode.newNodeWithAttribute(Attribute.CONNECTIONS, b.build());
+        }
+        if (names.contains(renderedChildName)) {
+            newNode = newNode.newNodeWithAttribute(Attribute.RENDERED_CHILD_NAME, "");
+        }
+        ImmutableList.Builder<Node> b = ImmutableList.builder();
+        for (Node child : children) {
+            if (!names.contains(child.getName()))
+                b.add(child);
+        }
+        return newNode.newNodeWithAttribute(Attribute.CHILDREN, b.build());
+    }
+
 
     /**
      * Checks if a new node of which the given node would become a new child node is internally
@@ -1180,8 +1300,47 @@ public final class Node {
         return connect(connection.getOutputNode(), connection.getInputNode(), connection.getInputPort());
     }
 
+    /**
+     * Create a new node with the given connections added.
+     * <p/>
+     * This gives the same result as calling withConnectionAdded for each connection,
+     * but only copies the connections once.
+     *
+     * @param newConnections The connections to add.
+     * @return A new Node.
+     */
+    public Node withConnectionsAdded(Iterable<Connection> newConnections) {
+        checkArgument(isNetwork(), "Node %s is not a network node.", this);
+        // Connections keyed by input node and port. A new connection replaces an existing one on the same port.
+        Map<String, Connection> addedConnections = new LinkedHashMap<String, Connection>();
+        for (Connection c : newConnections) {
+            String outputNode = c.getOutputNode();
+            String inputNode = c.getInputNode();
+            String inputPort = c.getInputPort();
+            checkArgument(hasChild(outputNode), "Node %s does not have a child named %s.", this, outputNode);
+            checkArgument(hasChild(inputNode), "Node %s does not have a child named %s.", this, inputNode);
+            checkArgument(getChild(inputNode).hasInput(inputPort), "Node %s does not have an input port %s.", inputNode, inputPort);
+            checkArgument(!hasPublishedInput(inputNode, inputPort), "Node %s has a published input for port %s of child %s.", this, inputNode, inputPort);
+            String key = inputNode + "." + inputPort;
+            addedConnections.remove(key);
+            addedConnections.put(key, new Connection(outputNode, inputNode, inputPort));
+        }
+        if (addedConnections.isEmpty()) return this;
+
+        ImmutableList.Builder<Connection> b = ImmutableList.builder();
+        for (Connection c : getConnections()) {
+            if (!addedConnections.containsKey(c.getInputNode() + "." + c.getInputPort()))
+                b.add(c);
+        }
+        b.addAll(addedConnections.values());
+        return newNodeWithAttribute(Attribute.CONNECTIONS, b.build());
+    }
+
     public boolean isConnected(String node) {
         if (!isNetwork()) return false;
+        if (connections.size() >= INDEX_THRESHOLD) {
+            return connectionIndex().connectedNodes.contains(node);
+        }
         for (Connection c : getConnections()) {
             if (c.getInputNode().equals(node) || c.getOutputNode().equals(node))
                 return true;
@@ -1190,12 +1349,7 @@ public final class Node {
     }
 
     public boolean isConnected(String node, String port) {
-        if (!isNetwork()) return false;
-        for (Connection c : getConnections()) {
-            if (c.getInputNode().equals(node) && c.getInputPort().equals(port))
-                return true;
-        }
-        return false;
+        return getConnection(node, port) != null;
     }
 
     /**
@@ -1210,16 +1364,17 @@ public final class Node {
     public Node withChildrenAdded(Node nodesParent, Iterable<Node> nodes) {
         checkArgument(isNetwork(), "Node %s is not a network node.", this);
         Map<String, String> newNames = new HashMap<String, String>();
-        Node newParent = this;
+        Node newParent = withChildrenAdded(nodes);
 
+        // The added nodes are at the end of the children, in the same order.
+        Iterator<Node> newNodes = newParent.getChildren().subList(children.size(), newParent.getChildren().size()).iterator();
         for (Node node : nodes) {
-            newParent = newParent.withChildAdded(node);
-            Node newNode = Iterables.getLast(newParent.getChildren());
-            newNames.put(node.getName(), newNode.getName());
+            newNames.put(node.getName(), newNodes.next().getName());
         }
 
         // TODO: Recreate published inputs?
 
+        List<Connection> newConnections = new ArrayList<Connection>();
         for (Connection c : nodesParent.getConnections()) {
             String outputNodeName = c.getOutputNode();
             String inputNodeName = c.getInputNode();
@@ -1235,11 +1390,11 @@ public final class Node {
                     Node outputNode = newParent.getChild(outputNodeName);
                     Node inputNode = newParent.getChild(inputNodeName);
                     Port inputPort = inputNode.getInput(c.getInputPort());
-                    newParent = newParent.connect(outputNode.getName(), inputNode.getName(), inputPort.getName());
+                    newConnections.add(new Connection(outputNode.getName(), inputNode.getName(), inputPort.getName()));
                 }
             }
         }
-        return newParent;
+        return newParent.withConnectionsAdded(newConnections);
     }
 
     /**
@@ -1251,6 +1406,9 @@ public final class Node {
      */
     public Connection getConnection(String inputNode, String inputPort) {
         if (!isNetwork()) return null;
+        if (connections.size() >= INDEX_THRESHOLD) {
+            return connectionIndex().get(inputNode, inputPort);
+        }
         for (Connection c : getConnections()) {
             if (c.getInputNode().equals(inputNode) && c.getInputPort().equals(inputPort))
                 return c;
@@ -1259,6 +1417,15 @@ public final class Node {
         return null;
     }
 
+    private ConnectionIndex connectionIndex() {
+        ConnectionIndex index = connectionIndex;
+        if (index == null) {
+            index = new ConnectionIndex(connections);
+            connectionIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Create a new node with the given handle added.
      *
@@ -1375,8 +1542,33 @@ public final class Node {
         else if (name.equals("network"))
             name = "network1";
 
-        return new Node(prototype, name, comment, category, description, image, function, position,
+        Node newNode = new Node(prototype, name, comment, category, description, image, function, position,
                 inputs, outputType, outputRange, isNetwork, children, renderedChildName, connections, handle, alwaysRendered);
+        if (children == this.children || haveSameNodeNames(children, this.children))
+            newNode.childIndex = childIndex;
+        if (inputs == this.inputs || haveSamePortNames(inputs, this.inputs))
+            newNode.inputIndex = inputIndex;
+        if (connections == this.connections)
+            newNode.connectionIndex = connectionIndex;
+        return newNode;
+    }
+
+    private static boolean haveSameNodeNames(List<Node> nodes, List<Node> otherNodes) {
+        if (nodes.size() != otherNodes.size()) return false;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!nodes.get(i).getName().equals(otherNodes.get(i).getName()))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean haveSamePortNames(List<Port> ports, List<Port> otherPorts) {
+        if (ports.size() != otherPorts.size()) return false;
+        for (int i = 0; i < ports.size(); i++) {
+            if (!ports.get(i).getName().equals(otherPorts.get(i).getName()))
+                return false;
+        }
+        return true;
     }
 
     //// Object overrides ////
@@ -1413,4 +1605,32 @@ public final class Node {
         return String.format("<Node %s:%s>", getName(), getFunction());
     }
 
+    /**
+     * Index of the connections of a network, by input node and port.
+     */
+    private static final class ConnectionIndex {
+        private final Map<String, Map<String, Connection>> connectionsByInput = new HashMap<String, Map<String, Connection>>();
+        private final Set<String> connectedNodes = new HashSet<String>();
+
+        private ConnectionIndex(List<Connection> connections) {
+            for (Connection c : connections) {
+                Map<String, Connection> portConnections = connectionsByInput.get(c.getInputNode());
+                if (portConnections == null) {
+                    portConnections = new HashMap<String, Connection>();
+                    connectionsByInput.put(c.getInputNode(), portConnections);
+                }
+                // If a port has more than one connection, the first one wins.
+                if (!portConnections.containsKey(c.getInputPort()))
+                    portConnections.put(c.getInputPort(), c);
+                connectedNodes.add(c.getInputNode());
+                connectedNodes.add(c.getOutputNode());
+            }
+        }
+
+        private Connection get(String inputNode, String inputPort) {
+            Map<String, Connection> portConnections = connectionsByInput.get(inputNode);
+            return portConnections == null ? null : portConnections.get(inputPort);
+        }
+    }
+
 }
@@ -3,29 +3,66 @@ package nodebox.node;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import nodebox.function.BatchFunction;
 import nodebox.function.Function;
 import nodebox.function.FunctionRepository;
+import nodebox.function.Purity;
 import nodebox.graphics.Point;
 import nodebox.util.ListUtils;
+import nodebox.util.FlightRecorderEvents;
+import nodebox.util.TraceRecorder;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 public final class NodeContext {
 
     private final NodeLibrary nodeLibrary;
-    private final Map<String, Node> nodeMap;
+    private final EvaluationPlan plan;
     private final FunctionRepository functionRepository;
+    private final AtomicReferenceArray<Function> functions;
+    private final AtomicIntegerArray threadSafeBranches;
+    private final AtomicIntegerArray pureBranches;
     private final ImmutableMap<String, ?> data;
     private final ImmutableMap<String, List<?>> previousRenderResults;
     private final Map<String, List<?>> renderResults;
+    private final ThreadLocal<Map<String, List<?>>> portRenderResults = new ThreadLocal<Map<String, List<?>>>();
     private final Map<NodeArguments, List<?>> nodeArgumentsResults;
+    private final ConcurrentMap<NodeArguments, ForkJoinTask<List<?>>> pendingResults;
     private final Map<String, ?> portOverrides;
+    private ForkJoinPool pool;
+    private int listParallelThreshold = DEFAULT_LIST_PARALLEL_THRESHOLD;
+    private NodeResultCache resultCache;
+    private RenderProfile profile;
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+    private volatile long deadline;
+    private volatile boolean hasDeadline;
 
     private static final ImmutableMap<String, ?> DEFAULT_CONTEXT_DATA = ImmutableMap.of("frame", 1.0);
+    public static final int DEFAULT_LIST_PARALLEL_THRESHOLD = 256;
+    // Batches are invoked in chunks of this many invocations, so a long batch can still be cancelled.
+    static final int BATCH_CHUNK_SIZE = 4096;
+    private static final int UNKNOWN_BRANCH = 0;
+    private static final int THREAD_SAFE_BRANCH = 1;
+    private static final int NOT_THREAD_SAFE_BRANCH = 2;
+    private static final int PURE_BRANCH = 1;
+    private static final int IMPURE_BRANCH = 2;
+    private static ForkJoinPool sharedPool;
 
     public NodeContext(NodeLibrary nodeLibrary) {
         this(nodeLibrary, null);
@@ -41,11 +78,15 @@ public final class NodeContext {
 
     public NodeContext(NodeLibrary nodeLibrary, FunctionRepository functionRepository, Map<String, ?> data, Map<String, List<?>> previousRenderResults, Map<String, ?> portOverrides) {
         this.nodeLibrary = nodeLibrary;
-        this.nodeMap = nodeLibrary.getFlattenedNodeMap();
+        this.plan = nodeLibrary.getEvaluationPlan();
         this.functionRepository = functionRepository != null ? functionRepository : nodeLibrary.getFunctionRepository();
+        this.functions = new AtomicReferenceArray<Function>(plan.getSlotCount());
+        this.threadSafeBranches = new AtomicIntegerArray(plan.getSlotCount());
+        this.pureBranches = new AtomicIntegerArray(plan.getSlotCount());
         this.data = ImmutableMap.copyOf(data);
-        this.renderResults = new HashMap<String, List<?>>();
-        this.nodeArgumentsResults = new HashMap<NodeArguments, List<?>>();
+        this.renderResults = new ConcurrentHashMap<String, List<?>>();
+        this.nodeArgumentsResults = new ConcurrentHashMap<NodeArguments, List<?>>();
+        this.pendingResults = new ConcurrentHashMap<NodeArguments, ForkJoinTask<List<?>>>();
         this.previousRenderResults = ImmutableMap.copyOf(previousRenderResults);
         this.portOverrides = ImmutableMap.copyOf(portOverrides);
     }
@@ -76,8 +117,176 @@ public final class NodeContext {
         return renderResults;
     }
 
-    private Node getNodeForPath(String nodePath) {
-        return nodeMap.get(nodePath);
+    /**
+     * Evaluate independent upstream branches of a node concurrently.
+     * <p/>
+     * When enabled, every connected input port of a node is evaluated as a separate fork-join task.
+     * Results are still assembled in port order, and upstream nodes shared between branches are only
+     * evaluated once, so the output is the same as that of a serial render.
+     *
+     * @param parallel true to evaluate upstream branches in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.pool = parallel ? sharedPool() : null;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Set the number of list-matched invocations from which a node is evaluated in parallel.
+     * <p/>
+     * In parallel mode, when a node with a thread-safe function is invoked at least this many times,
+     * the invocations are split into chunks that run concurrently. The results keep their input order.
+     *
+     * @param threshold The minimum number of invocations. Must be at least 1.
+     * @see nodebox.function.ThreadSafe
+     */
+    public void setListParallelThreshold(int threshold) {
+        checkArgument(threshold > 0, "The threshold should be at least 1.");
+        this.listParallelThreshold = threshold;
+    }
+
+    public int getListParallelThreshold() {
+        return listParallelThreshold;
+    }
+
+    /**
+     * Reuse function results from earlier renders.
+     * <p/>
+     * The same cache can be shared between the contexts of successive renders of a document.
+     *
+     * @param resultCache The cache to use, or null to always invoke the functions.
+     */
+    public void setResultCache(NodeResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public NodeResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Collect statistics about the evaluation of every node.
+     * <p/>
+     * Profiling is off by default. When it is off, the render only pays for a null check per node evaluation.
+     *
+     * @param profile The profile to record into, or null to turn profiling off.
+     */
+    public void setProfile(RenderProfile profile) {
+        this.profile = profile;
+    }
+
+    public RenderProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Stop the render that is using this context.
+     * <p/>
+     * The render checks for cancellation before every node invocation and stops by throwing a
+     * {@link NodeRenderCancelledException}. A cancelled context can't be used for rendering again.
+     * This method can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Limit how long a render with this context can take.
+     * <p/>
+     * The time is counted from the moment the budget is set. Once it runs out, the render stops by throwing a
+     * {@link NodeRenderCancelledException}.
+     *
+     * @param timeBudget The maximum duration of the render. Must be positive.
+     * @param unit       The time unit of the budget.
+     */
+    public void setTimeBudget(long timeBudget, TimeUnit unit) {
+        checkArgument(timeBudget > 0, "The time budget should be positive.");
+        this.deadline = System.nanoTime() + unit.toNanos(timeBudget);
+        this.hasDeadline = true;
+    }
+
+    private void checkCancelled() {
+        if (hasDeadline && !cancelled && System.nanoTime() - deadline > 0) {
+            timedOut = true;
+            cancelled = true;
+        }
+        if (cancelled) throw new NodeRenderCancelledException(timedOut);
+    }
+
+    private static synchronized ForkJoinPool sharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool();
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Check if we need to move the evaluation into the fork-join pool.
+     * This is the case for parallel renders that are started from outside of the pool.
+     */
+    private boolean shouldEnterPool() {
+        return pool != null && ForkJoinTask.getPool() != pool;
+    }
+
+    private EvaluationPlan.Slot getSlot(String nodePath) {
+        EvaluationPlan.Slot slot = plan.getSlot(nodePath);
+        checkNotNull(slot, "Node %s does not exist.", nodePath);
+        return slot;
+    }
+
+    /**
+     * Get the function of the node in the given slot.
+     * Functions are looked up once per context, since the repository can differ between contexts.
+     */
+    private Function getFunction(EvaluationPlan.Slot slot) {
+        Function function = functions.get(slot.id);
+        if (function == null) {
+            function = functionRepository.getFunction(slot.node.getFunction());
+            functions.set(slot.id, function);
+        }
+        return function;
+    }
+
+    /**
+     * Check if the output of the node is the same on every frame.
+     * <p/>
+     * This is the case if neither the node nor any node it depends on reads the frame from the context, reads its
+     * previous output or has a function that is not {@link Purity#PURE pure}. A function that takes the context
+     * without declaring the keys it reads is assumed to read the frame.
+     *
+     * @param nodePath The absolute path of the node.
+     * @return true if rendering the node for another frame gives the same results.
+     */
+    public boolean isFrameInvariant(String nodePath) {
+        return !dependsOnFrame(getSlot(nodePath), new HashMap<EvaluationPlan.Slot, Boolean>());
+    }
+
+    private boolean dependsOnFrame(EvaluationPlan.Slot slot, Map<EvaluationPlan.Slot, Boolean> visited) {
+        Boolean known = visited.get(slot);
+        if (known != null) return known;
+        Node node = slot.node;
+        boolean dependsOnFrame;
+        if (node.isNetwork()) {
+            EvaluationPlan.Slot renderedChild = node.hasRenderedChild() ? slot.getChild(node.getRenderedChildName()) : null;
+            dependsOnFrame = renderedChild != null && dependsOnFrame(renderedChild, visited);
+        } else {
+            Function function = getFunction(slot);
+            ImmutableSet<String> contextKeys = function.getContextKeys();
+            dependsOnFrame = slot.readsState || function.getPurity() != Purity.PURE
+                    || slot.readsContext && (contextKeys == null || contextKeys.contains("frame"));
+        }
+        for (int i = 0; i < slot.upstream.length && !dependsOnFrame; i++) {
+            dependsOnFrame = slot.upstream[i] != null && dependsOnFrame(slot.upstream[i], visited);
+        }
+        visited.put(slot, dependsOnFrame);
+        return dependsOnFrame;
     }
 
     /**
@@ -94,39 +303,60 @@ public final class NodeContext {
     }
 
     public void renderAlwaysRenderedNodes(String networkPath) throws NodeRenderException {
-        Node network = getNodeForPath(networkPath);
+        EvaluationPlan.Slot networkSlot = getSlot(networkPath);
+        Node network = networkSlot.node;
         if (!network.isNetwork()) return;
         for (Node child : network.getChildren()) {
             if (child.isAlwaysRendered()) {
-                String childPath = getChildPath(networkPath, child.getName());
+                String childPath = networkSlot.getChild(child.getName()).path;
                 if (!renderResults.containsKey(childPath))
                     renderNode(childPath);
             }
         }
     }
 
-    public List<?> renderNode(String nodePath, Map<Port, ?> argumentMap) {
-        checkNotNull(getNodeForPath(nodePath));
+    public List<?> renderNode(final String nodePath, final Map<Port, ?> argumentMap) {
+        if (shouldEnterPool()) {
+            return pool.invoke(new RecursiveTask<List<?>>() {
+                @Override
+                protected List<?> compute() {
+                    return renderNode(nodePath, argumentMap);
+                }
+            });
+        }
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
+        List<?> results = renderSlot(getSlot(nodePath), argumentMap);
+        if (trace != null) trace.complete("render", nodePath, startTime);
+        return results;
+    }
+
+    private List<?> renderSlot(EvaluationPlan.Slot slot, Map<Port, ?> argumentMap) {
+        List<?> results = evaluateNode(slot, argumentMap);
+        putRenderResults(slot.path, results);
+        return results;
+    }
+
+    private List<?> evaluateNode(EvaluationPlan.Slot slot, Map<Port, ?> argumentMap) {
         checkNotNull(functionRepository);
 
         // If the node has children, forgo the operation of the current node and evaluate the child.
         Object result;
-        Node node = getNodeForPath(nodePath);
+        Node node = slot.node;
         if (node.isNetwork()) {
             if (node.hasRenderedChild()) {
-                result = renderChild(nodePath, node.getRenderedChild(), argumentMap);
+                EvaluationPlan.Slot renderedChild = slot.getChild(node.getRenderedChildName());
+                checkNotNull(renderedChild, "Node %s is not a child of %s.", node.getRenderedChildName(), slot.path);
+                result = renderChild(slot, renderedChild, argumentMap);
             } else
                 result = ImmutableList.of();
         } else {
-            result = invokeNode(nodePath, argumentMap);
+            result = invokeNode(slot, argumentMap);
         }
-        List<?> results = postProcessResult(nodePath, result);
-        renderResults.put(nodePath, results);
-        return results;
+        return postProcessResult(node, result);
     }
 
-    private List<?> postProcessResult(String nodePath, Object result) {
-        Node node = getNodeForPath(nodePath);
+    private List<?> postProcessResult(Node node, Object result) {
         if (node.hasListOutputRange()) {
             // TODO This is a temporary fix for networks that have no rendered nodes.
             // They execute the "core/zero" function which returns a single value, not a list.
@@ -146,74 +376,516 @@ public final class NodeContext {
         return result == null ? ImmutableList.of() : ImmutableList.of(result);
     }
 
-    private String getChildPath(String networkPath, String childName) {
-        if (!networkPath.endsWith("/")) {
-            return networkPath + "/" + childName;
+    /**
+     * Add the result of a single invocation to the results list.
+     * This has the same outcome as adding all values of {@link #postProcessResult(Node, Object)}, without the wrapper.
+     */
+    private static void appendResult(Node node, Object result, List<Object> resultsList) {
+        if (node.hasListOutputRange()) {
+            if (result instanceof List<?>) {
+                resultsList.addAll((List<?>) result);
+            } else {
+                resultsList.add(checkNotNull(result));
+            }
+            return;
+        } else if (result instanceof List) {
+            List<?> results = (List<?>) result;
+            if (results.isEmpty())
+                return;
+            Class outputType = ListUtils.listClass(results);
+            if (outputType.equals(Point.class) && node.getOutputType().equals("geometry")) {
+                resultsList.addAll(results);
+                return;
+            }
         }
-        return networkPath + childName;
+        if (result != null)
+            resultsList.add(result);
     }
 
     public List<?> renderChild(String networkPath, Node child) throws NodeRenderException {
         return renderChild(networkPath, child, Collections.<Port, Object>emptyMap());
     }
 
-    public List<?> renderChild(String networkPath, Node child, Map<Port, ?> networkArgumentMap) {
-        Node network = nodeMap.get(networkPath);
-        NodeArguments nodeArguments = new NodeArguments(networkPath, child.getName(), networkArgumentMap);
+    public List<?> renderChild(final String networkPath, final Node child, final Map<Port, ?> networkArgumentMap) {
+        if (shouldEnterPool()) {
+            return pool.invoke(new RecursiveTask<List<?>>() {
+                @Override
+                protected List<?> compute() {
+                    return renderChild(networkPath, child, networkArgumentMap);
+                }
+            });
+        }
+        EvaluationPlan.Slot networkSlot = getSlot(networkPath);
+        EvaluationPlan.Slot childSlot = networkSlot.getChild(child.getName());
+        checkNotNull(childSlot, "Node %s is not a child of %s.", child.getName(), networkPath);
+        return renderChild(networkSlot, childSlot, networkArgumentMap);
+    }
+
+    private List<?> renderChild(final EvaluationPlan.Slot networkSlot, final EvaluationPlan.Slot childSlot, Map<Port, ?> argumentMap) {
+        // Pure nodes that don't depend on the network arguments are evaluated once for all invocations of the network.
+        boolean invariant = !childSlot.dependsOnArguments && isPureBranch(childSlot);
+        final Map<Port, ?> networkArgumentMap = invariant ? Collections.<Port, Object>emptyMap() : argumentMap;
+        final NodeArguments nodeArguments = new NodeArguments(networkSlot.path, childSlot.node.getName(), networkArgumentMap);
 
         List<?> storedResults = nodeArgumentsResults.get(nodeArguments);
         if (storedResults != null) return storedResults;
 
-        // A list of all result objects.
-        List<Object> resultsList = new ArrayList<Object>();
+        if (isParallel()) {
+            // Another branch may already be evaluating the same node with the same arguments.
+            // In that case we wait for its results instead of evaluating the node a second time.
+            ForkJoinTask<List<?>> task = new RecursiveTask<List<?>>() {
+                @Override
+                protected List<?> compute() {
+                    return evaluateChild(networkSlot, childSlot, networkArgumentMap, nodeArguments);
+                }
+            };
+            ForkJoinTask<List<?>> pendingTask = pendingResults.putIfAbsent(nodeArguments, task);
+            if (pendingTask != null) return pendingTask.join();
+            return task.invoke();
+        } else {
+            return evaluateChild(networkSlot, childSlot, networkArgumentMap, nodeArguments);
+        }
+    }
+
+    private List<?> evaluateChild(EvaluationPlan.Slot networkSlot, EvaluationPlan.Slot childSlot, Map<Port, ?> networkArgumentMap, NodeArguments nodeArguments) {
+        checkCancelled();
+        Node child = childSlot.node;
+        RenderProfile profile = this.profile;
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = profile != null || trace != null ? System.nanoTime() : 0;
+        FlightRecorderEvents.Event event = FlightRecorderEvents.NODE_EVALUATION.begin();
+
         // If the node has no input ports, execute the node once for its side effects.
         if (child.getInputs().isEmpty()) {
-            String childPath = getChildPath(networkPath, child.getName());
-            return renderNode(childPath);
+            long startAllocation = profile != null ? RenderProfile.allocatedBytes() : 0;
+            List<?> results = renderSlot(childSlot, Collections.<Port, Object>emptyMap());
+            if (profile != null) {
+                long time = System.nanoTime() - startTime;
+                profile.record(childSlot.path, 1, time, time, 0, results.size(), RenderProfile.allocatedBytes() - startAllocation);
+            }
+            if (trace != null) trace.complete("node", childSlot.path, startTime);
+            if (event != null) event.commit(childSlot.path, child.getFunction(), 1, 0L, (long) results.size());
+            return results;
+        }
+
+        // The list of values that need to be processed for each port, by port index.
+        List<?>[] portArguments = evaluatePorts(networkSlot, childSlot, networkArgumentMap);
+
+        // Data from the network (through published ports) overrides the arguments.
+        for (Map.Entry<Port, ?> argumentEntry : networkArgumentMap.entrySet()) {
+            Port networkPort = argumentEntry.getKey();
+            checkState(networkPort.isPublishedPort(), "Given port %s is not a published port.", networkPort);
+            EvaluationPlan.Binding binding = networkSlot.getBinding(networkPort.getName());
+            if (binding != null && binding.child == childSlot) {
+                Object value = argumentEntry.getValue();
+                List<?> values;
+                if (value instanceof List) {
+                    values = (List<?>) value;
+                } else {
+                    values = ImmutableList.of(value);
+                }
+                portArguments[binding.childPortIndex] = values;
+            }
+        }
+
+        long invokeTime = profile != null || trace != null ? System.nanoTime() : 0;
+        long startAllocation = profile != null ? RenderProfile.allocatedBytes() : 0;
+        List<Port> inputs = child.getInputs();
+        int invocationCount = invocationCount(inputs, portArguments);
+        // A list of all result objects.
+        List<Object> resultsList;
+        if (invocationCount == 0) {
+            resultsList = new ArrayList<Object>();
+        } else if (shouldInvokeBatch(childSlot, invocationCount)) {
+            resultsList = invokeBatch(childSlot, portArguments, invocationCount);
+        } else if (shouldSplitInvocations(childSlot, invocationCount)) {
+            resultsList = renderInvocationsInParallel(childSlot, portArguments, invocationCount);
+        } else if (child.isNetwork()) {
+            resultsList = new ArrayList<Object>(invocationCount);
+            for (int i = 0; i < invocationCount; i++) {
+                resultsList.addAll(renderSlot(childSlot, buildArgumentMap(inputs, portArguments, i)));
+            }
         } else {
-            // The list of values that need to be processed for this port.
-            Map<Port, List<?>> portArguments = new LinkedHashMap<Port, List<?>>();
-
-            // Evaluate the port data.
-            for (Port port : child.getInputs()) {
-                List<?> result = evaluatePort(networkPath, child, port, networkArgumentMap);
-                result = convertResultsForPort(port, result);
-                result = clampResultsForPort(port, result);
-                portArguments.put(port, result);
+            resultsList = new ArrayList<Object>(invocationCount);
+            int last = invocationCount - 1;
+            for (int i = 0; i < last; i++) {
+                appendResult(child, invokeNode(childSlot, buildArguments(inputs, portArguments, i)), resultsList);
             }
+            List<?> lastResults = postProcessResult(child, invokeNode(childSlot, buildArguments(inputs, portArguments, last)));
+            resultsList.addAll(lastResults);
+            putRenderResults(childSlot.path, lastResults);
+        }
+        if (profile != null) {
+            long endTime = System.nanoTime();
+            profile.record(childSlot.path, invocationCount, endTime - startTime, endTime - invokeTime,
+                    argumentsSize(portArguments), resultsList.size(), RenderProfile.allocatedBytes() - startAllocation);
+        }
+        if (trace != null) {
+            if (invocationCount > 1)
+                trace.complete("list", childSlot.path + " (" + invocationCount + " invocations)", invokeTime);
+            trace.complete("node", childSlot.path, startTime);
+        }
+        if (event != null)
+            event.commit(childSlot.path, child.getFunction(), invocationCount, argumentsSize(portArguments), (long) resultsList.size());
+        nodeArgumentsResults.put(nodeArguments, resultsList);
+        return resultsList;
+    }
+
+    private static long argumentsSize(List<?>[] portArguments) {
+        long size = 0;
+        for (List<?> arguments : portArguments) {
+            size += arguments.size();
+        }
+        return size;
+    }
+
+    private boolean shouldInvokeBatch(EvaluationPlan.Slot childSlot, int invocationCount) {
+        if (invocationCount < 2 || childSlot.node.isNetwork() || !(getFunction(childSlot) instanceof BatchFunction))
+            return false;
+        // The result cache records file modification times per invocation.
+        for (Port port : childSlot.node.getInputs()) {
+            if (port.isFileWidget()) return false;
+        }
+        return true;
+    }
 
-            // Data from the network (through published ports) overrides the arguments.
-            for (Map.Entry<Port, ?> argumentEntry : networkArgumentMap.entrySet()) {
-                Port networkPort = argumentEntry.getKey();
-                checkState(networkPort.isPublishedPort(), "Given port %s is not a published port.", networkPort);
-                if (networkPort.getChildNode(network) == child) {
-                    Port childPort = networkPort.getChildPort(network);
-                    Object value = argumentEntry.getValue();
-                    List<?> values;
-                    if (value instanceof List) {
-                        values = (List<?>) value;
-                    } else {
-                        values = ImmutableList.of(value);
+    /**
+     * Invoke the batch function of the child once for all invocations.
+     * <p/>
+     * Each port passes its list of values as a column. Ports that take a list pass it as a column with one item.
+     * Long batches are split into chunks, with a check for cancellation before every chunk. As in a serial render,
+     * the render results of the child are those of its last invocation.
+     */
+    private List<Object> invokeBatch(EvaluationPlan.Slot childSlot, List<?>[] portArguments, int invocationCount) {
+        checkCancelled();
+        Node child = childSlot.node;
+        BatchFunction function = (BatchFunction) getFunction(childSlot);
+        List<Port> inputs = child.getInputs();
+        List<?>[] columns = new List<?>[portArguments.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = inputs.get(i).hasListRange() ? ImmutableList.of(portArguments[i]) : portArguments[i];
+        }
+
+        List<?> results;
+        if (resultCache == null || !NodeResultCache.isCacheable(childSlot, function)) {
+            results = invokeBatchFunction(child, function, columns, invocationCount);
+        } else {
+            NodeResultCache.Key key = NodeResultCache.keyForBatch(function, columns);
+            results = (List<?>) resultCache.get(key);
+            if (results == null) {
+                results = invokeBatchFunction(child, function, columns, invocationCount);
+                resultCache.put(key, results);
+            }
+        }
+
+        int last = invocationCount - 1;
+        List<Object> resultsList = new ArrayList<Object>(invocationCount);
+        for (int i = 0; i < last; i++) {
+            appendResult(child, results.get(i), resultsList);
+        }
+        List<?> lastResults = postProcessResult(child, results.get(last));
+        resultsList.addAll(lastResults);
+        putRenderResults(childSlot.path, lastResults);
+        return resultsList;
+    }
+
+    private boolean shouldSplitInvocations(EvaluationPlan.Slot childSlot, int invocationCount) {
+        if (!isParallel() || childSlot.node.isNetwork() || invocationCount < Math.max(2, listParallelThreshold))
+            return false;
+        return getFunction(childSlot).isThreadSafe();
+    }
+
+    /**
+     * Invoke the child once for each set of arguments, spreading the invocations over the fork-join pool.
+     * <p/>
+     * The results are concatenated in invocation order. As in a serial render, the render results of
+     * the child are those of its last invocation.
+     */
+    private List<Object> renderInvocationsInParallel(EvaluationPlan.Slot childSlot, List<?>[] portArguments, int invocationCount) {
+        Object[] results = new Object[invocationCount];
+        int chunkSize = Math.max(1, invocationCount / (pool.getParallelism() * 4));
+        new InvocationRange(childSlot, portArguments, results, 0, invocationCount, chunkSize).invoke();
+
+        Node child = childSlot.node;
+        int last = invocationCount - 1;
+        List<Object> resultsList = new ArrayList<Object>(invocationCount);
+        for (int i = 0; i < last; i++) {
+            appendResult(child, results[i], resultsList);
+        }
+        List<?> lastResults = postProcessResult(child, results[last]);
+        resultsList.addAll(lastResults);
+        putRenderResults(childSlot.path, lastResults);
+        return resultsList;
+    }
+
+    private final class InvocationRange extends RecursiveAction {
+        private final EvaluationPlan.Slot childSlot;
+        private final List<?>[] portArguments;
+        private final Object[] results;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        private InvocationRange(EvaluationPlan.Slot childSlot, List<?>[] portArguments, Object[] results, int start, int end, int chunkSize) {
+            this.childSlot = childSlot;
+            this.portArguments = portArguments;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= chunkSize) {
+                TraceRecorder trace = TraceRecorder.getActive();
+                long startTime = trace != null ? System.nanoTime() : 0;
+                List<Port> inputs = childSlot.node.getInputs();
+                for (int i = start; i < end; i++) {
+                    results[i] = invokeNode(childSlot, buildArguments(inputs, portArguments, i));
+                }
+                if (trace != null) trace.complete("chunk", childSlot.path + " (invocations " + start + "-" + end + ")", startTime);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new InvocationRange(childSlot, portArguments, results, start, middle, chunkSize),
+                        new InvocationRange(childSlot, portArguments, results, middle, end, chunkSize));
+            }
+        }
+    }
+
+    /**
+     * Evaluate all input ports of the child, converting and clamping the values.
+     * <p/>
+     * In parallel mode, ports that are connected to an upstream node are evaluated as separate tasks, as long as
+     * all functions in the upstream branch are thread-safe. Other branches are evaluated on the calling thread.
+     * The values are returned by port index.
+     */
+    private List<?>[] evaluatePorts(EvaluationPlan.Slot networkSlot, EvaluationPlan.Slot childSlot, Map<Port, ?> networkArgumentMap) {
+        List<Port> inputs = childSlot.node.getInputs();
+        List<PortTask> portTasks = null;
+        List<PortTask> forkedTasks = null;
+        if (isParallel()) {
+            int upstreamCount = 0;
+            int threadSafeCount = 0;
+            for (EvaluationPlan.Slot upstream : childSlot.upstream) {
+                if (upstream == null) continue;
+                upstreamCount++;
+                if (isThreadSafeBranch(upstream)) threadSafeCount++;
+            }
+            // With only a single upstream branch there is nothing to gain from forking.
+            if (upstreamCount > 1 && threadSafeCount > 0) {
+                portTasks = new ArrayList<PortTask>(inputs.size());
+                forkedTasks = new ArrayList<PortTask>(threadSafeCount);
+                for (int i = 0; i < inputs.size(); i++) {
+                    EvaluationPlan.Slot upstream = childSlot.upstream[i];
+                    boolean fork = upstream != null && isThreadSafeBranch(upstream);
+                    PortTask task = new PortTask(networkSlot, childSlot, i, inputs.get(i), networkArgumentMap, fork);
+                    if (fork) forkedTasks.add(task);
+                    portTasks.add(task);
+                }
+                if (threadSafeCount == upstreamCount) {
+                    ForkJoinTask.invokeAll(forkedTasks);
+                } else {
+                    for (PortTask task : forkedTasks) {
+                        task.fork();
                     }
-                    portArguments.put(childPort, values);
                 }
             }
+        }
 
-            // A prepared list of argument lists, each for one invocation of the child node.
-            Iterable<Map<Port, ?>> argumentMaps = buildArgumentMaps(portArguments);
+        List<?>[] portArguments = new List<?>[inputs.size()];
+        if (portTasks == null) {
+            for (int i = 0; i < inputs.size(); i++) {
+                portArguments[i] = evaluatePort(networkSlot, childSlot, i, inputs.get(i), networkArgumentMap);
+            }
+        } else {
+            try {
+                for (int i = 0; i < inputs.size(); i++) {
+                    if (!portTasks.get(i).fork) {
+                        portArguments[i] = portTasks.get(i).invoke();
+                    }
+                }
+                // Join in reverse order, so the last forked task can still run here if no other thread took it.
+                for (int i = inputs.size() - 1; i >= 0; i--) {
+                    if (portTasks.get(i).fork) {
+                        portArguments[i] = portTasks.get(i).join();
+                    }
+                }
+            } catch (RuntimeException e) {
+                cancelAll(forkedTasks);
+                throw e;
+            } catch (Error e) {
+                cancelAll(forkedTasks);
+                throw e;
+            }
+            // Merge the render results in port order, as if the ports were evaluated one after the other.
+            for (PortTask task : portTasks) {
+                for (Map.Entry<String, List<?>> entry : task.renderResults.entrySet()) {
+                    putRenderResults(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            Port port = inputs.get(i);
+            List<?> result = convertResultsForPort(port, portArguments[i]);
+            portArguments[i] = clampResultsForPort(port, result);
+        }
+        return portArguments;
+    }
 
-            String childPath = getChildPath(networkPath, child.getName());
-            for (Map<Port, ?> argumentMap : argumentMaps) {
-                List<?> results = renderNode(childPath, argumentMap);
-                resultsList.addAll(results);
+    private static void cancelAll(List<PortTask> tasks) {
+        for (PortTask task : tasks) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Store the results of the node, or keep them with the port that is being evaluated in parallel.
+     */
+    private void putRenderResults(String nodePath, List<?> results) {
+        Map<String, List<?>> portResults = portRenderResults.get();
+        if (portResults != null) {
+            portResults.put(nodePath, results);
+        } else {
+            renderResults.put(nodePath, results);
+        }
+    }
+
+    /**
+     * Evaluates a single port of the child in a parallel render.
+     * <p/>
+     * The render results of the upstream nodes are kept apart, so they can be merged in port order afterwards.
+     */
+    private final class PortTask extends RecursiveTask<List<?>> {
+        private final EvaluationPlan.Slot networkSlot;
+        private final EvaluationPlan.Slot childSlot;
+        private final int portIndex;
+        private final Port port;
+        private final Map<Port, ?> networkArgumentMap;
+        private final boolean fork;
+        private final Map<String, List<?>> renderResults = new LinkedHashMap<String, List<?>>();
+
+        private PortTask(EvaluationPlan.Slot networkSlot, EvaluationPlan.Slot childSlot, int portIndex, Port port, Map<Port, ?> networkArgumentMap, boolean fork) {
+            this.networkSlot = networkSlot;
+            this.childSlot = childSlot;
+            this.portIndex = portIndex;
+            this.port = port;
+            this.networkArgumentMap = networkArgumentMap;
+            this.fork = fork;
+        }
+
+        @Override
+        protected List<?> compute() {
+            Map<String, List<?>> previousResults = portRenderResults.get();
+            portRenderResults.set(renderResults);
+            try {
+                return evaluatePort(networkSlot, childSlot, portIndex, port, networkArgumentMap);
+            } finally {
+                if (previousResults != null) {
+                    portRenderResults.set(previousResults);
+                } else {
+                    portRenderResults.remove();
+                }
             }
         }
-        nodeArgumentsResults.put(nodeArguments, resultsList);
-        return resultsList;
     }
 
-    private Object invokeNode(String nodePath, Map<Port, ?> argumentMap) {
-        List<Port> inputs = nodeMap.get(nodePath).getInputs();
+    /**
+     * Check if the node and all nodes it depends on have thread-safe functions, so the node can be evaluated on
+     * another thread. For a network, this includes all of its children.
+     * <p/>
+     * Like the function itself, this depends on the function repository, so it is kept per context.
+     *
+     * @param nodePath The absolute path of the node.
+     * @return true if the node can be evaluated in parallel with other branches.
+     */
+    boolean isThreadSafeBranch(String nodePath) {
+        return isThreadSafeBranch(getSlot(nodePath));
+    }
+
+    private boolean isThreadSafeBranch(EvaluationPlan.Slot slot) {
+        int known = threadSafeBranches.get(slot.id);
+        if (known != UNKNOWN_BRANCH) return known == THREAD_SAFE_BRANCH;
+        return isThreadSafeBranch(slot, new HashSet<EvaluationPlan.Slot>());
+    }
+
+    private boolean isThreadSafeBranch(EvaluationPlan.Slot slot, Set<EvaluationPlan.Slot> visiting) {
+        int known = threadSafeBranches.get(slot.id);
+        if (known != UNKNOWN_BRANCH) return known == THREAD_SAFE_BRANCH;
+        // Nodes in a cycle are not considered thread-safe.
+        if (!visiting.add(slot)) return false;
+        boolean threadSafe = true;
+        if (slot.node.isNetwork()) {
+            for (EvaluationPlan.Slot child : slot.getChildren()) {
+                if (!isThreadSafeBranch(child, visiting)) {
+                    threadSafe = false;
+                    break;
+                }
+            }
+        } else {
+            try {
+                threadSafe = getFunction(slot).isThreadSafe();
+            } catch (IllegalArgumentException e) {
+                // The function doesn't exist. Evaluate the branch on the calling thread, where the error is reported.
+                threadSafe = false;
+            }
+        }
+        for (int i = 0; i < slot.upstream.length && threadSafe; i++) {
+            threadSafe = slot.upstream[i] == null || isThreadSafeBranch(slot.upstream[i], visiting);
+        }
+        threadSafeBranches.set(slot.id, threadSafe ? THREAD_SAFE_BRANCH : NOT_THREAD_SAFE_BRANCH);
+        return threadSafe;
+    }
+
+    /**
+     * Check if the node and all nodes it depends on have {@link Purity#PURE pure} functions, so the node gives the
+     * same results every time it is evaluated with the same arguments. For a network, this includes all of its children.
+     * <p/>
+     * Like the function itself, this depends on the function repository, so it is kept per context.
+     *
+     * @param nodePath The absolute path of the node.
+     * @return true if the node can be evaluated once for all invocations of its network.
+     */
+    boolean isPureBranch(String nodePath) {
+        return isPureBranch(getSlot(nodePath));
+    }
+
+    private boolean isPureBranch(EvaluationPlan.Slot slot) {
+        int known = pureBranches.get(slot.id);
+        if (known != UNKNOWN_BRANCH) return known == PURE_BRANCH;
+        return isPureBranch(slot, new HashSet<EvaluationPlan.Slot>());
+    }
+
+    private boolean isPureBranch(EvaluationPlan.Slot slot, Set<EvaluationPlan.Slot> visiting) {
+        int known = pureBranches.get(slot.id);
+        if (known != UNKNOWN_BRANCH) return known == PURE_BRANCH;
+        // Nodes in a cycle are not considered pure.
+        if (!visiting.add(slot)) return false;
+        boolean pure = true;
+        if (slot.node.isNetwork()) {
+            for (EvaluationPlan.Slot child : slot.getChildren()) {
+                if (!isPureBranch(child, visiting)) {
+                    pure = false;
+                    break;
+                }
+            }
+        } else {
+            try {
+                pure = getFunction(slot).getPurity() == Purity.PURE;
+            } catch (IllegalArgumentException e) {
+                // The function doesn't exist. Evaluate the node for every invocation, where the error is reported.
+                pure = false;
+            }
+        }
+        for (int i = 0; i < slot.upstream.length && pure; i++) {
+            pure = slot.upstream[i] == null || isPureBranch(slot.upstream[i], visiting);
+        }
+        pureBranches.set(slot.id, pure ? PURE_BRANCH : IMPURE_BRANCH);
+        return pure;
+    }
+
+    private Object invokeNode(EvaluationPlan.Slot slot, Map<Port, ?> argumentMap) {
+        List<Port> inputs = slot.node.getInputs();
         Object[] arguments = new Object[inputs.size()];
         int i = 0;
         for (Port port : inputs) {
@@ -221,7 +893,7 @@ public final class NodeContext {
             if (argumentMap.containsKey(port)) {
                 argument = argumentMap.get(port);
             } else if (port.hasValueRange()) {
-                argument = getPortValue(nodePath, port);
+                argument = getPortValue(slot, port);
             } else {
                 // The port expects a list but nothing is connected. Evaluate with an empty list.
                 argument = ImmutableList.of();
@@ -229,13 +901,23 @@ public final class NodeContext {
             arguments[i] = argument;
             i++;
         }
-        return invokeNode(nodePath, arguments);
+        return invokeNode(slot, arguments);
     }
 
-    private Object invokeNode(String nodePath, Object[] arguments) {
-        Node node = getNodeForPath(nodePath);
-        Function function = functionRepository.getFunction(node.getFunction());
-        return invokeFunction(node, function, arguments);
+    private Object invokeNode(EvaluationPlan.Slot slot, Object[] arguments) {
+        checkCancelled();
+        Node node = slot.node;
+        Function function = getFunction(slot);
+        if (resultCache == null || !NodeResultCache.isCacheable(slot, function)) {
+            return invokeFunction(node, function, arguments);
+        }
+        NodeResultCache.Key key = NodeResultCache.keyFor(node, function, arguments);
+        Object result = resultCache.get(key);
+        if (result == null) {
+            result = invokeFunction(node, function, arguments);
+            resultCache.put(key, result);
+        }
+        return result;
     }
 
     private List<?> convertResultsForPort(Port port, List<?> values) {
@@ -259,26 +941,16 @@ public final class NodeContext {
         return b.build();
     }
 
-    private Node findOutputNode(Node network, Node inputNode, Port inputPort) {
-        for (Connection c : network.getConnections()) {
-            if (c.getInputNode().equals(inputNode.getName()) && c.getInputPort().equals(inputPort.getName())) {
-                return network.getChild(c.getOutputNode());
-            }
-        }
-        return null;
-    }
-
-    private List<?> evaluatePort(String networkPath, Node child, Port childPort, Map<Port, ?> networkArgumentMap) {
-        Node outputNode = findOutputNode(nodeMap.get(networkPath), child, childPort);
-        if (outputNode != null) {
-            List<?> result = renderChild(networkPath, outputNode, networkArgumentMap);
+    private List<?> evaluatePort(EvaluationPlan.Slot networkSlot, EvaluationPlan.Slot childSlot, int portIndex, Port childPort, Map<Port, ?> networkArgumentMap) {
+        EvaluationPlan.Slot upstream = childSlot.upstream[portIndex];
+        if (upstream != null) {
+            List<?> result = renderChild(networkSlot, upstream, networkArgumentMap);
             if (childPort.isFileWidget()) {
                 return convertToFileNames(result);
             }
             return result;
         } else {
-            String childPath = getChildPath(networkPath, child.getName());
-            Object value = getPortValue(childPath, childPort);
+            Object value = getPortValue(childSlot, childPort);
             if (value == null) {
                 return ImmutableList.of();
             } else {
@@ -316,16 +988,14 @@ public final class NodeContext {
      * <li>If the port is a file widget, convert relative to absolute paths.</li>
      * </ul>
      */
-    private Object getPortValue(String nodePath, Port port) {
-        Node node = getNodeForPath(nodePath);
-        String portKey = node.getName() + "." + port.getName();
-        Object overrideValue = portOverrides.get(portKey);
+    private Object getPortValue(EvaluationPlan.Slot slot, Port port) {
+        Object overrideValue = portOverrides.isEmpty() ? null : portOverrides.get(slot.node.getName() + "." + port.getName());
         Object portValue = overrideValue == null ? port.getValue() : overrideValue;
         if (port.getType().equals("context")) {
             return this;
         } else if (port.getType().equals(Port.TYPE_STATE)) {
             // The state of the node is the output value of the previous render of that node.
-            Object previousState = previousRenderResults.get(nodePath);
+            Object previousState = previousRenderResults.get(slot.path);
             if (previousState != null) {
                 return previousState;
             } else {
@@ -338,13 +1008,106 @@ public final class NodeContext {
     }
 
     private Object invokeFunction(Node node, Function function, Object[] arguments) throws NodeRenderException {
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
         try {
             return function.invoke(arguments);
         } catch (Exception e) {
             throw new NodeRenderException(node, e);
+        } finally {
+            // The category tells Java, Python and Clojure functions apart.
+            if (trace != null) trace.complete(function.getClass().getSimpleName(), node.getFunction(), startTime);
         }
     }
 
+    /**
+     * Invoke the batch function in chunks.
+     * <p/>
+     * In parallel mode, the chunks of a thread-safe function are spread over the fork-join pool, the same way as
+     * split invocations. Otherwise a batch function, such as a Python function running in a single interpreter,
+     * would process a long list on one thread.
+     */
+    private List<?> invokeBatchFunction(Node node, BatchFunction function, List<?>[] columns, int count) throws NodeRenderException {
+        if (isParallel() && count >= Math.max(2, listParallelThreshold) && function.isThreadSafe()) {
+            int chunkSize = Math.min(BATCH_CHUNK_SIZE, Math.max(1, count / (pool.getParallelism() * 4)));
+            return invokeBatchChunksInParallel(node, function, columns, count, chunkSize);
+        }
+        if (count <= BATCH_CHUNK_SIZE) {
+            return invokeBatchChunk(node, function, columns, count);
+        }
+        List<Object> results = new ArrayList<Object>(count);
+        for (int start = 0; start < count; start += BATCH_CHUNK_SIZE) {
+            if (start > 0) checkCancelled();
+            int end = Math.min(start + BATCH_CHUNK_SIZE, count);
+            results.addAll(invokeBatchChunk(node, function, columnChunks(columns, start, end), end - start));
+        }
+        return results;
+    }
+
+    private List<?> invokeBatchChunksInParallel(final Node node, final BatchFunction function, final List<?>[] columns, int count, int chunkSize) {
+        List<ForkJoinTask<List<?>>> tasks = new ArrayList<ForkJoinTask<List<?>>>(count / chunkSize + 1);
+        for (int start = 0; start < count; start += chunkSize) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + chunkSize, count);
+            tasks.add(new RecursiveTask<List<?>>() {
+                @Override
+                protected List<?> compute() {
+                    checkCancelled();
+                    return invokeBatchChunk(node, function, columnChunks(columns, chunkStart, chunkEnd), chunkEnd - chunkStart);
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+        List<Object> results = new ArrayList<Object>(count);
+        for (ForkJoinTask<List<?>> task : tasks) {
+            results.addAll(task.join());
+        }
+        return results;
+    }
+
+    private static List<?>[] columnChunks(List<?>[] columns, int start, int end) {
+        List<?>[] chunk = new List<?>[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            chunk[i] = columnChunk(columns[i], start, end);
+        }
+        return chunk;
+    }
+
+    /**
+     * Get the values of the column for the invocations from start to end. Columns that are too short wrap around.
+     */
+    private static List<?> columnChunk(List<?> column, int start, int end) {
+        int size = column.size();
+        if (size >= end) {
+            return column.subList(start, end);
+        } else if (size == 1) {
+            return column;
+        }
+        List<Object> chunk = new ArrayList<Object>(end - start);
+        for (int i = start; i < end; i++) {
+            chunk.add(column.get(i % size));
+        }
+        return chunk;
+    }
+
+    private List<?> invokeBatchChunk(Node node, BatchFunction function, List<?>[] columns, int count) throws NodeRenderException {
+        TraceRecorder trace = TraceRecorder.getActive();
+        long startTime = trace != null ? System.nanoTime() : 0;
+        List<?> results;
+        try {
+            results = function.invokeBatch(columns, count);
+        } catch (Exception e) {
+            throw new NodeRenderException(node, e);
+        } finally {
+            if (trace != null) trace.complete(function.getClass().getSimpleName(), node.getFunction() + " (batch)", startTime);
+        }
+        if (results == null || results.size() != count) {
+            throw new NodeRenderException(node, "Function " + node.getFunction() + " returned "
+                    + (results == null ? "no results" : results.size() + " results") + " for " + count + " invocations.");
+        }
+        return results;
+    }
+
     /**
      * Get the object of the list at the specified index.
      * <p/>
@@ -362,67 +1125,58 @@ public final class NodeContext {
      * beta: ["a" "b"]
      * gamma: [true]}
      * <p/>
-     * Builds the following argument maps:
-     * [
-     * {alpha: 1 beta:"a" gamma:true}
-     * {alpha: 2 beta:"b" gamma:true}
-     * {alpha: 3 beta:"a" gamma:true}
-     * {alpha: 4 beta:"b" gamma:true}
-     * {alpha: 5 beta:"a" gamma:true}]
+     * Builds the following arguments for the invocations 0 to 4:
+     * [1 "a" true]
+     * [2 "b" true]
+     * [3 "a" true]
+     * [4 "b" true]
+     * [5 "a" true]
+     *
+     * @param inputs           The input ports of the node.
+     * @param argumentsPerPort The list of values for each port, by port index.
+     * @param index            The index of the invocation.
+     * @return The arguments, by port index.
      */
-    private static Iterable<Map<Port, ?>> buildArgumentMaps(final Map<Port, List<?>> argumentsPerPort) {
-        final int minSize = smallestArgumentList(argumentsPerPort);
-        if (minSize == 0) return Collections.emptyList();
-
-        final int maxSize = biggestArgumentList(argumentsPerPort);
-        return new Iterable<Map<Port, ?>>() {
-            int i = 0;
-
-            @Override
-            public Iterator<Map<Port, ?>> iterator() {
-                return new Iterator<Map<Port, ?>>() {
-                    @Override
-                    public boolean hasNext() {
-                        return i < maxSize;
-                    }
-
-                    @Override
-                    public Map<Port, ?> next() {
-                        Map<Port, Object> argumentMap = new HashMap<Port, Object>(argumentsPerPort.size());
-                        for (Map.Entry<Port, List<?>> entry : argumentsPerPort.entrySet()) {
-                            if (entry.getKey().hasListRange()) {
-                                argumentMap.put(entry.getKey(), entry.getValue());
-                            } else {
-                                argumentMap.put(entry.getKey(), wrappingGet(entry.getValue(), i));
-                            }
-                        }
-                        i++;
-                        return argumentMap;
-                    }
-
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
+    private static Object[] buildArguments(List<Port> inputs, List<?>[] argumentsPerPort, int index) {
+        Object[] arguments = new Object[argumentsPerPort.length];
+        for (int i = 0; i < arguments.length; i++) {
+            if (inputs.get(i).hasListRange()) {
+                arguments[i] = argumentsPerPort[i];
+            } else {
+                arguments[i] = wrappingGet(argumentsPerPort[i], index);
             }
-        };
+        }
+        return arguments;
     }
 
-    private static int smallestArgumentList(Map<Port, List<?>> argumentsPerPort) {
-        int minSize = Integer.MAX_VALUE;
-        for (Map.Entry<Port, List<?>> entry : argumentsPerPort.entrySet()) {
-            minSize = Math.min(minSize, argumentListSize(entry.getKey(), entry.getValue()));
+    /**
+     * Build the argument map for the invocation at the given index.
+     * Networks are rendered with an argument map, since their published ports are looked up by port.
+     *
+     * @see #buildArguments(java.util.List, java.util.List[], int)
+     */
+    private static Map<Port, ?> buildArgumentMap(List<Port> inputs, List<?>[] argumentsPerPort, int index) {
+        Object[] arguments = buildArguments(inputs, argumentsPerPort, index);
+        Map<Port, Object> argumentMap = new HashMap<Port, Object>(arguments.length * 2);
+        for (int i = 0; i < arguments.length; i++) {
+            argumentMap.put(inputs.get(i), arguments[i]);
         }
-        return minSize;
+        return argumentMap;
     }
 
-    private static int biggestArgumentList(Map<Port, List<?>> argumentsPerPort) {
+    /**
+     * Count how many times a node will be invoked for the given arguments.
+     * This is the size of the biggest argument list, or zero if any of the lists is empty.
+     */
+    private static int invocationCount(List<Port> inputs, List<?>[] argumentsPerPort) {
+        int minSize = Integer.MAX_VALUE;
         int maxSize = 0;
-        for (Map.Entry<Port, List<?>> entry : argumentsPerPort.entrySet()) {
-            maxSize = Math.max(maxSize, argumentListSize(entry.getKey(), entry.getValue()));
+        for (int i = 0; i < argumentsPerPort.length; i++) {
+            int size = argumentListSize(inputs.get(i), argumentsPerPort[i]);
+            minSize = Math.min(minSize, size);
+            maxSize = Math.max(maxSize, size);
         }
-        return maxSize;
+        return minSize == 0 ? 0 : maxSize;
     }
 
     private static int argumentListSize(Port port, List<?> arguments) {
@@ -435,29 +1189,38 @@ public final class NodeContext {
         }
     }
 
-    private class NodeArguments {
-        private String network;
-        private String node;
-        private Map<Port, ?> argumentMap;
+    /**
+     * The key for the results of a child node rendered with the given network arguments.
+     * <p/>
+     * The hash is computed once, from a fingerprint of the arguments. See {@link Fingerprints}.
+     */
+    private static final class NodeArguments {
+        private final String network;
+        private final String node;
+        private final Map<Port, ?> argumentMap;
+        private final int hashCode;
 
         public NodeArguments(String network, String node, Map<Port, ?> argumentMap) {
             this.network = network;
             this.node = node;
             this.argumentMap = argumentMap;
+            this.hashCode = Objects.hashCode(network, node, Fingerprints.hash(argumentMap));
         }
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(network, node, argumentMap);
+            return hashCode;
         }
 
         @Override
         public boolean equals(Object o) {
+            if (this == o) return true;
             if (!(o instanceof NodeArguments)) return false;
             final NodeArguments other = (NodeArguments) o;
-            return Objects.equal(network, other.network)
+            return hashCode == other.hashCode
+                    && Objects.equal(network, other.network)
                     && Objects.equal(node, other.node)
-                    && Objects.equal(argumentMap, other.argumentMap);
+                    && Fingerprints.equal(argumentMap, other.argumentMap);
         }
     }
 }
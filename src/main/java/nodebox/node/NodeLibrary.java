@@ -166,6 +166,10 @@ public class NodeLibrary {
     private final ImmutableMap<String, String> properties;
     private final ImmutableList<Device> devices;
     private final UUID uuid;
+    private volatile EvaluationPlan evaluationPlan;
+    // The plan of the library version this one was derived from, until our own plan is compiled.
+    private volatile EvaluationPlan previousEvaluationPlan;
+    private volatile ImmutableMap<String, Node> flattenedNodeMap;
 
     private NodeLibrary(String name, File file, Node root, NodeRepository nodeRepository, FunctionRepository functionRepository, Map<String, String> properties, List<Device> devices, UUID uuid) {
         checkNotNull(name, "Name cannot be null.");
@@ -218,24 +222,67 @@ public class NodeLibrary {
         return functionRepository;
     }
 
+    /**
+     * Get a map of the absolute path of every node in the library to the node.
+     * <p/>
+     * The map is built once and shared with library versions that have the same root.
+     *
+     * @return The map of paths to nodes.
+     */
     public ImmutableMap<String, Node> getFlattenedNodeMap() {
-        Map<String, Node> map = getFlattenedNodeMap("/", root);
-        map.put("/", root);
-        return ImmutableMap.copyOf(map);
-    }
-
-    private Map<String, Node> getFlattenedNodeMap(String path, Node network) {
-        Map<String, Node> map = new HashMap<String, Node>();
-        for (Node n : network.getChildren()) {
-            map.put(path + n.getName(), n);
-            if (n.isNetwork()) {
-                Map<String, Node> childMap = getFlattenedNodeMap(path + n.getName() + "/", n);
-                map.putAll(childMap);
-            }
+        ImmutableMap<String, Node> map = flattenedNodeMap;
+        if (map == null) {
+            ImmutableMap.Builder<String, Node> b = ImmutableMap.builder();
+            addFlattenedNodes(b, getEvaluationPlan().getSlot("/"));
+            map = b.build();
+            flattenedNodeMap = map;
         }
         return map;
     }
 
+    private static void addFlattenedNodes(ImmutableMap.Builder<String, Node> b, EvaluationPlan.Slot slot) {
+        b.put(slot.path, slot.node);
+        for (EvaluationPlan.Slot child : slot.getChildren()) {
+            addFlattenedNodes(b, child);
+        }
+    }
+
+    /**
+     * Get the compiled evaluation plan of this library.
+     * <p/>
+     * The plan is compiled on first use and shared with library versions that have the same root.
+     * If this library was derived from another version, the networks that did not change are taken over
+     * from the plan of that version.
+     *
+     * @return The evaluation plan.
+     */
+    EvaluationPlan getEvaluationPlan() {
+        EvaluationPlan plan = evaluationPlan;
+        if (plan == null) {
+            plan = EvaluationPlan.compile(root, previousEvaluationPlan);
+            evaluationPlan = plan;
+            previousEvaluationPlan = null;
+        }
+        return plan;
+    }
+
+    /**
+     * Hand the cached structure of this library over to a new version of it.
+     * <p/>
+     * Only the plan itself is passed on, never this library, so a chain of edits doesn't keep old versions alive.
+     */
+    private NodeLibrary sharingEvaluationPlan(NodeLibrary newLibrary) {
+        EvaluationPlan plan = evaluationPlan;
+        if (newLibrary.root == root) {
+            newLibrary.evaluationPlan = plan;
+            newLibrary.previousEvaluationPlan = previousEvaluationPlan;
+            newLibrary.flattenedNodeMap = flattenedNodeMap;
+        } else {
+            newLibrary.previousEvaluationPlan = plan != null ? plan : previousEvaluationPlan;
+        }
+        return newLibrary;
+    }
+
     //// Properties ////
 
     public boolean hasProperty(String name) {
@@ -307,7 +354,7 @@ public class NodeLibrary {
     }
 
     public NodeLibrary withProperties(Map<String, String> properties) {
-        return new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, ImmutableMap.copyOf(properties), this.devices, this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, ImmutableMap.copyOf(properties), this.devices, this.uuid));
     }
 
 
@@ -337,7 +384,7 @@ public class NodeLibrary {
         ImmutableList.Builder<Device> b = ImmutableList.builder();
         b.addAll(getDevices());
         b.add(device);
-        return new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, this.properties, b.build(), this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, this.properties, b.build(), this.uuid));
     }
 
     public NodeLibrary withDeviceRemoved(Device device) {
@@ -370,7 +417,7 @@ public class NodeLibrary {
             if (!device.getName().equals(name))
                 b.add(device);
         }
-        return new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, this.properties, b.build(), this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, this.properties, b.build(), this.uuid));
     }
 
     public NodeLibrary withDevicePropertyChanged(String deviceName, String propertyName, String propertyValue) {
@@ -383,7 +430,7 @@ public class NodeLibrary {
             else
                 b.add(device);
         }
-        return new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, this.properties, b.build(), this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, this.functionRepository, this.properties, b.build(), this.uuid));
     }
 
     //// Loading ////
@@ -577,11 +624,17 @@ public class NodeLibrary {
         if (node == null) {
             throw new XMLStreamException("Prototype " + prototypeId + " could not be found.", reader.getLocation());
         }
+        // Connections are added in bulk, once all the nodes they refer to exist.
+        List<Connection> connections = new ArrayList<Connection>();
 
         while (true) {
             int eventType = reader.next();
             if (eventType == XMLStreamConstants.START_ELEMENT) {
                 String tagName = reader.getLocalName();
+                if (!tagName.equals("conn") && !connections.isEmpty()) {
+                    node = node.withConnectionsAdded(connections);
+                    connections.clear();
+                }
 
                 if (tagName.equals("node") || tagName.equals("importCoreNode")) {
                     if (prototypeId == null && !node.isNetwork())
@@ -606,7 +659,7 @@ public class NodeLibrary {
                         node = node.withInputAdded(parsePort(reader, null));
                     }
                 } else if (tagName.equals("conn")) {
-                    node = node.withConnectionAdded(parseConnection(reader));
+                    connections.add(parseConnection(reader));
                 } else {
                     throw new XMLStreamException("Unknown tag " + tagName, reader.getLocation());
                 }
@@ -617,6 +670,9 @@ public class NodeLibrary {
             }
         }
 
+        if (!connections.isEmpty())
+            node = node.withConnectionsAdded(connections);
+
         // This has to come at the end, since the child first needs to exist.
         String renderedChildName = attributeMap.get("renderedChild");
         if (renderedChildName != null)
@@ -724,15 +780,15 @@ public class NodeLibrary {
     ///// Mutation methods ////
 
     public NodeLibrary withRoot(Node newRoot) {
-        return new NodeLibrary(this.name, this.file, newRoot, this.nodeRepository, this.functionRepository, this.properties, this.devices, this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, this.file, newRoot, this.nodeRepository, this.functionRepository, this.properties, this.devices, this.uuid));
     }
 
     public NodeLibrary withFunctionRepository(FunctionRepository newRepository) {
-        return new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, newRepository, this.properties, this.devices, this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, this.file, this.root, this.nodeRepository, newRepository, this.properties, this.devices, this.uuid));
     }
 
     public NodeLibrary withFile(File newFile) {
-        return new NodeLibrary(this.name, newFile, this.root, this.nodeRepository, this.functionRepository, this.properties, this.devices, this.uuid);
+        return sharingEvaluationPlan(new NodeLibrary(this.name, newFile, this.root, this.nodeRepository, this.functionRepository, this.properties, this.devices, this.uuid));
     }
 
     //// Saving ////
@@ -161,10 +161,11 @@ public class NodeLibraryController {
 
     public Node groupIntoNetwork(String parentPath, Iterable<Node> nodes, String networkName) {
         Node parent = getNode(parentPath);
-        Node newParent = parent;
+        List<String> removedNames = new ArrayList<String>();
         for (Node node : nodes) {
-            newParent = newParent.withChildRemoved(node.getName());
+            removedNames.add(node.getName());
         }
+        Node newParent = parent.withChildrenRemoved(removedNames);
         Node subnet = Node.NETWORK
                 .withName(newParent.uniqueName(networkName))
                 .withChildrenAdded(parent, nodes);
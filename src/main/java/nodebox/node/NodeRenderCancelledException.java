@@ -0,0 +1,27 @@
+package nodebox.node;
+
+/**
+ * Thrown when a render stops early because its node context was cancelled or ran out of time.
+ *
+ * @see NodeContext#cancel()
+ * @see NodeContext#setTimeBudget(long, java.util.concurrent.TimeUnit)
+ */
+public class NodeRenderCancelledException extends RuntimeException {
+
+    private final boolean timedOut;
+
+    public NodeRenderCancelledException(boolean timedOut) {
+        super(timedOut ? "The render took longer than its time budget." : "The render was cancelled.");
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Check if the render was stopped because it ran out of time.
+     *
+     * @return true if the time budget was exceeded, false if the render was cancelled.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+}
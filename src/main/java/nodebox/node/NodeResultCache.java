@@ -0,0 +1,189 @@
+package nodebox.node;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import nodebox.function.Function;
+import nodebox.function.Purity;
+
+import java.io.File;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Caches the results of function invocations across renders.
+ * <p/>
+ * Results are addressed by their content: the function that produced them and the arguments it was invoked with.
+ * Because upstream results that come from the cache are the same objects as before, a change to a single port
+ * only re-evaluates the node that owns the port and the nodes that depend on it.
+ * <p/>
+ * Only results of {@link Purity#PURE pure} functions are cached. Nodes that read their previous state, nodes without
+ * inputs and nodes that return nothing are never cached, since their output can change without their arguments
+ * changing. For file arguments the modification time of the file is part of the key. Functions that read the node
+ * context are cached for the values of the context keys they declare.
+ * <p/>
+ * The cache is bounded by the total number of cached values and holds its values through soft references,
+ * so the garbage collector can reclaim them when memory runs low.
+ */
+public final class NodeResultCache {
+
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 100000;
+
+    private final Cache<Key, Object> cache;
+
+    public NodeResultCache() {
+        this(DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * Create a result cache.
+     *
+     * @param maximumWeight The maximum number of values in the cache. A list result counts for each of its items.
+     */
+    public NodeResultCache(long maximumWeight) {
+        checkArgument(maximumWeight > 0, "The maximum weight should be positive.");
+        this.cache = CacheBuilder.newBuilder()
+                .softValues()
+                .maximumWeight(maximumWeight)
+                .weigher(new Weigher<Key, Object>() {
+                    @Override
+                    public int weigh(Key key, Object value) {
+                        if (value instanceof Collection) {
+                            return 1 + ((Collection<?>) value).size();
+                        }
+                        return 1;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Remove all cached results.
+     * <p/>
+     * Call this when the functions can change without their identity changing, for example when reloading code.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Check if invocations of the node can be cached, given that its function is pure.
+     *
+     * @param node The node to check.
+     * @return true if the output of the node only depends on its arguments.
+     */
+    static boolean isCacheable(Node node) {
+        if (node.isNetwork() || node.getInputs().isEmpty()) return false;
+        for (Port port : node.getInputs()) {
+            if (port.getType().equals(Port.TYPE_STATE))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check if invocations of the function in the slot can be cached.
+     *
+     * @param slot     The slot of the node.
+     * @param function The function of the node.
+     * @return true if the output only depends on the arguments and the context keys that the function declares.
+     */
+    static boolean isCacheable(EvaluationPlan.Slot slot, Function function) {
+        if (!slot.cacheable || function.getPurity() != Purity.PURE) return false;
+        return !slot.readsContext || function.getContextKeys() != null;
+    }
+
+    /**
+     * Create the key for an invocation of the node's function.
+     * The arguments are copied, so the caller is free to reuse the array.
+     */
+    static Key keyFor(Node node, Function function, Object[] arguments) {
+        List<Port> inputs = node.getInputs();
+        long[] fileStamps = null;
+        arguments = arguments.clone();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (arguments[i] instanceof NodeContext) {
+                // The context is different for every render. Only the values the function reads matter.
+                arguments[i] = contextValues((NodeContext) arguments[i], function.getContextKeys());
+            } else if (inputs.get(i).isFileWidget() && arguments[i] != null) {
+                if (fileStamps == null) {
+                    fileStamps = new long[inputs.size()];
+                }
+                fileStamps[i] = new File(String.valueOf(arguments[i])).lastModified();
+            }
+        }
+        return new Key(function, false, arguments, fileStamps);
+    }
+
+    private static List<Object> contextValues(NodeContext context, Collection<String> keys) {
+        Map<String, ?> data = context.getData();
+        List<Object> values = new ArrayList<Object>(keys.size());
+        for (String key : keys) {
+            values.add(data.get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Create the key for a batch invocation of the node's function.
+     * The key is different from the keys of single invocations, even if the columns happen to equal their arguments.
+     */
+    static Key keyForBatch(Function function, List<?>[] columns) {
+        Object[] arguments = Arrays.copyOf(columns, columns.length, Object[].class);
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].size() == 1 && columns[i].get(0) instanceof NodeContext) {
+                arguments[i] = contextValues((NodeContext) columns[i].get(0), function.getContextKeys());
+            }
+        }
+        return new Key(function, true, arguments, null);
+    }
+
+    Object get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    void put(Key key, Object result) {
+        if (result == null) return;
+        cache.put(key, result);
+    }
+
+    static final class Key {
+        private final Function function;
+        private final boolean batch;
+        private final Object[] arguments;
+        private final long[] fileStamps;
+        private final int hashCode;
+
+        private Key(Function function, boolean batch, Object[] arguments, long[] fileStamps) {
+            this.function = function;
+            this.batch = batch;
+            this.arguments = arguments;
+            this.fileStamps = fileStamps;
+            this.hashCode = Objects.hashCode(System.identityHashCode(function), Fingerprints.hash(arguments), Arrays.hashCode(fileStamps));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return function == other.function
+                    && batch == other.batch
+                    && hashCode == other.hashCode
+                    && Fingerprints.equal(arguments, other.arguments)
+                    && Arrays.equals(fileStamps, other.fileStamps);
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package nodebox.node;
+
+import com.google.common.collect.ImmutableSortedMap;
+import nodebox.util.StringUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Statistics about where the time of a render goes, per node.
+ * <p/>
+ * Set a profile on a {@link NodeContext} to collect the statistics of a render. For every node path the profile keeps
+ * the number of function invocations, the time spent with and without evaluating upstream nodes, the size of the
+ * argument and result lists and an estimate of the allocated memory.
+ * <p/>
+ * Times are wall clock times. In a parallel render, the times of nodes that were evaluated concurrently overlap.
+ * The allocation estimate only counts memory allocated by the thread that invoked the node.
+ */
+public final class RenderProfile {
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+    private final ConcurrentMap<String, NodeStats> stats = new ConcurrentHashMap<String, NodeStats>();
+
+    private static boolean isAllocationSupported() {
+        try {
+            if (!(THREAD_BEAN instanceof com.sun.management.ThreadMXBean)) return false;
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_BEAN;
+            if (!bean.isThreadAllocatedMemorySupported()) return false;
+            if (!bean.isThreadAllocatedMemoryEnabled()) bean.setThreadAllocatedMemoryEnabled(true);
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far, or zero if the JVM doesn't track this.
+     */
+    static long allocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) return 0;
+        return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    void record(String path, int invocations, long totalTime, long selfTime, long inputSize, long outputSize, long allocatedBytes) {
+        NodeStats nodeStats = stats.get(path);
+        if (nodeStats == null) {
+            NodeStats newStats = new NodeStats(path);
+            nodeStats = stats.putIfAbsent(path, newStats);
+            if (nodeStats == null) nodeStats = newStats;
+        }
+        nodeStats.add(invocations, totalTime, selfTime, inputSize, outputSize, allocatedBytes);
+    }
+
+    /**
+     * Get the statistics of the node at the given path.
+     *
+     * @param path The absolute path of the node.
+     * @return The statistics, or null if the node was not evaluated.
+     */
+    public NodeStats getStats(String path) {
+        return stats.get(path);
+    }
+
+    /**
+     * Get the statistics of all evaluated nodes, sorted by path.
+     */
+    public Map<String, NodeStats> getAllStats() {
+        return ImmutableSortedMap.copyOf(stats);
+    }
+
+    public void clear() {
+        stats.clear();
+    }
+
+    /**
+     * Write the statistics as a JSON document.
+     * <p/>
+     * The document has a "nodes" array with an object per node. Times are in nanoseconds, allocations in bytes.
+     *
+     * @param writer The writer to write to. The writer is not closed.
+     * @throws IOException If writing fails.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\"nodes\": [");
+        boolean first = true;
+        for (NodeStats s : getAllStats().values()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("  {\"path\": " + StringUtils.quoteJson(s.getPath()));
+            writer.write(", \"evaluations\": " + s.getEvaluations());
+            writer.write(", \"invocations\": " + s.getInvocations());
+            writer.write(", \"totalTime\": " + s.getTotalTime());
+            writer.write(", \"selfTime\": " + s.getSelfTime());
+            writer.write(", \"inputSize\": " + s.getInputSize());
+            writer.write(", \"outputSize\": " + s.getOutputSize());
+            writer.write(", \"allocatedBytes\": " + s.getAllocatedBytes());
+            writer.write("}");
+        }
+        writer.write("\n]}\n");
+    }
+
+    public String toJson() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(writer);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * The accumulated statistics of a single node.
+     * <p/>
+     * A node can be evaluated more than once per render, for example when it is part of a subnetwork that is
+     * invoked for every item of a list. The statistics are the sum over all evaluations.
+     */
+    public static final class NodeStats {
+        private final String path;
+        private long evaluations;
+        private long invocations;
+        private long totalTime;
+        private long selfTime;
+        private long inputSize;
+        private long outputSize;
+        private long allocatedBytes;
+
+        private NodeStats(String path) {
+            this.path = path;
+        }
+
+        private synchronized void add(int invocations, long totalTime, long selfTime, long inputSize, long outputSize, long allocatedBytes) {
+            this.evaluations++;
+            this.invocations += invocations;
+            this.totalTime += totalTime;
+            this.selfTime += selfTime;
+            this.inputSize += inputSize;
+            this.outputSize += outputSize;
+            this.allocatedBytes += allocatedBytes;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * The number of times the node was evaluated with different arguments.
+         */
+        public synchronized long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * The number of times the function of the node was invoked.
+         */
+        public synchronized long getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * The time spent on the node, including the evaluation of its upstream nodes, in nanoseconds.
+         */
+        public synchronized long getTotalTime() {
+            return totalTime;
+        }
+
+        /**
+         * The time spent on the node itself, in nanoseconds.
+         * For a network, this includes the time of its children.
+         */
+        public synchronized long getSelfTime() {
+            return selfTime;
+        }
+
+        /**
+         * The total number of values in the argument lists of the node.
+         */
+        public synchronized long getInputSize() {
+            return inputSize;
+        }
+
+        /**
+         * The total number of values the node returned.
+         */
+        public synchronized long getOutputSize() {
+            return outputSize;
+        }
+
+        /**
+         * An estimate of the memory allocated while invoking the node itself, in bytes.
+         */
+        public synchronized long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d invocations, %.2f ms (%.2f ms self)", path, invocations, totalTime / 1e6, selfTime / 1e6);
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package nodebox.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Custom events for the JDK Flight Recorder.
+ * <p/>
+ * The events show up in JDK Mission Control next to the garbage collection, allocation and I/O events of the JVM,
+ * so a slow render can be attributed to the node, library or file that caused it.
+ * <p/>
+ * The Flight Recorder API is only available on newer JVMs, so the event types are defined at runtime through
+ * reflection. On JVMs without a Flight Recorder, and as long as no recording is running, {@link EventType#begin()}
+ * only costs a volatile read and returns null:
+ * <pre>
+ * FlightRecorderEvents.Event event = FlightRecorderEvents.NODE_EVALUATION.begin();
+ * ...
+ * if (event != null) event.commit(path, function, invocations, inputSize, outputSize);
+ * </pre>
+ * The values passed to {@link Event#commit(Object...)} are in the order the fields of the event type were declared.
+ */
+public final class FlightRecorderEvents {
+
+    private static final Logger LOG = Logger.getLogger(FlightRecorderEvents.class.getName());
+
+    public static final EventType NODE_EVALUATION = new EventType("nodebox.NodeEvaluation", "Node Evaluation",
+            "Rendering",
+            field(String.class, "nodePath", "Node Path"),
+            field(String.class, "function", "Function"),
+            field(int.class, "invocations", "Invocations"),
+            field(long.class, "inputSize", "Input Size"),
+            field(long.class, "outputSize", "Output Size"));
+
+    public static final EventType LIBRARY_LOAD = new EventType("nodebox.LibraryLoad", "Function Library Load",
+            "Libraries",
+            field(String.class, "namespace", "Namespace"),
+            field(String.class, "language", "Language"),
+            field(String.class, "file", "File"),
+            field(long.class, "bytes", "Bytes"),
+            field(int.class, "functions", "Functions"));
+
+    public static final EventType FILE_IMPORT = new EventType("nodebox.FileImport", "File Import",
+            "I/O",
+            field(String.class, "file", "File"),
+            field(String.class, "format", "Format"),
+            field(long.class, "bytes", "Bytes"),
+            field(long.class, "items", "Items"));
+
+    public static final EventType HTTP_GET = new EventType("nodebox.HttpGet", "HTTP Get",
+            "I/O",
+            field(String.class, "url", "URL"),
+            field(boolean.class, "cached", "Cached"),
+            field(int.class, "statusCode", "Status Code"),
+            field(long.class, "bodyLength", "Body Length"));
+
+    public static final EventType FRAME_EXPORT = new EventType("nodebox.FrameExport", "Frame Export",
+            "Export",
+            field(int.class, "frame", "Frame"),
+            field(long.class, "outputSize", "Output Size"));
+
+    private static final boolean SUPPORTED;
+    private static final Set<Object> runningRecordings = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+    private static volatile boolean recording;
+
+    private static Method newEvent, eventBegin, eventEnd, eventCommit, eventSet, eventShouldCommit;
+
+    static {
+        boolean supported;
+        try {
+            newEvent = Class.forName("jdk.jfr.EventFactory").getMethod("newEvent");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            eventBegin = eventClass.getMethod("begin");
+            eventEnd = eventClass.getMethod("end");
+            eventCommit = eventClass.getMethod("commit");
+            eventSet = eventClass.getMethod("set", int.class, Object.class);
+            eventShouldCommit = eventClass.getMethod("shouldCommit");
+            Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+            supported = (Boolean) recorderClass.getMethod("isAvailable").invoke(null);
+            if (supported) {
+                Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+                Object listener = Proxy.newProxyInstance(FlightRecorderEvents.class.getClassLoader(),
+                        new Class<?>[]{listenerClass}, new RecordingStateListener());
+                recorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+            }
+        } catch (Exception e) {
+            supported = false;
+        } catch (LinkageError e) {
+            supported = false;
+        }
+        SUPPORTED = supported;
+    }
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Check if the JVM has a Flight Recorder that these events can be recorded with.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Check if a Flight Recorder recording is running.
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    private static Field field(Class<?> type, String name, String label) {
+        return new Field(type, name, label);
+    }
+
+    private static void recordingStateChanged(Object recording) throws Exception {
+        Object state = recording.getClass().getMethod("getState").invoke(recording);
+        if ("RUNNING".equals(state.toString())) {
+            runningRecordings.add(recording);
+        } else {
+            runningRecordings.remove(recording);
+        }
+        FlightRecorderEvents.recording = !runningRecordings.isEmpty();
+    }
+
+    /**
+     * Tracks which recordings are running, so that events are only created while they can be recorded.
+     */
+    private static final class RecordingStateListener implements InvocationHandler {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("recordingStateChanged")) {
+                recordingStateChanged(args[0]);
+            } else if (name.equals("recorderInitialized")) {
+                // Recordings started from the command line may be running before the listener was added.
+                Object recorder = args[0];
+                List<?> recordings = (List<?>) recorder.getClass().getMethod("getRecordings").invoke(recorder);
+                for (Object r : recordings) {
+                    recordingStateChanged(r);
+                }
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("toString")) {
+                return "FlightRecorderEvents listener";
+            }
+            return null;
+        }
+    }
+
+    private static final class Field {
+        private final Class<?> type;
+        private final String name;
+        private final String label;
+
+        private Field(Class<?> type, String name, String label) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+        }
+    }
+
+    /**
+     * A custom event type. The type is registered with the Flight Recorder when it is first recorded.
+     */
+    public static final class EventType {
+        private final String name;
+        private final String label;
+        private final String category;
+        private final Field[] fields;
+        private volatile Object factory;
+        private volatile boolean failed;
+
+        private EventType(String name, String label, String category, Field... fields) {
+            this.name = name;
+            this.label = label;
+            this.category = category;
+            this.fields = fields;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Start timing an event.
+         *
+         * @return The event, or null if no recording is running.
+         */
+        public Event begin() {
+            if (!recording) return null;
+            try {
+                Object factory = getFactory();
+                if (factory == null) return null;
+                Object event = newEvent.invoke(factory);
+                eventBegin.invoke(event);
+                return new Event(this, event);
+            } catch (Exception e) {
+                disable(e);
+                return null;
+            }
+        }
+
+        private Object getFactory() throws Exception {
+            if (failed) return null;
+            Object factory = this.factory;
+            if (factory != null) return factory;
+            synchronized (this) {
+                if (this.factory == null) {
+                    this.factory = createFactory();
+                }
+                return this.factory;
+            }
+        }
+
+        private Object createFactory() throws Exception {
+            List<Object> annotations = new ArrayList<Object>();
+            annotations.add(annotation("jdk.jfr.Name", name));
+            annotations.add(annotation("jdk.jfr.Label", label));
+            annotations.add(annotation("jdk.jfr.Category", new String[]{"NodeBox", category}));
+            Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> descriptorConstructor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+            List<Object> descriptors = new ArrayList<Object>();
+            for (Field field : fields) {
+                List<Object> fieldAnnotations = new ArrayList<Object>();
+                fieldAnnotations.add(annotation("jdk.jfr.Label", field.label));
+                descriptors.add(descriptorConstructor.newInstance(field.type, field.name, fieldAnnotations));
+            }
+            return Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, descriptors);
+        }
+
+        private static Object annotation(String annotationClassName, Object value) throws Exception {
+            Class<?> elementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> annotationClass = Class.forName(annotationClassName);
+            return elementClass.getConstructor(Class.class, Object.class).newInstance(annotationClass, value);
+        }
+
+        private void disable(Exception e) {
+            if (failed) return;
+            failed = true;
+            LOG.log(Level.WARNING, "Could not record Flight Recorder event " + name, e);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * An event that is being timed.
+     */
+    public static final class Event {
+        private final EventType type;
+        private final Object event;
+
+        private Event(EventType type, Object event) {
+            this.type = type;
+            this.event = event;
+        }
+
+        /**
+         * End the event and record it with the given field values.
+         *
+         * @param values The values of the fields, in the order the fields of the event type were declared.
+         */
+        public void commit(Object... values) {
+            checkArgument(values.length == type.fields.length, "Event %s has %s fields, got %s values.",
+                    type.name, type.fields.length, values.length);
+            try {
+                eventEnd.invoke(event);
+                if (!(Boolean) eventShouldCommit.invoke(event)) return;
+                for (int i = 0; i < values.length; i++) {
+                    eventSet.invoke(event, i, values[i]);
+                }
+                eventCommit.invoke(event);
+            } catch (Exception e) {
+                type.disable(e);
+            }
+        }
+    }
+
+}
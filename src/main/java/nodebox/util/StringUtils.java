@@ -41,6 +41,29 @@ public class StringUtils {
         return humanizeName(constant.toLowerCase(Locale.US));
     }
 
+    /**
+     * Quote the string as a JSON string literal.
+     *
+     * @param value The string to quote.
+     * @return The string between double quotes, with quotes, backslashes and control characters escaped.
+     */
+    public static String quoteJson(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
     public static String toTitleCase(String value) {
         StringBuilder titleCase = new StringBuilder();
         boolean nextTitleCase = true;
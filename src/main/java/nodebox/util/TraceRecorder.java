@@ -0,0 +1,168 @@
+package nodebox.util;
+
+import java.io.*;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Records a timeline of what the application is doing, in the trace event format of Chrome and Perfetto.
+ * <p/>
+ * At most one recorder is active at a time. Code that wants to be traced asks for the active recorder, and only
+ * records spans when there is one:
+ * <pre>
+ * TraceRecorder trace = TraceRecorder.getActive();
+ * long start = trace != null ? System.nanoTime() : 0;
+ * ...
+ * if (trace != null) trace.complete("node", path, start);
+ * </pre>
+ * When no recorder is active, this only costs a volatile read.
+ * <p/>
+ * The recorded file can be opened in chrome://tracing or ui.perfetto.dev.
+ */
+public final class TraceRecorder {
+
+    public static final int DEFAULT_MAXIMUM_EVENTS = 1000000;
+
+    private static volatile TraceRecorder active;
+
+    private final long origin = System.nanoTime();
+    private final int maximumEvents;
+    private final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<Event>();
+    private final AtomicInteger eventCount = new AtomicInteger();
+    private final ConcurrentMap<Long, String> threadNames = new ConcurrentHashMap<Long, String>();
+
+    /**
+     * Start recording with a new recorder. A recorder that was already active is stopped.
+     *
+     * @return The new recorder.
+     */
+    public static TraceRecorder start() {
+        TraceRecorder recorder = new TraceRecorder(DEFAULT_MAXIMUM_EVENTS);
+        active = recorder;
+        return recorder;
+    }
+
+    /**
+     * Stop recording.
+     *
+     * @return The recorder that was active, or null if no recorder was active.
+     */
+    public static TraceRecorder stop() {
+        TraceRecorder recorder = active;
+        active = null;
+        return recorder;
+    }
+
+    public static TraceRecorder getActive() {
+        return active;
+    }
+
+    public static boolean isRecording() {
+        return active != null;
+    }
+
+    /**
+     * Create a recorder. Use {@link #start()} to create a recorder that is used by the application.
+     *
+     * @param maximumEvents The number of events after which new events are dropped.
+     */
+    public TraceRecorder(int maximumEvents) {
+        checkArgument(maximumEvents > 0, "The maximum number of events should be positive.");
+        this.maximumEvents = maximumEvents;
+    }
+
+    /**
+     * Record a span that started at the given time and ends now.
+     *
+     * @param category  The category of the span, used to filter events in the trace viewer.
+     * @param name      The name of the span.
+     * @param startTime The start time of the span, as returned by {@link System#nanoTime()}.
+     */
+    public void complete(String category, String name, long startTime) {
+        long endTime = System.nanoTime();
+        if (eventCount.incrementAndGet() > maximumEvents) return;
+        Thread thread = Thread.currentThread();
+        long threadId = thread.getId();
+        if (!threadNames.containsKey(threadId)) {
+            threadNames.putIfAbsent(threadId, thread.getName());
+        }
+        events.add(new Event(category, name, startTime - origin, endTime - startTime, threadId));
+    }
+
+    /**
+     * The number of recorded events.
+     */
+    public int getEventCount() {
+        return Math.min(eventCount.get(), maximumEvents);
+    }
+
+    /**
+     * The number of events that were dropped because the recorder was full.
+     */
+    public int getDroppedEventCount() {
+        return Math.max(0, eventCount.get() - maximumEvents);
+    }
+
+    /**
+     * Write the trace as a JSON document in the trace event format.
+     *
+     * @param writer The writer to write to. The writer is not closed.
+     * @throws IOException If writing fails.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": " + thread.getKey()
+                    + ", \"args\": {\"name\": " + StringUtils.quoteJson(thread.getValue()) + "}}");
+        }
+        for (Event e : events) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("{\"name\": " + StringUtils.quoteJson(e.name)
+                    + ", \"cat\": " + StringUtils.quoteJson(e.category)
+                    + ", \"ph\": \"X\", \"pid\": 1, \"tid\": " + e.threadId
+                    + ", \"ts\": " + microseconds(e.start)
+                    + ", \"dur\": " + microseconds(e.duration) + "}");
+        }
+        writer.write("\n]}\n");
+    }
+
+    public void writeJson(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writeJson(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String microseconds(long nanoseconds) {
+        return String.format(Locale.US, "%.3f", nanoseconds / 1000.0);
+    }
+
+    private static final class Event {
+        private final String category;
+        private final String name;
+        private final long start;
+        private final long duration;
+        private final long threadId;
+
+        private Event(String category, String name, long start, long duration, long threadId) {
+            this.category = category;
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+            this.threadId = threadId;
+        }
+    }
+
+}
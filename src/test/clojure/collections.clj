@@ -0,0 +1,29 @@
+; Clojure collection library for testing.
+(ns clojure-collections)
+
+(defn add-item [items item]
+  (conj items item))
+
+(defn second-item [items]
+  (items 1))
+
+(defn total [values]
+  (reduce + 0 values))
+
+(defn set-value [m k v]
+  (assoc m k v))
+
+(defn get-value [m k]
+  (get m k))
+
+(defn same [value]
+  value)
+
+(defn collection-type [value]
+  (cond
+    (vector? value) "vector"
+    (map? value) "map"
+    :else "other"))
+
+(defn sum-args [a b c d e f g h i j]
+  (+ a b c d e f g h i j))
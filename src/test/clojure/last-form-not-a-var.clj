@@ -0,0 +1,6 @@
+; This library defines functions, but does not end with a var definition.
+(ns nodebox.test.last-form-not-a-var)
+
+(defn triple [x] (* 3 x))
+
+[{:name "triple" :fn triple}]
@@ -1,4 +1,16 @@
 ; Clojure math library for testing.
 (ns clojure-math)
 
-(def add +)
+(defn ^{:purity :volatile :context-keys ["frame"] :thread-safe true} wiggle [context]
+  (* (.getFrame context) (rand)))
+
+(def ^{:purity :pure} add +)
+
+(defn square ^double [^double x]
+  (* x x))
+
+(defn scale-long ^long [^long x ^long factor]
+  (* x factor))
+
+(defn mix [^double a b]
+  (+ a b))
@@ -1,19 +1,28 @@
 package nodebox.function;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import nodebox.node.Node;
 import nodebox.node.NodeContext;
 import nodebox.node.NodeLibrary;
 import nodebox.node.Port;
+import nodebox.util.FileUtils;
 import nodebox.util.LoadException;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import static junit.framework.TestCase.*;
 import static nodebox.util.Assertions.assertResultsEqual;
 
 public class ClojureLibraryTest {
 
     private final FunctionLibrary mathLibrary = ClojureLibrary.loadScript("src/test/clojure/math.clj");
+    private final FunctionLibrary collectionsLibrary = ClojureLibrary.loadScript("src/test/clojure/collections.clj");
     private final FunctionRepository functions = FunctionRepository.of(mathLibrary);
     private final NodeLibrary testLibrary = NodeLibrary.create("test", Node.ROOT, functions);
 
@@ -44,8 +53,127 @@ public class ClojureLibraryTest {
         assertResultsEqual(results, 6L);
     }
 
-    @Test(expected = LoadException.class)
-    public void testNoVarAtEnd() {
-        ClojureLibrary.loadScript("src/test/clojure/no-var-at-end.clj");
+    @Test
+    public void testNoVars() {
+        File file = new File("src/test/clojure/no-var-at-end.clj");
+        CodeCache cache = temporaryCache();
+        try {
+            assertLoadFails(file, null);
+            assertLoadFails(file, cache);
+        } finally {
+            cache.discard(cache.getDirectory());
+        }
+    }
+
+    private void assertLoadFails(File file, CodeCache cache) {
+        try {
+            ClojureLibrary.loadScript(file, cache);
+            fail("Loading a library without vars should fail.");
+        } catch (LoadException ignored) {
+        }
+    }
+
+    /**
+     * The library is found through the vars it defines, whether it is loaded from source or from the code cache.
+     */
+    @Test
+    public void testLastFormIsNotAVar() throws Exception {
+        File file = new File("src/test/clojure/last-form-not-a-var.clj");
+        CodeCache cache = temporaryCache();
+        try {
+            assertEquals(6L, ClojureLibrary.loadScript(file, null).getFunction("triple").invoke(2L));
+            // The first load compiles the library into the cache, the second one loads the compiled classes.
+            assertEquals(6L, ClojureLibrary.loadScript(file, cache).getFunction("triple").invoke(2L));
+            assertEquals(6L, ClojureLibrary.loadScript(file, cache).getFunction("triple").invoke(2L));
+        } finally {
+            cache.discard(cache.getDirectory());
+        }
+    }
+
+    private static CodeCache temporaryCache() {
+        return new CodeCache(FileUtils.createTemporaryDirectory("codecache"));
+    }
+    @Test
+    public void testMetadata() {
+        Function add = mathLibrary.getFunction("add");
+        assertEquals(Purity.PURE, add.getPurity());
+        assertFalse(add.isThreadSafe());
+        Function wiggle = mathLibrary.getFunction("wiggle");
+        assertEquals(Purity.VOLATILE, wiggle.getPurity());
+        assertEquals(ImmutableSet.of("frame"), wiggle.getContextKeys());
+        assertTrue(wiggle.isThreadSafe());
+        // Functions that don't declare their purity are not cached.
+        assertEquals(Purity.VOLATILE, mathLibrary.getFunction("square").getPurity());
+    }
+
+    /**
+     * Editing a library and changing it back loads the classes of each version again, not those of the last one.
+     */
+    @Test
+    public void testReloadChangedLibrary() throws Exception {
+        File directory = FileUtils.createTemporaryDirectory("clojure");
+        try {
+            File file = new File(directory, "reload.clj");
+            // Make the source unique, so every version is compiled into a new cache entry.
+            String token = Long.toString(System.nanoTime());
+            String versionA = "(ns nodebox.test.reload)\n(defn version [] \"a-" + token + "\")\n";
+            String versionB = "(ns nodebox.test.reload)\n(defn version [] \"b-" + token + "\")\n";
+            FileUtils.writeFile(file, versionA);
+            assertEquals("a-" + token, ClojureLibrary.loadScript(file.getPath()).getFunction("version").invoke());
+            FileUtils.writeFile(file, versionB);
+            assertEquals("b-" + token, ClojureLibrary.loadScript(file.getPath()).getFunction("version").invoke());
+            FileUtils.writeFile(file, versionA);
+            assertEquals("a-" + token, ClojureLibrary.loadScript(file.getPath()).getFunction("version").invoke());
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrimitiveFunctions() throws Exception {
+        assertEquals(6.25, mathLibrary.getFunction("square").invoke(2.5));
+        // Longs are widened to doubles, like in Clojure.
+        assertEquals(9.0, mathLibrary.getFunction("square").invoke(3L));
+        assertEquals(12L, mathLibrary.getFunction("scale-long").invoke(3L, 4L));
+        assertEquals(3.5, mathLibrary.getFunction("mix").invoke(1L, 2.5));
+        try {
+            mathLibrary.getFunction("square").invoke("x");
+            fail("Should have thrown an exception.");
+        } catch (ClassCastException ignored) {
+        }
+    }
+
+    @Test
+    public void testArities() throws Exception {
+        assertEquals(0L, mathLibrary.getFunction("add").invoke());
+        assertEquals(3L, mathLibrary.getFunction("add").invoke(1L, 2L));
+        assertEquals(55L, collectionsLibrary.getFunction("sum-args").invoke(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L));
+    }
+
+    @Test
+    public void testListView() throws Exception {
+        List<Long> items = new ArrayList<Long>(ImmutableList.of(1L, 2L, 3L));
+        assertEquals(ImmutableList.of(1L, 2L, 3L, 4L), collectionsLibrary.getFunction("add-item").invoke(items, 4L));
+        assertEquals(ImmutableList.of(1L, 2L, 3L), items);
+        assertEquals(2L, collectionsLibrary.getFunction("second-item").invoke(items));
+        assertEquals(6L, collectionsLibrary.getFunction("total").invoke(items));
+        assertEquals("vector", collectionsLibrary.getFunction("collection-type").invoke(items));
+        // A list that is returned unchanged is the original list.
+        assertSame(items, collectionsLibrary.getFunction("same").invoke(items));
+    }
+
+    @Test
+    public void testMapView() throws Exception {
+        Map<String, Object> row = ImmutableMap.<String, Object>of("name", "a", "values", ImmutableList.of(1L, 2L));
+        assertEquals("a", collectionsLibrary.getFunction("get-value").invoke(row, "name"));
+        assertEquals("map", collectionsLibrary.getFunction("collection-type").invoke(row));
+        Object changed = collectionsLibrary.getFunction("set-value").invoke(row, "name", "b");
+        assertEquals(ImmutableMap.of("name", "b", "values", ImmutableList.of(1L, 2L)), changed);
+        assertEquals("a", row.get("name"));
+        // Nested lists are also wrapped.
+        Object values = collectionsLibrary.getFunction("get-value").invoke(row, "values");
+        assertEquals(ImmutableList.of(1L, 2L, 3L), collectionsLibrary.getFunction("add-item").invoke(values, 3L));
+        assertSame(row, collectionsLibrary.getFunction("same").invoke(row));
+    }
+
+}
@@ -0,0 +1,98 @@
+package nodebox.function;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static junit.framework.TestCase.*;
+
+public class CodeCacheTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File directory;
+    private File source;
+    private CodeCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDir();
+        source = new File(directory, "library.py");
+        Files.write("def f(): return 1\n", source, UTF_8);
+        cache = new CodeCache(new File(directory, "cache"));
+    }
+
+    @After
+    public void tearDown() {
+        cache.discard(directory);
+    }
+
+    @Test
+    public void testEntryKey() throws Exception {
+        File entry = cache.entryFor("python", "2.7.0", source);
+        assertEquals(new File(cache.getDirectory(), "python"), entry.getParentFile());
+        assertEquals(entry, cache.entryFor("python", "2.7.0", source));
+        assertFalse(entry.equals(cache.entryFor("python", "2.7.1", source)));
+        assertFalse(entry.equals(cache.entryFor("clojure", "2.7.0", source)));
+        Files.write("def f(): return 2\n", source, UTF_8);
+        assertFalse(entry.equals(cache.entryFor("python", "2.7.0", source)));
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        File entry = cache.entryFor("python", "2.7.0", source);
+        assertNull(cache.read(entry));
+        cache.write(entry, new byte[]{1, 2, 3});
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, cache.read(entry)));
+        // Only the entry remains, no temporary files.
+        assertEquals(1, entry.getParentFile().listFiles().length);
+    }
+
+    @Test
+    public void testDirectoryEntry() throws Exception {
+        File entry = cache.entryFor("clojure", "1.8.0", source);
+        File temp = cache.createTempDirectory(entry);
+        Files.write(new byte[]{1}, new File(temp, "a.class"));
+        cache.commit(temp, entry);
+        assertTrue(new File(entry, "a.class").isFile());
+        assertFalse(temp.exists());
+
+        // A second entry for the same key is thrown away.
+        File other = cache.createTempDirectory(entry);
+        Files.write(new byte[]{2}, new File(other, "b.class"));
+        cache.commit(other, entry);
+        assertFalse(other.exists());
+        assertFalse(new File(entry, "b.class").exists());
+    }
+
+    @Test
+    public void testOlderEntriesAreRemoved() throws Exception {
+        File otherSource = new File(directory, "other.py");
+        Files.write("def g(): return 1\n", otherSource, UTF_8);
+        File otherEntry = cache.entryFor("python", "2.7.0", otherSource);
+        cache.write(otherEntry, new byte[]{1});
+
+        File oldEntry = cache.entryFor("python", "2.7.0", source);
+        cache.write(oldEntry, new byte[]{1});
+        Files.write("def f(): return 2\n", source, UTF_8);
+        File newEntry = cache.entryFor("python", "2.7.0", source);
+        cache.write(newEntry, new byte[]{2});
+
+        // Only the latest entry for the same source remains. Entries for other sources are kept.
+        assertFalse(oldEntry.exists());
+        assertTrue(newEntry.isFile());
+        assertTrue(otherEntry.isFile());
+
+        // The same goes for an upgraded runtime.
+        File upgradedEntry = cache.entryFor("python", "2.7.1", source);
+        cache.write(upgradedEntry, new byte[]{3});
+        assertFalse(newEntry.exists());
+        assertTrue(upgradedEntry.isFile());
+    }
+
+}
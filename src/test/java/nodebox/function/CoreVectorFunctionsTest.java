@@ -0,0 +1,235 @@
+package nodebox.function;
+
+import com.google.common.collect.ImmutableList;
+import nodebox.graphics.*;
+import nodebox.node.NodeLibrary;
+import nodebox.node.NodeRepository;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+/**
+ * Checks that the corevector functions that were ported from pyvector.py give the same output as the Python versions
+ * in src/test/python/pyvector_reference.py.
+ */
+public class CoreVectorFunctionsTest {
+
+    private static final FunctionLibrary pyLibrary = PythonLibrary.loadScript("pyvector_reference", "src/test/python/pyvector_reference.py");
+
+    private final Path rect = rect(0, 0, 100, 50);
+    private final Path ellipse = ellipse(20, 30, 80, 60);
+    private final Path triangle = triangle();
+    private final Geometry geometry = geometry(rect(-50, -50, 20, 40), ellipse(100, 80, 50, 50), triangle());
+    private final List<IGeometry> shapes = ImmutableList.<IGeometry>of(rect(0, 0, 10, 10), ellipse(80, 20, 30, 30),
+            triangle(), rect(200, -50, 40, 20), ellipse(-30, 10, 5, 5));
+    private final List<Point> points = ImmutableList.of(new Point(10, 20), new Point(-5, 40, Point.CURVE_DATA),
+            new Point(30, -12.5, Point.CURVE_TO), new Point(0, 0));
+
+    @Test
+    public void testCompound() throws Exception {
+        for (String function : ImmutableList.of("united", "subtracted", "intersected")) {
+            assertSameResult("compound", "compound", rect, ellipse, function, false);
+            assertSameResult("compound", "compound", rect, ellipse, function, true);
+            assertSameResult("compound", "compound", geometry, triangle, function, false);
+        }
+        assertSameResult("compound", "compound", rect, null, "united", false);
+    }
+
+    @Test
+    public void testDistribute() throws Exception {
+        for (String horizontal : ImmutableList.of("none", "left", "center", "right")) {
+            for (String vertical : ImmutableList.of("none", "top", "middle", "bottom")) {
+                assertSameResult("distribute", "distribute", shapes, horizontal, vertical);
+            }
+        }
+        assertSameResult("distribute", "distribute", shapes.subList(0, 2), "left", "top");
+    }
+
+    @Test
+    public void testPolygon() throws Exception {
+        for (long sides : new long[]{0, 3, 5, 12}) {
+            assertSameResult("polygon", "polygon", new Point(10, 20), 100.0, sides, false);
+            assertSameResult("polygon", "polygon", new Point(-30, 5), 42.5, sides, true);
+        }
+    }
+
+    @Test
+    public void testReflect() throws Exception {
+        for (double angle : new double[]{0, 45, 120, -90}) {
+            assertSameResult("reflect", "reflect", triangle, new Point(10, 20), angle, false);
+            assertSameResult("reflect", "reflect", ellipse, new Point(0, 0), angle, true);
+            assertSameResult("reflect", "reflect", geometry, new Point(-20, 50), angle, true);
+        }
+    }
+
+    @Test
+    public void testResample() throws Exception {
+        assertSameResult("resample", "resample", ellipse, "length", 10.0, 10L, false);
+        assertSameResult("resample", "resample", geometry, "length", 25.0, 10L, false);
+        assertSameResult("resample", "resample", geometry, "amount", 10.0, 33L, false);
+        assertSameResult("resample", "resample", geometry, "amount", 10.0, 7L, true);
+    }
+
+    @Test
+    public void testTransforms() throws Exception {
+        Point origin = new Point(15, -25);
+        for (Object shape : ImmutableList.of(rect, geometry, points, new Point(3, 4))) {
+            assertSameResult("translate", "translate", shape, new Point(12.5, -7));
+            assertSameResult("rotate", "rotate", shape, 33.0, origin);
+            assertSameResult("scale", "scale", shape, new Point(150, 75), origin);
+        }
+    }
+
+    @Test
+    public void testScatter() throws Exception {
+        for (long seed : new long[]{0, 1, 42, -7}) {
+            assertSameResult("scatter", "scatter", ellipse, 50L, seed);
+            assertSameResult("scatter", "scatter", geometry, 20L, seed);
+        }
+    }
+
+    @Test
+    public void testShapeOnPath() throws Exception {
+        for (String alignment : ImmutableList.of("leading", "trailing", "distributed")) {
+            assertSameResult("shape_on_path", "shapeOnPath", shapes, ellipse, 3L, alignment, 20.0, 0.0, 0.0);
+            assertSameResult("shape_on_path", "shapeOnPath", shapes, geometry, 2L, alignment, 15.0, 10.0, 5.0);
+        }
+        assertSameResult("shape_on_path", "shapeOnPath", ImmutableList.of(), ellipse, 3L, "leading", 20.0, 0.0, 0.0);
+    }
+
+    @Test
+    public void testSort() throws Exception {
+        Point point = new Point(20, 10);
+        for (String orderBy : ImmutableList.of("x", "y", "angle", "distance", "none")) {
+            assertSameResult("sort", "sort", shapes, orderBy, point);
+            assertSameResult("sort", "sort", points, orderBy, point);
+        }
+    }
+
+    @Test
+    public void testStack() throws Exception {
+        for (String direction : ImmutableList.of("n", "e", "s", "w")) {
+            assertSameResult("stack", "stack", shapes, direction, 5.0);
+            assertSameResult("stack", "stack", shapes, direction, -2.5);
+        }
+        assertSameResult("stack", "stack", shapes.subList(0, 1), "e", 5.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStackInvalidDirection() throws Exception {
+        CoreVectorFunctions.stack(shapes, "x", 5.0);
+    }
+
+    @Test
+    public void testStar() throws Exception {
+        for (long points : new long[]{1, 5, 20}) {
+            assertSameResult("star", "star", new Point(10, 20), points, 200.0, 100.0);
+            assertSameResult("star", "star", new Point(0, 0), points, 50.0, 0.0);
+        }
+    }
+
+    @Test
+    public void testTextOnPath() throws Exception {
+        for (String alignment : ImmutableList.of("leading", "trailing")) {
+            assertSameResult("text_on_path", "textOnPath", "text following a path", ellipse, "Verdana", 24.0, alignment, 0.0, 0.0);
+            assertSameResult("text_on_path", "textOnPath", "Hi", rect, "Verdana", 12.0, alignment, 30.0, 5.0);
+            assertSameResult("text_on_path", "textOnPath", "a", triangle, "Verdana", 18.0, alignment, 120.0, -3.0);
+        }
+    }
+
+    @Test
+    public void testWiggle() throws Exception {
+        Point offset = new Point(10, 20);
+        for (long seed : new long[]{0, 5, -3}) {
+            for (String scope : ImmutableList.of("points", "contours", "paths", "none")) {
+                assertSameResult("wiggle", "wiggle", rect, scope, offset, seed);
+                assertSameResult("wiggle", "wiggle", geometry, scope, offset, seed);
+            }
+            assertSameResult("wiggle", "wiggle", points, "points", offset, seed);
+            assertSameResult("wiggle", "wiggle", new Point(1, 2), "points", offset, seed);
+        }
+    }
+
+    /**
+     * The ported nodes should be thread-safe, so a parallel render can split their list-matched invocations.
+     */
+    @Test
+    public void testPortedNodesCanBeSplit() {
+        NodeLibrary corevector = NodeLibrary.load(new File("libraries/corevector/corevector.ndbx"), NodeRepository.of());
+        for (String nodeName : ImmutableList.of("compound", "distribute", "polygon", "reflect", "resample", "rotate",
+                "scale", "scatter", "shape_on_path", "sort", "stack", "star", "text_on_path", "translate", "wiggle")) {
+            String functionId = corevector.getRoot().getChild(nodeName).getFunction();
+            assertTrue(functionId, functionId.startsWith("corevector/"));
+            String functionName = functionId.substring("corevector/".length());
+            assertTrue(functionId, CoreVectorFunctions.LIBRARY.getFunction(functionName).isThreadSafe());
+        }
+    }
+
+    private void assertSameResult(String pythonName, String javaName, Object... args) throws Exception {
+        Object expected = pyLibrary.getFunction(pythonName).invoke(args);
+        Object actual = CoreVectorFunctions.LIBRARY.getFunction(javaName).invoke(args);
+        assertSameShape(pythonName, expected, actual);
+    }
+
+    private static void assertSameShape(String message, Object expected, Object actual) {
+        if (expected instanceof List) {
+            assertTrue(message, actual instanceof List);
+            List<?> expectedList = (List<?>) expected;
+            List<?> actualList = (List<?>) actual;
+            assertEquals(message, expectedList.size(), actualList.size());
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertSameShape(message, expectedList.get(i), actualList.get(i));
+            }
+        } else if (expected instanceof Geometry) {
+            assertTrue(message, actual instanceof Geometry);
+            assertSameShape(message, ((Geometry) expected).getPaths(), ((Geometry) actual).getPaths());
+        } else if (expected instanceof Path) {
+            assertTrue(message, actual instanceof Path);
+            Path expectedPath = (Path) expected;
+            Path actualPath = (Path) actual;
+            assertSameShape(message, expectedPath.getContours(), actualPath.getContours());
+            assertEquals(message, expectedPath.getFillColor(), actualPath.getFillColor());
+            assertEquals(message, expectedPath.getStrokeColor(), actualPath.getStrokeColor());
+            assertEquals(message, expectedPath.getStrokeWidth(), actualPath.getStrokeWidth());
+        } else if (expected instanceof Contour) {
+            assertTrue(message, actual instanceof Contour);
+            assertEquals(message, ((Contour) expected).getPoints(), ((Contour) actual).getPoints());
+            assertEquals(message, ((Contour) expected).isClosed(), ((Contour) actual).isClosed());
+        } else {
+            assertEquals(message, expected, actual);
+        }
+    }
+
+    private static Path rect(double x, double y, double width, double height) {
+        Path p = new Path();
+        p.rect(x, y, width, height);
+        return p;
+    }
+
+    private static Path ellipse(double x, double y, double width, double height) {
+        Path p = new Path();
+        p.ellipse(x, y, width, height);
+        return p;
+    }
+
+    private static Path triangle() {
+        Path p = new Path();
+        p.moveto(0, 0);
+        p.lineto(60, 10);
+        p.curveto(70, 30, 40, 50, 20, 40);
+        p.close();
+        return p;
+    }
+
+    private static Geometry geometry(Path... paths) {
+        Geometry g = new Geometry();
+        for (Path path : paths) {
+            g.add(path);
+        }
+        return g;
+    }
+
+}
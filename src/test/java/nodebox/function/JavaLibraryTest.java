@@ -0,0 +1,174 @@
+package nodebox.function;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import nodebox.graphics.Point;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+public class JavaLibraryTest {
+
+    private final FunctionLibrary library = JavaLibrary.ofClass("test", JavaLibraryTest.class,
+            "zero", "two", "five", "nothing", "fail", "list", "repeat", "six");
+
+    @Test
+    public void testInvoke() throws Exception {
+        assertEquals(42, library.getFunction("zero").invoke());
+        assertEquals(3.0, library.getFunction("two").invoke(1.0, 2.0));
+        assertEquals(15L, library.getFunction("five").invoke(1L, 2L, 3L, 4L, 5L));
+        assertNull(library.getFunction("nothing").invoke("x"));
+        assertEquals(Arrays.asList(1, 2), library.getFunction("list").invoke(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void testWidening() throws Exception {
+        assertEquals(3.0, library.getFunction("two").invoke(1, 2L));
+    }
+
+    @Test
+    public void testExceptionIsWrapped() throws Exception {
+        try {
+            library.getFunction("fail").invoke("boom");
+            fail("Should have thrown an exception.");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfArguments() throws Exception {
+        library.getFunction("two").invoke(1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongArgumentType() throws Exception {
+        library.getFunction("two").invoke(1.0, "2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPrimitive() throws Exception {
+        library.getFunction("two").invoke(1.0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNarrowing() throws Exception {
+        library.getFunction("five").invoke(1L, 2L, 3L, 4L, 5.0);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Function add = MathFunctions.LIBRARY.getFunction("add");
+        assertTrue(add instanceof BatchFunction);
+        assertFalse(library.getFunction("two") instanceof BatchFunction);
+        List<?> results = ((BatchFunction) add).invokeBatch(new List<?>[]{ImmutableList.of(1.0, 2.0, 3.0), ImmutableList.of(10, 20)}, 3);
+        assertEquals(ImmutableList.of(11.0, 22.0, 13.0), results);
+    }
+
+    @Test
+    public void testGeneratedBatch() throws Exception {
+        BatchFunction repeat = (BatchFunction) library.getFunction("repeat");
+        List<?> results = repeat.invokeBatch(new List<?>[]{ImmutableList.of("a", "b"), ImmutableList.of(1L, 2L, 3L)}, 3);
+        assertEquals(ImmutableList.of("a", "bb", "aaa"), results);
+        BatchFunction six = (BatchFunction) library.getFunction("six");
+        results = six.invokeBatch(new List<?>[]{ImmutableList.of(1.0, 2.0), ImmutableList.of(1), ImmutableList.of(1),
+                ImmutableList.of(1), ImmutableList.of(1), ImmutableList.of(10.0, 20.0)}, 2);
+        assertEquals(ImmutableList.of(15.0, 26.0), results);
+        // A hand-written batch version takes precedence.
+        BatchFunction makePoint = (BatchFunction) CoreVectorFunctions.LIBRARY.getFunction("makePoint");
+        results = makePoint.invokeBatch(new List<?>[]{ImmutableList.of(1.0, 2.0), ImmutableList.of(3.0)}, 2);
+        assertEquals(ImmutableList.of(new Point(1, 3), new Point(2, 3)), results);
+    }
+
+    /**
+     * A value that is not a number gives the same error, whether the function is invoked once or for a batch.
+     */
+    @Test
+    public void testBatchWithWrongValues() throws Exception {
+        BatchFunction add = (BatchFunction) MathFunctions.LIBRARY.getFunction("add");
+        String message = "Argument 2 of method add should be a double, not a.";
+        assertInvalidArgument(message, add, new Object[]{1.0, "a"});
+        // The hand-written batch version of add.
+        assertInvalidBatch(message, add, new List<?>[]{ImmutableList.of(1.0, 2.0), ImmutableList.of(1.0, "a")}, 2);
+        // The generated batch loop.
+        BatchFunction six = (BatchFunction) library.getFunction("six");
+        assertInvalidBatch("Argument 3 of method six should be a double, not null.", six, new List<?>[]{ImmutableList.of(1.0),
+                ImmutableList.of(1), Arrays.asList(1, null), ImmutableList.of(1), ImmutableList.of(1), ImmutableList.of(1)}, 2);
+    }
+
+    private static void assertInvalidArgument(String message, Function function, Object[] args) throws Exception {
+        try {
+            function.invoke(args);
+            fail("Should have thrown an exception.");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static void assertInvalidBatch(String message, BatchFunction function, List<?>[] columns, int count) throws Exception {
+        try {
+            function.invokeBatch(columns, count);
+            fail("Should have thrown an exception.");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMetadata() {
+        Function two = library.getFunction("two");
+        assertFalse(two.isThreadSafe());
+        assertEquals(Purity.PURE, two.getPurity());
+        assertEquals(ImmutableSet.of(), two.getContextKeys());
+        Function frame = CoreFunctions.LIBRARY.getFunction("frame");
+        assertEquals(ImmutableSet.of("frame"), frame.getContextKeys());
+        Function receiveOSC = DeviceFunctions.LIBRARY.getFunction("receiveOSC");
+        assertEquals(Purity.VOLATILE, receiveOSC.getPurity());
+        assertNull(receiveOSC.getContextKeys());
+        assertEquals(Purity.SIDE_EFFECTS, DeviceFunctions.LIBRARY.getFunction("sendOSC").getPurity());
+        assertTrue(MathFunctions.LIBRARY.getFunction("add").isThreadSafe());
+    }
+
+    public static int zero() {
+        return 42;
+    }
+
+    public static double two(double a, double b) {
+        return a + b;
+    }
+
+    public static long five(long a, long b, long c, long d, long e) {
+        return a + b + c + d + e;
+    }
+
+    public static void nothing(String s) {
+    }
+
+    public static String fail(String message) {
+        throw new IllegalStateException(message);
+    }
+
+    public static List<Integer> list(List<Integer> list) {
+        return list;
+    }
+
+    @Batch
+    public static String repeat(String s, long times) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            b.append(s);
+        }
+        return b.toString();
+    }
+
+    @Batch
+    public static double six(double a, double b, double c, double d, double e, double f) {
+        return a + b + c + d + e + f;
+    }
+
+}
@@ -1,10 +1,17 @@
 package nodebox.function;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import nodebox.node.*;
 import nodebox.util.LoadException;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static junit.framework.TestCase.*;
 import static nodebox.util.Assertions.assertResultsEqual;
@@ -83,6 +90,124 @@ public class PythonLibraryTest {
         assertResultsEqual(results, "spamspamspam");
     }
 
+    @Test
+    public void testBatch() throws Exception {
+        BatchFunction multiply = (BatchFunction) pyLibrary.getFunction("multiply");
+        List<?> results = multiply.invokeBatch(new List<?>[]{ImmutableList.of(1.0, 2.0, 3.0), ImmutableList.of(10.0)}, 3);
+        assertEquals(ImmutableList.of(10.0, 20.0, 30.0), results);
+    }
+
+    @Test
+    public void testMetadata() {
+        Function multiply = pyLibrary.getFunction("multiply");
+        assertEquals(Purity.PURE, multiply.getPurity());
+        assertNull(multiply.getContextKeys());
+        Function wiggle = pyLibrary.getFunction("wiggle");
+        assertEquals(Purity.VOLATILE, wiggle.getPurity());
+        assertEquals(ImmutableSet.of("frame"), wiggle.getContextKeys());
+        // Functions that don't declare their purity are not cached.
+        assertEquals(Purity.VOLATILE, pyLibrary.getFunction("add").getPurity());
+    }
+
+    /**
+     * A function without declared purity may depend on anything, so it is invoked again on every render.
+     */
+    @Test
+    public void testUndeclaredPurityIsNotCached() {
+        Node countNode = Node.ROOT
+                .withName("count")
+                .withFunction("py-functions/count");
+        NodeLibrary library = testLibrary.withRoot(countNode);
+        NodeResultCache cache = new NodeResultCache();
+        for (long i = 1; i <= 3; i++) {
+            NodeContext context = new NodeContext(library);
+            context.setResultCache(cache);
+            assertFalse(context.isFrameInvariant("/"));
+            assertResultsEqual(context.renderNode("/"), i);
+        }
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        final Function multiply = pyLibrary.getFunction("multiply");
+        assertTrue(multiply.isThreadSafe());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 100; i++) {
+                final double value = i;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return multiply.invoke(value, 2.0);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i * 2.0, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Module globals differ between the interpreters of the pool, so undeclared functions stay on a single thread.
+     */
+    @Test
+    public void testUndeclaredThreadSafetyIsNotForked() {
+        assertFalse(pyLibrary.getFunction("count").isThreadSafe());
+        Node count1 = Node.ROOT
+                .withName("count1")
+                .withFunction("py-functions/count");
+        Node count2 = count1.extend().withName("count2");
+        Node add = Node.ROOT
+                .withName("add")
+                .withFunction("py-functions/add")
+                .withInputAdded(Port.intPort("v1", 0))
+                .withInputAdded(Port.intPort("v2", 0));
+        Node net = Node.NETWORK
+                .withChildAdded(count1)
+                .withChildAdded(count2)
+                .withChildAdded(add)
+                .connect("count1", "add", "v1")
+                .connect("count2", "add", "v2")
+                .withRenderedChildName("add");
+        NodeContext context = new NodeContext(testLibrary.withRoot(net));
+        context.setParallel(true);
+        // Both branches ran in the same interpreter, so the second one sees the count of the first.
+        assertResultsEqual(context.renderNode("/"), 3L);
+    }
+
+    @Test
+    public void testUndeclaredThreadSafetyIsNotChunked() {
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 1000.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        Node count = Node.ROOT
+                .withName("count")
+                .withFunction("py-functions/count_value")
+                .withInputAdded(Port.floatPort("value", 0.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(count)
+                .connect("range", "count", "value")
+                .withRenderedChildName("count");
+        FunctionRepository repository = FunctionRepository.of(pyLibrary, MathFunctions.LIBRARY);
+        NodeContext context = new NodeContext(NodeLibrary.create("test", net, repository));
+        context.setParallel(true);
+        context.setListParallelThreshold(10);
+        List<?> results = context.renderNode("/");
+        assertEquals(1000, results.size());
+        // All invocations ran in order in the same interpreter.
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals((long) i + 1, results.get(i));
+        }
+    }
+
     @Test(expected = LoadException.class)
     public void testLoadError() {
         PythonLibrary.loadScript("py-error", "src/test/python/nonexisting.py");
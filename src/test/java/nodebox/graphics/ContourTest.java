@@ -238,6 +238,65 @@ public class ContourTest {
         assertEquals(new Rect(), r);
     }
 
+    /**
+     * The points are a live, read-only view on the contour.
+     */
+    @Test
+    public void testPointsView() {
+        Contour c = new Contour();
+        List<Point> points = c.getPoints();
+        assertTrue(points.isEmpty());
+        c.addPoint(10, 20);
+        c.addPoint(new Point(30, 40, Point.CURVE_DATA));
+        c.addPoint(50, 60, Point.CURVE_TO);
+        assertEquals(3, points.size());
+        assertEquals(new Point(10, 20, Point.LINE_TO), points.get(0));
+        assertEquals(new Point(30, 40, Point.CURVE_DATA), points.get(1));
+        assertEquals(new Point(50, 60, Point.CURVE_TO), c.getPoint(2));
+        try {
+            points.add(new Point(0, 0));
+            fail("The points should not be modifiable.");
+        } catch (UnsupportedOperationException ignored) {
+        }
+        try {
+            c.getPoint(3);
+            fail("Point index is out of bounds.");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void testCopyAndTransform() {
+        Contour c = new Contour();
+        for (int i = 0; i < 20; i++) {
+            c.addPoint(i, i * 2);
+        }
+        c.addPoint(100, 0, Point.CURVE_DATA);
+        c.addPoint(100, 100, Point.CURVE_DATA);
+        c.addPoint(0, 100, Point.CURVE_TO);
+        c.setClosed(true);
+        Contour copy = new Contour(c.getPoints(), true);
+        assertEquals(c.getPoints(), copy.getPoints());
+        assertEquals(c.getPoints(), c.clone().getPoints());
+
+        Transform t = Transform.translated(5, 10);
+        Path p = new Path();
+        p.add(c);
+        Contour mapped = t.map(p).getContours().get(0);
+        c.transform(t);
+        assertEquals(c.getPoints(), mapped.getPoints());
+        assertTrue(mapped.isClosed());
+        assertEquals(new Point(105, 110, Point.CURVE_DATA), c.getPoint(21));
+        assertEquals(new Point(5, 110, Point.CURVE_TO), c.getPoint(22));
+        // The copy is not changed.
+        assertEquals(new Point(0, 100, Point.CURVE_TO), copy.getPoint(22));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPointType() {
+        new Contour().addPoint(0, 0, 1000);
+    }
+
     private void assertRectPoints(IGeometry g, double x, double y, double width, double height) {
         assertEquals(4, g.getPointCount());
         List<Point> points = g.getPoints();
@@ -0,0 +1,130 @@
+package nodebox.node;
+
+import com.google.common.collect.ImmutableMap;
+import nodebox.function.FunctionRepository;
+import org.junit.Test;
+
+import static junit.framework.TestCase.*;
+
+public class EvaluationPlanTest {
+
+    private final Node number = Node.ROOT
+            .withName("number")
+            .withInputAdded(Port.floatPort("value", 1.0));
+    private final Node add = Node.ROOT
+            .withName("add")
+            .withInputAdded(Port.floatPort("v1", 0.0))
+            .withInputAdded(Port.floatPort("v2", 0.0));
+    private final Node negate = Node.ROOT
+            .withName("negate")
+            .withInputAdded(Port.floatPort("value", 0.0));
+
+    @Test
+    public void testSlots() {
+        Node inner = Node.NETWORK.withName("inner").withChildAdded(number);
+        Node root = Node.NETWORK
+                .withChildAdded(negate)
+                .withChildAdded(add)
+                .withChildAdded(number)
+                .withChildAdded(inner)
+                .connect("number", "add", "v2")
+                .connect("add", "negate", "value");
+        EvaluationPlan plan = EvaluationPlan.compile(root);
+        assertEquals(6, plan.getSlotCount());
+
+        EvaluationPlan.Slot rootSlot = plan.getSlot("/");
+        assertSame(root, rootSlot.node);
+        assertEquals("/inner/number", plan.getSlot("/inner/number").path);
+        assertNull(plan.getSlot("/inner/add"));
+
+        EvaluationPlan.Slot addSlot = rootSlot.getChild("add");
+        assertEquals("/add", addSlot.path);
+        assertNull(addSlot.upstream[0]);
+        assertSame(rootSlot.getChild("number"), addSlot.upstream[1]);
+        assertSame(addSlot, rootSlot.getChild("negate").upstream[0]);
+    }
+
+    @Test
+    public void testTopologicalOrder() {
+        Node root = Node.NETWORK
+                .withChildAdded(negate)
+                .withChildAdded(add)
+                .withChildAdded(number)
+                .connect("number", "add", "v1")
+                .connect("add", "negate", "value");
+        EvaluationPlan.Slot[] children = EvaluationPlan.compile(root).getSlot("/").getChildren();
+        assertEquals(3, children.length);
+        assertEquals("number", children[0].node.getName());
+        assertEquals("add", children[1].node.getName());
+        assertEquals("negate", children[2].node.getName());
+    }
+
+    @Test
+    public void testPublishedPortBinding() {
+        Node root = Node.NETWORK
+                .withChildAdded(add)
+                .publish("add", "v1", "first");
+        EvaluationPlan.Slot rootSlot = EvaluationPlan.compile(root).getSlot("/");
+        EvaluationPlan.Binding binding = rootSlot.getBinding("first");
+        assertSame(rootSlot.getChild("add"), binding.child);
+        assertEquals("v1", binding.childPort.getName());
+        assertNull(rootSlot.getBinding("v1"));
+    }
+
+    @Test
+    public void testDependsOnArguments() {
+        Node root = Node.NETWORK
+                .withChildAdded(number)
+                .withChildAdded(add)
+                .withChildAdded(negate)
+                .connect("add", "negate", "value")
+                .publish("add", "v1", "first");
+        EvaluationPlan.Slot rootSlot = EvaluationPlan.compile(root).getSlot("/");
+        assertFalse(rootSlot.getChild("number").dependsOnArguments);
+        assertTrue(rootSlot.getChild("add").dependsOnArguments);
+        assertTrue(rootSlot.getChild("negate").dependsOnArguments);
+    }
+
+    @Test
+    public void testUnchangedNetworksAreReused() {
+        Node inner = Node.NETWORK.withName("inner").withChildAdded(number).withChildAdded(add);
+        Node other = Node.NETWORK.withName("other").withChildAdded(negate);
+        Node root = Node.NETWORK.withChildAdded(inner).withChildAdded(other);
+        EvaluationPlan plan = EvaluationPlan.compile(root);
+        assertEquals(6, plan.getSlotCount());
+
+        Node changedRoot = root.withChildReplaced("other", other.withChildAdded(number));
+        EvaluationPlan changedPlan = EvaluationPlan.compile(changedRoot, plan);
+        assertSame(plan.getSlot("/inner/number"), changedPlan.getSlot("/inner/number"));
+        assertNotSame(plan.getSlot("/other/negate"), changedPlan.getSlot("/other/negate"));
+        assertNotNull(changedPlan.getSlot("/other/number"));
+        // New slots get ids that were not used before.
+        assertTrue(changedPlan.getSlot("/other/number").id >= plan.getSlotCount());
+        assertEquals(plan.getSlotCount() + 5, changedPlan.getSlotCount());
+    }
+
+    @Test
+    public void testCompactSlotIds() {
+        Node root = Node.NETWORK.withChildAdded(number);
+        EvaluationPlan plan = EvaluationPlan.compile(root);
+        for (int i = 0; i < 100; i++) {
+            root = root.withChildReplaced("number", number.withInputValue("value", (double) i));
+            plan = EvaluationPlan.compile(root, plan);
+        }
+        assertTrue(plan.getSlotCount() <= 2 * 2 + 64);
+        assertSame(root, plan.getSlot("/").node);
+    }
+
+    @Test
+    public void testPlanIsSharedBetweenVersions() {
+        Node root = Node.NETWORK.withChildAdded(number);
+        NodeLibrary library = NodeLibrary.create("test", root, FunctionRepository.of());
+        EvaluationPlan plan = library.getEvaluationPlan();
+        assertSame(plan, library.getEvaluationPlan());
+        assertSame(plan, library.withProperty("canvasWidth", "500").getEvaluationPlan());
+        assertNotSame(plan, library.withRoot(root.withChildAdded(add)).getEvaluationPlan());
+        assertSame(library.getFlattenedNodeMap(), library.withProperty("canvasWidth", "500").getFlattenedNodeMap());
+        assertEquals(ImmutableMap.of("/", root, "/number", number), library.getFlattenedNodeMap());
+    }
+
+}
@@ -0,0 +1,66 @@
+package nodebox.node;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import nodebox.graphics.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+public class FingerprintsTest {
+
+    private static List<Point> points(int count) {
+        List<Point> points = new ArrayList<Point>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new Point(i, i * 2));
+        }
+        return points;
+    }
+
+    @Test
+    public void testStructurallyEqualLists() {
+        List<Point> a = points(1000);
+        List<Point> b = ImmutableList.copyOf(points(1000));
+        List<Point> c = new LinkedList<Point>(points(1000));
+        assertNotSame(a, b);
+        assertEquals(Fingerprints.hash(a), Fingerprints.hash(b));
+        assertEquals(Fingerprints.hash(a), Fingerprints.hash(c));
+        assertTrue(Fingerprints.equal(a, b));
+        assertTrue(Fingerprints.equal(b, c));
+    }
+
+    @Test
+    public void testDifferentLists() {
+        List<Point> a = points(1000);
+        List<Point> b = points(1000);
+        // Only differs in an item that is not part of the sample.
+        b.set(500, new Point(-1, -1));
+        assertFalse(Fingerprints.equal(a, b));
+        assertFalse(Fingerprints.equal(a, points(999)));
+    }
+
+    @Test
+    public void testNestedLists() {
+        List<?> a = ImmutableList.of(points(20), 1.0, "a");
+        List<?> b = ImmutableList.of(points(20), 1.0, "a");
+        assertEquals(Fingerprints.hash(a), Fingerprints.hash(b));
+        assertTrue(Fingerprints.equal(a, b));
+        assertFalse(Fingerprints.equal(a, ImmutableList.of(points(20), 2.0, "a")));
+    }
+
+    @Test
+    public void testMaps() {
+        Port port = Port.floatPort("value", 0.0);
+        ImmutableMap<Port, Object> a = ImmutableMap.<Port, Object>of(port, points(100));
+        ImmutableMap<Port, Object> b = ImmutableMap.<Port, Object>of(port, points(100));
+        assertEquals(Fingerprints.hash(a), Fingerprints.hash(b));
+        assertTrue(Fingerprints.equal(a, b));
+        assertFalse(Fingerprints.equal(a, ImmutableMap.<Port, Object>of(port, points(101))));
+        assertFalse(Fingerprints.equal(a, ImmutableMap.<Port, Object>of()));
+    }
+
+}
@@ -6,10 +6,14 @@ import nodebox.function.*;
 import nodebox.graphics.Color;
 import nodebox.graphics.Point;
 import nodebox.util.SideEffects;
+import nodebox.util.TraceRecorder;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.*;
 import static nodebox.util.Assertions.assertNoResults;
@@ -496,6 +500,70 @@ public class NodeContextTest {
         assertResultsEqual(results, 42.0);
     }
 
+    @Test
+    public void testFrameWithResultCache() {
+        Node frame = Node.ROOT
+                .withName("frame")
+                .withFunction("core/frame")
+                .withInputAdded(Port.customPort("context", "context"));
+        Node frameNet = Node.NETWORK.withChildAdded(frame).withRenderedChild(frame);
+        NodeResultCache cache = new NodeResultCache();
+        assertResultsEqual(renderFrameWithCache(frameNet, cache, 1.0), 1.0);
+        assertEquals(1, cache.size());
+        // The frame is part of the key, so every frame has its own result.
+        assertResultsEqual(renderFrameWithCache(frameNet, cache, 2.0), 2.0);
+        assertEquals(2, cache.size());
+        assertResultsEqual(renderFrameWithCache(frameNet, cache, 1.0), 1.0);
+        assertEquals(2, cache.size());
+    }
+
+    private List<?> renderFrameWithCache(Node network, NodeResultCache cache, double frame) {
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(network), null, ImmutableMap.of("frame", frame));
+        ctx.setResultCache(cache);
+        return ctx.renderNode("/");
+    }
+
+    @Test
+    public void testFrameInvariant() {
+        Node frame = Node.ROOT
+                .withName("frame")
+                .withFunction("core/frame")
+                .withInputAdded(Port.customPort("context", "context"));
+        Node net = Node.NETWORK
+                .withChildAdded(threeNumbers)
+                .withChildAdded(frame)
+                .withChildAdded(addNode)
+                .connect("threeNumbers", "add", "v1")
+                .withRenderedChildName("add");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        assertTrue(ctx.isFrameInvariant("/"));
+        assertFalse(ctx.isFrameInvariant("/frame"));
+
+        Node frameNet = net.connect("frame", "add", "v2");
+        ctx = new NodeContext(testLibrary.withRoot(frameNet));
+        assertFalse(ctx.isFrameInvariant("/"));
+        assertTrue(ctx.isFrameInvariant("/threeNumbers"));
+
+        // A network is frame invariant if its rendered child is.
+        Node outer = Node.NETWORK.withChildAdded(frameNet.withName("inner")).withRenderedChildName("inner");
+        assertFalse(new NodeContext(testLibrary.withRoot(outer)).isFrameInvariant("/"));
+    }
+
+    @Test
+    public void testVolatileFunctionIsNotFrameInvariant() {
+        Node getNumber = Node.ROOT
+                .withName("getNumber")
+                .withFunction("side-effects/getNumber");
+        Node add = addNode.extend().withInputValue("v2", 10.0);
+        Node net = Node.NETWORK
+                .withChildAdded(getNumber)
+                .withChildAdded(add)
+                .connect("getNumber", "add", "v1")
+                .withRenderedChildName("add");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        assertFalse(ctx.isFrameInvariant("/"));
+    }
+
     // TODO Check list-aware node with no inputs.
     // TODO Check list-aware node with no outputs.
     // TODO Check list-aware node with single output.
@@ -711,4 +779,486 @@ public class NodeContextTest {
         assertResultsEqual(values, 15.0);
     }
 
+    @Test
+    public void testInvariantSubnetNodesAreEvaluatedOnce() {
+        Node increase = Node.ROOT
+                .withName("increase")
+                .withFunction("side-effects/increaseAndCount")
+                .withInputAdded(Port.floatPort("counter", 42.0));
+        Node subnet = Node.NETWORK
+                .withName("subnet")
+                .withChildAdded(increase)
+                .withChildAdded(addNode)
+                .connect("increase", "add", "v2")
+                .publish("add", "v1", "value")
+                .withRenderedChildName("add");
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 100.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(subnet)
+                .connect("range", "subnet", "value")
+                .withRenderedChildName("subnet");
+
+        SideEffects.reset();
+        List<?> results = renderNode(net);
+        assertEquals(100, results.size());
+        assertEquals(43.0, results.get(0));
+        assertEquals(142.0, results.get(99));
+        assertEquals(1L, SideEffects.theCounter);
+    }
+
+    @Test
+    public void testVolatileSubnetNodesAreEvaluatedPerItem() {
+        Node increase = Node.ROOT
+                .withName("increase")
+                .withFunction("side-effects/increaseVolatileAndCount")
+                .withInputAdded(Port.floatPort("counter", 42.0));
+        Node subnet = Node.NETWORK
+                .withName("subnet")
+                .withChildAdded(increase)
+                .withChildAdded(addNode)
+                .connect("increase", "add", "v2")
+                .publish("add", "v1", "value")
+                .withRenderedChildName("add");
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 100.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(subnet)
+                .connect("range", "subnet", "value")
+                .withRenderedChildName("subnet");
+
+        SideEffects.reset();
+        List<?> results = renderNode(net);
+        assertEquals(100, results.size());
+        assertEquals(43.0, results.get(0));
+        assertEquals(142.0, results.get(99));
+        assertEquals(100L, SideEffects.theCounter);
+    }
+
+    @Test
+    public void testCancel() {
+        Node net = Node.NETWORK
+                .withChildAdded(threeNumbers)
+                .withChildAdded(addNode)
+                .connect("threeNumbers", "add", "v1")
+                .withRenderedChildName("add");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.cancel();
+        assertTrue(ctx.isCancelled());
+        try {
+            ctx.renderNode("/");
+            fail("The render should have been cancelled.");
+        } catch (NodeRenderCancelledException e) {
+            assertFalse(e.isTimedOut());
+        }
+    }
+
+    @Test
+    public void testCancelBatch() {
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 10000.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        Node cancel = Node.ROOT
+                .withName("cancel")
+                .withFunction("side-effects/countAndCancel")
+                .withInputAdded(Port.floatPort("n", 0.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(cancel)
+                .connect("range", "cancel", "n")
+                .withRenderedChildName("cancel");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        SideEffects.reset();
+        SideEffects.theContext = ctx;
+        try {
+            ctx.renderNode("/");
+            fail("The render should have been cancelled.");
+        } catch (NodeRenderCancelledException e) {
+            assertFalse(e.isTimedOut());
+            // The batch stops after the chunk in which it was cancelled.
+            assertEquals(NodeContext.BATCH_CHUNK_SIZE, SideEffects.theCounter);
+        } finally {
+            SideEffects.reset();
+        }
+    }
+
+    @Test
+    public void testTimeBudget() throws InterruptedException {
+        Node net = Node.NETWORK
+                .withChildAdded(threeNumbers)
+                .withChildAdded(addNode)
+                .connect("threeNumbers", "add", "v1")
+                .withRenderedChildName("add");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.setTimeBudget(1, TimeUnit.MILLISECONDS);
+        Thread.sleep(5);
+        try {
+            ctx.renderNode("/");
+            fail("The render should have run out of time.");
+        } catch (NodeRenderCancelledException e) {
+            assertTrue(e.isTimedOut());
+            assertTrue(ctx.isCancelled());
+        }
+
+        ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.setTimeBudget(1, TimeUnit.MINUTES);
+        assertResultsEqual(ctx.renderNode("/"), 1.0, 2.0, 3.0);
+    }
+
+    @Test
+    public void testProfile() {
+        Node net = Node.NETWORK
+                .withChildAdded(threeNumbers)
+                .withChildAdded(addNode)
+                .connect("threeNumbers", "add", "v1")
+                .withRenderedChildName("add");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        assertNull(ctx.getProfile());
+        RenderProfile profile = new RenderProfile();
+        ctx.setProfile(profile);
+        ctx.renderNode("/");
+
+        RenderProfile.NodeStats addStats = profile.getStats("/add");
+        assertEquals(1, addStats.getEvaluations());
+        assertEquals(3, addStats.getInvocations());
+        // Three values for v1 and the single value of v2.
+        assertEquals(4, addStats.getInputSize());
+        assertEquals(3, addStats.getOutputSize());
+        assertTrue(addStats.getTotalTime() >= addStats.getSelfTime());
+        RenderProfile.NodeStats numbersStats = profile.getStats("/threeNumbers");
+        assertEquals(1, numbersStats.getInvocations());
+        assertTrue(addStats.getTotalTime() >= numbersStats.getTotalTime());
+        assertEquals(ImmutableList.of("/add", "/threeNumbers"), ImmutableList.copyOf(profile.getAllStats().keySet()));
+
+        String json = profile.toJson();
+        assertTrue(json.startsWith("{\"nodes\": ["));
+        assertTrue(json.contains("{\"path\": \"/add\", \"evaluations\": 1, \"invocations\": 3,"));
+    }
+
+    @Test
+    public void testTrace() throws IOException {
+        Node net = Node.NETWORK
+                .withChildAdded(threeNumbers)
+                .withChildAdded(addNode)
+                .connect("threeNumbers", "add", "v1")
+                .withRenderedChildName("add");
+        TraceRecorder recorder = TraceRecorder.start();
+        try {
+            renderNode(net);
+        } finally {
+            TraceRecorder.stop();
+        }
+        // The render, both nodes, the list-matching loop, the invocation of threeNumbers and the batch invocation of add.
+        assertEquals(6, recorder.getEventCount());
+        StringWriter writer = new StringWriter();
+        recorder.writeJson(writer);
+        assertTrue(writer.toString().contains("\"name\": \"/add\", \"cat\": \"node\""));
+        assertTrue(writer.toString().contains("\"name\": \"math/add (batch)\", \"cat\": \"BatchMethodFunction\""));
+    }
+
+    @Test
+    public void testParallelEvaluation() {
+        Node increase = Node.ROOT
+                .withName("increase")
+                .withFunction("side-effects/increaseAndCount")
+                .withInputAdded(Port.floatPort("counter", 1.0));
+        Node add1 = addNode.extend().withName("add1");
+        Node add2 = addNode.extend().withName("add2");
+        Node add3 = addNode.extend().withName("add3");
+        Node net = Node.NETWORK
+                .withChildAdded(increase)
+                .withChildAdded(threeNumbers)
+                .withChildAdded(fiveNumbers)
+                .withChildAdded(add1)
+                .withChildAdded(add2)
+                .withChildAdded(add3)
+                .connect("increase", "add1", "v1")
+                .connect("threeNumbers", "add1", "v2")
+                .connect("increase", "add2", "v1")
+                .connect("fiveNumbers", "add2", "v2")
+                .connect("add1", "add3", "v1")
+                .connect("add2", "add3", "v2")
+                .withRenderedChildName("add3");
+
+        NodeContext serialContext = new NodeContext(testLibrary.withRoot(net));
+        List<?> serialResults = serialContext.renderNode("/");
+        assertEquals(1L, SideEffects.theCounter);
+
+        SideEffects.reset();
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.setParallel(true);
+        assertTrue(ctx.isParallel());
+        List<?> parallelResults = ctx.renderNode("/");
+        assertResultsEqual(parallelResults, 105.0, 206.0, 307.0, 405.0, 506.0);
+        assertEquals(serialResults, parallelResults);
+        // The shared upstream node is only evaluated once.
+        assertEquals(1L, SideEffects.theCounter);
+        assertEquals(parallelResults, ctx.getRenderResults().get("/"));
+        assertEquals(serialContext.getRenderResults(), ctx.getRenderResults());
+    }
+
+    @Test
+    public void testParallelBranchesThatAreNotThreadSafe() {
+        Node count1 = Node.ROOT
+                .withName("count1")
+                .withFunction("side-effects/countConcurrentCalls")
+                .withInputAdded(Port.floatPort("n", 1.0));
+        Node count2 = count1.extend().withName("count2").withInputValue("n", 2.0);
+        Node three = Node.ROOT
+                .withName("three")
+                .withFunction("math/number")
+                .withInputAdded(Port.floatPort("n", 3.0));
+        Node add1 = addNode.extend().withName("add1");
+        Node add2 = addNode.extend().withName("add2");
+        Node net = Node.NETWORK
+                .withChildAdded(count1)
+                .withChildAdded(count2)
+                .withChildAdded(three)
+                .withChildAdded(add1)
+                .withChildAdded(add2)
+                .connect("count1", "add1", "v1")
+                .connect("count2", "add1", "v2")
+                .connect("add1", "add2", "v1")
+                .connect("three", "add2", "v2")
+                .withRenderedChildName("add2");
+        assertFalse(functions.getFunction("side-effects/countConcurrentCalls").isThreadSafe());
+
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.setParallel(true);
+        // Only the branch of the number node can be forked.
+        assertTrue(ctx.isThreadSafeBranch("/three"));
+        assertFalse(ctx.isThreadSafeBranch("/count1"));
+        assertFalse(ctx.isThreadSafeBranch("/add1"));
+        assertFalse(ctx.isThreadSafeBranch("/add2"));
+        assertFalse(ctx.isThreadSafeBranch("/"));
+        assertResultsEqual(ctx.renderNode("/"), 6.0);
+        // The branches with the function that is not thread-safe were evaluated one after the other.
+        assertEquals(1, SideEffects.theMaximumActiveCalls);
+        assertEquals(0, SideEffects.theActiveCalls);
+    }
+
+    @Test
+    public void testParallelListMatching() throws IOException {
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 1000.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        // A thread-safe function without a batch version, so the invocations are split.
+        Node even = Node.ROOT
+                .withName("even")
+                .withFunction("math/even")
+                .withOutputType("boolean")
+                .withInputAdded(Port.floatPort("value", 0.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(even)
+                .connect("range", "even", "value")
+                .withRenderedChildName("even");
+        assertTrue(functions.getFunction("math/even").isThreadSafe());
+        assertFalse(functions.getFunction("math/even") instanceof BatchFunction);
+
+        List<?> serialResults = new NodeContext(testLibrary.withRoot(net)).renderNode("/");
+        assertEquals(1000, serialResults.size());
+
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.setParallel(true);
+        ctx.setListParallelThreshold(10);
+        TraceRecorder recorder = TraceRecorder.start();
+        List<?> parallelResults;
+        try {
+            parallelResults = ctx.renderNode("/");
+        } finally {
+            TraceRecorder.stop();
+        }
+        assertEquals(serialResults, parallelResults);
+        assertEquals(true, parallelResults.get(0));
+        assertEquals(false, parallelResults.get(999));
+        // The render results of the node are those of the last invocation.
+        assertEquals(ImmutableList.of(false), ctx.getRenderResults().get("/even"));
+        // The invocations were split into chunks.
+        StringWriter writer = new StringWriter();
+        recorder.writeJson(writer);
+        String json = writer.toString();
+        assertTrue(json.contains("\"name\": \"/even (invocations 0-"));
+        assertTrue(json.indexOf("\"cat\": \"chunk\"") != json.lastIndexOf("\"cat\": \"chunk\""));
+    }
+
+    @Test
+    public void testResultCache() {
+        Node increase1 = Node.ROOT
+                .withName("increase1")
+                .withFunction("side-effects/increaseAndCount")
+                .withInputAdded(Port.floatPort("counter", 1.0));
+        Node increase2 = increase1.extend().withName("increase2");
+        Node add = addNode.extend().withInputValue("v2", 10.0);
+        Node net = Node.NETWORK
+                .withChildAdded(increase1)
+                .withChildAdded(increase2)
+                .withChildAdded(add)
+                .connect("increase1", "increase2", "counter")
+                .connect("increase2", "add", "v1")
+                .withRenderedChildName("add");
+        NodeResultCache cache = new NodeResultCache();
+
+        assertResultsEqual(renderWithCache(net, cache), 13.0);
+        assertEquals(2L, SideEffects.theCounter);
+
+        // Nothing changed, so nothing is invoked again.
+        assertResultsEqual(renderWithCache(net, cache), 13.0);
+        assertEquals(2L, SideEffects.theCounter);
+
+        // Only the changed node is invoked again.
+        Node changedAdd = net.getChild("add").withInputValue("v2", 20.0);
+        assertResultsEqual(renderWithCache(net.withChildReplaced("add", changedAdd), cache), 23.0);
+        assertEquals(2L, SideEffects.theCounter);
+
+        // Changing the first node invalidates everything downstream.
+        Node changedIncrease = increase1.withInputValue("counter", 5.0);
+        assertResultsEqual(renderWithCache(net.withChildReplaced("increase1", changedIncrease), cache), 17.0);
+        assertEquals(4L, SideEffects.theCounter);
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertResultsEqual(renderWithCache(net, cache), 13.0);
+        assertEquals(6L, SideEffects.theCounter);
+    }
+
+    @Test
+    public void testResultCacheSkipsImpureFunctions() {
+        Node increase = Node.ROOT
+                .withName("increase")
+                .withFunction("side-effects/increaseVolatileAndCount")
+                .withInputAdded(Port.floatPort("counter", 1.0));
+        Node setNumber = Node.ROOT
+                .withName("setNumber")
+                .withFunction("side-effects/setNumber")
+                .withInputAdded(Port.intPort("n", 42));
+        Node volatileNet = Node.NETWORK
+                .withChildAdded(increase)
+                .withRenderedChildName("increase");
+        Node sideEffectsNet = Node.NETWORK
+                .withChildAdded(setNumber)
+                .withRenderedChildName("setNumber");
+        NodeResultCache cache = new NodeResultCache();
+
+        // Volatile functions can return something else for the same arguments, so they are invoked on every render.
+        renderWithCache(volatileNet, cache);
+        renderWithCache(volatileNet, cache);
+        assertEquals(2L, SideEffects.theCounter);
+
+        // Functions with side effects are invoked on every render.
+        renderWithCache(sideEffectsNet, cache);
+        assertEquals(42L, SideEffects.theOutput);
+        SideEffects.reset();
+        renderWithCache(sideEffectsNet, cache);
+        assertEquals(42L, SideEffects.theOutput);
+    }
+
+    @Test
+    public void testBatchInvocation() {
+        Node net = Node.NETWORK
+                .withChildAdded(threeNumbers)
+                .withChildAdded(fiveNumbers)
+                .withChildAdded(addNode)
+                .connect("threeNumbers", "add", "v1")
+                .connect("fiveNumbers", "add", "v2")
+                .withRenderedChildName("add");
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        List<?> results = ctx.renderNode("/");
+        assertResultsEqual(results, 101.0, 202.0, 303.0, 401.0, 502.0);
+        assertEquals(ImmutableList.of(502.0), ctx.getRenderResults().get("/add"));
+
+        NodeResultCache cache = new NodeResultCache();
+        assertEquals(results, renderWithCache(net, cache));
+        assertEquals(results, renderWithCache(net, cache));
+    }
+
+    @Test
+    public void testChunkedBatchInvocation() {
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 10000.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(threeNumbers)
+                .withChildAdded(addNode)
+                .connect("range", "add", "v1")
+                .connect("threeNumbers", "add", "v2")
+                .withRenderedChildName("add");
+        List<?> results = renderNode(net);
+        assertEquals(10000, results.size());
+        // The short column wraps around across chunks.
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i + (i % 3) + 1.0, results.get(i));
+        }
+    }
+
+    @Test
+    public void testParallelBatchInvocation() throws IOException {
+        Node range = Node.ROOT
+                .withName("range")
+                .withFunction("math/range")
+                .withOutputRange(Port.Range.LIST)
+                .withInputAdded(Port.floatPort("start", 0.0))
+                .withInputAdded(Port.floatPort("end", 1000.0))
+                .withInputAdded(Port.floatPort("step", 1.0));
+        Node net = Node.NETWORK
+                .withChildAdded(range)
+                .withChildAdded(threeNumbers)
+                .withChildAdded(addNode)
+                .connect("range", "add", "v1")
+                .connect("threeNumbers", "add", "v2")
+                .withRenderedChildName("add");
+        assertTrue(functions.getFunction("math/add").isThreadSafe());
+        assertTrue(functions.getFunction("math/add") instanceof BatchFunction);
+
+        List<?> serialResults = renderNode(net);
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(net));
+        ctx.setParallel(true);
+        ctx.setListParallelThreshold(10);
+        TraceRecorder recorder = TraceRecorder.start();
+        List<?> parallelResults;
+        try {
+            parallelResults = ctx.renderNode("/");
+        } finally {
+            TraceRecorder.stop();
+        }
+        assertEquals(serialResults, parallelResults);
+        assertEquals(ImmutableList.of(1000.0), ctx.getRenderResults().get("/add"));
+        // The batch was split into chunks that were invoked separately.
+        StringWriter writer = new StringWriter();
+        recorder.writeJson(writer);
+        String json = writer.toString();
+        assertTrue(json.indexOf("math/add (batch)") != json.lastIndexOf("math/add (batch)"));
+    }
+
+    private List<?> renderWithCache(Node network, NodeResultCache cache) {
+        NodeContext ctx = new NodeContext(testLibrary.withRoot(network));
+        ctx.setResultCache(cache);
+        return ctx.renderNode("/");
+    }
+
 }
@@ -175,6 +175,86 @@ public class NodeTest {
         assertEquals(expected, node.getInputs().size());
     }
 
+    @Test
+    public void testLookupInLargeNetwork() {
+        List<Node> children = new LinkedList<Node>();
+        for (int i = 0; i < 100; i++) {
+            children.add(Node.ROOT.withName("child" + i).withInputAdded(Port.floatPort("v", i)));
+        }
+        Node net = Node.NETWORK.withChildrenAdded(children);
+        for (int i = 1; i < 100; i++) {
+            net = net.connect("child" + (i - 1), "child" + i, "v");
+        }
+        assertEquals(100, net.getChildren().size());
+        assertEquals("child42", net.getChild("child42").getName());
+        assertNull(net.getChild("child100"));
+        assertTrue(net.isConnected("child99"));
+        assertTrue(net.isConnected("child50", "v"));
+        assertFalse(net.isConnected("child0", "v"));
+        assertEquals("child49", net.getConnection("child50", "v").getOutputNode());
+
+        // Replacing a child keeps the lookups working.
+        Node replaced = net.getChild("child42").withInputValue("v", 0.0);
+        net = net.withChildReplaced("child42", replaced);
+        assertSame(replaced, net.getChild("child42"));
+
+        net = net.withChildRemoved("child50");
+        assertNull(net.getChild("child50"));
+        assertFalse(net.isConnected("child51", "v"));
+        assertEquals("child51", net.getChild("child51").getName());
+        assertEquals("child50", net.uniqueName("child"));
+    }
+
+    @Test
+    public void testWithChildrenAdded() {
+        Node alpha = Node.ROOT.withName("alpha");
+        Node net = Node.NETWORK.withChildAdded(alpha);
+        net = net.withChildrenAdded(ImmutableList.of(alpha, Node.ROOT.withName("beta"), alpha));
+        assertEquals(ImmutableList.of("alpha", "alpha1", "beta", "alpha2"), childNames(net));
+    }
+
+    @Test
+    public void testWithChildrenRemoved() {
+        Node number = Node.ROOT.withName("number").withInputAdded(Port.floatPort("value", 0));
+        Node net = Node.NETWORK
+                .withChildAdded(number.withName("a"))
+                .withChildAdded(number.withName("b"))
+                .withChildAdded(number.withName("c"))
+                .connect("a", "b", "value")
+                .connect("b", "c", "value")
+                .publish("a", "value", "aValue")
+                .withRenderedChildName("c");
+        Node removed = net.withChildrenRemoved(ImmutableList.of("a", "c"));
+        assertEquals(ImmutableList.of("b"), childNames(removed));
+        assertTrue(removed.getConnections().isEmpty());
+        assertTrue(removed.getInputs().isEmpty());
+        assertEquals("", removed.getRenderedChildName());
+        assertEquals(net.withChildRemoved("a").withChildRemoved("c"), removed);
+    }
+
+    @Test
+    public void testWithConnectionsAdded() {
+        Node number = Node.ROOT.withName("number").withInputAdded(Port.floatPort("value", 0));
+        Node net = Node.NETWORK
+                .withChildAdded(number.withName("a"))
+                .withChildAdded(number.withName("b"))
+                .withChildAdded(number.withName("c"))
+                .connect("a", "c", "value");
+        Node connected = net.withConnectionsAdded(ImmutableList.of(
+                new Connection("a", "b", "value"),
+                new Connection("b", "c", "value")));
+        assertEquals(net.connect("a", "b", "value").connect("b", "c", "value"), connected);
+        assertEquals(2, connected.getConnections().size());
+    }
+
+    private List<String> childNames(Node n) {
+        List<String> names = new LinkedList<String>();
+        for (Node child : n.getChildren()) {
+            names.add(child.getName());
+        }
+        return names;
+    }
+
     public List<String> portNames(Node n) {
         List<String> portNames = new LinkedList<String>();
         for (Port p : n.getInputs()) {
@@ -0,0 +1,77 @@
+package nodebox.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FlightRecorderEventsTest {
+
+    @Test
+    public void testNotRecording() {
+        assumeTrue(!FlightRecorderEvents.isRecording());
+        assertNull(FlightRecorderEvents.NODE_EVALUATION.begin());
+    }
+
+    @Test
+    public void testRecordEvent() throws Exception {
+        assumeTrue(FlightRecorderEvents.isSupported());
+        // The Flight Recorder API is not available at compile time, so the recording is controlled through reflection.
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.newInstance();
+        invoke(recording, "start");
+        assertTrue(FlightRecorderEvents.isRecording());
+        FlightRecorderEvents.Event event = FlightRecorderEvents.NODE_EVALUATION.begin();
+        assertNotNull(event);
+        event.commit("/root/rect1", "corevector/rect", 3, 6L, 3L);
+        invoke(recording, "stop");
+        assertFalse(FlightRecorderEvents.isRecording());
+
+        File file = File.createTempFile("nodebox", ".jfr");
+        try {
+            Object path = File.class.getMethod("toPath").invoke(file);
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            recordingClass.getMethod("dump", pathClass).invoke(recording, path);
+            invoke(recording, "close");
+            Class<?> recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+            List<?> events = (List<?>) recordingFileClass.getMethod("readAllEvents", pathClass).invoke(null, path);
+            Object recordedEvent = null;
+            for (Object e : events) {
+                Object eventType = invoke(e, "getEventType");
+                if (invoke(eventType, "getName").equals("nodebox.NodeEvaluation")) {
+                    recordedEvent = e;
+                }
+            }
+            assertNotNull(recordedEvent);
+            Method getValue = recordedEvent.getClass().getMethod("getValue", String.class);
+            assertEquals("/root/rect1", getValue.invoke(recordedEvent, "nodePath"));
+            assertEquals("corevector/rect", getValue.invoke(recordedEvent, "function"));
+            assertEquals(3, getValue.invoke(recordedEvent, "invocations"));
+            assertEquals(6L, getValue.invoke(recordedEvent, "inputSize"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() throws Exception {
+        assumeTrue(FlightRecorderEvents.isSupported());
+        Object recording = Class.forName("jdk.jfr.Recording").newInstance();
+        invoke(recording, "start");
+        try {
+            FlightRecorderEvents.Event event = FlightRecorderEvents.FILE_IMPORT.begin();
+            event.commit("data.csv");
+        } finally {
+            invoke(recording, "close");
+        }
+    }
+
+    private static Object invoke(Object target, String methodName) throws Exception {
+        return target.getClass().getMethod(methodName).invoke(target);
+    }
+
+}
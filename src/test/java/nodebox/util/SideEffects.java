@@ -1,7 +1,10 @@
 package nodebox.util;
 
+import nodebox.function.Batch;
 import nodebox.function.FunctionLibrary;
 import nodebox.function.JavaLibrary;
+import nodebox.function.Volatile;
+import nodebox.node.NodeContext;
 
 /**
  * Function library that is used for testing and produces side effects.
@@ -14,12 +17,15 @@ public class SideEffects {
     public static final FunctionLibrary LIBRARY;
 
     static {
-        LIBRARY = JavaLibrary.ofClass("side-effects", SideEffects.class, "getNumber", "setNumber", "increaseAndCount");
+        LIBRARY = JavaLibrary.ofClass("side-effects", SideEffects.class, "getNumber", "setNumber", "increaseAndCount", "increaseVolatileAndCount", "countAndCancel", "countConcurrentCalls");
     }
 
     public static long theInput = 0;
     public static long theOutput = 0;
     public static long theCounter = 0;
+    public static NodeContext theContext = null;
+    public static int theActiveCalls = 0;
+    public static int theMaximumActiveCalls = 0;
 
     /**
      * Reset the side effects.
@@ -28,6 +34,9 @@ public class SideEffects {
         theInput = 0;
         theOutput = 0;
         theCounter = 0;
+        theContext = null;
+        theActiveCalls = 0;
+        theMaximumActiveCalls = 0;
     }
 
     /**
@@ -35,6 +44,7 @@ public class SideEffects {
      *
      * @return the current value of theInput.
      */
+    @Volatile
     public static long getNumber() {
         return theInput;
     }
@@ -44,6 +54,7 @@ public class SideEffects {
      *
      * @param n The number to output.
      */
+    @nodebox.function.SideEffects
     public static void setNumber(long n) {
         theOutput = n;
     }
@@ -59,4 +70,60 @@ public class SideEffects {
         return n + 1;
     }
 
+    /**
+     * Increment the input value and count the number of times the node was executed.
+     * <p/>
+     * Unlike increaseAndCount, the function is declared volatile, so it has to be invoked every time.
+     *
+     * @param n The input value.
+     * @return The input + 1;
+     */
+    @Volatile
+    public static double increaseVolatileAndCount(double n) {
+        theCounter++;
+        return n + 1;
+    }
+
+    /**
+     * Count the number of times the function was invoked and cancel the render of theContext.
+     *
+     * @param n The input value.
+     * @return The input value.
+     */
+    @Batch
+    public static double countAndCancel(double n) {
+        theCounter++;
+        if (theContext != null) theContext.cancel();
+        return n;
+    }
+
+    /**
+     * Keep track of the maximum number of invocations that run at the same time.
+     * <p/>
+     * This function is not thread-safe, so it should never be invoked more than once at the same time.
+     *
+     * @param n The input value.
+     * @return The input value.
+     */
+    public static double countConcurrentCalls(double n) {
+        enterCall();
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exitCall();
+        }
+        return n;
+    }
+
+    private static synchronized void enterCall() {
+        theActiveCalls++;
+        theMaximumActiveCalls = Math.max(theMaximumActiveCalls, theActiveCalls);
+    }
+
+    private static synchronized void exitCall() {
+        theActiveCalls--;
+    }
+
 }
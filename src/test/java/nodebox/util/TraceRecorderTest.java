@@ -0,0 +1,52 @@
+package nodebox.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static junit.framework.TestCase.*;
+
+public class TraceRecorderTest {
+
+    @After
+    public void tearDown() {
+        TraceRecorder.stop();
+    }
+
+    @Test
+    public void testStartAndStop() {
+        assertFalse(TraceRecorder.isRecording());
+        TraceRecorder recorder = TraceRecorder.start();
+        assertTrue(TraceRecorder.isRecording());
+        assertSame(recorder, TraceRecorder.getActive());
+        assertSame(recorder, TraceRecorder.stop());
+        assertNull(TraceRecorder.getActive());
+        assertNull(TraceRecorder.stop());
+    }
+
+    @Test
+    public void testWriteJson() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(10);
+        recorder.complete("node", "/a \"quoted\" name", System.nanoTime());
+        assertEquals(1, recorder.getEventCount());
+        StringWriter writer = new StringWriter();
+        recorder.writeJson(writer);
+        String json = writer.toString();
+        assertTrue(json.startsWith("{\"displayTimeUnit\": \"ms\", \"traceEvents\": ["));
+        assertTrue(json.contains("\"ph\": \"M\""));
+        assertTrue(json.contains("{\"name\": \"/a \\\"quoted\\\" name\", \"cat\": \"node\", \"ph\": \"X\", \"pid\": 1, \"tid\": " + Thread.currentThread().getId()));
+    }
+
+    @Test
+    public void testMaximumEvents() {
+        TraceRecorder recorder = new TraceRecorder(2);
+        for (int i = 0; i < 5; i++) {
+            recorder.complete("node", "n" + i, System.nanoTime());
+        }
+        assertEquals(2, recorder.getEventCount());
+        assertEquals(3, recorder.getDroppedEventCount());
+    }
+
+}
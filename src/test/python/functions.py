@@ -2,4 +2,24 @@ def add(*args):
     return sum(args)
 
 def multiply(v1, v2):
-    return v1 * v2
\ No newline at end of file
+    return v1 * v2
+multiply.purity = "pure"
+multiply.thread_safe = True
+
+_count = 0
+
+def count():
+    global _count
+    _count += 1
+    return _count
+
+def count_value(value):
+    global _count
+    _count += 1
+    return _count
+
+def wiggle(context):
+    import random
+    return context.frame * random.random()
+wiggle.purity = "volatile"
+wiggle.context_keys = ["frame"]
@@ -0,0 +1,569 @@
+# The Python versions of the corevector nodes that were ported to CoreVectorFunctions.
+# CoreVectorFunctionsTest checks that both give the same output.
+
+from math import pi, sin, cos, radians
+from random import seed as _seed, uniform
+
+from nodebox.graphics import Geometry, Path, Contour, Transform, Text, Point
+from nodebox.util.Geometry import coordinates, angle, distance
+
+def _flatten(geo):
+    compound = Path()
+    first = True
+    for path in geo.paths:
+        if first:
+             compound = path
+             first = False
+        else:
+             compound = compound.united(path)
+    return compound
+
+def _flatten_to_paths(fn):
+    def _function(shape1, shape2, *args, **kwargs):
+        if isinstance(shape1, Geometry):
+            shape1 = _flatten(shape1)
+        if isinstance(shape2, Geometry):
+            shape2 = _flatten(shape2)
+        return fn(shape1, shape2, *args, **kwargs)
+    return _function
+
+@_flatten_to_paths
+def compound(shape1, shape2, function="united", invert_difference=False):
+    """Add, subtract or intersect geometry."""
+    if shape1 is None: return None
+    if shape2 is None: return shape1.clone()
+    # The invert turns the operation around.
+    if invert_difference:
+        shape1, shape2 = shape2, shape1
+
+    # Combine the two compound paths using the given function.
+    if function == "united":
+        return shape1.united(shape2)
+    elif function == "subtracted":
+        return shape1.subtracted(shape2)
+    elif function == "intersected":
+        return shape1.intersected(shape2)
+    return None
+
+def _map_geo_to_paths(fn):
+    def _function(shape, *args, **kwargs):
+        if isinstance(shape, Path):
+            return fn(shape, *args, **kwargs)
+        elif isinstance(shape, Geometry):
+            g = Geometry()
+            for path in shape.paths:
+                result = fn(path, *args, **kwargs)
+                if isinstance(result, Path):
+                    g.add(result)
+                elif isinstance(result, Geometry):
+                    g.extend(result)
+            return g
+        return None
+    return _function
+
+def left(shape):
+    return shape.bounds.x
+
+def center(shape):
+    x, y, width, height = shape.bounds
+    return x + width / 2
+
+def right(shape):
+    x, y, width, height = shape.bounds
+    return x + width
+
+def top(shape):
+    return shape.bounds.y
+
+def middle(shape):
+    x, y, width, height = shape.bounds
+    return y + height / 2
+
+def bottom(shape):
+    x, y, width, height = shape.bounds
+    return y + height
+
+def cmpfactory(fn):
+    def _cmp(shape1, shape2):
+        return cmp(fn(shape1), fn(shape2))
+    return _cmp
+
+def find_extrema(shapes, fn):
+    l = list(shapes)
+    l.sort(cmpfactory(fn))
+    return l[0], l[-1]
+
+def translateX(shape, x):
+    t = Transform()
+    t.translate(x, 0)
+    return t.map(shape)
+
+def translateY(shape, y):
+    t = Transform()
+    t.translate(0, y)
+    return t.map(shape)
+
+def _distribute(shapes, main_fn):
+    if main_fn in [left, right, center]:
+        ext1_fn, ext2_fn, translate = left, right, translateX
+    elif main_fn in [top, bottom, middle]:
+        ext1_fn, ext2_fn, translate = top, bottom, translateY
+
+    sorted_shapes = list(shapes)
+    sorted_shapes.sort(cmpfactory(main_fn))
+    extremum1 = find_extrema(shapes, ext1_fn)[0]
+    extremum2 = find_extrema(shapes, ext2_fn)[1]
+    extrema = [extremum1, extremum2]
+    outer1 = main_fn(extremum1)
+    outer2 = main_fn(extremum2)
+    skip = (outer2 - outer1) / (len(shapes) - 1)
+    d = dict([(shape, i) for (i, shape) in enumerate(sorted_shapes)])
+    i_e1 = d[extremum1]
+    i_e2 = d[extremum2]
+
+    new_shapes = []
+    for shape in shapes:
+        if shape in extrema:
+            new_shapes.append(shape.clone())
+        else:
+            i = d[shape]
+            if i < i_e1: i += 1
+            if i > i_e2: i -= 1
+            new_shape = translate(shape, outer1 + (i * skip) - main_fn(shape))
+            new_shapes.append(new_shape)
+    return new_shapes
+
+def distribute(shapes, horizontal, vertical):
+    if shapes is None: return None
+    if len(shapes) < 3 or \
+        (horizontal == "none" and vertical == "none"):
+            return [shape.clone() for shape in shapes]
+
+    d = { "left": left, "right": right, "center": center,
+          "top": top, "bottom": bottom, "middle": middle }
+
+    if horizontal == "none":
+        new_shapes = [shape.clone() for shape in shapes]
+    else:
+        new_shapes = _distribute(shapes, d[horizontal])
+
+    if vertical != "none":
+        new_shapes = _distribute(new_shapes, d[vertical])
+
+    return new_shapes
+
+def polygon(position, radius, sides, align):
+    """Draw a polygon."""
+    p = Path()
+    x, y, r = position.x, position.y, radius
+    sides = max(sides, 3)
+    a = 360.0 / sides
+    da = 0
+    if align:
+        x0, y0 = coordinates(x, y, r, 0)
+        x1, y1 = coordinates(x, y, r, a)
+        da = -angle(x1, y1, x0, y0)
+    for i in xrange(sides):
+        x1, y1 = coordinates(x, y, r, (a*i) + da)
+        if i == 0:
+            p.moveto(x1, y1)
+        else:
+            p.lineto(x1, y1)
+    p.close()
+    return p
+
+@_map_geo_to_paths
+def reflect(shape, position, _angle, keep_original):
+    """Mirrors and copies the geometry across an invisible axis."""
+    if shape is None: return None
+    
+    new_shape = shape.cloneAndClear()
+    for contour in shape.contours:
+        c = Contour()
+        for point in contour.points:  
+            d = distance(point.x, point.y, position.x, position.y)
+            a = angle(point.x, point.y, position.x, position.y)
+            x, y = coordinates(position.x, position.y, d * cos(radians(a - _angle)), 180 + _angle)
+            d = distance(point.x, point.y, x, y)
+            a = angle(point.x, point.y, x, y)
+            px, py = coordinates(point.x, point.y, d * 2, a)
+            c.addPoint(Point(px, py, point.type))
+        if contour.closed:
+            c.close()
+        new_shape.add(c)
+        
+    if keep_original:
+        g = Geometry()
+        g.add(shape)
+        g.add(new_shape)
+        return g
+        
+    return new_shape
+
+def resample(shape, method, length, points, per_contour=False):
+    if shape is None: return None
+    if method == 'length':
+        return shape.resampleByLength(length)
+    else:
+        return shape.resampleByAmount(points, per_contour)
+
+def scatter(shape, amount, seed):
+    """Generate points within the boundaries of a shape."""
+    if shape is None: return None
+    _seed(seed)
+    bx, by, bw, bh = list(shape.bounds)
+    points = []
+    for i in xrange(amount):
+        tries = 100
+        while tries > 0:
+            pt = Point(bx + uniform(0, 1) * bw, by + uniform(0, 1) * bh)
+            if shape.contains(pt):
+                points.append(pt)
+                break
+            tries -= 1
+    return points
+
+def shape_on_path(shapes, path, amount, alignment, spacing, margin, baseline_offset):
+    if not shapes: return []
+    if path is None: return []
+
+    if alignment == "trailing":
+        shapes = list(shapes)
+        shapes.reverse()
+
+    length = path.length - margin
+    m = margin / path.length
+    c = 0
+
+    new_shapes = []
+    for i in xrange(amount):
+        for shape in shapes:
+            if alignment == "distributed":
+                p = length / ((amount * len(shapes)) - 1)
+                pos = c * p / length
+                pos = m + (pos * (1 - 2 * m))
+            else:
+                pos = ((c * spacing) % length) / length
+                pos = m + (pos * (1 - m))
+
+                if alignment == "trailing":
+                    pos = 1 - pos
+
+            p1 = path.pointAt(pos)
+            p2 = path.pointAt(pos + 0.0000001)
+            a = angle(p1.x, p1.y, p2.x, p2.y)
+            if baseline_offset:
+                coords = coordinates(p1.x, p1.y, baseline_offset, a - 90)
+                p1 = Point(*coords)
+            t = Transform()
+            t.translate(p1)
+            t.rotate(a)
+            new_shapes.append(t.map(shape))
+            c += 1
+
+    return new_shapes
+
+def _x(shape):
+    try:
+        return shape.x
+    except AttributeError:
+        return shape.bounds.x
+
+def _y(shape):
+    try:
+        return shape.y
+    except AttributeError:
+        return shape.bounds.y
+
+def angle_to_point(point):
+    def _angle_to_point(shape):
+        try:
+            return angle(shape.x, shape.y, point.x, point.y)
+        except AttributeError:
+            centroid = shape.bounds.centroid
+            return angle(centroid.x, centroid.y, point.x, point.y)
+    return _angle_to_point
+
+def distance_to_point(point):
+    def _distance_to_point(shape):
+        try:
+            return distance(shape.x, shape.y, point.x, point.y)
+        except AttributeError:
+            centroid = shape.bounds.centroid
+            return distance(centroid.x, centroid.y, point.x, point.y)
+    return _distance_to_point
+
+def sort(shapes, order_by, point):
+    if shapes is None: return None
+    methods = {"x": _x, "y": _y, "angle": angle_to_point(point), "distance": distance_to_point(point)}
+    sort_method = methods.get(order_by)
+    if sort_method is None: 
+        return shapes
+    else:
+        new_shapes = list(shapes)
+        new_shapes.sort(cmpfactory(sort_method))
+    return new_shapes
+
+def stack(shapes, direction, margin):
+    if shapes is None:
+        return []
+    if len(shapes) <= 1:
+        return shapes
+    first_bounds = shapes[0].bounds
+    new_shapes = []
+    if direction == 'e':
+        tx = first_bounds.x
+        for shape in shapes:
+            bounds = shape.bounds
+            t = Transform()
+            t.translate(tx - bounds.x, 0)
+            new_shapes.append(t.map(shape))
+            tx += bounds.width + margin
+        return new_shapes
+    elif direction == 'w':
+        tx = first_bounds.x + first_bounds.width
+        for shape in shapes:
+            bounds = shape.bounds
+            t = Transform()
+            t.translate(tx - (bounds.x + bounds.width), 0)
+            new_shapes.append(t.map(shape))
+            tx -= bounds.width + margin
+        return new_shapes
+    elif direction == 'n':
+        ty = first_bounds.y + first_bounds.height
+        for shape in shapes:
+            bounds = shape.bounds
+            t = Transform()
+            t.translate(0, ty - (bounds.y + bounds.height))
+            new_shapes.append(t.map(shape))
+            ty -= bounds.height + margin
+        return new_shapes
+    elif direction == 's':
+        ty = first_bounds.y
+        for shape in shapes:
+            bounds = shape.bounds
+            t = Transform()
+            t.translate(0, ty - bounds.y)
+            new_shapes.append(t.map(shape))
+            ty += bounds.height + margin
+        return new_shapes
+    else:
+        raise ValueError('Invalid direction "%s."' % direction)
+
+def star(position, points, outer, inner):
+    p = Path()
+    p.moveto(position.x, position.y + outer / 2)
+    # Calculate the points of the star.
+    for i in xrange(1, points * 2):
+        angle = i * pi / points
+        radius = i % 2 and inner / 2 or outer / 2
+        x = position.x + radius * sin(angle)
+        y = position.y + radius * cos(angle)
+        p.lineto(x, y)
+    p.close()
+    return p
+
+def textwidth(text, font_metrics):
+    if text is None:
+        return 0.0
+    text = unicode(text)
+    if len(text) == 1:
+        return float(font_metrics.charWidth(text))
+    else:
+        return float(font_metrics.stringWidth(text))
+
+def get_font_metrics(font_name, font_size):
+    from java.awt.image import BufferedImage
+    from java.awt import Font
+    tmp_img = BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+    g = tmp_img.createGraphics()
+    return g.getFontMetrics((Font(font_name, Font.PLAIN, int(font_size))))
+
+def text_on_path(text, shape, font_name, font_size, alignment, margin, baseline_offset):
+    if shape is None or shape.length <= 0: return None
+    if text is None: return None
+
+    text = unicode(text)
+    
+    if isinstance(shape, Path):
+        shape = shape.asGeometry()
+    
+    p = Path()
+
+    fm = get_font_metrics(font_name, font_size)
+    string_width = textwidth(text, fm)
+    dw = string_width / shape.length
+    
+    if alignment == "trailing":
+        first = True
+        
+        for char in text:
+            char_width = textwidth(char, fm)
+            if first:
+                t = (99.9 - margin) / 100.0
+                first = False
+            else:
+                t -= char_width / string_width * dw
+            t = t % 1.0
+        
+        margin = t * 100
+
+    first = True
+    
+    for char in text:
+        char_width = textwidth(char, fm)
+        
+        if first:
+            t = margin / 100.0
+            first = False
+        else:
+            t += char_width / string_width * dw
+
+        # Always loop (the other behavior is weird)
+        t = t % 1.0
+
+        pt1 = shape.pointAt(t)
+        pt2 = shape.pointAt(t + 0.0000001)
+        a = angle(pt2.x, pt2.y, pt1.x, pt1.y)
+        
+        tp = Text(char, -char_width, -baseline_offset)
+        tp.align = Text.Align.LEFT
+        tp.fontName = font_name
+        tp.fontSize = font_size
+        tp.translate(pt1.x, pt1.y)
+        tp.rotate(a - 180)
+        
+        for contour in tp.path.contours:
+            p.add(contour)
+    
+    return p
+    
+def translate(shape, translate):
+    """Move the shape."""
+    if shape is None: return None
+    return Transform.translated(translate).map(shape)
+
+def scale(shape, scale, origin=Point.ZERO):
+    """Scale the given shape."""
+    if shape is None: return None
+    t = Transform()
+    t.translate(origin)
+    t.scale(scale.x / 100.0, scale.y / 100.0)
+    t.translate(Point(-origin.x, -origin.y))
+    return t.map(shape)
+
+def rotate(shape, angle, origin=Point.ZERO):
+    """Rotate the given shape."""
+    if shape is None: return None
+    t = Transform()
+    t.translate(origin)
+    t.rotate(angle)
+    t.translate(Point(-origin.x, -origin.y))
+    return t.map(shape)
+
+def _with_seed(fn):
+    def decorated_function(*args, **kwargs):
+        seed = args[-1]
+        _seed(seed)
+        new_args = args[:-1]
+        return fn(*new_args, **kwargs)
+    return decorated_function
+
+def _map_points(fn):
+    def _function(shape, *args, **kwargs):
+        from java.util import List
+        if isinstance(shape, (list, tuple, List)):
+            return fn(shape, *args, **kwargs)
+        elif isinstance(shape, Point):
+            return fn([shape], *args, **kwargs)[0]
+        elif isinstance(shape, Contour):
+            new_points = fn(shape.points, *args, **kwargs)
+            return Contour(new_points, shape.closed)
+        elif isinstance(shape, Path):
+            path = shape.cloneAndClear()
+            for contour in shape.contours:
+                path.add(_function(contour, *args, **kwargs))
+            return path
+        elif isinstance(shape, Geometry):
+            g = Geometry()
+            for p in shape.paths:
+                g.add(_function(p, *args, **kwargs))
+            return g
+    return _function
+    
+def _map_contours(fn):
+    def _function(shape, *args, **kwargs):
+        if isinstance(shape, list):
+            return fn(shape, *args, **kwargs)
+        elif isinstance(shape, Contour):
+            return fn([shape], *args, **kwargs)[0]
+        elif isinstance(shape, Path):
+            path = shape.cloneAndClear()
+            for contour in fn(shape.contours, *args, **kwargs):
+                path.add(contour)
+            return path
+        elif isinstance(shape, Geometry):
+            g = Geometry()
+            for p in shape.paths:
+                g.add(_function(p, *args, **kwargs))
+            return g
+    return _function
+
+def _map_paths(fn):
+    def _function(shape, *args, **kwargs):
+        if isinstance(shape, list):
+            return fn(shape, *args, **kwargs)
+        elif isinstance(shape, Path):
+            return fn([shape], *args, **kwargs)[0]
+        elif isinstance(shape, Geometry):
+            g = Geometry()
+            for path in fn(shape.paths, *args, **kwargs):
+                g.add(path)
+            return g
+    return _function
+
+# todo: improve seed argument detection 
+@_with_seed
+@_map_points
+def wiggle_points(points, offset):
+    new_points = []
+    for point in points:
+        dx = (uniform(0, 1) - 0.5) * offset.x * 2
+        dy = (uniform(0, 1) - 0.5) * offset.y * 2
+        new_points.append(Point(point.x + dx, point.y + dy, point.type))
+    return new_points
+    
+@_with_seed
+@_map_paths
+def wiggle_paths(paths, offset):
+    new_paths = []
+    for path in paths:
+        dx = (uniform(0, 1) - 0.5) * offset.x * 2
+        dy = (uniform(0, 1) - 0.5) * offset.y * 2
+        t = Transform()
+        t.translate(dx, dy)
+        new_paths.append(t.map(path))
+    return new_paths
+
+@_with_seed
+@_map_contours
+def wiggle_contours(contours, offset):
+    new_contours = []
+    for contour in contours:
+        dx = (uniform(0, 1) - 0.5) * offset.x * 2
+        dy = (uniform(0, 1) - 0.5) * offset.y * 2
+        t = Transform()
+        t.translate(dx, dy)
+        new_contours.append(Contour(t.map(contour.points), contour.closed))
+    return new_contours
+    
+def wiggle(shape, scope, offset, seed=0):
+    """Shift points/contours/paths by a random amount."""
+    if shape is None: return None
+    functions = { "points": wiggle_points, 
+                  "contours": wiggle_contours, 
+                  "paths": wiggle_paths}
+    fn = functions.get(scope)
+    if fn is None: return None
+    return fn(shape, offset, seed)
+